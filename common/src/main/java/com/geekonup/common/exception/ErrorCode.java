@@ -20,7 +20,8 @@ public enum ErrorCode {
     VIDEO_NOT_FOUND(1001, "视频文件不存在"),
     VIDEO_ANALYSIS_FAILED(1002, "视频分析失败"),
     NAS_CONNECTION_FAILED(1003, "NAS连接失败"),
-    AI_SERVICE_ERROR(1004, "AI服务错误");
+    AI_SERVICE_ERROR(1004, "AI服务错误"),
+    SERVICE_BUSY(1005, "系统繁忙，请稍后重试");
     
     private final Integer code;
     private final String message;
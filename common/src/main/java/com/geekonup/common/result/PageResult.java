@@ -0,0 +1,29 @@
+package com.geekonup.common.result;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 分页结果
+ */
+@Data
+public class PageResult<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long total;
+    private Integer page;
+    private Integer size;
+    private List<T> records;
+
+    public PageResult() {
+    }
+
+    public PageResult(Long total, Integer page, Integer size, List<T> records) {
+        this.total = total;
+        this.page = page;
+        this.size = size;
+        this.records = records;
+    }
+}
@@ -2,10 +2,8 @@ package com.geekonup.service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
-@EnableAsync
 public class ServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,23 @@
+package com.geekonup.service.ai;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * 模型接口返回非 200 状态码
+ * 携带状态码和 Retry-After（毫秒，没有时为 -1），供限流重试层判断是否可以重试
+ */
+@Getter
+public class AiCallException extends IOException {
+
+    private final int statusCode;
+
+    private final long retryAfterMillis;
+
+    public AiCallException(int statusCode, long retryAfterMillis, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
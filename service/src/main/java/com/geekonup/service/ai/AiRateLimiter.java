@@ -0,0 +1,471 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import com.openai.errors.OpenAIServiceException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 模型调用限流与重试
+ * <p>
+ * 模型接口按每分钟请求数（RPM）和每分钟 token 数（TPM）限流，突发请求超限后直接失败，
+ * 已完成的压缩也随之作废。这里在客户端先行限流：
+ * - 请求数和预估 token 数各用一个令牌桶，调用前从两个桶中扣除
+ * - 速率按 AIMD 调整：收到 429 时减半，之后每次成功调用线性恢复，直到配置的上限
+ * - 响应头中的剩余额度为 0 或带有 Retry-After 时，在指定时间内暂停发放
+ * - 429、5xx 和网络错误按带随机抖动的指数退避重试
+ * 等待的调用按优先级排队（数值小的优先，相同时先到先得），只有队首等待令牌，其余线程挂起，不会轮询。
+ */
+@Slf4j
+@Component
+public class AiRateLimiter implements MetricsSource {
+
+    // 形如 "6m0s"、"1.5s"、"200ms" 的时长
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    @Value("${ai.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    // 每分钟请求数上限
+    @Value("${ai.rate-limit.requests-per-minute:60}")
+    private int requestsPerMinute;
+
+    // 每分钟 token 数上限（按预估值扣除）
+    @Value("${ai.rate-limit.tokens-per-minute:1000000}")
+    private long tokensPerMinute;
+
+    // 429 后速率最低降到上限的比例
+    @Value("${ai.rate-limit.min-rate-fraction:0.1}")
+    private double minRateFraction;
+
+    // 每次成功调用恢复的速率比例
+    @Value("${ai.rate-limit.recovery-step:0.05}")
+    private double recoveryStep;
+
+    // 单次调用的最大重试次数
+    @Value("${ai.rate-limit.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${ai.rate-limit.base-backoff-millis:2000}")
+    private long baseBackoffMillis;
+
+    @Value("${ai.rate-limit.max-backoff-millis:60000}")
+    private long maxBackoffMillis;
+
+    // token 预估：每次调用的固定部分（prompt 和输出）、每秒视频、每张图片
+    @Value("${ai.rate-limit.base-tokens:3000}")
+    private long baseTokens;
+
+    @Value("${ai.rate-limit.tokens-per-video-second:300}")
+    private long tokensPerVideoSecond;
+
+    @Value("${ai.rate-limit.tokens-per-image:800}")
+    private long tokensPerImage;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    // 以下字段由 lock 保护
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+    private long sequence;
+
+    private double requestBucket;
+
+    private double tokenBucket;
+
+    private long lastRefillNanos;
+
+    // 当前速率占上限的比例（AIMD）
+    private double rateFraction = 1.0;
+
+    // 在此之前不发放令牌（Retry-After 或剩余额度为 0）
+    private long pausedUntilNanos;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        requestsPerMinute = Math.max(1, requestsPerMinute);
+        tokensPerMinute = Math.max(1, tokensPerMinute);
+        minRateFraction = Math.min(1, Math.max(0.01, minRateFraction));
+        requestBucket = requestsPerMinute;
+        tokenBucket = tokensPerMinute;
+        lastRefillNanos = System.nanoTime();
+        if (enabled) {
+            log.info("模型调用限流已启用: {} 次/分钟，{} token/分钟，最多重试 {} 次",
+                    requestsPerMinute, tokensPerMinute, maxRetries);
+        }
+    }
+
+    /**
+     * 限流执行一次模型调用，可重试的失败按退避时间重试（重试时保持原优先级重新排队）
+     *
+     * @param priority        优先级，数值小的先执行（使用任务创建时间，先到的任务及其片段优先）
+     * @param estimatedTokens 预估 token 数
+     * @param description     日志中的调用说明
+     * @param call            模型调用
+     * @return 调用结果
+     */
+    public <T> T execute(long priority, long estimatedTokens, String description, Callable<T> call) throws Exception {
+        return execute(priority, estimatedTokens, description, call, null);
+    }
+
+    /**
+     * 限流执行一次模型调用，每次实际发送（取得令牌后）和每次失败时通知 listener
+     *
+     * @param listener 发送与失败通知，可为空；排队和退避等待不在两次通知之间，调用方可据此只统计调用本身的耗时
+     */
+    public <T> T execute(long priority, long estimatedTokens, String description, Callable<T> call,
+                         AttemptListener listener) throws Exception {
+        if (!enabled) {
+            return attempt(call, listener);
+        }
+        for (int attempt = 0; ; attempt++) {
+            acquire(priority, estimatedTokens);
+            calls.incrementAndGet();
+            try {
+                T result = attempt(call, listener);
+                onSuccess();
+                return result;
+            } catch (Exception e) {
+                Failure failure = classify(e);
+                if (failure.throttled()) {
+                    onThrottled(failure.retryAfterMillis());
+                }
+                if (!failure.retryable() || attempt >= maxRetries) {
+                    if (failure.retryable()) {
+                        exhausted.incrementAndGet();
+                    }
+                    throw e;
+                }
+                long backoff = Math.max(backoffMillis(attempt), failure.retryAfterMillis());
+                retries.incrementAndGet();
+                log.warn("{}失败（{}），{} ms 后第 {} 次重试", description, failure.reason(), backoff, attempt + 1);
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    private static <T> T attempt(Callable<T> call, AttemptListener listener) throws Exception {
+        if (listener == null) {
+            return call.call();
+        }
+        listener.onSend();
+        try {
+            return call.call();
+        } catch (Exception e) {
+            listener.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * 视频调用的预估 token 数
+     */
+    public long estimateVideoTokens(double durationSeconds) {
+        return baseTokens + Math.round(Math.max(0, durationSeconds) * tokensPerVideoSecond);
+    }
+
+    /**
+     * 图片调用的预估 token 数
+     */
+    public long estimateImageTokens(int images) {
+        return baseTokens + (long) Math.max(0, images) * tokensPerImage;
+    }
+
+    /**
+     * 文本调用的预估 token 数（中文约一字一个 token）
+     */
+    public long estimateTextTokens(int chars) {
+        return baseTokens + Math.max(0, chars);
+    }
+
+    /**
+     * 根据响应状态码和限流响应头调整发放（剩余额度为 0 时暂停到额度重置）
+     *
+     * @param statusCode 状态码
+     * @param header     响应头查找（名称不区分大小写）
+     */
+    public void onResponse(int statusCode, Function<String, Optional<String>> header) {
+        if (!enabled) {
+            return;
+        }
+        long pauseMillis = -1;
+        if (parseLong(header.apply("x-ratelimit-remaining-requests")) == 0) {
+            pauseMillis = parseDurationMillis(header.apply("x-ratelimit-reset-requests").orElse(null));
+        }
+        if (parseLong(header.apply("x-ratelimit-remaining-tokens")) == 0) {
+            pauseMillis = Math.max(pauseMillis, parseDurationMillis(header.apply("x-ratelimit-reset-tokens").orElse(null)));
+        }
+        if (statusCode == 429) {
+            pauseMillis = Math.max(pauseMillis, retryAfterMillis(header));
+        }
+        if (pauseMillis > 0) {
+            pause(pauseMillis);
+        }
+    }
+
+    private void acquire(long priority, long estimatedTokens) throws InterruptedException {
+        long waitStart = System.nanoTime();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(priority, sequence++);
+            waiters.add(waiter);
+            try {
+                while (true) {
+                    if (waiters.peek() != waiter) {
+                        changed.await();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    refill(now);
+                    // 预估值超过桶容量时按整桶扣除，否则永远拿不到
+                    double tokensNeeded = Math.min(estimatedTokens, tokensPerMinute * rateFraction);
+                    long waitNanos = Math.max(pausedUntilNanos - now,
+                            Math.max(deficitNanos(requestBucket, 1, requestsPerMinute),
+                                    deficitNanos(tokenBucket, tokensNeeded, tokensPerMinute)));
+                    if (waitNanos <= 0) {
+                        requestBucket -= 1;
+                        tokenBucket -= tokensNeeded;
+                        break;
+                    }
+                    changed.awaitNanos(waitNanos);
+                }
+            } finally {
+                waiters.remove(waiter);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        totalWaitMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart));
+    }
+
+    private void refill(long now) {
+        double minutes = (now - lastRefillNanos) / 60e9;
+        lastRefillNanos = now;
+        requestBucket = Math.min(requestsPerMinute * rateFraction, requestBucket + minutes * requestsPerMinute * rateFraction);
+        tokenBucket = Math.min(tokensPerMinute * rateFraction, tokenBucket + minutes * tokensPerMinute * rateFraction);
+    }
+
+    /**
+     * 桶中令牌补足到 needed 还需要的时间（纳秒）
+     */
+    private long deficitNanos(double bucket, double needed, long perMinute) {
+        if (bucket >= needed) {
+            return 0;
+        }
+        return (long) Math.ceil((needed - bucket) / (perMinute * rateFraction) * 60e9);
+    }
+
+    private void onSuccess() {
+        lock.lock();
+        try {
+            rateFraction = Math.min(1.0, rateFraction + recoveryStep);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onThrottled(long retryAfterMillis) {
+        throttled.incrementAndGet();
+        lock.lock();
+        try {
+            rateFraction = Math.max(minRateFraction, rateFraction / 2);
+            // 清空积攒的令牌，避免恢复后立即突发
+            requestBucket = Math.min(requestBucket, 0);
+            tokenBucket = Math.min(tokenBucket, 0);
+            log.warn("模型接口限流，调用速率降至上限的 {}%", Math.round(rateFraction * 100));
+        } finally {
+            lock.unlock();
+        }
+        if (retryAfterMillis > 0) {
+            pause(retryAfterMillis);
+        }
+    }
+
+    private void pause(long millis) {
+        lock.lock();
+        try {
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 带随机抖动的指数退避：在 [上限/2, 上限] 之间随机，上限为 base * 2^attempt
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    /**
+     * 判断失败是否由限流引起、是否可以重试（沿异常链查找）
+     */
+    static Failure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AiCallException callException) {
+                return failureOf(callException.getStatusCode(), callException.getRetryAfterMillis());
+            }
+            if (cause instanceof OpenAIServiceException serviceException) {
+                return failureOf(serviceException.statusCode(), retryAfterMillis(
+                        name -> serviceException.headers().values(name).stream().findFirst()));
+            }
+            if (cause instanceof InterruptedException) {
+                return new Failure(false, false, -1, "已中断");
+            }
+            // 读取本地文件失败不重试，其余 IO 异常视为网络错误（超时、连接重置、流中断）
+            if (cause instanceof FileSystemException || cause instanceof FileNotFoundException) {
+                return new Failure(false, false, -1, cause.getClass().getSimpleName());
+            }
+            if (cause instanceof IOException) {
+                return new Failure(false, true, -1, "网络错误: " + cause.getClass().getSimpleName());
+            }
+        }
+        return new Failure(false, false, -1, error.getClass().getSimpleName());
+    }
+
+    private static Failure failureOf(int statusCode, long retryAfterMillis) {
+        boolean throttledStatus = statusCode == 429;
+        boolean retryable = throttledStatus || statusCode == 408 || statusCode >= 500;
+        return new Failure(throttledStatus, retryable, retryAfterMillis, "状态码 " + statusCode);
+    }
+
+    static long retryAfterMillis(Function<String, Optional<String>> header) {
+        long millis = parseLong(header.apply("retry-after-ms"));
+        if (millis > 0) {
+            return millis;
+        }
+        long seconds = parseLong(header.apply("retry-after"));
+        return seconds > 0 ? seconds * 1000 : -1;
+    }
+
+    private static long parseLong(Optional<String> value) {
+        try {
+            return value.map(String::trim).map(text -> (long) Double.parseDouble(text)).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析额度重置时间：纯数字按秒，否则按 "1m30s"、"200ms" 形式
+     */
+    static long parseDurationMillis(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        String text = value.trim();
+        try {
+            return Math.round(Double.parseDouble(text) * 1000);
+        } catch (NumberFormatException ignored) {
+            // 按带单位的形式解析
+        }
+        Matcher matcher = DURATION_PART.matcher(text);
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+        }
+        return matched ? Math.round(millis) : -1;
+    }
+
+    @Override
+    public String metricsName() {
+        return "aiRateLimit";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        lock.lock();
+        try {
+            metrics.put("rateFraction", Math.round(rateFraction * 100) / 100.0);
+            metrics.put("waiting", waiters.size());
+            metrics.put("paused", pausedUntilNanos > System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+        metrics.put("calls", calls.get());
+        metrics.put("retries", retries.get());
+        metrics.put("throttled", throttled.get());
+        metrics.put("retriesExhausted", exhausted.get());
+        metrics.put("totalWaitMillis", totalWaitMillis.get());
+        return metrics;
+    }
+
+    /**
+     * 单次调用的发送与失败通知
+     */
+    public interface AttemptListener {
+
+        /**
+         * 取得令牌，即将发送调用
+         */
+        void onSend();
+
+        /**
+         * 本次调用失败（之后可能重试）
+         */
+        void onFailure();
+    }
+
+    /**
+     * 排队中的调用，按优先级、到达顺序排序
+     */
+    private record Waiter(long priority, long sequence) implements Comparable<Waiter> {
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = Long.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 失败分类
+     */
+    record Failure(boolean throttled, boolean retryable, long retryAfterMillis, String reason) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.StreamingMarkdownWriter;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阶段一流式输出指标：首个 token 耗时、输出速度、中断次数
+ */
+@Component
+public class AiStreamMetrics implements MetricsSource {
+
+    private final AtomicLong streams = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong interrupted = new AtomicLong();
+
+    private final AtomicLong totalTokens = new AtomicLong();
+
+    private final AtomicLong totalTtftMillis = new AtomicLong();
+
+    private final AtomicLong ttftSamples = new AtomicLong();
+
+    private volatile long lastTtftMillis = -1;
+
+    private volatile double lastTokensPerSecond;
+
+    /**
+     * 记录一次流式调用的结果
+     *
+     * @param writer    该次调用使用的写入器
+     * @param succeeded 是否完整接收
+     */
+    public void record(StreamingMarkdownWriter writer, boolean succeeded) {
+        streams.incrementAndGet();
+        if (succeeded) {
+            completed.incrementAndGet();
+        } else {
+            interrupted.incrementAndGet();
+        }
+        long ttft = writer.timeToFirstTokenMillis();
+        if (ttft >= 0) {
+            lastTtftMillis = ttft;
+            totalTtftMillis.addAndGet(ttft);
+            ttftSamples.incrementAndGet();
+            lastTokensPerSecond = writer.tokensPerSecond();
+        }
+        totalTokens.addAndGet(writer.tokens());
+    }
+
+    @Override
+    public String metricsName() {
+        return "aiStream";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long samples = ttftSamples.get();
+        metrics.put("streams", streams.get());
+        metrics.put("completed", completed.get());
+        metrics.put("interrupted", interrupted.get());
+        metrics.put("totalTokens", totalTokens.get());
+        metrics.put("lastTimeToFirstTokenMillis", lastTtftMillis);
+        metrics.put("avgTimeToFirstTokenMillis", samples == 0 ? 0 : totalTtftMillis.get() / samples);
+        metrics.put("lastTokensPerSecond", Math.round(lastTokensPerSecond * 10) / 10.0);
+        return metrics;
+    }
+}
@@ -0,0 +1,194 @@
+package com.geekonup.service.ai;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单个模型的熔断器
+ * <p>
+ * 按最近 windowSize 次调用统计失败率和 P95 耗时，样本数达到 minCalls 且任一项超过阈值时熔断（OPEN），
+ * 熔断期间不再向该模型发送请求；openMillis 后进入半开（HALF_OPEN），只放行一次试探调用，
+ * 试探成功且不慢时恢复（CLOSED），否则重新熔断。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int windowSize;
+
+    private final int minCalls;
+
+    private final double failureRateThreshold;
+
+    private final long slowCallMillis;
+
+    private final long openMillis;
+
+    // 以下字段由 this 保护
+
+    private final Deque<Outcome> window = new ArrayDeque<>();
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean trialInFlight;
+
+    private long opened;
+
+    public CircuitBreaker(String name, int windowSize, int minCalls, double failureRateThreshold,
+                          long slowCallMillis, long openMillis) {
+        this.name = name;
+        this.windowSize = Math.max(1, windowSize);
+        this.minCalls = Math.max(1, Math.min(minCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否允许发起一次调用；半开状态下只放行一次试探调用
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * 调用成功
+     *
+     * @param latencyMillis 耗时（毫秒）
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (latencyMillis < slowCallMillis) {
+                state = State.CLOSED;
+                window.clear();
+            } else {
+                open();
+            }
+            return;
+        }
+        record(new Outcome(true, latencyMillis));
+    }
+
+    /**
+     * 调用失败
+     *
+     * @param latencyMillis 耗时（毫秒）
+     */
+    public synchronized void onFailure(long latencyMillis) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            open();
+            return;
+        }
+        record(new Outcome(false, latencyMillis));
+    }
+
+    /**
+     * 放行后没有实际发出调用（例如在限流排队时被取消），不计入样本；半开状态下释放试探名额
+     */
+    public synchronized void onNotAttempted() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * 调用被放弃（对冲请求中落后的一方被取消），已耗时作为耗时样本（实际耗时只会更长）
+     *
+     * @param elapsedMillis 取消前已耗时（毫秒）
+     */
+    public synchronized void onAbandoned(long elapsedMillis) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (elapsedMillis >= slowCallMillis) {
+                open();
+            }
+            return;
+        }
+        record(new Outcome(true, elapsedMillis));
+    }
+
+    private void record(Outcome outcome) {
+        window.addLast(outcome);
+        while (window.size() > windowSize) {
+            window.removeFirst();
+        }
+        if (state == State.CLOSED && window.size() >= minCalls
+                && (failureRate() >= failureRateThreshold || p95Millis() >= slowCallMillis)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        opened++;
+        window.clear();
+    }
+
+    private double failureRate() {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        return window.stream().filter(outcome -> !outcome.success()).count() / (double) window.size();
+    }
+
+    private long p95Millis() {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        long[] latencies = window.stream().mapToLong(Outcome::latencyMillis).toArray();
+        Arrays.sort(latencies);
+        return latencies[(int) Math.ceil(latencies.length * 0.95) - 1];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", state.name());
+        snapshot.put("samples", window.size());
+        snapshot.put("failureRate", Math.round(failureRate() * 100) / 100.0);
+        snapshot.put("p95Millis", p95Millis());
+        snapshot.put("opened", opened);
+        return snapshot;
+    }
+
+    /**
+     * 一次调用的结果
+     */
+    private record Outcome(boolean success, long latencyMillis) {
+    }
+}
@@ -0,0 +1,379 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.dto.response.VideoAnalysisResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 从阶段一的 Markdown 报告中直接提取结构化字段（阶段二的本地快速路径）
+ * <p>
+ * 逐行解析：标题行（# 标题、**加粗标签**、"标签：值"）中含有字段关键词时开始该字段的段落，
+ * 遇到下一个 # 标题或分隔线时结束。只有能确定的字段才计入结果：
+ * <ul>
+ *     <li>剪辑结论、剪辑优先级、情感强度：标签后的值或段落中第一处出现可选值的行以可选值开头（后面不紧跟另一个值）或只含一个可选值，
+ *     多个分段报告给出的值一致</li>
+ *     <li>高光切片：段落中至少有一个"分:秒 - 分:秒"时间段，多个分段的时间段合并</li>
+ *     <li>内容标签：段落中出现的标签（判断/决策/方法/团队/日常/真实感）</li>
+ *     <li>文本字段：只出现一次且长度合理的段落</li>
+ * </ul>
+ * 标题本身的文字不参与取值，避免"剪辑结论（必剪/可剪/不剪）"这类带说明的标题被误判。
+ * 非线程安全，每份报告使用一个实例，内容可以分段传入。
+ */
+public class MarkdownFieldExtractor {
+
+    private static final Pattern HEADING = Pattern.compile("^#{1,6}\\s+(.*)$");
+
+    private static final Pattern RULE = Pattern.compile("^([-*_])\\s*(\\1\\s*){2,}$");
+
+    private static final Pattern BOLD_LABEL =
+            Pattern.compile("^(?:[-*+]\\s+|\\d+[.、)]\\s*)?\\*\\*(.+?)\\*\\*\\s*[:：]?\\s*(.*)$");
+
+    private static final Pattern PLAIN_LABEL =
+            Pattern.compile("^(?:[-*+]\\s+|\\d+[.、)]\\s*)?([^:：*]{2,20})[:：]\\s*(.*)$");
+
+    private static final Pattern NUMBERING =
+            Pattern.compile("^(?:\\d+(?:\\.\\d+)*|[一二三四五六七八九十]+)[.、)）]?\\s*");
+
+    private static final Pattern PARENTHESES = Pattern.compile("[（(][^）)]*[）)]");
+
+    // 取值行开头的列表符号、加粗和引号
+    private static final Pattern LEADING_MARKS = Pattern.compile("^(?:[-*+>]\\s+|\\d+[.、)]\\s*)?[\\s*\"“「【\\[]*");
+
+    private static final Pattern CONCLUSION = Pattern.compile("必剪|不剪|(?<!不)可剪");
+
+    private static final Pattern PRIORITY = Pattern.compile("(?i)(?<![A-Za-z0-9])P[0-2](?![0-9])");
+
+    private static final Pattern INTENSITY = Pattern.compile("(?i)(?<![A-Za-z0-9])L[0-4](?![0-9])");
+
+    // 时间点与 MarkdownMergeUtil 一致：分钟最多三位（分段报告合并后可超过 99 分钟），前面不能紧跟数字或冒号
+    private static final Pattern TIME_RANGE = Pattern.compile(
+            "(?<![\\d:])(\\d{1,3}(?::\\d{2}){1,2})(?!\\d)\\s*(?:-|–|—|~|～|至|到)\\s*"
+                    + "(?<![\\d:])(\\d{1,3}(?::\\d{2}){1,2})(?!\\d)");
+
+    private static final List<String> CONTENT_TAGS = List.of("判断", "决策", "方法", "团队", "日常", "真实感");
+
+    // 标签关键词 -> 字段，按顺序匹配（"剪辑结构建议"要先于"剪辑"相关的其他关键词）
+    private static final Map<String, String> ALIASES = new LinkedHashMap<>();
+
+    static {
+        ALIASES.put("剪辑结构", "editStructureSuggestion");
+        ALIASES.put("结构建议", "editStructureSuggestion");
+        ALIASES.put("剪辑建议", "editStructureSuggestion");
+        ALIASES.put("优先级", "editPriority");
+        ALIASES.put("剪辑结论", "editConclusion");
+        ALIASES.put("是否剪辑", "editConclusion");
+        ALIASES.put("高光", "highlightSlices");
+        ALIASES.put("情感强度", "emotionalIntensity");
+        ALIASES.put("情绪强度", "emotionalIntensity");
+        ALIASES.put("标签", "contentTags");
+        ALIASES.put("核心价值", "coreValue");
+        ALIASES.put("视频总结", "videoSummary");
+        ALIASES.put("视频概述", "videoSummary");
+        ALIASES.put("内容概述", "videoSummary");
+        ALIASES.put("内容总结", "videoSummary");
+        ALIASES.put("内容摘要", "videoSummary");
+    }
+
+    // 标签行（**标签** 或 标签：）中关键词所在部分的最大长度，更长的视为正文句子
+    private static final int MAX_LABEL_LENGTH = 12;
+
+    private static final int MIN_TEXT_LENGTH = 10;
+
+    private static final int MAX_TEXT_LENGTH = 800;
+
+    private final StringBuilder pending = new StringBuilder();
+
+    // 字段 -> 各次出现的段落内容（第一行为标签后的值）
+    private final Map<String, List<List<String>>> sections = new LinkedHashMap<>();
+
+    private String currentField;
+
+    private List<String> current;
+
+    private boolean inCodeBlock;
+
+    /**
+     * 传入一段报告内容（可以在任意位置切分）
+     */
+    public void feed(CharSequence chunk) {
+        if (chunk == null) {
+            return;
+        }
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (c == '\n') {
+                acceptLine(pending.toString());
+                pending.setLength(0);
+            } else if (c != '\r') {
+                pending.append(c);
+            }
+        }
+    }
+
+    /**
+     * 报告结束，返回提取结果
+     */
+    public Extraction finish() {
+        if (!pending.isEmpty()) {
+            acceptLine(pending.toString());
+            pending.setLength(0);
+        }
+        startSection(null, null);
+
+        VideoAnalysisResponse result = new VideoAnalysisResponse();
+        Set<String> confident = new LinkedHashSet<>();
+        for (Map.Entry<String, List<List<String>>> entry : sections.entrySet()) {
+            String field = entry.getKey();
+            String value = switch (field) {
+                case "editConclusion" -> choice(entry.getValue(), CONCLUSION);
+                case "editPriority" -> choice(entry.getValue(), PRIORITY);
+                case "emotionalIntensity" -> choice(entry.getValue(), INTENSITY);
+                case "highlightSlices" -> highlightSlices(entry.getValue());
+                case "contentTags" -> contentTags(entry.getValue());
+                default -> text(entry.getValue());
+            };
+            if (value != null) {
+                StructuredResultParser.set(result, field, value);
+                if (StructuredResultParser.get(result, field) != null) {
+                    confident.add(field);
+                }
+            }
+        }
+        // "不剪"时剪辑优先级可以为空
+        if ("不剪".equals(result.getEditConclusion())) {
+            confident.add("editPriority");
+        }
+        return new Extraction(result, confident);
+    }
+
+    private void acceptLine(String rawLine) {
+        String line = rawLine.trim();
+        if (line.startsWith("```")) {
+            inCodeBlock = !inCodeBlock;
+            return;
+        }
+        if (inCodeBlock) {
+            if (current != null) {
+                current.add(line);
+            }
+            return;
+        }
+        Matcher heading = HEADING.matcher(line);
+        if (heading.matches()) {
+            // 高光切片下按片段分的小标题（如 "### 0:25 - 0:43 开场"）仍属于高光切片
+            if ("highlightSlices".equals(currentField) && TIME_RANGE.matcher(line).find()) {
+                current.add(line);
+                return;
+            }
+            String[] parts = splitLabel(heading.group(1), "");
+            startSection(fieldOf(parts[0], Integer.MAX_VALUE), parts[1]);
+            return;
+        }
+        if (RULE.matcher(line).matches()) {
+            startSection(null, null);
+            return;
+        }
+        Matcher label = BOLD_LABEL.matcher(line);
+        if (!label.matches()) {
+            label = PLAIN_LABEL.matcher(line);
+        }
+        if (label.matches()) {
+            String[] parts = splitLabel(label.group(1), label.group(2));
+            String field = fieldOf(parts[0], MAX_LABEL_LENGTH);
+            if (field != null) {
+                startSection(field, parts[1]);
+                return;
+            }
+        }
+        if (current != null) {
+            current.add(line);
+        }
+    }
+
+    /**
+     * 开始一个字段的段落，field 为空时表示进入无关段落
+     */
+    private void startSection(String field, String inlineValue) {
+        currentField = field;
+        if (field == null) {
+            current = null;
+            return;
+        }
+        current = new ArrayList<>();
+        current.add(inlineValue);
+        sections.computeIfAbsent(field, key -> new ArrayList<>()).add(current);
+    }
+
+    /**
+     * 拆分"标签：值"，返回 [标签, 值]
+     */
+    private static String[] splitLabel(String label, String rest) {
+        String text = label.replace("*", "").trim();
+        int colon = indexOfColon(text);
+        if (colon >= 0) {
+            String inline = text.substring(colon + 1).trim();
+            return new String[]{text.substring(0, colon), rest.isBlank() ? inline : inline + " " + rest};
+        }
+        return new String[]{text, rest};
+    }
+
+    /**
+     * 第一个冒号的位置，时间中的冒号（两侧都是数字）不算
+     */
+    private static int indexOfColon(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '：') {
+                return i;
+            }
+            boolean inTime = i > 0 && i + 1 < text.length()
+                    && Character.isDigit(text.charAt(i - 1)) && Character.isDigit(text.charAt(i + 1));
+            if (c == ':' && !inTime) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 标签对应的字段，没有对应字段时返回 null
+     */
+    private static String fieldOf(String label, int maxLength) {
+        String normalized = PARENTHESES.matcher(NUMBERING.matcher(label.trim()).replaceFirst(""))
+                .replaceAll("")
+                .replaceAll("[\\s`#>\\[\\]【】]", "");
+        if (normalized.isEmpty() || normalized.length() > maxLength) {
+            return null;
+        }
+        for (Map.Entry<String, String> alias : ALIASES.entrySet()) {
+            if (normalized.contains(alias.getKey())) {
+                return alias.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取值受限的字段：每次出现取第一处含可选值的行，该行以可选值开头时取开头的值（"L1 或 L2" 这类并列写法除外），
+     * 否则该行只能有一个可选值；没有取值的出现（如只有标题）忽略，其余各次出现的值必须一致
+     */
+    private static String choice(List<List<String>> occurrences, Pattern pattern) {
+        String chosen = null;
+        for (List<String> section : occurrences) {
+            String value = null;
+            for (String line : section) {
+                String stripped = LEADING_MARKS.matcher(line).replaceFirst("");
+                Matcher matcher = pattern.matcher(stripped);
+                if (!matcher.find()) {
+                    continue;
+                }
+                value = matcher.group().toUpperCase(Locale.ROOT);
+                boolean leading = matcher.start() == 0;
+                int end = matcher.end();
+                while (matcher.find()) {
+                    boolean other = !value.equals(matcher.group().toUpperCase(Locale.ROOT));
+                    // 开头的值后面紧跟另一个值（如 "L1 或 L2"、"P0/P1"）同样无法确定
+                    boolean adjacent = stripped.substring(end, matcher.start()).replace("*", "").trim().length() <= 2;
+                    if (other && (!leading || adjacent)) {
+                        return null;
+                    }
+                    end = matcher.end();
+                }
+                break;
+            }
+            if (value == null) {
+                continue;
+            }
+            if (chosen != null && !chosen.equals(value)) {
+                return null;
+            }
+            chosen = value;
+        }
+        return chosen;
+    }
+
+    /**
+     * 高光切片：所有出现中的时间段，格式化为 "0:25 - 0:43 / 1:45 - 2:08"
+     */
+    private static String highlightSlices(List<List<String>> occurrences) {
+        Set<String> slices = new LinkedHashSet<>();
+        for (List<String> section : occurrences) {
+            for (String line : section) {
+                Matcher matcher = TIME_RANGE.matcher(line);
+                while (matcher.find()) {
+                    slices.add(matcher.group(1) + " - " + matcher.group(2));
+                }
+            }
+        }
+        return slices.isEmpty() ? null : String.join(" / ", slices);
+    }
+
+    /**
+     * 内容标签：按固定顺序列出段落中出现的标签
+     */
+    private static String contentTags(List<List<String>> occurrences) {
+        StringBuilder all = new StringBuilder();
+        occurrences.forEach(section -> section.forEach(line -> all.append(line).append('\n')));
+        List<String> tags = new ArrayList<>();
+        for (String tag : CONTENT_TAGS) {
+            if (all.indexOf(tag) >= 0) {
+                tags.add(tag);
+            }
+        }
+        return tags.isEmpty() ? null : String.join("/", tags);
+    }
+
+    /**
+     * 文本字段：只出现一次，去掉列表符号和加粗标记后长度在合理范围内
+     */
+    private static String text(List<List<String>> occurrences) {
+        if (occurrences.size() != 1) {
+            return null;
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String line : occurrences.get(0)) {
+            String part = line.replaceFirst("^(?:[-*+>]\\s+|\\d+[.、)]\\s*)", "")
+                    .replace("**", "")
+                    .replace("`", "")
+                    .trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            // 中文之间换行直接相连，其余情况用空格分隔
+            if (!joined.isEmpty() && !(isCjk(joined.charAt(joined.length() - 1)) && isCjk(part.charAt(0)))) {
+                joined.append(' ');
+            }
+            joined.append(part);
+        }
+        String text = joined.toString();
+        return text.length() >= MIN_TEXT_LENGTH && text.length() <= MAX_TEXT_LENGTH ? text : null;
+    }
+
+    private static boolean isCjk(char c) {
+        return c >= '\u2E80';
+    }
+
+    /**
+     * 提取结果
+     *
+     * @param result          提取到的字段（未确定的字段为空）
+     * @param confidentFields 已确定的字段
+     */
+    public record Extraction(VideoAnalysisResponse result, Set<String> confidentFields) {
+
+        /**
+         * 未能确定、需要交给模型的字段（按 StructuredResultParser.FIELDS 的顺序）
+         */
+        public List<String> missingFields() {
+            return StructuredResultParser.FIELDS.stream().filter(field -> !confidentFields.contains(field)).toList();
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阶段一模型路由：按模型列表故障转移，可选对冲请求
+ * <p>
+ * 模型按配置顺序尝试，每个模型有独立的熔断器（失败率、P95 耗时），熔断中的模型直接跳过；
+ * 当前模型调用失败时自动换下一个模型。所有模型都熔断时仍调用第一个模型，而不是直接失败。
+ * 熔断器按每次实际发出的请求记录样本（包括限流层的每次重试），限流排队和重试退避的等待时间不计入耗时。
+ * <p>
+ * 启用对冲后，请求发出后超过 hedge-after-seconds 仍未返回时，同时向下一个可用模型发起相同请求，
+ * 先成功返回的结果生效，另一方被取消（已耗时计入其熔断器的耗时样本）。
+ */
+@Slf4j
+@Component
+public class ModelRouter implements MetricsSource {
+
+    @Value("${ai.step1-model:qwen-vl-max}")
+    private String step1Model;
+
+    // 阶段一模型列表（按优先顺序，逗号分隔），为空时只使用 step1-model
+    @Value("${ai.model-chain.models:}")
+    private String models;
+
+    @Value("${ai.model-chain.window-size:20}")
+    private int windowSize;
+
+    @Value("${ai.model-chain.min-calls:5}")
+    private int minCalls;
+
+    @Value("${ai.model-chain.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${ai.model-chain.slow-call-seconds:300}")
+    private long slowCallSeconds;
+
+    @Value("${ai.model-chain.open-seconds:60}")
+    private long openSeconds;
+
+    // 对冲等待时间（秒），0 表示不对冲
+    @Value("${ai.model-chain.hedge-after-seconds:0}")
+    private long hedgeAfterSeconds;
+
+    private final Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+
+    private final Map<String, AtomicLong> served = new LinkedHashMap<>();
+
+    private final AtomicLong failovers = new AtomicLong();
+
+    private final AtomicLong hedged = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final AtomicLong forced = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Set<String> chain = new LinkedHashSet<>();
+        for (String model : models.split(",")) {
+            if (!model.isBlank()) {
+                chain.add(model.trim());
+            }
+        }
+        if (chain.isEmpty()) {
+            chain.add(step1Model);
+        }
+        for (String model : chain) {
+            breakers.put(model, new CircuitBreaker(model, windowSize, minCalls, failureRateThreshold,
+                    TimeUnit.SECONDS.toMillis(slowCallSeconds), TimeUnit.SECONDS.toMillis(openSeconds)));
+            served.put(model, new AtomicLong());
+        }
+        if (chain.size() > 1 || hedgeAfterSeconds > 0) {
+            log.info("阶段一模型列表: {}，对冲等待 {} 秒（0 为不对冲）", chain, hedgeAfterSeconds);
+        }
+    }
+
+    /**
+     * 阶段一的首选模型（结果缓存 key 使用）
+     */
+    public String primaryModel() {
+        return breakers.keySet().iterator().next();
+    }
+
+    /**
+     * 按模型列表执行一次调用
+     *
+     * @param description 日志中的调用说明
+     * @param call        模型调用，attempt 为 0 表示主请求，1 表示对冲请求（两者同时进行，输出不能写同一位置）；
+     *                    每次实际发出请求前后通过 listener 通知，用于熔断器耗时统计和对冲计时
+     * @return 调用结果及实际使用的模型
+     */
+    public <T> Served<T> execute(String description, ModelCall<T> call) throws Exception {
+        Deque<String> remaining = new ArrayDeque<>(breakers.keySet());
+        Exception lastError = null;
+        while (true) {
+            String model = nextAvailable(remaining);
+            if (model == null) {
+                if (lastError != null) {
+                    throw lastError;
+                }
+                // 所有模型都在熔断中：仍调用首选模型
+                model = primaryModel();
+                forced.incrementAndGet();
+                log.warn("{}: 所有模型均已熔断，仍使用 {}", description, model);
+            }
+            try {
+                Served<T> result = hedgeAfterSeconds > 0
+                        ? runHedged(description, model, remaining, call)
+                        : new Served<>(runOnce(model, 0, call, null), model, 0);
+                served.get(result.model()).incrementAndGet();
+                return result;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                lastError = e;
+                if (!remaining.isEmpty()) {
+                    failovers.incrementAndGet();
+                    log.warn("{}: 模型 {} 调用失败，切换到下一个模型: {}", description, model, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出下一个熔断器放行的模型，没有时返回 null
+     */
+    private String nextAvailable(Deque<String> remaining) {
+        while (!remaining.isEmpty()) {
+            String model = remaining.pollFirst();
+            if (breakers.get(model).tryAcquire()) {
+                return model;
+            }
+        }
+        return null;
+    }
+
+    private <T> Served<T> runHedged(String description, String model, Deque<String> remaining, ModelCall<T> call)
+            throws Exception {
+        LinkedBlockingQueue<Attempt<T>> completed = new LinkedBlockingQueue<>();
+        List<Attempt<T>> attempts = new ArrayList<>();
+        // 不等待落后的一方结束（取消后可能仍在读取响应），因此不使用 try-with-resources 关闭
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Attempt<T> primary = submit(executor, model, 0, call, completed);
+            attempts.add(primary);
+            // 对冲等待从请求实际发出开始计算，不包含限流排队时间（主请求未发出就结束时立即返回）
+            primary.sent().get();
+            long waitMillis = TimeUnit.SECONDS.toMillis(hedgeAfterSeconds)
+                    - (System.currentTimeMillis() - primary.sentAtMillis());
+            Attempt<T> first = completed.poll(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                String hedgeModel = nextAvailable(remaining);
+                if (hedgeModel != null) {
+                    hedged.incrementAndGet();
+                    log.info("{}: 模型 {} 超过 {} 秒未返回，同时请求 {}", description, model, hedgeAfterSeconds, hedgeModel);
+                    attempts.add(submit(executor, hedgeModel, 1, call, completed));
+                }
+                first = completed.take();
+            }
+            Exception error = null;
+            for (int received = 1; ; received++) {
+                try {
+                    T result = first.future().get();
+                    if (first.attempt() > 0) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return new Served<>(result, first.model(), first.attempt());
+                } catch (ExecutionException e) {
+                    error = e.getCause() instanceof Exception cause ? cause : e;
+                }
+                if (received >= attempts.size()) {
+                    throw error;
+                }
+                first = completed.take();
+            }
+        } finally {
+            // 取消仍在进行的一方
+            for (Attempt<T> attempt : attempts) {
+                if (!attempt.future().isDone()) {
+                    attempt.abandon();
+                }
+            }
+            executor.shutdown();
+        }
+    }
+
+    private <T> Attempt<T> submit(ExecutorService executor, String model, int index, ModelCall<T> call,
+                                  LinkedBlockingQueue<Attempt<T>> completed) {
+        Attempt<T> attempt = new Attempt<>(model, index);
+        // 先创建任务再提交，保证完成通知到达时 future 已经可用
+        FutureTask<T> task = new FutureTask<>(() -> {
+            try {
+                return runOnce(model, index, call, attempt);
+            } finally {
+                completed.add(attempt);
+                attempt.sent().complete(null);
+            }
+        });
+        attempt.setFuture(task);
+        executor.execute(task);
+        return attempt;
+    }
+
+    /**
+     * 调用一个模型并记录到其熔断器
+     */
+    private <T> T runOnce(String model, int attemptIndex, ModelCall<T> call, Attempt<T> attempt) throws Exception {
+        AttemptTimer timer = new AttemptTimer(breakers.get(model), attempt);
+        try {
+            T result = call.call(model, attemptIndex, timer);
+            timer.succeeded();
+            return result;
+        } catch (Exception e) {
+            timer.failed(attempt != null && attempt.isAbandoned());
+            throw e;
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "aiModels";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<String, Object> perModel = new LinkedHashMap<>();
+        breakers.forEach((model, breaker) -> {
+            Map<String, Object> snapshot = breaker.snapshot();
+            snapshot.put("served", served.get(model).get());
+            perModel.put(model, snapshot);
+        });
+        metrics.put("models", perModel);
+        metrics.put("failovers", failovers.get());
+        metrics.put("hedged", hedged.get());
+        metrics.put("hedgeWins", hedgeWins.get());
+        metrics.put("allOpenForced", forced.get());
+        return metrics;
+    }
+
+    /**
+     * 模型调用
+     */
+    @FunctionalInterface
+    public interface ModelCall<T> {
+
+        /**
+         * @param listener 每次实际发出请求前调用 onSend，请求失败时调用 onFailure（交给限流层的 execute 即可）
+         */
+        T call(String model, int attempt, AiRateLimiter.AttemptListener listener) throws Exception;
+    }
+
+    /**
+     * 一次模型调用中各次请求的计时：每次请求从发出开始计时，失败的请求各记一个样本，
+     * 最后一次请求的结果决定成功或失败；没有发出任何请求时不记录样本
+     */
+    private static final class AttemptTimer implements AiRateLimiter.AttemptListener {
+
+        private final CircuitBreaker breaker;
+
+        private final Attempt<?> attempt;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        // 进行中的请求的发出时间，没有进行中的请求时为 -1
+        private long sentAt = -1;
+
+        private boolean everSent;
+
+        private AttemptTimer(CircuitBreaker breaker, Attempt<?> attempt) {
+            this.breaker = breaker;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void onSend() {
+            sentAt = System.currentTimeMillis();
+            everSent = true;
+            if (attempt != null) {
+                attempt.markSent(sentAt);
+            }
+        }
+
+        @Override
+        public void onFailure() {
+            if (sentAt >= 0) {
+                breaker.onFailure(System.currentTimeMillis() - sentAt);
+                sentAt = -1;
+            }
+        }
+
+        void succeeded() {
+            // 调用方没有通知发送时按整个调用计时
+            long start = everSent ? sentAt : createdAt;
+            breaker.onSuccess(System.currentTimeMillis() - start);
+        }
+
+        void failed(boolean abandoned) {
+            if (sentAt >= 0) {
+                long elapsed = System.currentTimeMillis() - sentAt;
+                if (abandoned) {
+                    breaker.onAbandoned(elapsed);
+                } else {
+                    breaker.onFailure(elapsed);
+                }
+            } else if (!everSent) {
+                breaker.onNotAttempted();
+            }
+        }
+    }
+
+    /**
+     * 调用结果及实际使用的模型
+     *
+     * @param attempt 0 为主请求，1 为对冲请求
+     */
+    public record Served<T>(T result, String model, int attempt) {
+    }
+
+    /**
+     * 对冲中的一次请求
+     */
+    private static final class Attempt<T> {
+
+        private final String model;
+
+        private final int attempt;
+
+        private volatile Future<T> future;
+
+        private volatile boolean abandoned;
+
+        // 首次发出请求时完成（没有发出就结束时同样完成）
+        private final CompletableFuture<Void> sent = new CompletableFuture<>();
+
+        private volatile long sentAtMillis;
+
+        private Attempt(String model, int attempt) {
+            this.model = model;
+            this.attempt = attempt;
+        }
+
+        String model() {
+            return model;
+        }
+
+        int attempt() {
+            return attempt;
+        }
+
+        Future<T> future() {
+            return future;
+        }
+
+        void setFuture(Future<T> future) {
+            this.future = future;
+        }
+
+        CompletableFuture<Void> sent() {
+            return sent;
+        }
+
+        long sentAtMillis() {
+            return sentAtMillis > 0 ? sentAtMillis : System.currentTimeMillis();
+        }
+
+        void markSent(long millis) {
+            if (!sent.isDone()) {
+                sentAtMillis = millis;
+                sent.complete(null);
+            }
+        }
+
+        boolean isAbandoned() {
+            return abandoned;
+        }
+
+        void abandon() {
+            abandoned = true;
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 结构化阶段的本地快速路径：先从 Markdown 报告中提取字段，全部确定时不再调用阶段二模型，
+ * 部分确定时只让模型补齐其余字段。指标中 fastPathRate 为完全跳过模型调用的报告占比。
+ */
+@Component
+public class StructureFastPath implements MetricsSource {
+
+    @Getter
+    @Value("${pipeline.structure.local-extraction:true}")
+    private boolean enabled;
+
+    private final AtomicLong reports = new AtomicLong();
+
+    private final AtomicLong fullyLocal = new AtomicLong();
+
+    private final AtomicLong partiallyLocal = new AtomicLong();
+
+    private final AtomicLong noneLocal = new AtomicLong();
+
+    private final Map<String, AtomicLong> extracted = new LinkedHashMap<>();
+
+    public StructureFastPath() {
+        StructuredResultParser.FIELDS.forEach(field -> extracted.put(field, new AtomicLong()));
+    }
+
+    /**
+     * 从报告中提取结构化字段并记录命中情况
+     */
+    public MarkdownFieldExtractor.Extraction extract(String markdownReport) {
+        MarkdownFieldExtractor extractor = new MarkdownFieldExtractor();
+        extractor.feed(markdownReport);
+        MarkdownFieldExtractor.Extraction extraction = extractor.finish();
+
+        List<String> missing = extraction.missingFields();
+        reports.incrementAndGet();
+        if (missing.isEmpty()) {
+            fullyLocal.incrementAndGet();
+        } else if (missing.size() < StructuredResultParser.FIELDS.size()) {
+            partiallyLocal.incrementAndGet();
+        } else {
+            noneLocal.incrementAndGet();
+        }
+        extraction.confidentFields().forEach(field -> extracted.get(field).incrementAndGet());
+        return extraction;
+    }
+
+    @Override
+    public String metricsName() {
+        return "structureFastPath";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long total = reports.get();
+        metrics.put("enabled", enabled);
+        metrics.put("reports", total);
+        metrics.put("fullyLocal", fullyLocal.get());
+        metrics.put("partiallyLocal", partiallyLocal.get());
+        metrics.put("noneLocal", noneLocal.get());
+        metrics.put("fastPathRate", total == 0 ? 0 : Math.round(fullyLocal.get() * 1000.0 / total) / 1000.0);
+        Map<String, Object> fields = new LinkedHashMap<>();
+        extracted.forEach((field, count) -> fields.put(field, count.get()));
+        metrics.put("extractedFields", fields);
+        return metrics;
+    }
+}
@@ -0,0 +1,159 @@
+package com.geekonup.service.ai;
+
+import cn.hutool.json.JSONException;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.dto.response.VideoAnalysisResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 阶段二结构化结果解析与校验
+ * <p>
+ * 模型输出可能带有 ```json 代码块或前后说明文字，这里截取第一个 { 到最后一个 } 之间的内容解析，
+ * 字段名与 VideoAnalysisResponse 一致。取值受限的字段（剪辑结论、剪辑优先级、情感强度）必须在可选值内，
+ * 否则视为无效输出；文本字段中的换行替换为空格。
+ */
+public final class StructuredResultParser {
+
+    // 结构化字段（与 VideoAnalysisResponse 的属性名、阶段二 JSON 的字段名一致）
+    public static final List<String> FIELDS = List.of("editConclusion", "editPriority", "videoSummary", "contentTags",
+            "coreValue", "editStructureSuggestion", "highlightSlices", "emotionalIntensity");
+
+    public static final Set<String> EDIT_CONCLUSIONS = Set.of("必剪", "可剪", "不剪");
+
+    public static final Set<String> EDIT_PRIORITIES = Set.of("P0", "P1", "P2");
+
+    public static final Set<String> EMOTIONAL_INTENSITIES = Set.of("L0", "L1", "L2", "L3", "L4");
+
+    private StructuredResultParser() {
+    }
+
+    /**
+     * 解析模型输出中的指定字段（不校验），取值不在可选范围内的字段为空
+     *
+     * @param content 模型返回的内容
+     * @param fields  需要读取的字段（FIELDS 中的名称）
+     * @throws IllegalArgumentException 不是有效 JSON
+     */
+    public static VideoAnalysisResponse read(String content, Collection<String> fields) {
+        if (content == null) {
+            throw new IllegalArgumentException("模型返回内容为空");
+        }
+        int start = content.indexOf('{');
+        int end = content.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            throw new IllegalArgumentException("模型返回内容中没有 JSON 对象");
+        }
+        JSONObject json;
+        try {
+            json = JSONUtil.parseObj(content.substring(start, end + 1));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("模型返回的 JSON 无法解析: " + e.getMessage(), e);
+        }
+        VideoAnalysisResponse result = new VideoAnalysisResponse();
+        for (String field : fields) {
+            set(result, field, json.getStr(field));
+        }
+        return result;
+    }
+
+    /**
+     * 校验取值受限的字段，返回无效的字段名（"不剪"时剪辑优先级可以为空）
+     */
+    public static List<String> invalidFields(VideoAnalysisResponse result) {
+        List<String> invalid = new ArrayList<>();
+        if (result.getEditConclusion() == null) {
+            invalid.add("editConclusion");
+        }
+        if (result.getEditPriority() == null && !"不剪".equals(result.getEditConclusion())) {
+            invalid.add("editPriority");
+        }
+        if (result.getEmotionalIntensity() == null) {
+            invalid.add("emotionalIntensity");
+        }
+        return invalid;
+    }
+
+    /**
+     * 读取字段值
+     */
+    public static String get(VideoAnalysisResponse result, String field) {
+        return switch (field) {
+            case "editConclusion" -> result.getEditConclusion();
+            case "editPriority" -> result.getEditPriority();
+            case "videoSummary" -> result.getVideoSummary();
+            case "contentTags" -> result.getContentTags();
+            case "coreValue" -> result.getCoreValue();
+            case "editStructureSuggestion" -> result.getEditStructureSuggestion();
+            case "highlightSlices" -> result.getHighlightSlices();
+            case "emotionalIntensity" -> result.getEmotionalIntensity();
+            default -> throw new IllegalArgumentException("未知字段: " + field);
+        };
+    }
+
+    /**
+     * 按字段规则规范化后写入字段值（取值受限的字段不在可选范围内时写入 null）
+     */
+    public static void set(VideoAnalysisResponse result, String field, String value) {
+        switch (field) {
+            case "editConclusion" -> result.setEditConclusion(normalizeConclusion(value));
+            case "editPriority" -> result.setEditPriority(normalizePriority(value));
+            case "videoSummary" -> result.setVideoSummary(text(value));
+            case "contentTags" -> result.setContentTags(text(value));
+            case "coreValue" -> result.setCoreValue(text(value));
+            case "editStructureSuggestion" -> result.setEditStructureSuggestion(text(value));
+            case "highlightSlices" -> result.setHighlightSlices(text(value));
+            case "emotionalIntensity" -> result.setEmotionalIntensity(normalizeIntensity(value));
+            default -> throw new IllegalArgumentException("未知字段: " + field);
+        }
+    }
+
+    /**
+     * 剪辑结论，不在可选值内时返回 null
+     */
+    public static String normalizeConclusion(String value) {
+        String text = text(value);
+        return text != null && EDIT_CONCLUSIONS.contains(text) ? text : null;
+    }
+
+    /**
+     * 剪辑优先级（不区分大小写），不在可选值内时返回 null
+     */
+    public static String normalizePriority(String value) {
+        String text = text(value);
+        if (text == null) {
+            return null;
+        }
+        String priority = text.toUpperCase(Locale.ROOT);
+        return EDIT_PRIORITIES.contains(priority) ? priority : null;
+    }
+
+    /**
+     * 情感强度，接受 "L3" 或 "L3-感动/共鸣" 这类带说明的写法，不在可选值内时返回 null
+     */
+    public static String normalizeIntensity(String value) {
+        String text = text(value);
+        if (text == null || text.length() < 2) {
+            return null;
+        }
+        String level = text.substring(0, 2).toUpperCase(Locale.ROOT);
+        boolean separated = text.length() == 2 || !Character.isDigit(text.charAt(2));
+        return separated && EMOTIONAL_INTENSITIES.contains(level) ? level : null;
+    }
+
+    /**
+     * 去掉首尾空白并把换行替换为空格，空字符串返回 null
+     */
+    public static String text(String value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.replaceAll("\\s*\\R\\s*", " ").trim();
+        return text.isEmpty() ? null : text;
+    }
+}
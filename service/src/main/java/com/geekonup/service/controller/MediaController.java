@@ -0,0 +1,136 @@
+package com.geekonup.service.controller;
+
+import com.geekonup.service.media.MediaServer;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 媒体下载接口（供模型按签名 URL 拉取代理文件）
+ * 支持单段 Range 请求（多段 Range 按整个文件返回）；运行在 Tomcat 上时交给 sendfile 零拷贝发送，
+ * 否则用 FileChannel.transferTo 分块写出，不把文件读入内存。GET 映射同时处理 HEAD 请求。
+ */
+@Slf4j
+@RestController
+@RequestMapping("/media")
+@RequiredArgsConstructor
+public class MediaController {
+
+    // Tomcat sendfile 请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final MediaServer mediaServer;
+
+    @GetMapping("/{id}/{fileName}")
+    public void download(@PathVariable String id,
+                         @PathVariable String fileName,
+                         @RequestParam(defaultValue = "0") long expires,
+                         @RequestParam(required = false) String signature,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        File file = mediaServer.resolve(id, expires, signature);
+        if (file == null) {
+            log.warn("拒绝媒体下载请求（签名无效、已过期或文件不存在）: {}, 请求IP: {}", fileName, request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        boolean partial = false;
+        if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+            long[] bounds = parseRange(range.substring("bytes=".length()).trim(), length);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = bounds[0];
+            end = bounds[1];
+            partial = true;
+        }
+        long count = end - start + 1;
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(FfmpegUtil.videoMimeType(file.getName()));
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+        response.setContentLengthLong(count);
+        if (partial) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        mediaServer.recordServed(count, partial);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由 Tomcat 在请求处理结束后用 sendfile 发送（结束位置不包含在内）
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    /**
+     * 解析单段 Range（"start-end"、"start-"、"-suffixLength"）
+     *
+     * @return [起始, 结束]（都包含在内），无法满足时返回 null
+     */
+    private static long[] parseRange(String spec, long length) {
+        int dashIndex = spec.indexOf('-');
+        if (dashIndex < 0 || length == 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dashIndex).trim();
+            String last = spec.substring(dashIndex + 1).trim();
+            if (first.isEmpty()) {
+                long suffixLength = Long.parseLong(last);
+                return suffixLength <= 0 ? null : new long[]{Math.max(0, length - suffixLength), length - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            return start < 0 || start >= length || end < start ? null : new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.geekonup.service.controller;
 
+import com.geekonup.common.exception.ErrorCode;
+import com.geekonup.common.result.PageResult;
+import com.geekonup.common.result.Result;
+import com.geekonup.service.dto.response.AnalysisJobResponse;
 import com.geekonup.service.dto.response.VideoAnalysisResponse;
 import com.geekonup.service.service.FeishuVideoAnalysisService;
 import com.geekonup.service.dto.request.VideoAnalyzeRequest;
@@ -10,9 +14,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Collections;
@@ -39,15 +46,72 @@ public class VideoAnalysisController {
         log.info("请求IP: {}", httpRequest.getRemoteAddr());
         log.info("请求体: videoName={}", request.videoName());
         // 简单校验
-        String tokenFromHeader = httpRequest.getHeader("X-Feishu-Token");
-        if (!StringUtils.hasText(tokenFromHeader) || !tokenFromHeader.equals(verifyToken)) {
-            log.warn("Token 校验失败: {}", tokenFromHeader);
+        if (!isAuthorized(httpRequest)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Collections.singletonMap("data", null));
         }
 
         VideoAnalysisResponse response = videoAnalysisService.handleAnalysis(request);
+        // 流水线已满时快速返回繁忙，由飞书自动化稍后重试
+        if (ErrorCode.SERVICE_BUSY.getCode().equals(response.getStatusCode().getCode())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonMap("data", response));
+        }
         return ResponseEntity.ok(Collections.singletonMap("data", response));
     }
+
+    /**
+     * 查询分析任务状态（当前阶段、排队位置、各阶段耗时、失败原因）
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Result<AnalysisJobResponse>> getJob(@PathVariable String jobId,
+                                                              HttpServletRequest httpRequest) {
+        if (!isAuthorized(httpRequest)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(Result.success(videoAnalysisService.getJob(jobId)));
+    }
+
+    /**
+     * 分页查询分析任务，最新接收的任务在前
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<Result<PageResult<AnalysisJobResponse>>> listJobs(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size,
+            HttpServletRequest httpRequest) {
+        if (!isAuthorized(httpRequest)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(Result.success(videoAnalysisService.listJobs(page, size)));
+    }
+
+    /**
+     * 运行指标：各阶段队列、缓存命中率等
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Result<Map<String, Object>>> metrics(HttpServletRequest httpRequest) {
+        if (!isAuthorized(httpRequest)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(Result.success(videoAnalysisService.getMetrics()));
+    }
+
+    /**
+     * 校验请求头中的 X-Feishu-Token
+     */
+    private boolean isAuthorized(HttpServletRequest httpRequest) {
+        String tokenFromHeader = httpRequest.getHeader("X-Feishu-Token");
+        if (!StringUtils.hasText(tokenFromHeader) || !tokenFromHeader.equals(verifyToken)) {
+            log.warn("Token 校验失败: {} {}", httpRequest.getRequestURI(), tokenFromHeader);
+            return false;
+        }
+        return true;
+    }
+
+    private static <T> ResponseEntity<Result<T>> unauthorized() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Result.error(ErrorCode.UNAUTHORIZED.getCode(), ErrorCode.UNAUTHORIZED.getMessage()));
+    }
 }
 
@@ -7,7 +7,13 @@ public record VideoAnalyzeRequest(
         /* 视频名称 */
         String videoName,
         /* 飞书多维表格记录ID（用于异步更新结果） */
-        String recordId
+        String recordId,
+        /* 分析模式（video/frames/auto），为空时使用 ai.analysis-mode 配置 */
+        String analysisMode
 ) {
+
+    public VideoAnalyzeRequest(String videoName, String recordId) {
+        this(videoName, recordId, null);
+    }
 }
 
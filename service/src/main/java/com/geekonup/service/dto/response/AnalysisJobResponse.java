@@ -0,0 +1,132 @@
+package com.geekonup.service.dto.response;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分析任务状态响应
+ */
+@Data
+public class AnalysisJobResponse {
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 视频名称
+     */
+    private String videoName;
+
+    /**
+     * 飞书多维表格记录ID
+     */
+    private String recordId;
+
+    /**
+     * 任务状态
+     * 可选值：QUEUED/RUNNING/ATTACHED/DONE/FAILED（ATTACHED 表示已合并到同一源视频正在处理的任务）
+     */
+    private String state;
+
+    /**
+     * 分析模式
+     * 可选值：video（完整视频）/frames（关键帧）
+     */
+    private String analysisMode;
+
+    /**
+     * 当前（或最后）所处阶段
+     * 可选值：LOOKUP/COMPRESS/AI/STRUCTURE/BITABLE
+     */
+    private String stage;
+
+    /**
+     * 阶段说明，例如：视频压缩（排队中）
+     */
+    private String stageDescription;
+
+    /**
+     * 在当前阶段队列中的位置，从 1 开始，未排队时为空
+     */
+    private Integer queuePosition;
+
+    /**
+     * 各阶段耗时（毫秒），key 为 lookup/compress/ai/structure/bitable
+     */
+    private Map<String, Long> stageDurations;
+
+    /**
+     * 压缩进度：pass/passes（第几遍/共几遍）、outTimeSeconds、percent、fps、speed、etaSeconds 等，
+     * 未进行编码时为空
+     */
+    private Map<String, Object> encodeProgress;
+
+    /**
+     * 源视频大小（字节）
+     */
+    private Long inputSize;
+
+    /**
+     * 压缩后视频大小（字节）
+     */
+    private Long outputSize;
+
+    /**
+     * 源视频时长（秒），用于估算任务耗时
+     */
+    private Double durationSeconds;
+
+    /**
+     * 按音频响度预选的高光候选片段（如 "0:25 - 0:40 / 1:45 - 2:00"）
+     */
+    private String highlightCandidates;
+
+    /**
+     * 源视频分辨率，例如：1920x1080
+     */
+    private String resolution;
+
+    /**
+     * 源视频编码，例如：h264/aac
+     */
+    private String codec;
+
+    /**
+     * 阶段一实际使用的模型（故障转移或对冲后可能不是首选模型），分段分析时可能有多个，以逗号分隔
+     */
+    private String model;
+
+    /**
+     * 是否命中分析结果缓存（命中时跳过压缩和 AI 分析）
+     */
+    private Boolean resultCacheHit;
+
+    /**
+     * 失败原因
+     */
+    private String failureReason;
+
+    /**
+     * 已合并到的同源任务ID（同一源视频已有任务在处理时）
+     */
+    private String coalescedInto;
+
+    /**
+     * 合并到本任务的同源任务ID
+     */
+    private List<String> followerJobIds;
+
+    /**
+     * 接收时间（毫秒时间戳）
+     */
+    private Long createdAt;
+
+    /**
+     * 结束时间（毫秒时间戳）
+     */
+    private Long finishedAt;
+}
@@ -13,6 +13,12 @@ public class VideoAnalysisResponse {
      */
     private StatusCode statusCode;
 
+    /**
+     * 分析任务ID
+     * 可通过 GET /video/jobs/{jobId} 查询处理进度
+     */
+    private String jobId;
+
     /**
      * 剪辑结论
      * 综合视频内容价值、剪辑可行性给出最终剪辑建议，用于快速筛选是否进入剪辑流程。
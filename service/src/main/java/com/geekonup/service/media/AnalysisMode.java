@@ -0,0 +1,41 @@
+package com.geekonup.service.media;
+
+import lombok.Getter;
+
+/**
+ * 发送给视觉模型的内容形式
+ */
+@Getter
+public enum AnalysisMode {
+
+    // 压缩后的完整视频
+    VIDEO("video", "完整视频"),
+    // 按画面变化抽取的关键帧图片（口播、录屏类视频足够分析，体积和耗时远小于完整视频）
+    FRAMES("frames", "关键帧"),
+    // 按源视频大小自动选择
+    AUTO("auto", "自动选择");
+
+    private final String value;
+
+    private final String description;
+
+    AnalysisMode(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    /**
+     * 解析配置值或请求参数，为空或无法识别时返回 null
+     */
+    public static AnalysisMode fromValue(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        for (AnalysisMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value) || mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
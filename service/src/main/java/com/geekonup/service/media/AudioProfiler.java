@@ -0,0 +1,302 @@
+package com.geekonup.service.media;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 音频响度分析（高光候选）
+ * <p>
+ * 用 FFmpeg 逐秒测量响度和能量，不调用模型，从中选出响度明显高于全片水平的片段作为高光候选，
+ * 既作为提示传给模型，也写回多维表格。
+ * 逐秒测量结果按源视频指纹保存在本地，重新分析（更换 prompt 或模型）时直接读取，不再解码；
+ * 候选片段每次由测量结果计算，调整窗口长度或数量后无需重新测量。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AudioProfiler implements MetricsSource {
+
+    // 测量结果文件格式版本，格式变化时旧文件自动失效
+    private static final int PROFILE_VERSION = 1;
+
+    // 视为有声的短时响度下限（LUFS），低于该值的秒不参与计算全片水平
+    private static final double AUDIBLE_LUFS = -50.0;
+
+    @Value("${ai.highlight-hints.enabled:true}")
+    private boolean enabled;
+
+    // 候选片段长度（秒）
+    @Value("${ai.highlight-hints.window-seconds:15}")
+    private int windowSeconds;
+
+    // 候选片段数量
+    @Value("${ai.highlight-hints.top-n:5}")
+    private int topN;
+
+    // 测量结果目录
+    @Value("${ai.highlight-hints.dir:./data/audio-profiles}")
+    private String profileDir;
+
+    @Value("${ffmpeg.path}")
+    private String ffmpegPath;
+
+    @Value("${ffmpeg.timeout:0}")
+    private int timeoutSeconds;
+
+    @Value("${ffmpeg.stall-timeout:120}")
+    private int stallTimeoutSeconds;
+
+    private final FfmpegGovernor governor;
+
+    private Path profileRoot;
+
+    private final AtomicLong measured = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile long lastMeasureMillis;
+
+    @PostConstruct
+    public void init() throws IOException {
+        profileRoot = Paths.get(profileDir).toAbsolutePath();
+        Files.createDirectories(profileRoot);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算高光候选，已有测量结果时直接读取，否则先测量
+     *
+     * @param videoFile         源视频
+     * @param sourceFingerprint 源视频指纹
+     * @param mediaInfo         源视频元数据，没有音频流时不测量
+     * @return 按时间排序的候选片段，未启用、没有音频或测量失败时返回空列表
+     */
+    public List<HighlightCandidate> highlights(File videoFile, String sourceFingerprint, MediaInfo mediaInfo) {
+        if (!enabled || mediaInfo == null || !mediaInfo.hasAudio()) {
+            return List.of();
+        }
+        List<FfmpegUtil.AudioLevel> levels = load(sourceFingerprint);
+        if (levels != null) {
+            reused.incrementAndGet();
+        } else {
+            levels = measure(videoFile, sourceFingerprint);
+        }
+        return levels == null ? List.of() : candidates(levels);
+    }
+
+    /**
+     * 只读取已有的测量结果计算高光候选（恢复的任务使用，不触发测量）
+     */
+    public List<HighlightCandidate> cachedHighlights(String sourceFingerprint) {
+        if (!enabled) {
+            return List.of();
+        }
+        List<FfmpegUtil.AudioLevel> levels = load(sourceFingerprint);
+        return levels == null ? List.of() : candidates(levels);
+    }
+
+    /**
+     * 候选片段格式化为 "0:25 - 0:40 / 1:45 - 2:00"（与高光切片的格式一致），没有候选时返回 null
+     */
+    public static String format(List<HighlightCandidate> candidates) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.stream().map(HighlightCandidate::timeRange).collect(Collectors.joining(" / "));
+    }
+
+    /**
+     * 从逐秒测量值中选出候选片段
+     * <p>
+     * 每秒得分 = 短时响度相对全片有声部分中位数的提升 + 能量突增（RMS 较上一秒的增量，如笑声、掌声）的一半，
+     * 按窗口平均得分从高到低贪心选取互不重叠的窗口，最后按时间排序。
+     */
+    List<HighlightCandidate> candidates(List<FfmpegUtil.AudioLevel> levels) {
+        int count = levels.size();
+        int window = Math.max(1, windowSeconds);
+        if (count < window) {
+            return List.of();
+        }
+        double[] audible = levels.stream()
+                .mapToDouble(FfmpegUtil.AudioLevel::shortTermLufs)
+                .filter(lufs -> lufs > AUDIBLE_LUFS)
+                .sorted()
+                .toArray();
+        if (audible.length == 0) {
+            return List.of();
+        }
+        double median = audible[audible.length / 2];
+
+        // 前缀和，便于计算任意窗口的平均值
+        double[] scoreSum = new double[count + 1];
+        double[] loudnessSum = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+            FfmpegUtil.AudioLevel level = levels.get(i);
+            double onset = i > 0 ? Math.max(0, level.rmsDb() - levels.get(i - 1).rmsDb()) : 0;
+            double score = level.shortTermLufs() - median + onset * 0.5;
+            scoreSum[i + 1] = scoreSum[i] + score;
+            loudnessSum[i + 1] = loudnessSum[i] + level.shortTermLufs();
+        }
+
+        Integer[] starts = new Integer[count - window + 1];
+        Arrays.setAll(starts, i -> i);
+        Arrays.sort(starts, Comparator.comparingDouble((Integer start) -> scoreSum[start + window] - scoreSum[start])
+                .reversed());
+
+        List<HighlightCandidate> selected = new ArrayList<>();
+        boolean[] taken = new boolean[count];
+        for (int start : starts) {
+            if (selected.size() >= Math.max(0, topN)) {
+                break;
+            }
+            double score = (scoreSum[start + window] - scoreSum[start]) / window;
+            if (score <= 0) {
+                // 不高于全片水平的片段不再算高光
+                break;
+            }
+            if (taken[start] || taken[start + window - 1]) {
+                continue;
+            }
+            Arrays.fill(taken, start, start + window, true);
+            double loudness = (loudnessSum[start + window] - loudnessSum[start]) / window;
+            int startSeconds = (int) levels.get(start).timeSeconds();
+            selected.add(new HighlightCandidate(startSeconds, startSeconds + window,
+                    Math.round(score * 10) / 10.0, Math.round(loudness * 10) / 10.0));
+        }
+        selected.sort(Comparator.comparingInt(HighlightCandidate::startSeconds));
+        return selected;
+    }
+
+    /**
+     * 测量并保存逐秒响度，失败时返回 null（不保存，下次重试）
+     */
+    private List<FfmpegUtil.AudioLevel> measure(File videoFile, String sourceFingerprint) {
+        long start = System.currentTimeMillis();
+        Path workDir = null;
+        try (FfmpegGovernor.Lease ignored = governor.acquire(1, videoFile.getName() + "（音频响度）")) {
+            workDir = Files.createTempDirectory(profileRoot, "measure-");
+            List<FfmpegUtil.AudioLevel> levels = FfmpegUtil.measureAudioLevels(ffmpegPath,
+                    videoFile.getAbsolutePath(), workDir.toFile(), timeoutSeconds, stallTimeoutSeconds);
+            if (levels == null || levels.isEmpty()) {
+                failures.incrementAndGet();
+                log.warn("音频响度测量失败，跳过高光候选: {}", videoFile.getAbsolutePath());
+                return null;
+            }
+            save(sourceFingerprint, levels);
+            measured.incrementAndGet();
+            lastMeasureMillis = System.currentTimeMillis() - start;
+            log.info("音频响度测量耗时 {} ms: {}", lastMeasureMillis, videoFile.getName());
+            return levels;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            log.warn("音频响度测量失败，跳过高光候选: {}", videoFile.getAbsolutePath(), e);
+            return null;
+        } finally {
+            deleteDirectory(workDir);
+        }
+    }
+
+    private List<FfmpegUtil.AudioLevel> load(String sourceFingerprint) {
+        if (sourceFingerprint == null) {
+            return null;
+        }
+        Path file = profileFile(sourceFingerprint);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            JSONArray rows = JSONUtil.parseObj(Files.readString(file, StandardCharsets.UTF_8)).getJSONArray("levels");
+            List<FfmpegUtil.AudioLevel> levels = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                JSONArray row = rows.getJSONArray(i);
+                levels.add(new FfmpegUtil.AudioLevel(row.getDouble(0), row.getDouble(1),
+                        row.getDouble(2), row.getDouble(3)));
+            }
+            return levels;
+        } catch (Exception e) {
+            log.warn("读取音频响度测量结果失败，重新测量: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存测量结果（先写临时文件再改名）
+     */
+    private void save(String sourceFingerprint, List<FfmpegUtil.AudioLevel> levels) throws IOException {
+        JSONArray rows = new JSONArray();
+        for (FfmpegUtil.AudioLevel level : levels) {
+            rows.add(new JSONArray(List.of(level.timeSeconds(), level.momentaryLufs(),
+                    level.shortTermLufs(), level.rmsDb())));
+        }
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("version", PROFILE_VERSION);
+        profile.put("levels", rows);
+        Path file = profileFile(sourceFingerprint);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tempFile, JSONUtil.toJsonStr(profile), StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path profileFile(String sourceFingerprint) {
+        return profileRoot.resolve(sourceFingerprint + ".v" + PROFILE_VERSION + ".json");
+    }
+
+    private static void deleteDirectory(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("删除临时目录失败: {}", dir, e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "audioProfile";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("measured", measured.get());
+        metrics.put("reused", reused.get());
+        metrics.put("failures", failures.get());
+        metrics.put("lastMeasureMillis", lastMeasureMillis);
+        return metrics;
+    }
+}
@@ -0,0 +1,36 @@
+package com.geekonup.service.media;
+
+import lombok.Getter;
+
+/**
+ * 压缩参数的决策方式
+ */
+@Getter
+public enum CompressionMode {
+
+    // 按 ffprobe 读取的时长计算码率，使输出刚好落在模型的体积上限以内
+    TARGET_SIZE("target-size", "目标体积"),
+    // 按源文件大小分档选择分辨率、帧率和 CRF（旧策略）
+    BUCKET("bucket", "按文件大小分档");
+
+    private final String value;
+
+    private final String description;
+
+    CompressionMode(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    /**
+     * 解析配置值，无法识别时使用目标体积模式
+     */
+    public static CompressionMode fromValue(String value) {
+        for (CompressionMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value) || mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        return TARGET_SIZE;
+    }
+}
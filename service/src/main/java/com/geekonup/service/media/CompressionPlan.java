@@ -0,0 +1,131 @@
+package com.geekonup.service.media;
+
+import lombok.Getter;
+
+/**
+ * 一次压缩使用的编码参数
+ * <p>
+ * 分档模式使用 CRF 恒定质量，目标体积模式使用 ABR 目标码率（必要时两遍编码），
+ * 长视频的目标体积模式可按关键帧分段并行编码。
+ * 源视频视频流可直接复用时，使用重新封装或仅转码音频的快速路径，不重新编码视频。
+ */
+@Getter
+public class CompressionPlan {
+
+    private final CompressionMode mode;
+    private final StreamTransform transform;
+    private final String resolution;
+    private final int frameRate;
+    // 分档模式的质量因子
+    private final int crf;
+    // 目标体积模式的视频码率与音频码率（kbps）
+    private final int videoBitrateKbps;
+    private final int audioBitrateKbps;
+    private final boolean twoPass;
+    // 分段并行编码的分段数与每段线程数，分段数为 1 表示单进程编码
+    private final int segments;
+    private final int threadsPerSegment;
+    // 超时时间（秒），两遍编码时为每一遍的超时时间，0 表示只按进度停滞判断
+    private final int timeout;
+
+    private CompressionPlan(CompressionMode mode, StreamTransform transform, String resolution, int frameRate, int crf,
+                            int videoBitrateKbps, int audioBitrateKbps, boolean twoPass,
+                            int segments, int threadsPerSegment, int timeout) {
+        this.mode = mode;
+        this.transform = transform;
+        this.resolution = resolution;
+        this.frameRate = frameRate;
+        this.crf = crf;
+        this.videoBitrateKbps = videoBitrateKbps;
+        this.audioBitrateKbps = audioBitrateKbps;
+        this.twoPass = twoPass;
+        this.segments = segments;
+        this.threadsPerSegment = threadsPerSegment;
+        this.timeout = timeout;
+    }
+
+    public static CompressionPlan bucket(String resolution, int frameRate, int crf, int timeout) {
+        return new CompressionPlan(CompressionMode.BUCKET, StreamTransform.TRANSCODE, resolution, frameRate, crf,
+                0, 128, false, 1, 0, timeout);
+    }
+
+    public static CompressionPlan targetSize(String resolution, int frameRate, int videoBitrateKbps,
+                                             int audioBitrateKbps, boolean twoPass, int timeout) {
+        return targetSize(resolution, frameRate, videoBitrateKbps, audioBitrateKbps, twoPass, 1, 0, timeout);
+    }
+
+    public static CompressionPlan targetSize(String resolution, int frameRate, int videoBitrateKbps,
+                                             int audioBitrateKbps, boolean twoPass,
+                                             int segments, int threadsPerSegment, int timeout) {
+        return new CompressionPlan(CompressionMode.TARGET_SIZE, StreamTransform.TRANSCODE, resolution, frameRate, 0,
+                videoBitrateKbps, audioBitrateKbps, twoPass, Math.max(1, segments), threadsPerSegment, timeout);
+    }
+
+    /**
+     * 快速路径：视频流直接复制
+     *
+     * @param transform        重新封装或仅转码音频
+     * @param audioBitrateKbps 仅转码音频时的 AAC 码率（kbps）
+     */
+    public static CompressionPlan streamCopy(StreamTransform transform, int audioBitrateKbps, int timeout) {
+        return new CompressionPlan(CompressionMode.TARGET_SIZE, transform, null, 0, 0,
+                0, transform == StreamTransform.AUDIO_TRANSCODE ? audioBitrateKbps : 0, false, 1, 0, timeout);
+    }
+
+    /**
+     * 同样参数的单进程编码（签名不变，输出可互相复用）
+     */
+    public CompressionPlan unsegmented() {
+        if (!isSegmented()) {
+            return this;
+        }
+        return new CompressionPlan(mode, transform, resolution, frameRate, crf, videoBitrateKbps, audioBitrateKbps,
+                twoPass, 1, 0, timeout);
+    }
+
+    public boolean isStreamCopy() {
+        return transform != StreamTransform.TRANSCODE;
+    }
+
+    public boolean isSegmented() {
+        return segments > 1;
+    }
+
+    /**
+     * 编码参数签名，参数变化后不会复用旧的代理文件
+     */
+    public String signature() {
+        if (transform == StreamTransform.REMUX) {
+            return "copy|v0|a0";
+        }
+        if (transform == StreamTransform.AUDIO_TRANSCODE) {
+            return String.format("copy|v0|aac%dk", audioBitrateKbps);
+        }
+        if (mode == CompressionMode.BUCKET) {
+            return String.format("libx264-slow|%s|%dfps|crf%d", resolution, frameRate, crf);
+        }
+        return String.format("libx264-slow|%s|%dfps|abr%dk|aac%dk|%s",
+                resolution, frameRate, videoBitrateKbps, audioBitrateKbps, twoPass ? "2pass" : "1pass");
+    }
+
+    @Override
+    public String toString() {
+        if (transform == StreamTransform.REMUX) {
+            return "重新封装（视频/音频直接复制）";
+        }
+        if (transform == StreamTransform.AUDIO_TRANSCODE) {
+            return String.format("视频直接复制, 音频转码为 AAC %dk", audioBitrateKbps);
+        }
+        if (mode == CompressionMode.BUCKET) {
+            return String.format("分辨率=%s, 帧率=%d, CRF=%d, 超时=%s", resolution, frameRate, crf, timeoutText());
+        }
+        return String.format("分辨率=%s, 帧率=%d, 视频码率=%dk, 音频码率=%dk, %s%s, 超时=%s",
+                resolution, frameRate, videoBitrateKbps, audioBitrateKbps, twoPass ? "两遍编码" : "单遍编码",
+                isSegmented() ? String.format(", 分段并行=%d段x%d线程", segments, threadsPerSegment) : "",
+                timeoutText());
+    }
+
+    private String timeoutText() {
+        return timeout > 0 ? timeout + "秒" : "不限";
+    }
+}
@@ -0,0 +1,35 @@
+package com.geekonup.service.media;
+
+import lombok.Getter;
+
+/**
+ * 视频压缩结果
+ */
+@Getter
+public class CompressionResult {
+
+    private final boolean success;
+    private final String compressedVideoPath;
+    // 代理文件 key，直接使用原文件时为空
+    private final String proxyKey;
+    private final String errorMessage;
+
+    private CompressionResult(boolean success, String compressedVideoPath, String proxyKey, String errorMessage) {
+        this.success = success;
+        this.compressedVideoPath = compressedVideoPath;
+        this.proxyKey = proxyKey;
+        this.errorMessage = errorMessage;
+    }
+
+    public static CompressionResult success(String compressedVideoPath) {
+        return new CompressionResult(true, compressedVideoPath, null, null);
+    }
+
+    public static CompressionResult success(String compressedVideoPath, String proxyKey) {
+        return new CompressionResult(true, compressedVideoPath, proxyKey, null);
+    }
+
+    public static CompressionResult failure(String errorMessage) {
+        return new CompressionResult(false, null, null, errorMessage);
+    }
+}
@@ -0,0 +1,273 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * FFmpeg 并发控制
+ * <p>
+ * 所有编码进程共用一份 CPU 预算（核数），每次编码先按将要使用的线程数申请，预算不足时排队（先到先得），
+ * 编码命令再通过 -threads 显式指定同样的线程数，避免多个进程各自按全部核数开线程互相争抢。
+ * 预算默认取 JVM 可用核数与 cgroup CPU 配额中较小的值，容器内运行时不会超出配额。
+ * <p>
+ * 低优先级的后台编码（新视频预处理）只在预算空闲时开始，线程数不超过单个编码；
+ * 之后有编码因预算不足需要排队时，先抢占正在运行的后台编码，让出的预算交给排队的编码。
+ */
+@Slf4j
+@Component
+public class FfmpegGovernor implements MetricsSource {
+
+    // cgroup v2 的 CPU 配额文件（"配额 周期" 或 "max 周期"）
+    private static final Path CGROUP_V2_CPU_MAX = Paths.get("/sys/fs/cgroup/cpu.max");
+
+    // cgroup v1 的 CPU 配额文件（配额为 -1 表示不限制）
+    private static final Path CGROUP_V1_QUOTA = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+
+    private static final Path CGROUP_V1_PERIOD = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+
+    // CPU 预算（核数），0 表示自动检测
+    @Value("${ffmpeg.governor.cpu-budget:0}")
+    private int configuredBudget;
+
+    // 单个（不分段的）编码进程的线程数
+    @Value("${ffmpeg.governor.threads-per-encode:4}")
+    private int threadsPerEncode;
+
+    private int cpuBudget;
+
+    // cgroup CPU 配额（核数，向上取整），未限制时为 0
+    private int cgroupLimit;
+
+    private Semaphore cores;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    // 正在运行的后台编码
+    private final Set<Lease> background = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong preempted = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cgroupLimit = readCgroupLimit();
+        int detected = Runtime.getRuntime().availableProcessors();
+        if (cgroupLimit > 0) {
+            detected = Math.min(detected, cgroupLimit);
+        }
+        cpuBudget = configuredBudget > 0 ? configuredBudget : Math.max(1, detected);
+        cores = new Semaphore(cpuBudget, true);
+        log.info("FFmpeg 并发控制: CPU 预算={} 核（可用核数={}, cgroup 配额={}），单个编码线程数={}",
+                cpuBudget, Runtime.getRuntime().availableProcessors(),
+                cgroupLimit > 0 ? cgroupLimit : "不限制", threadsPerEncode());
+    }
+
+    /**
+     * CPU 预算（核数）
+     */
+    public int cpuBudget() {
+        return cpuBudget;
+    }
+
+    /**
+     * 单个（不分段的）编码进程的线程数，不超过 CPU 预算
+     */
+    public int threadsPerEncode() {
+        return Math.max(1, Math.min(threadsPerEncode, cpuBudget));
+    }
+
+    /**
+     * 是否有空闲预算：没有编码在排队，且空闲核数不少于需要的核数（低优先级的预编码据此决定是否开始）
+     */
+    public boolean hasSpareCapacity(int requestedCores) {
+        return queued.get() == 0 && cores.availablePermits() >= Math.max(1, Math.min(requestedCores, cpuBudget));
+    }
+
+    /**
+     * 申请 CPU 预算，不足时阻塞排队
+     *
+     * @param requestedCores 需要的核数，超过预算时按预算申请
+     * @param label          日志中的任务描述
+     * @return 占用凭证，编码结束后关闭以归还预算
+     */
+    public Lease acquire(int requestedCores, String label) throws InterruptedException {
+        int granted = Math.max(1, Math.min(requestedCores, cpuBudget));
+        long start = System.currentTimeMillis();
+        if (!cores.tryAcquire(granted)) {
+            queued.incrementAndGet();
+            log.info("CPU 预算不足，等待编码: {}（需要 {} 核，空闲 {} 核，排队 {} 个）",
+                    label, granted, cores.availablePermits(), queued.get());
+            preemptBackground(label);
+            try {
+                cores.acquire(granted);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        long waited = System.currentTimeMillis() - start;
+        admitted.incrementAndGet();
+        totalWaitMillis.addAndGet(waited);
+        maxWaitMillis.accumulateAndGet(waited, Math::max);
+        running.incrementAndGet();
+        if (waited > 0) {
+            log.info("开始编码: {}（{} 核，等待 {} ms）", label, granted, waited);
+        }
+        return new Lease(granted, null);
+    }
+
+    /**
+     * 申请低优先级的后台编码预算：只在没有编码排队且预算空闲时授予，不排队
+     *
+     * @param requestedCores 需要的核数，超过单个编码的线程数时按单个编码申请
+     * @param label          日志中的任务描述
+     * @param preempt        有编码排队时调用，返回 true 表示已让出（编码会尽快结束并关闭凭证）
+     * @return 占用凭证，预算不空闲时返回 null
+     */
+    public Lease acquireBackground(int requestedCores, String label, BooleanSupplier preempt) {
+        int granted = Math.max(1, Math.min(requestedCores, threadsPerEncode()));
+        if (queued.get() > 0 || !cores.tryAcquire(granted)) {
+            return null;
+        }
+        Lease lease = new Lease(granted, preempt);
+        background.add(lease);
+        // 登记后再检查一次：期间开始排队的编码可能已错过抢占（此时尚未计入运行数，直接归还预算）
+        if (queued.get() > 0) {
+            background.remove(lease);
+            cores.release(granted);
+            return null;
+        }
+        admitted.incrementAndGet();
+        running.incrementAndGet();
+        log.info("开始后台编码: {}（{} 核）", label, granted);
+        return lease;
+    }
+
+    /**
+     * 抢占正在运行的后台编码，已让出（正在结束）的不再重复抢占
+     */
+    private void preemptBackground(String label) {
+        for (Lease lease : background) {
+            if (!lease.preempted.compareAndSet(false, true)) {
+                continue;
+            }
+            if (!lease.preempt.getAsBoolean()) {
+                // 未让出，之后排队的编码可以再次尝试
+                lease.preempted.set(false);
+            } else {
+                preempted.incrementAndGet();
+                log.info("抢占后台编码，让出 {} 核给: {}", lease.threads, label);
+            }
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "ffmpegGovernor";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("cpuBudget", cpuBudget);
+        metrics.put("cgroupLimit", cgroupLimit > 0 ? cgroupLimit : null);
+        metrics.put("coresInUse", cpuBudget - cores.availablePermits());
+        metrics.put("runningEncodes", running.get());
+        metrics.put("queuedEncodes", queued.get());
+        metrics.put("backgroundEncodes", background.size());
+        metrics.put("preempted", preempted.get());
+        metrics.put("admitted", admitted.get());
+        metrics.put("totalWaitMillis", totalWaitMillis.get());
+        metrics.put("maxWaitMillis", maxWaitMillis.get());
+        return metrics;
+    }
+
+    /**
+     * 读取 cgroup CPU 配额（先 v2 后 v1），读取不到或未限制时返回 0
+     */
+    private static int readCgroupLimit() {
+        try {
+            if (Files.isReadable(CGROUP_V2_CPU_MAX)) {
+                String[] parts = Files.readString(CGROUP_V2_CPU_MAX).trim().split("\\s+");
+                if (parts.length == 2 && !"max".equals(parts[0])) {
+                    return quotaToCores(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                }
+                return 0;
+            }
+            if (Files.isReadable(CGROUP_V1_QUOTA) && Files.isReadable(CGROUP_V1_PERIOD)) {
+                long quota = Long.parseLong(Files.readString(CGROUP_V1_QUOTA).trim());
+                long period = Long.parseLong(Files.readString(CGROUP_V1_PERIOD).trim());
+                return quota > 0 ? quotaToCores(quota, period) : 0;
+            }
+        } catch (Exception e) {
+            log.warn("读取 cgroup CPU 配额失败，按可用核数计算", e);
+        }
+        return 0;
+    }
+
+    private static int quotaToCores(long quota, long period) {
+        return period > 0 ? (int) Math.max(1, (quota + period - 1) / period) : 0;
+    }
+
+    /**
+     * CPU 预算占用凭证
+     */
+    public class Lease implements AutoCloseable {
+
+        private final int threads;
+
+        // 后台编码的抢占回调，普通编码为 null
+        private final BooleanSupplier preempt;
+
+        // 后台编码已让出
+        private final AtomicBoolean preempted = new AtomicBoolean();
+
+        private boolean released;
+
+        private Lease(int threads, BooleanSupplier preempt) {
+            this.threads = threads;
+            this.preempt = preempt;
+        }
+
+        /**
+         * 分配到的线程数（编码命令的 -threads）
+         */
+        public int threads() {
+            return threads;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (preempt == null || background.remove(this)) {
+                running.decrementAndGet();
+            }
+            cores.release(threads);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.util.MarkdownMergeUtil;
+
+/**
+ * 按音频响度和能量预选的高光候选片段
+ *
+ * @param startSeconds  起始时间（秒）
+ * @param endSeconds    结束时间（秒）
+ * @param score         得分（相对全片响度中位数的平均提升，越高越突出）
+ * @param loudnessLufs  片段内的平均短时响度（LUFS）
+ */
+public record HighlightCandidate(int startSeconds, int endSeconds, double score, double loudnessLufs) {
+
+    /**
+     * 格式化为 分:秒 - 分:秒（与高光切片的时间格式一致）
+     */
+    public String timeRange() {
+        return MarkdownMergeUtil.formatTimestamp(startSeconds) + " - " + MarkdownMergeUtil.formatTimestamp(endSeconds);
+    }
+}
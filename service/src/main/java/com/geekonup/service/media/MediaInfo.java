@@ -0,0 +1,75 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.util.MarkdownMergeUtil;
+import lombok.Data;
+
+/**
+ * 视频元数据（ffprobe 读取结果）
+ * <p>
+ * 只保留流水线决策需要的字段：时长、容器、第一路视频流和第一路音频流。
+ * 码率为 0 表示容器或流中没有记录该值。
+ */
+@Data
+public class MediaInfo {
+
+    // 容器格式（如 mov,mp4,m4a,3gp,3g2,mj2）
+    private String formatName;
+
+    // 时长（秒）
+    private double durationSeconds;
+
+    // 文件大小（字节）
+    private long sizeBytes;
+
+    // 总码率（bps）
+    private long bitRate;
+
+    // 视频流：编码、像素格式、分辨率、帧率、码率（bps），没有视频流时编码为空
+    private String videoCodec;
+    private String pixelFormat;
+    private int width;
+    private int height;
+    private double frameRate;
+    private long videoBitRate;
+
+    // 除第一路视频和音频外的其余流数量（多余音轨、字幕、数据流、封面等）
+    private int extraStreams;
+
+    // 音频流：编码、声道数、采样率、码率（bps），没有音频流时编码为空
+    private String audioCodec;
+    private int audioChannels;
+    private int audioSampleRate;
+    private long audioBitRate;
+
+    public boolean hasVideo() {
+        return videoCodec != null;
+    }
+
+    public boolean hasAudio() {
+        return audioCodec != null;
+    }
+
+    /**
+     * 时长格式化为 时:分:秒 或 分:秒
+     */
+    public String formattedDuration() {
+        return Math.round(durationSeconds) >= 3600
+                ? MarkdownMergeUtil.formatTimestampWithHours(durationSeconds)
+                : MarkdownMergeUtil.formatTimestamp(durationSeconds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("时长=%s, 容器=%s, 总码率=%dk", formattedDuration(), formatName, bitRate / 1000));
+        if (hasVideo()) {
+            builder.append(String.format(", 视频=%s %dx%d %.2ffps %dk",
+                    videoCodec, width, height, frameRate, videoBitRate / 1000));
+        }
+        if (hasAudio()) {
+            builder.append(String.format(", 音频=%s %d声道 %dHz %dk",
+                    audioCodec, audioChannels, audioSampleRate, audioBitRate / 1000));
+        }
+        return builder.toString();
+    }
+}
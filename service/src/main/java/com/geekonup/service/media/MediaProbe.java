@@ -0,0 +1,211 @@
+package com.geekonup.service.media;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FfmpegUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 视频元数据探测
+ * <p>
+ * 每个源视频只执行一次 ffprobe，解析 JSON 输出后按"路径 + 大小 + 修改时间"缓存，
+ * 文件被替换或重新导出后 key 随之变化，自动重新探测。
+ * 压缩参数、任务耗时估算和 AI 阶段的视频描述都使用这里的结果，而不是从文件大小推算。
+ * 探测失败不缓存，下次请求会重试。
+ */
+@Slf4j
+@Component
+public class MediaProbe implements MetricsSource {
+
+    // ffprobe路径
+    @Value("${ffmpeg.ffprobe-path:ffprobe}")
+    private String ffprobePath;
+
+    // 缓存条目上限，超出后按最近使用时间淘汰
+    @Value("${ffmpeg.probe.cache-size:1024}")
+    private int cacheSize;
+
+    // 单次探测超时时间（秒）
+    @Value("${ffmpeg.probe.timeout:30}")
+    private int timeoutSeconds;
+
+    // key: 规范路径|大小|修改时间，按访问顺序排列
+    private final Map<String, MediaInfo> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MediaInfo> eldest) {
+            return size() > Math.max(1, cacheSize);
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * 读取视频元数据，命中缓存时不再执行 ffprobe
+     *
+     * @param videoFile 视频文件
+     * @return 元数据，探测失败返回 null
+     */
+    public MediaInfo probe(File videoFile) {
+        String key = cacheKey(videoFile);
+        synchronized (cache) {
+            MediaInfo cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        long start = System.currentTimeMillis();
+        String json = FfmpegUtil.probeMedia(ffprobePath, videoFile.getAbsolutePath(), timeoutSeconds);
+        MediaInfo info = json == null ? null : parse(json, videoFile);
+        if (info == null) {
+            failures.incrementAndGet();
+            log.warn("读取视频元数据失败: {}", videoFile.getAbsolutePath());
+            return null;
+        }
+        log.info("视频元数据（耗时 {} ms）: {} -> {}", System.currentTimeMillis() - start, videoFile.getName(), info);
+        synchronized (cache) {
+            cache.put(key, info);
+        }
+        return info;
+    }
+
+    @Override
+    public String metricsName() {
+        return "mediaProbe";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (cache) {
+            metrics.put("entries", cache.size());
+        }
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("failures", failures.get());
+        return metrics;
+    }
+
+    /**
+     * 解析 ffprobe -show_format -show_streams 的 JSON 输出
+     *
+     * @return 元数据，没有可用时长时返回 null
+     */
+    private static MediaInfo parse(String json, File videoFile) {
+        try {
+            JSONObject root = JSONUtil.parseObj(json);
+            JSONObject format = root.getJSONObject("format");
+            MediaInfo info = new MediaInfo();
+            info.setSizeBytes(videoFile.length());
+            if (format != null) {
+                info.setFormatName(format.getStr("format_name"));
+                info.setDurationSeconds(parseDouble(format.getStr("duration")));
+                info.setBitRate(parseLong(format.getStr("bit_rate")));
+            }
+
+            JSONArray streams = root.getJSONArray("streams");
+            if (streams != null) {
+                for (int i = 0; i < streams.size(); i++) {
+                    JSONObject stream = streams.getJSONObject(i);
+                    String codecType = stream.getStr("codec_type");
+                    if ("video".equals(codecType) && !info.hasVideo() && !isAttachedPicture(stream)) {
+                        info.setVideoCodec(stream.getStr("codec_name"));
+                        info.setPixelFormat(stream.getStr("pix_fmt"));
+                        info.setWidth(stream.getInt("width", 0));
+                        info.setHeight(stream.getInt("height", 0));
+                        info.setFrameRate(parseFrameRate(stream.getStr("avg_frame_rate"), stream.getStr("r_frame_rate")));
+                        info.setVideoBitRate(parseLong(stream.getStr("bit_rate")));
+                        // 部分容器（如 mkv）只在流上记录时长
+                        if (info.getDurationSeconds() <= 0) {
+                            info.setDurationSeconds(parseDouble(stream.getStr("duration")));
+                        }
+                    } else if ("audio".equals(codecType) && !info.hasAudio()) {
+                        info.setAudioCodec(stream.getStr("codec_name"));
+                        info.setAudioChannels(stream.getInt("channels", 0));
+                        info.setAudioSampleRate((int) parseLong(stream.getStr("sample_rate")));
+                        info.setAudioBitRate(parseLong(stream.getStr("bit_rate")));
+                    } else {
+                        info.setExtraStreams(info.getExtraStreams() + 1);
+                    }
+                }
+            }
+
+            if (info.getDurationSeconds() <= 0) {
+                log.warn("ffprobe 输出中没有可用的时长: {}", videoFile.getAbsolutePath());
+                return null;
+            }
+            if (info.getBitRate() <= 0) {
+                info.setBitRate((long) (info.getSizeBytes() * 8 / info.getDurationSeconds()));
+            }
+            return info;
+        } catch (Exception e) {
+            log.warn("无法解析 ffprobe 输出: {}", videoFile.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static boolean isAttachedPicture(JSONObject stream) {
+        JSONObject disposition = stream.getJSONObject("disposition");
+        return disposition != null && disposition.getInt("attached_pic", 0) == 1;
+    }
+
+    /**
+     * 解析帧率（ffprobe 输出为分数形式，如 30000/1001），平均帧率缺失时使用基础帧率
+     */
+    private static double parseFrameRate(String avgFrameRate, String baseFrameRate) {
+        double rate = parseFraction(avgFrameRate);
+        return rate > 0 ? rate : parseFraction(baseFrameRate);
+    }
+
+    private static double parseFraction(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        int slashIndex = value.indexOf('/');
+        if (slashIndex < 0) {
+            return parseDouble(value);
+        }
+        double denominator = parseDouble(value.substring(slashIndex + 1));
+        return denominator > 0 ? parseDouble(value.substring(0, slashIndex)) / denominator : 0;
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null || value.isBlank() || "N/A".equals(value)) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseLong(String value) {
+        return (long) parseDouble(value);
+    }
+
+    private static String cacheKey(File videoFile) {
+        String path;
+        try {
+            path = videoFile.getCanonicalPath();
+        } catch (Exception e) {
+            path = videoFile.getAbsolutePath();
+        }
+        return path + "|" + videoFile.length() + "|" + videoFile.lastModified();
+    }
+}
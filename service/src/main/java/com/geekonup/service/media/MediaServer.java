@@ -0,0 +1,170 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内置媒体服务（模型按 URL 拉取代理文件）
+ * <p>
+ * 视频以 data URL 内嵌在请求中时，请求体受模型接口的大小限制，Base64 还会把传输量放大三分之一。
+ * 启用后，发给模型的是指向本服务 /media 接口的短期签名 URL，由模型自行下载代理文件：
+ * - URL 中包含文件路径（Base64URL）和过期时间，用 HMAC-SHA256 签名，无法伪造或延期
+ * - 下载接口支持 Range 请求，Tomcat 下通过 sendfile 零拷贝发送
+ * 模型服务必须能访问 public-base-url（公网地址或模型服务所在网络可达的地址）。
+ */
+@Slf4j
+@Component
+public class MediaServer implements MetricsSource {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @Value("${ai.media-server.enabled:false}")
+    private boolean enabled;
+
+    // 模型服务访问本服务使用的地址，如 http://203.0.113.10:8080
+    @Value("${ai.media-server.public-base-url:}")
+    private String publicBaseUrl;
+
+    // URL 有效期（秒）
+    @Value("${ai.media-server.url-ttl-seconds:1800}")
+    private int urlTtlSeconds;
+
+    // 签名密钥，为空时每次启动随机生成（重启后旧 URL 失效）
+    @Value("${ai.media-server.secret:}")
+    private String secret;
+
+    private byte[] secretKey;
+
+    private final AtomicLong signedUrls = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong rangeRequests = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (secret == null || secret.isBlank()) {
+            secretKey = new byte[32];
+            new SecureRandom().nextBytes(secretKey);
+        } else {
+            secretKey = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        if (enabled && (publicBaseUrl == null || publicBaseUrl.isBlank())) {
+            log.warn("媒体服务已启用但未配置 public-base-url，视频仍以 data URL 发送");
+            enabled = false;
+        }
+        if (enabled) {
+            log.info("媒体服务已启用: {}/media，URL 有效期 {} 秒", publicBaseUrl, urlTtlSeconds);
+        }
+    }
+
+    /**
+     * 生成文件的签名下载 URL
+     *
+     * @param file 代理文件（或直接使用的原文件）
+     * @return 签名 URL，未启用时返回 null（调用方以 data URL 发送）
+     */
+    public String urlFor(File file) {
+        if (!enabled) {
+            return null;
+        }
+        String id = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        long expires = System.currentTimeMillis() / 1000 + urlTtlSeconds;
+        signedUrls.incrementAndGet();
+        return trimSlash(publicBaseUrl) + "/media/" + id + "/"
+                + URLEncoder.encode(file.getName(), StandardCharsets.UTF_8).replace("+", "%20")
+                + "?expires=" + expires + "&signature=" + sign(id, expires);
+    }
+
+    /**
+     * 校验签名并解析文件
+     *
+     * @return 签名有效、未过期且文件存在时返回文件，否则返回 null
+     */
+    public File resolve(String id, long expires, String signature) {
+        requests.incrementAndGet();
+        if (!enabled || signature == null || expires < System.currentTimeMillis() / 1000
+                || !MessageDigest.isEqual(sign(id, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII))) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        File file;
+        try {
+            file = new File(new String(Base64.getUrlDecoder().decode(id), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        // 只提供视频文件（签名已保证路径由本服务生成，这里再做一次兜底）
+        if (!file.isFile() || !FfmpegUtil.isVideoFile(file.getName())) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 记录一次下载（Range 请求单独计数）
+     */
+    public void recordServed(long bytes, boolean range) {
+        bytesServed.addAndGet(bytes);
+        if (range) {
+            rangeRequests.incrementAndGet();
+        }
+    }
+
+    private String sign(String id, long expires) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secretKey, HMAC_ALGORITHM));
+            return HexFormat.of().formatHex(mac.doFinal((id + "\n" + expires).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("计算 URL 签名失败", e);
+        }
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public String metricsName() {
+        return "mediaServer";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("signedUrls", signedUrls.get());
+        metrics.put("requests", requests.get());
+        metrics.put("rangeRequests", rangeRequests.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("bytesServed", bytesServed.get());
+        return metrics;
+    }
+}
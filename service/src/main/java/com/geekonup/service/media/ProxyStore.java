@@ -0,0 +1,323 @@
+package com.geekonup.service.media;
+
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FileFingerprintUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 压缩视频（代理文件）存储
+ * <p>
+ * 代理文件按"源视频指纹 + 编码参数"寻址，统一保存在受管目录中，而不是散落在 NAS 原视频旁边：
+ * - 源视频未变化且编码参数相同时直接复用已有代理文件，不再重复编码
+ * - 总大小超出预算时按最近使用时间（LRU）淘汰，正在使用的代理文件不会被淘汰
+ * - 开始编码前检查磁盘剩余空间，不足时先淘汰旧文件，仍不足则拒绝编码；进行中的编码按预计大小预留空间
+ * 编码先写入临时文件（每次编码单独一个文件名），完成后原子改名，避免并发或中断导致文件损坏。
+ */
+@Slf4j
+@Component
+public class ProxyStore implements MetricsSource {
+
+    private static final String INDEX_FILE_NAME = "index.json";
+
+    private static final String TEMP_SUFFIX = ".tmp.mp4";
+
+    // 代理文件目录
+    @Value("${ffmpeg.proxy-store.dir:./data/proxies}")
+    private String storeDir;
+
+    // 代理文件总大小预算（字节）
+    @Value("${ffmpeg.proxy-store.max-bytes:21474836480}")
+    private long maxBytes;
+
+    // 编码时需保留的最小磁盘剩余空间（字节）
+    @Value("${ffmpeg.proxy-store.min-free-bytes:2147483648}")
+    private long minFreeBytes;
+
+    private Path storeRoot;
+
+    // key -> 代理文件记录
+    private final Map<String, ProxyEntry> entries = new HashMap<>();
+
+    // key -> 正在使用的引用数
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    // 临时输出文件 -> 进行中的编码预留的字节数，提交或放弃时释放
+    private final Map<Path, Long> reservations = new HashMap<>();
+
+    private long reuseCount;
+
+    private long encodeCount;
+
+    private long evictionCount;
+
+    @PostConstruct
+    public void init() throws IOException {
+        storeRoot = Paths.get(storeDir).toAbsolutePath();
+        Files.createDirectories(storeRoot);
+        loadIndex();
+        log.info("代理文件目录: {}, 现有 {} 个文件共 {} MB, 预算 {} MB",
+                storeRoot, entries.size(), totalBytes() / 1024 / 1024, maxBytes / 1024 / 1024);
+    }
+
+    /**
+     * 计算代理文件 key
+     *
+     * @param sourceFingerprint 源视频指纹
+     * @param encodeSettings    编码参数签名
+     */
+    public String keyFor(String sourceFingerprint, String encodeSettings) {
+        return FileFingerprintUtil.sha256(sourceFingerprint + "|" + encodeSettings);
+    }
+
+    /**
+     * 查找可复用的代理文件，找到时增加引用并刷新最近使用时间
+     *
+     * @return 代理文件路径，不存在返回 null
+     */
+    public synchronized Path acquire(String key) {
+        ProxyEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        Path file = storeRoot.resolve(entry.getFileName());
+        if (!Files.isRegularFile(file) || file.toFile().length() != entry.getSize()) {
+            log.warn("代理文件已失效，移除记录: {}", file);
+            entries.remove(key);
+            saveIndex();
+            return null;
+        }
+        entry.setLastAccess(System.currentTimeMillis());
+        pins.merge(key, 1, Integer::sum);
+        reuseCount++;
+        saveIndex();
+        return file;
+    }
+
+    /**
+     * 为一次编码准备临时输出文件：检查预算和磁盘空间（计入其他进行中编码的预留），必要时按 LRU 淘汰旧文件，
+     * 并为本次编码预留预计大小；临时文件名唯一，同一 key 的并发编码互不干扰
+     *
+     * @param key           代理文件 key
+     * @param expectedBytes 预计输出大小
+     * @return 临时输出文件
+     * @throws IOException 空间不足或无法创建目录
+     */
+    public synchronized Path prepareEncode(String key, long expectedBytes) throws IOException {
+        ensureCapacity(expectedBytes);
+        Path tempFile = Files.createTempFile(storeRoot, key, TEMP_SUFFIX);
+        reservations.put(tempFile, expectedBytes);
+        return tempFile;
+    }
+
+    /**
+     * 编码完成后提交代理文件（原子改名），并增加引用
+     *
+     * @param key            代理文件 key
+     * @param tempFile       临时输出文件
+     * @param sourceFile     源视频
+     * @param encodeSettings 编码参数签名
+     * @return 代理文件路径
+     */
+    public synchronized Path commit(String key, Path tempFile, File sourceFile, String encodeSettings) throws IOException {
+        reservations.remove(tempFile);
+        String fileName = proxyFileName(sourceFile, key);
+        Path target = storeRoot.resolve(fileName);
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        ProxyEntry entry = new ProxyEntry();
+        entry.setKey(key);
+        entry.setFileName(fileName);
+        entry.setSourcePath(sourceFile.getAbsolutePath());
+        entry.setEncodeSettings(encodeSettings);
+        entry.setSize(target.toFile().length());
+        entry.setLastAccess(System.currentTimeMillis());
+        entries.put(key, entry);
+        pins.merge(key, 1, Integer::sum);
+        encodeCount++;
+
+        evictOverBudget(0);
+        saveIndex();
+        return target;
+    }
+
+    /**
+     * 放弃一次编码，删除临时文件并释放预留空间
+     */
+    public synchronized void discard(Path tempFile) {
+        reservations.remove(tempFile);
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("删除临时代理文件失败: {}", tempFile, e);
+        }
+    }
+
+    /**
+     * 释放代理文件引用，引用为 0 后才允许被淘汰
+     */
+    public synchronized void release(String key) {
+        if (key == null) {
+            return;
+        }
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    @Override
+    public String metricsName() {
+        return "proxyStore";
+    }
+
+    @Override
+    public synchronized Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("totalBytes", totalBytes());
+        metrics.put("maxBytes", maxBytes);
+        metrics.put("reservedBytes", reservedBytes());
+        metrics.put("pinned", pins.size());
+        metrics.put("reused", reuseCount);
+        metrics.put("encoded", encodeCount);
+        metrics.put("evicted", evictionCount);
+        return metrics;
+    }
+
+    private void ensureCapacity(long expectedBytes) throws IOException {
+        evictOverBudget(expectedBytes);
+        // 进行中的编码尚未写满预留大小，按预留量从可用空间中扣除（偏保守）
+        long reserved = reservedBytes();
+        long usable = Files.getFileStore(storeRoot).getUsableSpace() - reserved;
+        while (usable - expectedBytes < minFreeBytes && evictLeastRecentlyUsed()) {
+            usable = Files.getFileStore(storeRoot).getUsableSpace() - reserved;
+        }
+        saveIndex();
+        if (usable - expectedBytes < minFreeBytes) {
+            throw new IOException(String.format("磁盘空间不足: 可用 %d MB（已扣除进行中编码预留 %d MB）, 预计需要 %d MB, 需保留 %d MB",
+                    usable / 1024 / 1024, reserved / 1024 / 1024, expectedBytes / 1024 / 1024, minFreeBytes / 1024 / 1024));
+        }
+    }
+
+    private void evictOverBudget(long incomingBytes) {
+        while (totalBytes() + reservedBytes() + incomingBytes > maxBytes && evictLeastRecentlyUsed()) {
+            // 继续淘汰直至满足预算或没有可淘汰的文件
+        }
+    }
+
+    /**
+     * 淘汰最近最少使用且未被引用的代理文件
+     *
+     * @return 是否淘汰了文件
+     */
+    private boolean evictLeastRecentlyUsed() {
+        ProxyEntry victim = entries.values().stream()
+                .filter(entry -> !pins.containsKey(entry.getKey()))
+                .min(Comparator.comparingLong(ProxyEntry::getLastAccess))
+                .orElse(null);
+        if (victim == null) {
+            return false;
+        }
+        entries.remove(victim.getKey());
+        evictionCount++;
+        try {
+            Files.deleteIfExists(storeRoot.resolve(victim.getFileName()));
+            log.info("淘汰代理文件: {} ({} MB)", victim.getFileName(), victim.getSize() / 1024 / 1024);
+        } catch (IOException e) {
+            log.warn("删除代理文件失败: {}", victim.getFileName(), e);
+        }
+        return true;
+    }
+
+    private long totalBytes() {
+        return entries.values().stream().mapToLong(ProxyEntry::getSize).sum();
+    }
+
+    private long reservedBytes() {
+        return reservations.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * 加载索引，并与磁盘上的文件对账：移除丢失的记录，删除残留的临时文件和未登记的文件
+     */
+    private void loadIndex() throws IOException {
+        Path indexFile = storeRoot.resolve(INDEX_FILE_NAME);
+        if (Files.isRegularFile(indexFile)) {
+            try {
+                List<ProxyEntry> loaded = JSONUtil.toList(Files.readString(indexFile, StandardCharsets.UTF_8), ProxyEntry.class);
+                for (ProxyEntry entry : loaded) {
+                    Path file = storeRoot.resolve(entry.getFileName());
+                    if (Files.isRegularFile(file) && file.toFile().length() == entry.getSize()) {
+                        entries.put(entry.getKey(), entry);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("代理文件索引损坏，将重建: {}", indexFile, e);
+            }
+        }
+        Set<String> known = new HashSet<>();
+        entries.values().forEach(entry -> known.add(entry.getFileName()));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(storeRoot, "*.mp4")) {
+            for (Path file : stream) {
+                if (!known.contains(file.getFileName().toString())) {
+                    log.info("删除未登记的代理文件: {}", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        saveIndex();
+    }
+
+    private void saveIndex() {
+        Path indexFile = storeRoot.resolve(INDEX_FILE_NAME);
+        Path tmpFile = storeRoot.resolve(INDEX_FILE_NAME + ".tmp");
+        try {
+            Files.writeString(tmpFile, JSONUtil.toJsonStr(new ArrayList<>(entries.values())), StandardCharsets.UTF_8);
+            Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存代理文件索引失败", e);
+        }
+    }
+
+    /**
+     * 代理文件名：源文件名_key前12位.mp4，便于人工排查
+     */
+    private static String proxyFileName(File sourceFile, String key) {
+        String name = sourceFile.getName();
+        int dotIndex = name.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+        return baseName + "_" + key.substring(0, 12) + ".mp4";
+    }
+
+    /**
+     * 代理文件记录
+     */
+    @Data
+    public static class ProxyEntry {
+        private String key;
+        private String fileName;
+        private String sourcePath;
+        private String encodeSettings;
+        private long size;
+        private long lastAccess;
+    }
+}
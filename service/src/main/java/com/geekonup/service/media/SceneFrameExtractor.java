@@ -0,0 +1,218 @@
+package com.geekonup.service.media;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.util.FfmpegProgress;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 关键帧抽取（关键帧分析模式）
+ * <p>
+ * 口播、录屏类视频画面变化少，少量代表性画面就足以让视觉模型完成分析。
+ * 这里按画面变化抽取缩小后的 JPEG，连同时间点写入索引文件 frames.json，
+ * 索引路径作为任务的"压缩后文件"记录在任务日志中，重启后可直接进入 AI 阶段。
+ * 每个任务的关键帧单独一个目录，AI 分析结束后删除。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SceneFrameExtractor {
+
+    private static final String INDEX_FILE_NAME = "frames.json";
+
+    // 默认分析模式
+    @Value("${ai.analysis-mode:video}")
+    private String analysisMode;
+
+    // 自动模式下源视频达到该大小（MB）时使用关键帧
+    @Value("${ai.frames.auto-min-size-mb:1024}")
+    private long autoMinSizeMb;
+
+    // 场景变化阈值（0-1）
+    @Value("${ai.frames.scene-threshold:0.3}")
+    private double sceneThreshold;
+
+    // 单个视频最多抽取的帧数
+    @Value("${ai.frames.max-frames:40}")
+    private int maxFrames;
+
+    // 图片最大宽度（像素）
+    @Value("${ai.frames.width:768}")
+    private int frameWidth;
+
+    // 关键帧目录
+    @Value("${ai.frames.dir:./data/frames}")
+    private String framesDir;
+
+    @Value("${ffmpeg.path}")
+    private String ffmpegPath;
+
+    @Value("${ffmpeg.timeout:0}")
+    private int timeoutSeconds;
+
+    @Value("${ffmpeg.stall-timeout:120}")
+    private int stallTimeoutSeconds;
+
+    private final FfmpegGovernor governor;
+
+    private Path framesRoot;
+
+    @PostConstruct
+    public void init() throws IOException {
+        framesRoot = Paths.get(framesDir).toAbsolutePath();
+        Files.createDirectories(framesRoot);
+        if (AnalysisMode.fromValue(analysisMode) == null) {
+            log.warn("未知的分析模式 {}，使用完整视频", analysisMode);
+        }
+    }
+
+    /**
+     * 决定任务的分析模式：请求指定的优先，其次是配置；自动模式按源视频大小选择
+     *
+     * @param requested 请求中指定的模式，可为空
+     * @param mediaInfo 源视频元数据，读取失败时为 null
+     * @param sourceSize 源视频大小（字节）
+     */
+    public AnalysisMode resolve(String requested, MediaInfo mediaInfo, long sourceSize) {
+        AnalysisMode mode = AnalysisMode.fromValue(requested);
+        if (mode == null) {
+            mode = AnalysisMode.fromValue(analysisMode);
+        }
+        if (mode == null) {
+            mode = AnalysisMode.VIDEO;
+        }
+        // 抽帧依赖时长计算间隔，且没有画面时无帧可抽
+        if (mediaInfo == null || !mediaInfo.hasVideo()) {
+            return AnalysisMode.VIDEO;
+        }
+        if (mode == AnalysisMode.AUTO) {
+            return sourceSize >= autoMinSizeMb * 1024 * 1024 ? AnalysisMode.FRAMES : AnalysisMode.VIDEO;
+        }
+        return mode;
+    }
+
+    /**
+     * 抽取关键帧并写入索引文件
+     *
+     * @param videoFile 源视频
+     * @param mediaInfo 源视频元数据
+     * @param jobId     任务ID（每个任务单独一个目录）
+     * @param progress  处理进度
+     * @return 成功时压缩后文件路径为索引文件路径
+     */
+    public CompressionResult extract(File videoFile, MediaInfo mediaInfo, String jobId, FfmpegProgress progress) {
+        Path jobDir = framesRoot.resolve(jobId);
+        try {
+            deleteDirectory(jobDir);
+            Files.createDirectories(jobDir);
+        } catch (IOException e) {
+            log.error("创建关键帧目录失败: {}", jobDir, e);
+            return CompressionResult.failure("创建关键帧目录失败: " + e.getMessage());
+        }
+
+        progress.setDurationSeconds(mediaInfo.getDurationSeconds());
+        List<FfmpegUtil.SceneFrame> frames;
+        try (FfmpegGovernor.Lease lease = governor.acquire(governor.threadsPerEncode(), videoFile.getName())) {
+            frames = FfmpegUtil.extractSceneFrames(ffmpegPath, videoFile.getAbsolutePath(), jobDir.toFile(),
+                    sceneThreshold, maxFrames, frameWidth, mediaInfo.getDurationSeconds(), lease.threads(),
+                    timeoutSeconds, stallTimeoutSeconds, progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            frames = null;
+        }
+        if (frames == null || frames.isEmpty()) {
+            deleteDirectory(jobDir);
+            return CompressionResult.failure("关键帧抽取失败");
+        }
+
+        JSONArray index = new JSONArray();
+        for (FfmpegUtil.SceneFrame frame : frames) {
+            JSONObject item = new JSONObject();
+            item.set("timeSeconds", frame.timeSeconds());
+            item.set("file", frame.file().getName());
+            index.add(item);
+        }
+        Path indexFile = jobDir.resolve(INDEX_FILE_NAME);
+        try {
+            Files.writeString(indexFile, index.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("写入关键帧索引失败: {}", indexFile, e);
+            deleteDirectory(jobDir);
+            return CompressionResult.failure("写入关键帧索引失败: " + e.getMessage());
+        }
+        return CompressionResult.success(indexFile.toString());
+    }
+
+    /**
+     * 读取索引文件中的关键帧（按时间排序）
+     */
+    public List<FfmpegUtil.SceneFrame> load(String indexPath) throws IOException {
+        Path indexFile = Paths.get(indexPath);
+        JSONArray index = JSONUtil.parseArray(Files.readString(indexFile, StandardCharsets.UTF_8));
+        List<FfmpegUtil.SceneFrame> frames = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            JSONObject item = index.getJSONObject(i);
+            File file = indexFile.resolveSibling(item.getStr("file")).toFile();
+            if (!file.isFile()) {
+                throw new IOException("关键帧文件不存在: " + file);
+            }
+            frames.add(new FfmpegUtil.SceneFrame(item.getDouble("timeSeconds"), file));
+        }
+        return frames;
+    }
+
+    /**
+     * 关键帧总大小（字节）
+     */
+    public long totalBytes(String indexPath) {
+        try (Stream<Path> files = Files.list(Paths.get(indexPath).getParent())) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 是否为关键帧索引文件（恢复的任务据此判断分析模式）
+     */
+    public boolean isFrameIndex(String path) {
+        return path != null && Paths.get(path).getFileName().toString().equals(INDEX_FILE_NAME);
+    }
+
+    /**
+     * 删除索引文件所在的关键帧目录
+     */
+    public void discard(String indexPath) {
+        if (isFrameIndex(indexPath)) {
+            deleteDirectory(Paths.get(indexPath).getParent());
+        }
+    }
+
+    private void deleteDirectory(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("删除关键帧目录失败: {}", dir, e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.geekonup.service.media;
+
+import cn.hutool.core.util.IdUtil;
+import com.geekonup.service.pipeline.MetricsSource;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地暂存区（源视频本地化）
+ * <p>
+ * 源视频在 NAS 上，分段并行编码会有多个进程同时随机读取同一个文件，两遍编码会完整读取两次，
+ * 两三个任务就能占满 NAS 带宽。需要多次读取源视频的编码先把源视频顺序复制到本地盘（大块 transferTo），
+ * 编码进程只读本地副本；只读取一次的编码（单遍、重新封装、抽帧）仍由 FFmpeg 直接流式读取 NAS，不多复制一次。
+ * 每个任务的副本单独计入空间预算，编码结束即删除；空间不足时不等待，直接读取 NAS。
+ * 编码输出始终写入代理文件目录（ffmpeg.proxy-store.dir），只有该目录配置在 NAS 上时才会写回 NAS。
+ */
+@Slf4j
+@Component
+public class ScratchStore implements MetricsSource {
+
+    // 单次 transferTo 的最大字节数
+    private static final long TRANSFER_CHUNK_BYTES = 64L * 1024 * 1024;
+
+    // 暂存策略：auto（需要多次读取源视频时暂存）/ always / never
+    @Value("${ffmpeg.scratch.mode:auto}")
+    private String mode;
+
+    // 暂存目录，应位于本地 SSD
+    @Value("${ffmpeg.scratch.dir:./data/scratch}")
+    private String scratchDir;
+
+    // 同时存在的副本总大小上限（字节）
+    @Value("${ffmpeg.scratch.max-bytes:107374182400}")
+    private long maxBytes;
+
+    // 复制后需保留的最小磁盘剩余空间（字节）
+    @Value("${ffmpeg.scratch.min-free-bytes:10737418240}")
+    private long minFreeBytes;
+
+    private Path scratchRoot;
+
+    // 已预留（正在复制或使用中）的字节数
+    private long reservedBytes;
+
+    private final AtomicInteger activeStages = new AtomicInteger();
+
+    private final AtomicLong stagedCount = new AtomicLong();
+
+    private final AtomicLong stagedBytes = new AtomicLong();
+
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    private volatile double lastCopyMBps;
+
+    @PostConstruct
+    public void init() throws IOException {
+        scratchRoot = Paths.get(scratchDir).toAbsolutePath();
+        Files.createDirectories(scratchRoot);
+        // 上次进程退出前未删除的副本不会再被使用
+        int leftovers = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(scratchRoot)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                    leftovers++;
+                }
+            }
+        }
+        log.info("本地暂存目录: {}, 暂存策略: {}, 空间预算 {} MB, 清理遗留副本 {} 个",
+                scratchRoot, mode, maxBytes / 1024 / 1024, leftovers);
+    }
+
+    /**
+     * 按编码参数决定是否暂存源视频
+     *
+     * @param videoFile 源视频
+     * @param plan      编码参数
+     * @return 编码应读取的文件，关闭后删除本地副本；不暂存时即源视频本身
+     */
+    public Staged stage(File videoFile, CompressionPlan plan) {
+        if (!shouldStage(plan)) {
+            return new Staged(videoFile, null, 0);
+        }
+        long size = videoFile.length();
+        if (!reserve(size)) {
+            fallbackCount.incrementAndGet();
+            log.warn("本地暂存空间不足，直接读取源视频: {}（{} MB）", videoFile.getAbsolutePath(), size / 1024 / 1024);
+            return new Staged(videoFile, null, 0);
+        }
+
+        Path copy = scratchRoot.resolve(IdUtil.fastSimpleUUID() + extensionOf(videoFile));
+        long start = System.currentTimeMillis();
+        try {
+            copy(videoFile.toPath(), copy, size);
+        } catch (IOException e) {
+            release(size);
+            deleteQuietly(copy);
+            fallbackCount.incrementAndGet();
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("暂存源视频时被中断: {}", videoFile.getAbsolutePath());
+            } else {
+                log.warn("暂存源视频失败，直接读取源视频: {}", videoFile.getAbsolutePath(), e);
+            }
+            return new Staged(videoFile, null, 0);
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        lastCopyMBps = size / 1024.0 / 1024.0 / (elapsed / 1000.0);
+        stagedCount.incrementAndGet();
+        stagedBytes.addAndGet(size);
+        activeStages.incrementAndGet();
+        log.info("源视频已暂存到本地: {} -> {}（{} MB，耗时 {} ms，{} MB/s）", videoFile.getAbsolutePath(), copy,
+                size / 1024 / 1024, elapsed, String.format("%.1f", lastCopyMBps));
+        return new Staged(copy.toFile(), copy, size);
+    }
+
+    private boolean shouldStage(CompressionPlan plan) {
+        return switch (mode.toLowerCase()) {
+            case "always" -> true;
+            case "never" -> false;
+            // 分段并行（多进程随机读取）或两遍编码（完整读取两次）
+            default -> plan.isSegmented() || (!plan.isStreamCopy() && plan.isTwoPass());
+        };
+    }
+
+    /**
+     * 预留副本空间：不超过总预算，且复制后磁盘剩余空间不低于下限
+     */
+    private synchronized boolean reserve(long size) {
+        if (reservedBytes + size > maxBytes) {
+            return false;
+        }
+        File root = scratchRoot.toFile();
+        if (root.getUsableSpace() - size < minFreeBytes) {
+            return false;
+        }
+        reservedBytes += size;
+        return true;
+    }
+
+    private synchronized void release(long size) {
+        reservedBytes = Math.max(0, reservedBytes - size);
+    }
+
+    /**
+     * 大块顺序复制（transferTo 在 Linux 上由内核完成，不经过 Java 堆）
+     */
+    private static void copy(Path source, Path target, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, Math.min(TRANSFER_CHUNK_BYTES, size - position), out);
+                if (transferred <= 0) {
+                    throw new IOException("源视频在复制过程中被截断: " + source);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static String extensionOf(File file) {
+        String name = file.getName();
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(dotIndex) : "";
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除本地副本失败: {}", file, e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "scratch";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("mode", mode);
+        metrics.put("activeStages", activeStages.get());
+        synchronized (this) {
+            metrics.put("reservedBytes", reservedBytes);
+        }
+        metrics.put("stagedCount", stagedCount.get());
+        metrics.put("stagedBytes", stagedBytes.get());
+        metrics.put("fallbackCount", fallbackCount.get());
+        metrics.put("lastCopyMBps", Math.round(lastCopyMBps * 10) / 10.0);
+        return metrics;
+    }
+
+    /**
+     * 编码读取的文件，关闭时删除本地副本并归还空间预算
+     */
+    public class Staged implements AutoCloseable {
+
+        private final File file;
+
+        // 本地副本，未暂存时为 null
+        private final Path copy;
+
+        private final long reserved;
+
+        private Staged(File file, Path copy, long reserved) {
+            this.file = file;
+            this.copy = copy;
+            this.reserved = reserved;
+        }
+
+        public File file() {
+            return file;
+        }
+
+        @Override
+        public void close() {
+            if (copy == null) {
+                return;
+            }
+            deleteQuietly(copy);
+            release(reserved);
+            activeStages.decrementAndGet();
+        }
+    }
+}
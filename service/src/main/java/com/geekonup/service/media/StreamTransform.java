@@ -0,0 +1,23 @@
+package com.geekonup.service.media;
+
+import lombok.Getter;
+
+/**
+ * 生成代理文件的处理方式，按代价从低到高排列
+ */
+@Getter
+public enum StreamTransform {
+
+    // 只保留第一路视频和音频，直接复制到 MP4 容器（丢弃多余的音轨、字幕、数据流）
+    REMUX("重新封装"),
+    // 视频直接复制，音频转码为 AAC（源音频为 PCM 等大体积格式时）
+    AUDIO_TRANSCODE("仅转码音频"),
+    // 视频和音频完整转码
+    TRANSCODE("完整转码");
+
+    private final String description;
+
+    StreamTransform(String description) {
+        this.description = description;
+    }
+}
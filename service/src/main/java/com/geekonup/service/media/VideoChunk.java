@@ -0,0 +1,14 @@
+package com.geekonup.service.media;
+
+import java.io.File;
+
+/**
+ * 分段分析的一个视频片段
+ *
+ * @param index        片段序号（从 0 开始）
+ * @param startSeconds 在完整视频中的起始时间（秒）
+ * @param endSeconds   在完整视频中的结束时间（秒）
+ * @param file         片段文件
+ */
+public record VideoChunk(int index, double startSeconds, double endSeconds, File file) {
+}
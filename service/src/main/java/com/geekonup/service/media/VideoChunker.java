@@ -0,0 +1,230 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 长视频分段分析（map-reduce）
+ * <p>
+ * 时长达到阈值的视频按固定时长切成若干片段，各片段分别调用模型分析后再合并报告：
+ * - 压缩阶段按片段数放大代理文件的目标体积，每个片段都能获得接近单个视频的码率预算
+ * - 分析前在关键帧处无损截取代理文件，个别片段超出模型上限时再对半切分
+ * - 所有任务的片段模型调用共用一个并发上限，避免长视频占满模型配额
+ * 片段文件按任务保存，分析结束后删除。
+ */
+@Slf4j
+@Component
+public class VideoChunker implements MetricsSource {
+
+    // 对半切分的最短片段时长（秒），更短的片段超出上限时不再切分
+    private static final double MIN_SPLIT_SECONDS = 60;
+
+    @Value("${ai.chunked.enabled:true}")
+    private boolean enabled;
+
+    // 时长达到该值（秒）才分段分析
+    @Value("${ai.chunked.min-duration-seconds:1800}")
+    private int minDurationSeconds;
+
+    // 每个片段的时长（分钟）
+    @Value("${ai.chunked.segment-minutes:10}")
+    private int segmentMinutes;
+
+    // 所有任务同时进行的片段模型调用数
+    @Value("${ai.chunked.max-concurrent-calls:4}")
+    private int maxConcurrentCalls;
+
+    // 片段文件目录
+    @Value("${ai.chunked.dir:./data/chunks}")
+    private String chunkDir;
+
+    @Value("${ffmpeg.path}")
+    private String ffmpegPath;
+
+    @Value("${ffmpeg.ffprobe-path:ffprobe}")
+    private String ffprobePath;
+
+    @Value("${ffmpeg.timeout:0}")
+    private int timeoutSeconds;
+
+    @Value("${ffmpeg.stall-timeout:120}")
+    private int stallTimeoutSeconds;
+
+    private Path chunkRoot;
+
+    private Semaphore callPermits;
+
+    private final AtomicLong splitCount = new AtomicLong();
+
+    private final AtomicLong chunkCount = new AtomicLong();
+
+    private final AtomicLong resplitCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        chunkRoot = Paths.get(chunkDir).toAbsolutePath();
+        Files.createDirectories(chunkRoot);
+        callPermits = new Semaphore(Math.max(1, maxConcurrentCalls), true);
+    }
+
+    /**
+     * 片段数，未启用或时长不足时为 1（不分段）
+     */
+    public int chunkCount(MediaInfo mediaInfo) {
+        if (!enabled || mediaInfo == null || mediaInfo.getDurationSeconds() < minDurationSeconds) {
+            return 1;
+        }
+        return (int) Math.ceil(mediaInfo.getDurationSeconds() / segmentSeconds());
+    }
+
+    /**
+     * 结果缓存 key 中区分分段方式的后缀
+     */
+    public String cacheSuffix() {
+        return "|chunked-" + segmentSeconds();
+    }
+
+    private double segmentSeconds() {
+        return Math.max(1, segmentMinutes) * 60.0;
+    }
+
+    /**
+     * 在关键帧处无损截取代理文件，超出模型上限的片段对半切分
+     *
+     * @param videoFile       代理文件（或直接使用的原文件）
+     * @param durationSeconds 视频时长（秒）
+     * @param chunks          片段数
+     * @param jobId           任务ID（每个任务单独一个目录）
+     * @return 按时间排序的片段
+     */
+    public List<VideoChunk> split(File videoFile, double durationSeconds, int chunks, String jobId) throws IOException {
+        Path jobDir = chunkRoot.resolve(jobId);
+        deleteDirectory(jobDir);
+        Files.createDirectories(jobDir);
+
+        List<Double> cuts = new ArrayList<>();
+        cuts.add(0.0);
+        for (int i = 1; i < chunks; i++) {
+            double keyframe = FfmpegUtil.findKeyframeAfter(ffprobePath, videoFile.getAbsolutePath(),
+                    durationSeconds * i / chunks, 30);
+            if (keyframe > cuts.get(cuts.size() - 1) && keyframe < durationSeconds) {
+                cuts.add(keyframe);
+            }
+        }
+        cuts.add(durationSeconds);
+
+        Deque<double[]> ranges = new ArrayDeque<>();
+        for (int i = 0; i < cuts.size() - 1; i++) {
+            ranges.add(new double[]{cuts.get(i), cuts.get(i + 1)});
+        }
+        List<double[]> done = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        int fileIndex = 0;
+        while (!ranges.isEmpty()) {
+            double[] range = ranges.poll();
+            File file = jobDir.resolve(String.format("chunk_%03d.mp4", fileIndex++)).toFile();
+            // 最后一段读到文件末尾，避免时长误差截掉结尾
+            double length = range[1] >= durationSeconds ? -1 : range[1] - range[0];
+            if (!FfmpegUtil.cutVideo(ffmpegPath, videoFile.getAbsolutePath(), file.getPath(), range[0], length,
+                    timeoutSeconds, stallTimeoutSeconds)) {
+                throw new IOException("截取视频片段失败: " + String.format("%.1f - %.1f", range[0], range[1]));
+            }
+            if (file.length() > VideoCompressor.MAX_SIZE_FOR_AI && range[1] - range[0] >= MIN_SPLIT_SECONDS * 2) {
+                double middle = FfmpegUtil.findKeyframeAfter(ffprobePath, videoFile.getAbsolutePath(),
+                        (range[0] + range[1]) / 2, 30);
+                if (middle > range[0] && middle < range[1]) {
+                    log.info("片段 {} MB 超过上限，对半切分: {} - {}", file.length() / 1024 / 1024,
+                            String.format("%.1f", range[0]), String.format("%.1f", range[1]));
+                    resplitCount.incrementAndGet();
+                    Files.deleteIfExists(file.toPath());
+                    ranges.addFirst(new double[]{middle, range[1]});
+                    ranges.addFirst(new double[]{range[0], middle});
+                    continue;
+                }
+            }
+            if (file.length() > VideoCompressor.MAX_SIZE_FOR_AI) {
+                throw new IOException("视频片段超过100MB限制且无法继续切分: " + file.getName());
+            }
+            done.add(range);
+            files.add(file);
+        }
+
+        List<VideoChunk> result = new ArrayList<>();
+        for (int i = 0; i < done.size(); i++) {
+            result.add(new VideoChunk(i, done.get(i)[0], done.get(i)[1], files.get(i)));
+        }
+        result.sort(Comparator.comparingDouble(VideoChunk::startSeconds));
+        splitCount.incrementAndGet();
+        chunkCount.addAndGet(result.size());
+        log.info("视频已切分为 {} 个片段: {}", result.size(), videoFile.getName());
+        return result;
+    }
+
+    /**
+     * 占用一个片段模型调用名额执行调用，名额不足时排队
+     */
+    public <T> T callWithPermit(Callable<T> call) throws Exception {
+        callPermits.acquire();
+        try {
+            return call.call();
+        } finally {
+            callPermits.release();
+        }
+    }
+
+    /**
+     * 删除任务的片段文件
+     */
+    public void discard(String jobId) {
+        deleteDirectory(chunkRoot.resolve(jobId));
+    }
+
+    private static void deleteDirectory(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("删除片段目录失败: {}", dir, e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "chunkedAnalysis";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("splitVideos", splitCount.get());
+        metrics.put("chunks", chunkCount.get());
+        metrics.put("resplits", resplitCount.get());
+        metrics.put("activeCalls", Math.max(1, maxConcurrentCalls) - callPermits.availablePermits());
+        metrics.put("queuedCalls", callPermits.getQueueLength());
+        return metrics;
+    }
+}
@@ -0,0 +1,683 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.util.FfmpegProgress;
+import com.geekonup.service.util.FfmpegUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 视频压缩：为 AI 模型生成体积不超过上限的代理文件
+ * <p>
+ * 默认使用目标体积模式：按 {@link MediaProbe} 读取的时长计算"目标体积 / 时长"的视频码率，
+ * 再按每像素码率选择分辨率和帧率（不超过源视频的分辨率和帧率，没有音频流时不输出音频）。码率受体积上限约束时使用两遍编码，保证一次压缩就落在上限以内；
+ * 时长较短、码率触及上限值时输出远小于目标体积，单遍编码即可。
+ * 长视频按关键帧分段、在单个任务的核数预算内并行编码，再无损拼接。
+ * 完整转码之前先尝试代价更低的处理：源视频已是 H.264 时，按元数据估算重新封装（丢弃多余的流）
+ * 或仅转码音频后的体积，能落在上限以内就不重新编码视频；实际体积仍超出时再完整转码。
+ * 读取不到时长时回退到按文件大小分档的旧策略。
+ * 分段分析的长视频按片段数放大目标体积和上限，分析前再切分为每段不超过上限的片段。
+ * 低优先级的后台压缩（新视频预处理）不分段、只在 CPU 预算空闲时编码，有分析请求排队时被抢占并返回失败。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VideoCompressor {
+
+    // AI模型限制：只能接收100M以内的视频
+    public static final long MAX_SIZE_FOR_AI = 100L * 1024 * 1024;
+
+    // 后台压缩因 CPU 预算不空闲或被抢占而未完成时的失败原因
+    public static final String PREEMPTED = "后台压缩让出 CPU 给分析请求";
+
+    // 小于此值不压缩，直接使用原文件
+    private static final long SKIP_COMPRESSION_THRESHOLD = 99L * 1024 * 1024;
+
+    // 分段分析时每个片段的目标体积占比：码率是全片平均值，片段体积随画面复杂度波动，预留余量
+    private static final double CHUNK_FILL = 0.85;
+
+    // 单遍 ABR 的实际码率可能偏离目标数个百分点，预留更多余量
+    private static final double ONE_PASS_MARGIN = 0.08;
+
+    private static final double TWO_PASS_MARGIN = 0.03;
+
+    // MP4 容器开销
+    private static final double CONTAINER_OVERHEAD = 0.01;
+
+    // 快速路径估算体积需低于上限的比例（流码率是平均值，预留余量）
+    private static final double FAST_PATH_MARGIN = 0.03;
+
+    // 可直接复制到 MP4 且模型能解码的像素格式
+    private static final List<String> COPYABLE_PIXEL_FORMATS = List.of("yuv420p", "yuvj420p");
+
+    private static final int MIN_AUDIO_BITRATE_KBPS = 32;
+
+    private static final int MIN_VIDEO_BITRATE_KBPS = 50;
+
+    // 每像素每帧的最低码率（libx264 slow 预设下画面仍可辨认的经验值）
+    private static final double MIN_BITS_PER_PIXEL = 0.06;
+
+    // 分辨率/帧率阶梯，从高到低选择第一个码率足够的档位
+    private static final List<Rung> LADDER = List.of(
+            new Rung("1920:1080", 1920, 1080, 24),
+            new Rung("1280:720", 1280, 720, 24),
+            new Rung("1280:720", 1280, 720, 18),
+            new Rung("854:480", 854, 480, 18),
+            new Rung("640:360", 640, 360, 15)
+    );
+
+    private final ProxyStore proxyStore;
+
+    private final MediaProbe mediaProbe;
+
+    private final FfmpegGovernor governor;
+
+    private final ScratchStore scratchStore;
+
+    // FFmpeg路径
+    @Value("${ffmpeg.path}")
+    private String ffmpegPath;
+
+    // ffprobe路径（分段编码查找关键帧）
+    @Value("${ffmpeg.ffprobe-path:ffprobe}")
+    private String ffprobePath;
+
+    // 压缩超时时间（秒），0 表示只按进度停滞判断
+    @Value("${ffmpeg.timeout:0}")
+    private int compressionTimeout;
+
+    // 编码进度停滞超过该时间（秒）即终止 FFmpeg
+    @Value("${ffmpeg.stall-timeout:120}")
+    private int stallTimeout;
+
+    // 压缩参数决策方式：target-size / bucket
+    @Value("${ffmpeg.compression.mode:target-size}")
+    private String compressionMode;
+
+    // 目标体积（MB），需小于模型的 100MB 上限
+    @Value("${ffmpeg.compression.target-size-mb:95}")
+    private int targetSizeMb;
+
+    @Value("${ffmpeg.compression.audio-bitrate-kbps:128}")
+    private int audioBitrateKbps;
+
+    // 视频码率上限（kbps），短视频不必用满目标体积
+    @Value("${ffmpeg.compression.max-video-bitrate-kbps:6000}")
+    private int maxVideoBitrateKbps;
+
+    // 两遍编码策略：auto / always / never
+    @Value("${ffmpeg.compression.two-pass:auto}")
+    private String twoPassPolicy;
+
+    // 是否尝试重新封装 / 仅转码音频的快速路径
+    @Value("${ffmpeg.compression.stream-copy:true}")
+    private boolean streamCopyEnabled;
+
+    // 长视频分段并行编码
+    @Value("${ffmpeg.parallel.enabled:true}")
+    private boolean parallelEnabled;
+
+    // 时长达到该值（秒）才分段
+    @Value("${ffmpeg.parallel.min-duration-seconds:600}")
+    private int parallelMinDuration;
+
+    // 每个分段的最短时长（秒），分段过短时关键帧切分和进程启动的开销占比过高
+    @Value("${ffmpeg.parallel.min-segment-seconds:120}")
+    private int parallelMinSegment;
+
+    // 单个任务可使用的核数，0 表示 CPU 预算的一半（两个长视频任务即可占满机器）
+    @Value("${ffmpeg.parallel.cores-per-job:0}")
+    private int coresPerJob;
+
+    // 每个分段编码进程的线程数
+    @Value("${ffmpeg.parallel.threads-per-segment:4}")
+    private int threadsPerSegment;
+
+    /**
+     * 压缩视频到模型可接收的体积以内，相同源视频和编码参数直接复用已有的代理文件
+     *
+     * @param videoFile         源视频文件
+     * @param sourceFingerprint 源视频指纹，用于复用已有的代理文件
+     * @param progress          编码进度，供任务状态接口展示
+     * @return 压缩结果，包含成功状态和压缩后的视频路径
+     */
+    public CompressionResult compress(File videoFile, String sourceFingerprint, FfmpegProgress progress) {
+        return compress(videoFile, sourceFingerprint, progress, 1);
+    }
+
+    /**
+     * 压缩视频，分段分析时按片段数放大目标体积和上限
+     *
+     * @param videoFile         源视频文件
+     * @param sourceFingerprint 源视频指纹，用于复用已有的代理文件
+     * @param progress          编码进度，供任务状态接口展示
+     * @param parts             分析时的片段数，不分段时为 1
+     * @return 压缩结果，包含成功状态和压缩后的视频路径
+     */
+    public CompressionResult compress(File videoFile, String sourceFingerprint, FfmpegProgress progress, int parts) {
+        return compress(videoFile, sourceFingerprint, progress, parts, false);
+    }
+
+    /**
+     * 压缩视频，分段分析时按片段数放大目标体积和上限
+     *
+     * @param videoFile         源视频文件
+     * @param sourceFingerprint 源视频指纹，用于复用已有的代理文件
+     * @param progress          编码进度，供任务状态接口展示
+     * @param parts             分析时的片段数，不分段时为 1
+     * @param background        是否为低优先级的后台压缩：CPU 预算不空闲时不编码，有编码排队时被抢占
+     * @return 压缩结果，包含成功状态和压缩后的视频路径；后台压缩未能完成时为失败
+     */
+    public CompressionResult compress(File videoFile, String sourceFingerprint, FfmpegProgress progress, int parts,
+                                      boolean background) {
+        long limit = MAX_SIZE_FOR_AI * Math.max(1, parts);
+        double budgetScale = parts > 1 ? parts * CHUNK_FILL : 1.0;
+
+        // 记录原文件大小
+        long originalFileSize = videoFile.length();
+        double originalSizeMB = originalFileSize / 1024.0 / 1024.0;
+        log.info("原视频文件大小: {} MB", String.format("%.2f", originalSizeMB));
+
+        // 如果视频小于99MB（分段分析时按片段数放大），直接返回原文件路径，不压缩
+        if (originalFileSize < SKIP_COMPRESSION_THRESHOLD * Math.max(1, parts)) {
+            log.info("视频小于{}MB，无需压缩，直接使用原文件: {}", SKIP_COMPRESSION_THRESHOLD * Math.max(1, parts) / 1024 / 1024,
+                    videoFile.getAbsolutePath());
+            return CompressionResult.success(videoFile.getAbsolutePath());
+        }
+
+        // 重新封装或仅转码音频即可满足上限时，不做完整转码
+        CompressionResult fastResult = tryStreamCopy(videoFile, sourceFingerprint, progress, limit, background);
+        if (fastResult != null) {
+            return fastResult;
+        }
+        if (progress.isCancelled()) {
+            return CompressionResult.failure(PREEMPTED);
+        }
+
+        CompressionPlan plan = plan(videoFile, CompressionMode.fromValue(compressionMode), budgetScale);
+        if (background) {
+            // 后台压缩只占单个编码的线程数，编码参数签名不变，分析请求照常复用代理文件
+            plan = plan.unsegmented();
+        }
+        log.info("视频需要压缩，使用{}模式：{}", plan.getMode().getDescription(), plan);
+
+        // 源视频未变化且编码参数相同时，直接复用已有的代理文件
+        String proxyKey = proxyStore.keyFor(sourceFingerprint, plan.signature());
+        Path existingProxy = proxyStore.acquire(proxyKey);
+        if (existingProxy != null) {
+            log.info("复用已有的压缩视频: {}", existingProxy);
+            return CompressionResult.success(existingProxy.toString(), proxyKey);
+        }
+
+        if (!FfmpegUtil.checkFfmpegAvailable(ffmpegPath)) {
+            log.warn("FFmpeg 不可用，请检查配置路径: {}", ffmpegPath);
+            return CompressionResult.failure("FFmpeg 不可用，请检查配置");
+        }
+
+        // 检查磁盘空间（按上限的 1.2 倍预估输出大小），不足时淘汰旧代理文件
+        Path tempOutput;
+        try {
+            // 分段编码时分段文件和拼接结果同时存在，按两倍预估
+            long expectedBytes = limit * 6 / 5 * (plan.isSegmented() ? 2 : 1);
+            tempOutput = proxyStore.prepareEncode(proxyKey, expectedBytes);
+        } catch (IOException e) {
+            log.error("无法开始压缩: {}", e.getMessage());
+            return CompressionResult.failure("无法开始压缩: " + e.getMessage());
+        }
+
+        MediaInfo media = mediaProbe.probe(videoFile);
+        if (media != null) {
+            progress.setDurationSeconds(media.getDurationSeconds());
+        }
+        // 需要多次读取源视频时先暂存到本地，重新压缩同样读取本地副本
+        try (ScratchStore.Staged input = scratchStore.stage(videoFile, plan)) {
+            log.info("开始压缩视频: {} -> {}", input.file().getAbsolutePath(), tempOutput);
+            if (!encode(videoFile, input.file(), plan, tempOutput, progress, background)) {
+                proxyStore.discard(tempOutput);
+                if (background) {
+                    log.info("后台压缩未完成（CPU 预算不空闲或被抢占）: {}", videoFile.getAbsolutePath());
+                    return CompressionResult.failure(PREEMPTED);
+                }
+                log.error("视频压缩失败: {}", videoFile.getAbsolutePath());
+                return CompressionResult.failure("视频压缩失败");
+            }
+
+            long compressedFileSize = tempOutput.toFile().length();
+            if (compressedFileSize > limit) {
+                // 超出上限时按超出比例降低码率，使用两遍编码重新压缩一次
+                log.warn("压缩后文件大小 {} MB 超过{}MB限制，降低码率重新压缩",
+                        String.format("%.2f", compressedFileSize / 1024.0 / 1024.0), limit / 1024 / 1024);
+                CompressionPlan fitPlan = refit(videoFile, plan, compressedFileSize, limit, budgetScale);
+                if (fitPlan == null || !encode(videoFile, input.file(), fitPlan, tempOutput, progress, background)
+                        || tempOutput.toFile().length() > limit) {
+                    log.error("重新压缩后仍无法满足{}MB限制: {}", limit / 1024 / 1024, videoFile.getAbsolutePath());
+                    proxyStore.discard(tempOutput);
+                    return CompressionResult.failure("压缩后文件仍超过100MB限制");
+                }
+            }
+        }
+
+        return commitProxy(videoFile, plan, proxyKey, tempOutput);
+    }
+
+    /**
+     * 尝试快速路径：视频流直接复制，只重新封装或转码音频
+     *
+     * @return 压缩结果；不适用或实际体积仍超出上限时返回 null，由调用方继续完整转码
+     */
+    private CompressionResult tryStreamCopy(File videoFile, String sourceFingerprint, FfmpegProgress progress,
+                                            long limit, boolean background) {
+        MediaInfo media = mediaProbe.probe(videoFile);
+        CompressionPlan plan = streamCopyPlan(media, limit);
+        if (plan == null) {
+            return null;
+        }
+        log.info("视频流可直接复用，尝试{}：{}", plan.getTransform().getDescription(), plan);
+
+        String proxyKey = proxyStore.keyFor(sourceFingerprint, plan.signature());
+        Path existingProxy = proxyStore.acquire(proxyKey);
+        if (existingProxy != null) {
+            log.info("复用已有的压缩视频: {}", existingProxy);
+            return CompressionResult.success(existingProxy.toString(), proxyKey);
+        }
+        if (!FfmpegUtil.checkFfmpegAvailable(ffmpegPath)) {
+            // 交给完整转码流程统一报错
+            return null;
+        }
+
+        Path tempOutput;
+        try {
+            tempOutput = proxyStore.prepareEncode(proxyKey, limit);
+        } catch (IOException e) {
+            log.warn("无法开始{}，改为完整转码: {}", plan.getTransform().getDescription(), e.getMessage());
+            return null;
+        }
+        progress.setDurationSeconds(media.getDurationSeconds());
+        if (!encode(videoFile, videoFile, plan, tempOutput, progress, background)) {
+            proxyStore.discard(tempOutput);
+            if (progress.isCancelled()) {
+                return null;
+            }
+            log.warn("{}失败，改为完整转码: {}", plan.getTransform().getDescription(), videoFile.getAbsolutePath());
+            return null;
+        }
+        long outputSize = tempOutput.toFile().length();
+        if (outputSize > limit) {
+            log.warn("{}后文件大小 {} MB 仍超过{}MB限制，改为完整转码", plan.getTransform().getDescription(),
+                    String.format("%.2f", outputSize / 1024.0 / 1024.0), limit / 1024 / 1024);
+            proxyStore.discard(tempOutput);
+            return null;
+        }
+        return commitProxy(videoFile, plan, proxyKey, tempOutput);
+    }
+
+    /**
+     * 按元数据选择代价最低且估算体积能落在上限以内的快速路径
+     *
+     * @param limit 体积上限（字节）
+     * @return 快速路径参数，视频流无法直接复用或估算体积超出上限时返回 null
+     */
+    private CompressionPlan streamCopyPlan(MediaInfo media, long limit) {
+        if (!streamCopyEnabled || media == null || !"h264".equals(media.getVideoCodec())) {
+            return null;
+        }
+        if (media.getPixelFormat() != null && !COPYABLE_PIXEL_FORMATS.contains(media.getPixelFormat())) {
+            return null;
+        }
+        // 视频流没有记录码率时（如 mkv）用总码率扣除音频码率估算
+        long videoBitRate = media.getVideoBitRate();
+        if (videoBitRate <= 0 && (!media.hasAudio() || media.getAudioBitRate() > 0)) {
+            videoBitRate = media.getBitRate() - media.getAudioBitRate();
+        }
+        if (videoBitRate <= 0) {
+            return null;
+        }
+        double fastPathLimit = limit * (1 - FAST_PATH_MARGIN);
+        double videoBytes = videoBitRate * media.getDurationSeconds() / 8;
+
+        // 源音频已是 AAC（或没有音频）时直接复制，只丢弃多余的流
+        boolean audioCopyable = !media.hasAudio() || ("aac".equals(media.getAudioCodec()) && media.getAudioBitRate() > 0);
+        if (audioCopyable) {
+            double audioBytes = media.getAudioBitRate() * media.getDurationSeconds() / 8;
+            if ((videoBytes + audioBytes) * (1 + CONTAINER_OVERHEAD) <= fastPathLimit) {
+                return CompressionPlan.streamCopy(StreamTransform.REMUX, 0, compressionTimeout);
+            }
+        }
+        if (media.hasAudio()) {
+            int audioKbps = audioBitrateKbps;
+            if (media.getAudioBitRate() > 0) {
+                audioKbps = (int) Math.min(audioKbps, Math.max(MIN_AUDIO_BITRATE_KBPS, media.getAudioBitRate() / 1000));
+            }
+            double audioBytes = audioKbps * 1000.0 * media.getDurationSeconds() / 8;
+            if ((videoBytes + audioBytes) * (1 + CONTAINER_OVERHEAD) <= fastPathLimit) {
+                return CompressionPlan.streamCopy(StreamTransform.AUDIO_TRANSCODE, audioKbps, compressionTimeout);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 提交代理文件并记录压缩结果
+     */
+    private CompressionResult commitProxy(File videoFile, CompressionPlan plan, String proxyKey, Path tempOutput) {
+        long compressedFileSize = tempOutput.toFile().length();
+        Path proxyFile;
+        try {
+            proxyFile = proxyStore.commit(proxyKey, tempOutput, videoFile, plan.signature());
+        } catch (IOException e) {
+            log.error("保存压缩视频失败: {}", tempOutput, e);
+            proxyStore.discard(tempOutput);
+            return CompressionResult.failure("保存压缩视频失败: " + e.getMessage());
+        }
+
+        // 记录压缩后文件大小
+        double compressedSizeMB = compressedFileSize / 1024.0 / 1024.0;
+        double compressionRatio = (1.0 - (double) compressedFileSize / videoFile.length()) * 100;
+        log.info("视频压缩成功（{}）: {}", plan.getTransform().getDescription(), proxyFile);
+        log.info("压缩后文件大小: {} MB, 压缩率: {}%",
+                String.format("%.2f", compressedSizeMB),
+                String.format("%.2f", compressionRatio));
+        return CompressionResult.success(proxyFile.toString(), proxyKey);
+    }
+
+    /**
+     * 确定压缩参数，目标体积模式读取不到时长时回退到分档模式
+     */
+    public CompressionPlan plan(File videoFile, CompressionMode mode) {
+        return plan(videoFile, mode, 1.0);
+    }
+
+    /**
+     * 确定压缩参数
+     *
+     * @param budgetScale 目标体积的缩放系数（分段分析时按片段数放大）
+     */
+    private CompressionPlan plan(File videoFile, CompressionMode mode, double budgetScale) {
+        if (mode == CompressionMode.TARGET_SIZE) {
+            MediaInfo media = mediaProbe.probe(videoFile);
+            if (media != null) {
+                return targetSizePlan(media, budgetScale, false);
+            }
+            log.warn("无法读取视频时长，回退到按文件大小分档压缩: {}", videoFile.getAbsolutePath());
+        }
+        return bucketPlan(videoFile.length());
+    }
+
+    /**
+     * 按指定参数编码，先向并发控制申请 CPU 预算，预算不足时排队
+     */
+    public boolean encode(File videoFile, CompressionPlan plan, Path output, FfmpegProgress progress) {
+        return encode(videoFile, videoFile, plan, output, progress, false);
+    }
+
+    /**
+     * 按指定参数编码，FFmpeg 读取 input（源视频或其本地副本），元数据按源视频读取
+     *
+     * @param background 是否为低优先级的后台编码：CPU 预算不空闲时直接返回失败，被抢占时取消编码
+     */
+    private boolean encode(File videoFile, File input, CompressionPlan plan, Path output, FfmpegProgress progress,
+                           boolean background) {
+        // 重新封装只做复制，音频转码也只占一个核
+        int cores = plan.isStreamCopy() ? 1
+                : plan.isSegmented() ? plan.getSegments() * plan.getThreadsPerSegment()
+                : governor.threadsPerEncode();
+        if (background) {
+            FfmpegGovernor.Lease lease = governor.acquireBackground(cores, videoFile.getName() + "（预处理）", () -> {
+                progress.cancel();
+                return true;
+            });
+            if (lease == null) {
+                progress.cancel();
+                return false;
+            }
+            try (lease) {
+                return encode(videoFile, input.getAbsolutePath(), plan, output, lease.threads(), progress);
+            }
+        }
+        try (FfmpegGovernor.Lease lease = governor.acquire(cores, videoFile.getName())) {
+            return encode(videoFile, input.getAbsolutePath(), plan, output, lease.threads(), progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("等待编码时被中断: {}", videoFile.getAbsolutePath());
+            return false;
+        }
+    }
+
+    private boolean encode(File videoFile, String inputPath, CompressionPlan plan, Path output, int threads,
+                           FfmpegProgress progress) {
+        if (plan.isStreamCopy()) {
+            MediaInfo media = mediaProbe.probe(videoFile);
+            return FfmpegUtil.remuxVideo(ffmpegPath, inputPath, output.toString(),
+                    media == null || media.hasAudio(), plan.getAudioBitrateKbps(),
+                    plan.getTimeout(), stallTimeout, progress);
+        }
+        if (plan.getMode() == CompressionMode.BUCKET) {
+            return FfmpegUtil.compressVideo(ffmpegPath, inputPath, output.toString(),
+                    plan.getResolution(), plan.getFrameRate(), plan.getCrf(), threads, plan.getTimeout(),
+                    stallTimeout, progress);
+        }
+        MediaInfo media = plan.isSegmented() ? mediaProbe.probe(videoFile) : null;
+        if (media != null) {
+            return FfmpegUtil.compressVideoToBitrateSegmented(ffmpegPath, ffprobePath,
+                    inputPath, output.toString(),
+                    plan.getResolution(), plan.getFrameRate(), plan.getVideoBitrateKbps(),
+                    plan.getAudioBitrateKbps(), plan.isTwoPass(), media.getDurationSeconds(),
+                    plan.getSegments(), plan.getThreadsPerSegment(), plan.getTimeout(),
+                    stallTimeout, progress);
+        }
+        return FfmpegUtil.compressVideoToBitrate(ffmpegPath, inputPath, output.toString(),
+                plan.getResolution(), plan.getFrameRate(), plan.getVideoBitrateKbps(),
+                plan.getAudioBitrateKbps(), plan.isTwoPass(), threads, plan.getTimeout(),
+                stallTimeout, progress);
+    }
+
+    /**
+     * 分别使用分档模式、目标体积模式（及适用时的快速路径）压缩同一个视频，对比输出体积和编码耗时
+     * 输出写入临时目录，结束后删除，不进入代理文件存储
+     */
+    public Map<String, Object> benchmark(File videoFile) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("source", videoFile.getAbsolutePath());
+        report.put("sourceBytes", videoFile.length());
+        MediaInfo media = mediaProbe.probe(videoFile);
+        report.put("durationSeconds", media != null ? media.getDurationSeconds() : -1);
+        report.put("limitBytes", MAX_SIZE_FOR_AI);
+
+        // 各模式的参数，适用时加入快速路径
+        Map<String, CompressionPlan> plans = new LinkedHashMap<>();
+        for (CompressionMode mode : CompressionMode.values()) {
+            plans.put(mode.getValue(), plan(videoFile, mode));
+        }
+        CompressionPlan streamCopyPlan = streamCopyPlan(media, MAX_SIZE_FOR_AI);
+        if (streamCopyPlan != null) {
+            plans.put("stream-copy", streamCopyPlan);
+        }
+
+        Path workDir = Files.createTempDirectory("compression-benchmark");
+        try {
+            for (Map.Entry<String, CompressionPlan> entry : plans.entrySet()) {
+                CompressionPlan plan = entry.getValue();
+                Path output = workDir.resolve(entry.getKey() + ".mp4");
+                FfmpegProgress progress = new FfmpegProgress();
+                if (media != null) {
+                    progress.setDurationSeconds(media.getDurationSeconds());
+                }
+                long start = System.currentTimeMillis();
+                boolean success = encode(videoFile, plan, output, progress);
+                long elapsed = System.currentTimeMillis() - start;
+                long size = success ? output.toFile().length() : 0;
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("plan", plan.toString());
+                result.put("success", success);
+                result.put("encodeMillis", elapsed);
+                result.put("encodeSpeed", progress.snapshot().get("speed"));
+                result.put("outputBytes", size);
+                result.put("outputMB", String.format("%.2f", size / 1024.0 / 1024.0));
+                result.put("fitsLimit", success && size <= MAX_SIZE_FOR_AI);
+                // 输出体积占上限的比例，越接近 1 画质预算利用得越充分
+                result.put("limitUtilization", String.format("%.3f", (double) size / MAX_SIZE_FOR_AI));
+                report.put(entry.getKey(), result);
+                log.info("压缩对比 [{}]: {}", entry.getKey(), result);
+                Files.deleteIfExists(output);
+            }
+        } finally {
+            try (var files = Files.list(workDir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(workDir);
+        }
+        return report;
+    }
+
+    /**
+     * 按时长计算目标体积模式的编码参数
+     *
+     * @param media        源视频元数据
+     * @param budgetScale  目标体积的缩放系数，分段分析时按片段数放大，重新压缩时再按比例缩小
+     * @param forceTwoPass 是否强制两遍编码
+     */
+    private CompressionPlan targetSizePlan(MediaInfo media, double budgetScale, boolean forceTwoPass) {
+        double totalKbps = targetSizeMb * 1024.0 * 1024 * 8 * budgetScale / media.getDurationSeconds() / 1000;
+        // 超长视频的总码率很低，适当压低音频码率，把预算留给画面；没有音频流时全部留给画面
+        int audioKbps = 0;
+        if (media.hasAudio()) {
+            audioKbps = (int) Math.min(audioBitrateKbps, Math.max(MIN_AUDIO_BITRATE_KBPS, totalKbps * 0.2));
+            // 不超过源音频码率，重新编码不会提升音质
+            if (media.getAudioBitRate() > 0) {
+                audioKbps = (int) Math.min(audioKbps, Math.max(MIN_AUDIO_BITRATE_KBPS, media.getAudioBitRate() / 1000));
+            }
+        }
+
+        // 单遍编码的码率已触及上限值时，输出远小于目标体积，无需精确控制
+        boolean twoPass = forceTwoPass || switch (twoPassPolicy.toLowerCase()) {
+            case "always" -> true;
+            case "never" -> false;
+            default -> videoKbps(totalKbps, audioKbps, ONE_PASS_MARGIN) < maxVideoBitrateKbps;
+        };
+        int videoKbps = Math.min(maxVideoBitrateKbps,
+                videoKbps(totalKbps, audioKbps, twoPass ? TWO_PASS_MARGIN : ONE_PASS_MARGIN));
+        if (videoKbps < MIN_VIDEO_BITRATE_KBPS) {
+            log.warn("视频过长，目标体积内可分配的视频码率仅 {}k，按最低码率 {}k 编码", videoKbps, MIN_VIDEO_BITRATE_KBPS);
+            videoKbps = MIN_VIDEO_BITRATE_KBPS;
+        }
+
+        Rung rung = LADDER.get(LADDER.size() - 1).fitTo(media);
+        for (Rung candidate : LADDER) {
+            Rung fitted = candidate.fitTo(media);
+            if (fitted.bitsPerPixel(videoKbps) >= MIN_BITS_PER_PIXEL) {
+                rung = fitted;
+                break;
+            }
+        }
+        int segments = segmentCount(media.getDurationSeconds());
+        return CompressionPlan.targetSize(rung.resolution(), rung.frameRate(), videoKbps, audioKbps,
+                twoPass, segments, segments > 1 ? threadsPerSegment : 0, compressionTimeout);
+    }
+
+    /**
+     * 分段数：单个任务的核数预算能同时运行的编码进程数，且每段不短于最短分段时长
+     */
+    private int segmentCount(double durationSeconds) {
+        if (!parallelEnabled || durationSeconds < parallelMinDuration) {
+            return 1;
+        }
+        int cores = coresPerJob > 0 ? coresPerJob : Math.max(1, governor.cpuBudget() / 2);
+        int workers = Math.max(1, cores / Math.max(1, threadsPerSegment));
+        int bySegmentLength = (int) (durationSeconds / Math.max(1, parallelMinSegment));
+        return Math.max(1, Math.min(workers, bySegmentLength));
+    }
+
+    /**
+     * 输出超出上限后重新压缩使用的参数：按实际超出比例缩小目标体积，并强制两遍编码
+     *
+     * @param limit           体积上限（字节）
+     * @param baseBudgetScale 首次压缩使用的目标体积缩放系数
+     */
+    private CompressionPlan refit(File videoFile, CompressionPlan plan, long actualSize, long limit,
+                                  double baseBudgetScale) {
+        MediaInfo media = mediaProbe.probe(videoFile);
+        if (media == null) {
+            return null;
+        }
+        double budgetScale = plan.getMode() == CompressionMode.TARGET_SIZE
+                ? baseBudgetScale * Math.min(1.0, (double) limit / actualSize) * 0.95
+                : baseBudgetScale;
+        CompressionPlan fitPlan = targetSizePlan(media, budgetScale, true);
+        log.info("重新压缩参数: {}", fitPlan);
+        return fitPlan;
+    }
+
+    /**
+     * 扣除余量、容器开销和音频码率后留给视频的码率
+     */
+    private static int videoKbps(double totalKbps, int audioKbps, double margin) {
+        return (int) (totalKbps * (1 - margin) * (1 - CONTAINER_OVERHEAD) - audioKbps);
+    }
+
+    /**
+     * 根据原文件大小动态确定压缩配置（分档模式）
+     * 目标：确保压缩后文件 < 100MB
+     *
+     * 基于测试数据：
+     * - 5.78GB → 219MB (1920:1080, 24fps, CRF=23): 压缩率约 3.79%
+     * - 5.78GB → 80.37MB (1280:720, 24fps, CRF=25): 压缩率约 1.39%
+     * 原先按档位设置的固定超时已由进度停滞检测取代，统一使用 ffmpeg.timeout
+     */
+    private CompressionPlan bucketPlan(long originalFileSize) {
+        double originalSizeMB = originalFileSize / 1024.0 / 1024.0;
+
+        // 根据文件大小选择压缩策略
+        if (originalSizeMB < 200) {
+            // 200MB以下：轻微压缩，保持较高画质
+            return CompressionPlan.bucket("1920:1080", 24, 23, compressionTimeout);
+        } else if (originalSizeMB < 1000) {
+            // 200MB-1GB：中等压缩
+            return CompressionPlan.bucket("1280:720", 24, 25, compressionTimeout);
+        } else if (originalSizeMB < 3000) {
+            // 1GB-3GB：较强压缩
+            return CompressionPlan.bucket("1280:720", 24, 25, compressionTimeout);
+        } else if (originalSizeMB < 6000) {
+            // 3GB-6GB：强压缩，降低帧率
+            return CompressionPlan.bucket("1280:720", 20, 25, compressionTimeout);
+        } else {
+            // 6GB以上：最强压缩，最低帧率
+            return CompressionPlan.bucket("1280:720", 18, 25, compressionTimeout);
+        }
+    }
+
+    /**
+     * 分辨率/帧率档位
+     */
+    private record Rung(String resolution, int width, int height, int frameRate) {
+
+        double bitsPerPixel(int videoKbps) {
+            return videoKbps * 1000.0 / ((double) width * height * frameRate);
+        }
+
+        /**
+         * 按源视频换算实际输出尺寸：缩放滤镜保持宽高比（竖屏视频输出像素更少），
+         * 源视频小于档位时保持原尺寸，帧率不超过源帧率
+         */
+        Rung fitTo(MediaInfo media) {
+            if (media.getWidth() <= 0 || media.getHeight() <= 0) {
+                return this;
+            }
+            int fps = media.getFrameRate() > 0 ? Math.min(frameRate, (int) Math.ceil(media.getFrameRate())) : frameRate;
+            double scale = Math.min((double) width / media.getWidth(), (double) height / media.getHeight());
+            if (scale >= 1) {
+                return new Rung(media.getWidth() + ":" + media.getHeight(), media.getWidth(), media.getHeight(), fps);
+            }
+            return new Rung(resolution, (int) (media.getWidth() * scale), (int) (media.getHeight() * scale), fps);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.geekonup.service.media;
+
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.util.FfmpegUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 视频文件索引（按文件名查找 NAS 上的视频）
+ * <p>
+ * NAS 目录下文件数量很多时，每次请求都列出整个目录再逐个比较会耗时数秒（SMB 挂载尤其明显）。
+ * 这里在内存中维护 文件名（不含扩展名，不区分大小写）-> 文件 的索引，查找只需一次哈希和一次文件状态检查：
+ * - 启动后在后台扫描所有根目录（可包含子目录）建立索引，建立完成前按原方式列目录查找
+ * - WatchService 监听新增、删除和改名，增量更新索引
+ * - SMB/NFS 挂载上其他机器写入的文件通常收不到监听事件，因此定期全量扫描校正；
+ * 索引未命中时再直接检查各根目录下的 名称+扩展名，新放入根目录的文件不必等待校正
+ * 同名文件有多个时，优先大小写完全一致的，其次是目录层级浅的，再按扩展名优先级。
+ */
+@Slf4j
+@Component
+public class VideoIndex implements MetricsSource {
+
+    @Value("${ffmpeg.video-dir}")
+    private String videoDir;
+
+    @Value("${ffmpeg.video-index.enabled:true}")
+    private boolean enabled;
+
+    // 除 video-dir 外的其他视频目录，逗号分隔
+    @Value("${ffmpeg.video-index.extra-dirs:}")
+    private String extraDirs;
+
+    // 是否包含子目录
+    @Value("${ffmpeg.video-index.recursive:true}")
+    private boolean recursive;
+
+    // 是否监听文件变化
+    @Value("${ffmpeg.video-index.watch:true}")
+    private boolean watch;
+
+    // 全量扫描校正间隔（秒），0 表示只在启动时扫描
+    @Value("${ffmpeg.video-index.reconcile-interval-seconds:300}")
+    private int reconcileIntervalSeconds;
+
+    private List<Path> roots;
+
+    // 小写文件名（不含扩展名）-> 文件
+    private final Map<String, Set<Path>> index = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    // 新增视频文件的监听者
+    private final List<Consumer<Path>> listeners = new CopyOnWriteArrayList<>();
+
+    private WatchService watchService;
+
+    private ScheduledExecutorService reconcileExecutor;
+
+    private volatile boolean ready;
+
+    private volatile long lastReconcileMillis;
+
+    private volatile long lastReconcileAt;
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong indexHits = new AtomicLong();
+
+    private final AtomicLong directHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong watchEvents = new AtomicLong();
+
+    private final AtomicLong overflows = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        List<Path> configured = new ArrayList<>();
+        configured.add(Paths.get(videoDir).toAbsolutePath().normalize());
+        Arrays.stream(extraDirs.split(","))
+                .map(String::trim)
+                .filter(dir -> !dir.isEmpty())
+                .map(dir -> Paths.get(dir).toAbsolutePath().normalize())
+                .filter(dir -> !configured.contains(dir))
+                .forEach(configured::add);
+        roots = List.copyOf(configured);
+        if (!enabled) {
+            log.info("视频文件索引未启用，按目录列表查找: {}", roots);
+            return;
+        }
+
+        if (watch) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread.ofVirtual().name("video-index-watch").start(this::watchLoop);
+            } catch (IOException e) {
+                log.warn("创建文件监听失败，只依靠定期扫描更新索引", e);
+            }
+        }
+        reconcileExecutor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofVirtual().name("video-index-reconcile").factory());
+        reconcileExecutor.execute(this::reconcile);
+        if (reconcileIntervalSeconds > 0) {
+            reconcileExecutor.scheduleWithFixedDelay(this::reconcile, reconcileIntervalSeconds,
+                    reconcileIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reconcileExecutor != null) {
+            reconcileExecutor.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("关闭文件监听失败", e);
+            }
+        }
+    }
+
+    /**
+     * 视频文件所在的根目录（video-dir 及 extra-dirs）
+     */
+    public List<Path> roots() {
+        return roots;
+    }
+
+    /**
+     * 注册新增视频文件的监听（索引建立完成后由文件监听或定期扫描发现的文件，启动时已有的文件不通知）
+     */
+    public void addListener(Consumer<Path> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 按文件名查找视频
+     *
+     * @param videoNameWithoutExt 视频名称（不含扩展名）
+     * @return 找到的视频文件，未找到返回 null
+     */
+    public File find(String videoNameWithoutExt) {
+        lookups.incrementAndGet();
+        if (!enabled || !ready) {
+            // 索引未启用或尚未建立完成，按原方式逐个目录查找
+            for (Path root : roots) {
+                File file = FfmpegUtil.findVideoFile(root.toString(), videoNameWithoutExt);
+                if (file != null) {
+                    directHits.incrementAndGet();
+                    return file;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        String key = keyOf(videoNameWithoutExt);
+        Set<Path> candidates = index.get(key);
+        if (candidates != null) {
+            Path best = candidates.stream()
+                    .filter(path -> {
+                        // 索引可能晚于文件系统变化，删除已不存在的文件
+                        if (Files.isRegularFile(path)) {
+                            return true;
+                        }
+                        remove(path);
+                        return false;
+                    })
+                    .min(preference(videoNameWithoutExt))
+                    .orElse(null);
+            if (best != null) {
+                indexHits.incrementAndGet();
+                return best.toFile();
+            }
+        }
+
+        // 未命中：直接检查各根目录下的 名称+扩展名（几次文件状态检查，不列目录）；名称含路径分隔符时不检查
+        if (videoNameWithoutExt.contains("/") || videoNameWithoutExt.contains("\\")) {
+            misses.incrementAndGet();
+            return null;
+        }
+        for (Path root : roots) {
+            for (String extension : FfmpegUtil.VIDEO_EXTENSIONS) {
+                Path path = root.resolve(videoNameWithoutExt + extension);
+                if (Files.isRegularFile(path)) {
+                    add(path);
+                    directHits.incrementAndGet();
+                    return path.toFile();
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 同名文件的优先顺序：大小写完全一致、目录层级浅、扩展名优先级高、路径字典序
+     */
+    private static Comparator<Path> preference(String videoNameWithoutExt) {
+        return Comparator.<Path>comparingInt(path -> baseNameOf(path).equals(videoNameWithoutExt) ? 0 : 1)
+                .thenComparingInt(Path::getNameCount)
+                .thenComparingInt(path -> FfmpegUtil.VIDEO_EXTENSIONS.indexOf(extensionOf(path)))
+                .thenComparing(Path::toString);
+    }
+
+    /**
+     * 全量扫描所有根目录，补充遗漏的文件、删除已不存在的文件，并为新目录注册监听
+     */
+    private void reconcile() {
+        long start = System.currentTimeMillis();
+        Set<Path> seen = new HashSet<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                log.warn("视频目录不存在，跳过索引: {}", root);
+                continue;
+            }
+            scan(root, seen);
+        }
+
+        int added = 0;
+        for (Path path : seen) {
+            if (add(path)) {
+                added++;
+                if (ready) {
+                    notifyAdded(path);
+                }
+            }
+        }
+        int removed = 0;
+        for (Set<Path> paths : index.values()) {
+            for (Path path : paths) {
+                // 扫描后才新增的文件不在 seen 中，删除前再确认一次
+                if (!seen.contains(path) && !Files.isRegularFile(path)) {
+                    remove(path);
+                    removed++;
+                }
+            }
+        }
+        index.values().removeIf(Set::isEmpty);
+
+        lastReconcileMillis = System.currentTimeMillis() - start;
+        lastReconcileAt = System.currentTimeMillis();
+        if (!ready) {
+            ready = true;
+            log.info("视频文件索引建立完成: {} 个文件，{} 个根目录，耗时 {} ms",
+                    seen.size(), roots.size(), lastReconcileMillis);
+        } else if (added > 0 || removed > 0) {
+            log.info("视频文件索引校正: 新增 {} 个，删除 {} 个，耗时 {} ms", added, removed, lastReconcileMillis);
+        }
+    }
+
+    /**
+     * 扫描目录下的视频文件，跳过隐藏目录和 NAS 系统目录（如 @eaDir、#recycle）
+     */
+    private void scan(Path dir, Set<Path> found) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) {
+                    if (!subDir.equals(dir) && (!recursive || isSystemDirectory(subDir))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    register(subDir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && FfmpegUtil.isVideoFile(file.getFileName().toString())) {
+                        found.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.debug("跳过无法读取的路径: {}", file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("扫描视频目录失败: {}", dir, e);
+        }
+    }
+
+    private static boolean isSystemDirectory(Path dir) {
+        String name = dir.getFileName().toString();
+        return name.startsWith(".") || name.startsWith("@") || name.startsWith("#");
+    }
+
+    private void register(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            // 同一目录重复注册返回同一个 WatchKey
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.put(key, dir);
+        } catch (IOException e) {
+            log.debug("注册目录监听失败: {}", dir, e);
+        }
+    }
+
+    /**
+     * 处理文件监听事件：新增文件加入索引，删除（含改名前的旧名）移出索引，新建目录扫描后注册监听
+     */
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                watchEvents.incrementAndGet();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflows.incrementAndGet();
+                    reconcileExecutor.execute(this::reconcile);
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    if (Files.isDirectory(path)) {
+                        if (recursive && !isSystemDirectory(path)) {
+                            Set<Path> found = new HashSet<>();
+                            scan(path, found);
+                            found.stream().filter(this::add).forEach(this::notifyAdded);
+                        }
+                    } else if (FfmpegUtil.isVideoFile(path.getFileName().toString()) && add(path)) {
+                        notifyAdded(path);
+                    }
+                } else {
+                    removeUnder(path);
+                }
+            }
+            if (!key.reset()) {
+                // 目录已被删除
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private boolean add(Path path) {
+        return index.computeIfAbsent(keyOf(baseNameOf(path)), k -> ConcurrentHashMap.newKeySet()).add(path);
+    }
+
+    private void notifyAdded(Path path) {
+        for (Consumer<Path> listener : listeners) {
+            try {
+                listener.accept(path);
+            } catch (Exception e) {
+                log.warn("处理新增视频文件通知失败: {}", path, e);
+            }
+        }
+    }
+
+    private void remove(Path path) {
+        index.computeIfPresent(keyOf(baseNameOf(path)), (k, paths) -> {
+            paths.remove(path);
+            return paths.isEmpty() ? null : paths;
+        });
+    }
+
+    /**
+     * 删除文件或整个目录下的文件（删除事件发生时已无法判断删除的是文件还是目录，按扩展名区分）
+     */
+    private void removeUnder(Path path) {
+        if (FfmpegUtil.isVideoFile(path.getFileName().toString())) {
+            remove(path);
+            return;
+        }
+        if (recursive) {
+            index.values().forEach(paths -> paths.removeIf(indexed -> indexed.startsWith(path)));
+            index.values().removeIf(Set::isEmpty);
+            watchedDirs.values().removeIf(watched -> watched.startsWith(path));
+        }
+    }
+
+    private static String keyOf(String videoNameWithoutExt) {
+        return videoNameWithoutExt.toLowerCase(Locale.ROOT);
+    }
+
+    private static String baseNameOf(Path path) {
+        String name = path.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(0, dotIndex) : name;
+    }
+
+    private static String extensionOf(Path path) {
+        String name = path.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(dotIndex).toLowerCase(Locale.ROOT) : "";
+    }
+
+    @Override
+    public String metricsName() {
+        return "videoIndex";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("ready", ready);
+        metrics.put("roots", roots.stream().map(Path::toString).toList());
+        metrics.put("indexedFiles", index.values().stream().mapToInt(Set::size).sum());
+        metrics.put("watchedDirs", watchedDirs.size());
+        metrics.put("lookups", lookups.get());
+        metrics.put("indexHits", indexHits.get());
+        metrics.put("directHits", directHits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("watchEvents", watchEvents.get());
+        metrics.put("overflows", overflows.get());
+        metrics.put("lastReconcileMillis", lastReconcileMillis);
+        metrics.put("lastReconcileAt", lastReconcileAt);
+        return metrics;
+    }
+}
@@ -0,0 +1,195 @@
+package com.geekonup.service.pipeline;
+
+import cn.hutool.core.util.IdUtil;
+import com.geekonup.service.dto.request.VideoAnalyzeRequest;
+import com.geekonup.service.media.AnalysisMode;
+import com.geekonup.service.media.HighlightCandidate;
+import com.geekonup.service.media.MediaInfo;
+import com.geekonup.service.util.FfmpegProgress;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * 视频分析任务
+ * 在流水线各阶段之间传递，记录各阶段产出的文件路径、耗时和当前状态
+ */
+@Getter
+@Setter
+public class AnalysisJob {
+
+    private final String jobId;
+
+    private final VideoAnalyzeRequest request;
+
+    private final long createdAt;
+
+    // 最近一次写入任务日志的事件
+    private volatile JobEvent lastEvent;
+
+    // 当前（或最后）所处阶段及状态
+    private volatile PipelineStage stage;
+
+    private volatile JobState state = JobState.QUEUED;
+
+    // 源视频路径
+    private volatile String sourcePath;
+
+    // 源视频快速指纹（结果缓存和代理文件共用）
+    private volatile String sourceFingerprint;
+
+    // 正在使用的代理文件 key，AI 分析结束后释放
+    private volatile String proxyKey;
+
+    // 压缩后（或直接使用）的视频路径
+    private volatile String compressedPath;
+
+    // Markdown 分析报告路径
+    private volatile String reportPath;
+
+    // 结构化分析结果（JSON）路径，阶段二未执行或失败时为空
+    private volatile String structuredPath;
+
+    // 分析模式（完整视频或关键帧），在查找阶段决定
+    private volatile AnalysisMode analysisMode;
+
+    // 源视频元数据（ffprobe），恢复的任务在重新定位源视频后补齐
+    private volatile MediaInfo mediaInfo;
+
+    // 按音频响度预选的高光候选片段，未计算时为空
+    private volatile List<HighlightCandidate> highlightCandidates;
+
+    // 压缩阶段的 FFmpeg 编码进度，未编码（直接使用原文件或复用代理文件）时为空
+    private volatile FfmpegProgress encodeProgress;
+
+    // 源视频大小（字节）
+    private volatile Long inputSize;
+
+    // 压缩后视频大小（字节）
+    private volatile Long outputSize;
+
+    private volatile String failureReason;
+
+    // 分析结果缓存 key 及是否命中
+    private volatile String resultCacheKey;
+
+    private volatile boolean resultCacheHit;
+
+    private volatile Long finishedAt;
+
+    // 合并到的同源任务ID（本任务为跟随者时）
+    private volatile String coalescedInto;
+
+    // 合并到本任务的跟随者，本任务结束时统一获得相同结果
+    @Getter(AccessLevel.NONE)
+    private final List<AnalysisJob> followers = new CopyOnWriteArrayList<>();
+
+    // 阶段一实际使用的模型（故障转移或对冲后可能不是首选模型，分段分析时可能有多个）
+    @Getter(AccessLevel.NONE)
+    private final Set<String> servedModels = new CopyOnWriteArraySet<>();
+
+    // 各阶段开始时间与耗时（毫秒），由同一任务的阶段线程依次写入
+    @Getter(AccessLevel.NONE)
+    private final Map<PipelineStage, Long> stageStartedAt = new EnumMap<>(PipelineStage.class);
+
+    @Getter(AccessLevel.NONE)
+    private final Map<PipelineStage, Long> stageDurations = new EnumMap<>(PipelineStage.class);
+
+    public AnalysisJob(String jobId, VideoAnalyzeRequest request, long createdAt) {
+        this.jobId = jobId;
+        this.request = request;
+        this.createdAt = createdAt;
+    }
+
+    public static AnalysisJob create(VideoAnalyzeRequest request) {
+        return new AnalysisJob(IdUtil.fastSimpleUUID(), request, System.currentTimeMillis());
+    }
+
+    /**
+     * 进入某个阶段的队列
+     */
+    public void markQueued(PipelineStage stage) {
+        this.stage = stage;
+        this.state = JobState.QUEUED;
+    }
+
+    /**
+     * 开始执行某个阶段
+     */
+    public synchronized void startStage(PipelineStage stage) {
+        this.stage = stage;
+        this.state = JobState.RUNNING;
+        stageStartedAt.put(stage, System.currentTimeMillis());
+    }
+
+    /**
+     * 结束某个阶段，记录耗时
+     */
+    public synchronized void finishStage(PipelineStage stage) {
+        Long startedAt = stageStartedAt.get(stage);
+        if (startedAt != null) {
+            stageDurations.put(stage, System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    /**
+     * 将同源任务合并到本任务
+     */
+    public void attachFollower(AnalysisJob follower) {
+        follower.coalescedInto = jobId;
+        follower.state = JobState.ATTACHED;
+        followers.add(follower);
+    }
+
+    public List<AnalysisJob> getFollowers() {
+        return Collections.unmodifiableList(followers);
+    }
+
+    public void addServedModel(String model) {
+        servedModels.add(model);
+    }
+
+    /**
+     * 阶段一实际使用的模型，多个时以逗号分隔，未调用模型时为空
+     */
+    public String getServedModels() {
+        return servedModels.isEmpty() ? null : String.join(",", servedModels);
+    }
+
+    public void markDone() {
+        this.state = JobState.DONE;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    public synchronized void markFailed(String reason) {
+        // 失败时结束当前阶段计时，便于定位卡在哪个阶段
+        if (stage != null && !stageDurations.containsKey(stage)) {
+            finishStage(stage);
+        }
+        this.failureReason = reason;
+        this.state = JobState.FAILED;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 各阶段耗时快照（毫秒），正在执行的阶段返回截至当前的耗时
+     */
+    public synchronized Map<PipelineStage, Long> stageDurationsSnapshot() {
+        Map<PipelineStage, Long> snapshot = new EnumMap<>(stageDurations);
+        if (state == JobState.RUNNING && stage != null && !snapshot.containsKey(stage)) {
+            Long startedAt = stageStartedAt.get(stage);
+            if (startedAt != null) {
+                snapshot.put(stage, System.currentTimeMillis() - startedAt);
+            }
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+}
@@ -0,0 +1,69 @@
+package com.geekonup.service.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务登记表
+ * 保存所有进行中的任务以及最近结束的任务，供状态查询接口使用
+ */
+@Slf4j
+@Component
+public class AnalysisJobRegistry {
+
+    // 保留的已结束任务数量
+    @Value("${pipeline.job-history-size:500}")
+    private int historySize;
+
+    // 按接收顺序保存
+    private final Map<String, AnalysisJob> jobs = new LinkedHashMap<>();
+
+    public synchronized void register(AnalysisJob job) {
+        jobs.put(job.getJobId(), job);
+        evictFinished();
+    }
+
+    public synchronized AnalysisJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    /**
+     * 分页查询，最新接收的任务在前
+     *
+     * @param offset 跳过的条数
+     * @param limit  返回的条数
+     */
+    public synchronized List<AnalysisJob> list(int offset, int limit) {
+        List<AnalysisJob> all = new ArrayList<>(jobs.values());
+        List<AnalysisJob> page = new ArrayList<>(Math.max(0, limit));
+        for (int i = all.size() - 1 - offset; i >= 0 && page.size() < limit; i--) {
+            page.add(all.get(i));
+        }
+        return page;
+    }
+
+    /**
+     * 已结束任务超出保留数量时，从最早的开始移除
+     */
+    private void evictFinished() {
+        long finished = jobs.values().stream().filter(job -> job.getState().isFinished()).count();
+        Iterator<AnalysisJob> iterator = jobs.values().iterator();
+        while (finished > historySize && iterator.hasNext()) {
+            if (iterator.next().getState().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.geekonup.service.pipeline;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 视频分析流水线执行器
+ * <p>
+ * 每个阶段使用独立的、有界的线程池：
+ * - 压缩阶段：平台线程，线程数按 CPU 核数计算（每个 FFmpeg 进程本身就是多线程的）
+ * - AI 阶段、结构化阶段、多维表格阶段：虚拟线程，并发数由配置决定
+ *   （结构化阶段独立于 AI 阶段，上一个视频的文本模型调用与下一个视频的视觉模型调用同时进行）
+ * <p>
+ * 阶段之间通过有界队列衔接：入口（压缩阶段）队列已满时直接拒绝，由调用方快速返回"繁忙"；
+ * 阶段间交接时下游队列已满则阻塞上游线程，形成背压，已接收的任务不会被丢弃。
+ */
+@Slf4j
+@Component
+public class AnalysisPipelineExecutor implements MetricsSource {
+
+    // 压缩阶段线程数，0 表示按 CPU 核数自动计算
+    @Value("${pipeline.compress.threads:0}")
+    private int compressThreads;
+
+    @Value("${pipeline.compress.queue-capacity:16}")
+    private int compressQueueCapacity;
+
+    @Value("${pipeline.ai.concurrency:8}")
+    private int aiConcurrency;
+
+    @Value("${pipeline.ai.queue-capacity:32}")
+    private int aiQueueCapacity;
+
+    @Value("${pipeline.structure.concurrency:4}")
+    private int structureConcurrency;
+
+    @Value("${pipeline.structure.queue-capacity:32}")
+    private int structureQueueCapacity;
+
+    @Value("${pipeline.bitable.concurrency:4}")
+    private int bitableConcurrency;
+
+    @Value("${pipeline.bitable.queue-capacity:64}")
+    private int bitableQueueCapacity;
+
+    private final Map<PipelineStage, ThreadPoolExecutor> executors = new EnumMap<>(PipelineStage.class);
+
+    @PostConstruct
+    public void init() {
+        int threads = compressThreads > 0 ? compressThreads : defaultCompressThreads();
+        executors.put(PipelineStage.COMPRESS, newStageExecutor(threads, compressQueueCapacity,
+                Thread.ofPlatform().name("pipeline-compress-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy()));
+        executors.put(PipelineStage.AI, newStageExecutor(aiConcurrency, aiQueueCapacity,
+                Thread.ofVirtual().name("pipeline-ai-", 0).factory(),
+                new BlockingHandOffPolicy()));
+        executors.put(PipelineStage.STRUCTURE, newStageExecutor(structureConcurrency, structureQueueCapacity,
+                Thread.ofVirtual().name("pipeline-structure-", 0).factory(),
+                new BlockingHandOffPolicy()));
+        executors.put(PipelineStage.BITABLE, newStageExecutor(bitableConcurrency, bitableQueueCapacity,
+                Thread.ofVirtual().name("pipeline-bitable-", 0).factory(),
+                new BlockingHandOffPolicy()));
+        log.info("视频分析流水线已启动: 压缩线程={}, 压缩队列={}, AI并发={}, AI队列={}, 结构化并发={}, 结构化队列={}, "
+                        + "多维表格并发={}, 多维表格队列={}",
+                threads, compressQueueCapacity, aiConcurrency, aiQueueCapacity,
+                structureConcurrency, structureQueueCapacity, bitableConcurrency, bitableQueueCapacity);
+    }
+
+    /**
+     * 尝试将任务提交到指定阶段，队列已满时立即返回 false
+     * 仅用于流水线入口，保证请求线程不会被阻塞
+     */
+    public boolean trySubmit(PipelineStage stage, AnalysisJob job, Runnable task) {
+        job.markQueued(stage);
+        try {
+            executorOf(stage).execute(new JobTask(job, task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 将任务交接到指定阶段，下游队列已满时阻塞当前线程直至有空位
+     */
+    public void submit(PipelineStage stage, AnalysisJob job, Runnable task) {
+        job.markQueued(stage);
+        ThreadPoolExecutor executor = executorOf(stage);
+        JobTask jobTask = new JobTask(job, task);
+        if (executor.getRejectedExecutionHandler() instanceof BlockingHandOffPolicy) {
+            executor.execute(jobTask);
+            return;
+        }
+        // 入口阶段使用拒绝策略，这里改为阻塞入队
+        try {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("流水线已关闭: " + stage);
+            }
+            if (executor.getPoolSize() < executor.getCorePoolSize()) {
+                executor.execute(jobTask);
+            } else {
+                executor.getQueue().put(jobTask);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("提交任务时被中断: " + stage, e);
+        }
+    }
+
+    /**
+     * 查询任务在当前阶段队列中的位置（从 1 开始），未在排队时返回 null
+     */
+    public Integer queuePosition(AnalysisJob job) {
+        if (job.getState() != JobState.QUEUED || job.getStage() == null) {
+            return null;
+        }
+        int position = 0;
+        for (Runnable queued : executorOf(job.getStage()).getQueue()) {
+            position++;
+            if (queued instanceof JobTask jobTask && jobTask.job() == job) {
+                return position;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String metricsName() {
+        return "pipeline";
+    }
+
+    /**
+     * 各阶段队列长度与执行中的任务数
+     */
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        executors.forEach((stage, executor) -> {
+            Map<String, Object> stageStats = new LinkedHashMap<>();
+            stageStats.put("queued", executor.getQueue().size());
+            stageStats.put("running", executor.getActiveCount());
+            stageStats.put("concurrency", executor.getMaximumPoolSize());
+            stats.put(stage.name().toLowerCase(), stageStats);
+        });
+        return stats;
+    }
+
+    private ThreadPoolExecutor executorOf(PipelineStage stage) {
+        return executors.get(stage.executorStage());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.forEach((stage, executor) -> executor.shutdownNow());
+        log.info("视频分析流水线已关闭");
+    }
+
+    private static ThreadPoolExecutor newStageExecutor(int concurrency, int queueCapacity,
+                                                       ThreadFactory threadFactory,
+                                                       RejectedExecutionHandler rejectedHandler) {
+        int size = Math.max(1, concurrency);
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory, rejectedHandler);
+    }
+
+    /**
+     * 默认压缩线程数：libx264 单进程会占满多个核心，按每 4 核一个编码任务估算
+     */
+    private static int defaultCompressThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    }
+
+    /**
+     * 携带任务引用的执行单元，用于计算排队位置
+     */
+    private record JobTask(AnalysisJob job, Runnable task) implements Runnable {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * 阶段间交接策略：队列已满时阻塞提交线程，而不是丢弃任务
+     */
+    private static class BlockingHandOffPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("流水线已关闭");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("等待下游队列时被中断", e);
+            }
+        }
+    }
+}
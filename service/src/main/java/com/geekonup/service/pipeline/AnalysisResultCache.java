@@ -0,0 +1,173 @@
+package com.geekonup.service.pipeline;
+
+import com.geekonup.service.util.FileFingerprintUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分析结果缓存（内容寻址）
+ * <p>
+ * key = SHA-256(源视频快速指纹 | prompt1 文件内容哈希 | 阶段一模型)，value 为阶段一的 Markdown 报告，
+ * 结构化阶段完成后再附上结构化结果（同名 .json）。
+ * prompt 或模型变化后 key 随之变化，旧结果自然失效，无需手动清理。
+ * 命中时可跳过视频压缩和模型调用；结构化结果也已缓存时同时跳过结构化阶段，直接写回飞书多维表格。
+ * 缓存目录只存放缓存条目，命中后由调用方复制到任务自己的输出位置。
+ */
+@Slf4j
+@Component
+public class AnalysisResultCache implements MetricsSource {
+
+    @Value("${pipeline.result-cache.enabled:true}")
+    private boolean enabled;
+
+    // 缓存目录
+    @Value("${pipeline.result-cache.dir:./data/result-cache}")
+    private String cacheDir;
+
+    private Path cacheRoot;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 缓存条目
+     *
+     * @param report     Markdown 报告
+     * @param structured 结构化结果 JSON，尚未缓存时为 null
+     */
+    public record Entry(Path report, Path structured) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("分析结果缓存未启用");
+            return;
+        }
+        cacheRoot = Paths.get(cacheDir).toAbsolutePath();
+        Files.createDirectories(cacheRoot);
+        log.info("分析结果缓存目录: {}", cacheRoot);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存 key
+     *
+     * @param sourceFingerprint 源视频指纹
+     * @param promptPath        阶段一 prompt 文件路径
+     * @param model             阶段一模型
+     * @return 缓存 key
+     */
+    public String keyFor(String sourceFingerprint, String promptPath, String model) throws IOException {
+        String promptHash = FileFingerprintUtil.sha256(Files.readString(Paths.get(promptPath)));
+        return FileFingerprintUtil.sha256(sourceFingerprint + "|" + promptHash + "|" + model);
+    }
+
+    /**
+     * 查询缓存，命中时返回缓存条目
+     *
+     * @param key 缓存 key
+     * @return 缓存条目，未命中返回 null
+     */
+    public Entry get(String key) {
+        if (!enabled || key == null) {
+            return null;
+        }
+        Path file = entryPath(key);
+        if (Files.isRegularFile(file)) {
+            hits.incrementAndGet();
+            Path structured = structuredPath(key);
+            boolean hasStructured = Files.isRegularFile(structured);
+            log.info("分析结果缓存命中: key={}, 含结构化结果={}", key, hasStructured);
+            return new Entry(file, hasStructured ? structured : null);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存（先写临时文件再原子替换），同一 key 下旧报告的结构化结果一并删除
+     *
+     * @param key            缓存 key
+     * @param markdownReport Markdown 报告
+     */
+    public void put(String key, String markdownReport) {
+        if (!enabled || key == null || markdownReport == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(structuredPath(key));
+            write(entryPath(key), markdownReport);
+            log.info("分析结果已写入缓存: key={}", key);
+        } catch (IOException e) {
+            log.warn("写入分析结果缓存失败: key={}", key, e);
+        }
+    }
+
+    /**
+     * 为已缓存的报告附上结构化结果，报告不在缓存中时不写入
+     *
+     * @param key            缓存 key
+     * @param structuredJson 结构化结果 JSON
+     */
+    public void putStructured(String key, String structuredJson) {
+        if (!enabled || key == null || structuredJson == null || !Files.isRegularFile(entryPath(key))) {
+            return;
+        }
+        try {
+            write(structuredPath(key), structuredJson);
+            log.info("结构化结果已写入缓存: key={}", key);
+        } catch (IOException e) {
+            log.warn("写入结构化结果缓存失败: key={}", key, e);
+        }
+    }
+
+    private void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmpFile, content, StandardCharsets.UTF_8);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String metricsName() {
+        return "resultCache";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return metrics;
+    }
+
+    private Path entryPath(String key) {
+        // 按前两位分目录，避免单目录文件过多
+        return cacheRoot.resolve(key.substring(0, 2)).resolve(key + ".md");
+    }
+
+    private Path structuredPath(String key) {
+        return cacheRoot.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+}
@@ -0,0 +1,337 @@
+package com.geekonup.service.pipeline;
+
+import com.geekonup.service.media.AnalysisMode;
+import com.geekonup.service.media.AudioProfiler;
+import com.geekonup.service.media.CompressionResult;
+import com.geekonup.service.media.FfmpegGovernor;
+import com.geekonup.service.media.MediaInfo;
+import com.geekonup.service.media.MediaProbe;
+import com.geekonup.service.media.ProxyStore;
+import com.geekonup.service.media.SceneFrameExtractor;
+import com.geekonup.service.media.VideoChunker;
+import com.geekonup.service.media.VideoCompressor;
+import com.geekonup.service.media.VideoIndex;
+import com.geekonup.service.util.FfmpegProgress;
+import com.geekonup.service.util.FileFingerprintUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 新视频预处理（投递目录自动接收）
+ * <p>
+ * 视频通常在飞书调用 /video/analyze 之前几分钟就已写入 NAS。启用后，视频索引发现的新文件在
+ * 大小和修改时间持续不变（写入完成）后，提前完成元数据探测、音频响度测量和压缩，
+ * 代理文件进入代理文件存储，分析请求到达时直接复用，只剩模型调用。
+ * <p>
+ * 预处理的优先级低于分析请求：
+ * - 同一时间只预处理一个视频，且只在 FFmpeg CPU 预算空闲（没有编码排队）时开始
+ * - 编码使用低优先级的 CPU 预算：不分段，线程数不超过单个编码；分析请求的编码需要排队时被抢占，
+ *   编码进程终止，视频重新进入等待队列，之后预算空闲时再预处理
+ * - 分析请求认领源视频后不再预处理；认领时正在预处理的，请求等待其完成而不是重复编码
+ *   （等待期间被抢占时，请求的压缩阶段照常按正常优先级压缩）
+ * 自动选择为关键帧模式的视频不预处理（关键帧按任务保存，无法复用）。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestWatcher implements MetricsSource {
+
+    // 认领记录保留时长（毫秒），之后同一路径的新文件可再次预处理
+    private static final long CLAIM_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    @Value("${pipeline.ingest.enabled:false}")
+    private boolean enabled;
+
+    // 大小和修改时间持续不变该时长（秒）后视为写入完成
+    @Value("${pipeline.ingest.stable-seconds:30}")
+    private int stableSeconds;
+
+    // 检查写入状态的间隔（秒）
+    @Value("${pipeline.ingest.poll-interval-seconds:10}")
+    private int pollIntervalSeconds;
+
+    // 等待写入完成的文件数上限，超出时丢弃新发现的文件（请求到达时照常处理）
+    @Value("${pipeline.ingest.max-pending:200}")
+    private int maxPending;
+
+    private final VideoIndex videoIndex;
+
+    private final MediaProbe mediaProbe;
+
+    private final SceneFrameExtractor frameExtractor;
+
+    private final VideoChunker videoChunker;
+
+    private final AudioProfiler audioProfiler;
+
+    private final VideoCompressor videoCompressor;
+
+    private final ProxyStore proxyStore;
+
+    private final FfmpegGovernor governor;
+
+    private ScheduledExecutorService scheduler;
+
+    // 以下三个集合由 this 保护：认领和开始预处理必须互斥，否则同一视频可能被编码两次
+
+    // 等待写入完成的文件 -> 最近一次观察结果
+    private final Map<Path, Observation> pending = new LinkedHashMap<>();
+
+    // 已被分析请求认领的文件 -> 认领时间
+    private final Map<Path, Long> claimed = new HashMap<>();
+
+    // 正在预处理的文件
+    private final Map<Path, Speculation> running = new HashMap<>();
+
+    private final AtomicLong discovered = new AtomicLong();
+
+    private final AtomicLong speculated = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong preempted = new AtomicLong();
+
+    private final AtomicLong joined = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile long lastSpeculationMillis;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        videoIndex.addListener(this::onNewVideo);
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("ingest-watcher").factory());
+        int interval = Math.max(1, pollIntervalSeconds);
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.SECONDS);
+        log.info("新视频预处理已启用: 写入完成判定 {} 秒，检查间隔 {} 秒", stableSeconds, interval);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 分析请求认领源视频：之后不再预处理；正在预处理且任务使用完整视频时等待其完成，
+     * 完成后任务的压缩阶段会直接复用代理文件
+     *
+     * @param videoFile 源视频
+     * @param job       任务，等待期间展示预处理的编码进度
+     */
+    public void claim(File videoFile, AnalysisJob job) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        Path path = keyOf(videoFile);
+        Speculation speculation;
+        synchronized (this) {
+            claimed.put(path, System.currentTimeMillis());
+            pending.remove(path);
+            speculation = running.get(path);
+        }
+        if (speculation == null || job.getAnalysisMode() != AnalysisMode.VIDEO) {
+            return;
+        }
+        joined.incrementAndGet();
+        log.info("源视频正在预处理，等待完成后复用: jobId={}, {}", job.getJobId(), path);
+        job.setEncodeProgress(speculation.progress());
+        try {
+            speculation.done().get();
+        } catch (ExecutionException e) {
+            // 预处理失败时同样正常结束，不会走到这里；任务的压缩阶段会自行重新压缩
+            log.warn("等待预处理结束时发生异常: {}", path, e.getCause());
+        }
+    }
+
+    private synchronized void onNewVideo(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        if (claimed.containsKey(key) || running.containsKey(key) || pending.containsKey(key)) {
+            return;
+        }
+        if (pending.size() >= Math.max(1, maxPending)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        pending.put(key, new Observation(-1, -1, System.currentTimeMillis()));
+        discovered.incrementAndGet();
+        log.debug("发现新视频，等待写入完成: {}", key);
+    }
+
+    /**
+     * 检查等待中的文件，写入完成且 CPU 预算空闲时预处理其中一个
+     */
+    private void poll() {
+        try {
+            Path next = nextStableFile();
+            if (next != null) {
+                speculate(next);
+            }
+        } catch (Exception e) {
+            log.error("新视频预处理异常", e);
+        }
+    }
+
+    private Path nextStableFile() {
+        long now = System.currentTimeMillis();
+        Map<Path, Observation> snapshot;
+        synchronized (this) {
+            claimed.values().removeIf(claimedAt -> now - claimedAt > CLAIM_RETENTION_MILLIS);
+            snapshot = new LinkedHashMap<>(pending);
+        }
+
+        // 在锁外读取文件状态（NAS 上每次读取都有网络往返），不阻塞请求认领
+        Map<Path, Observation> changed = new HashMap<>();
+        List<Path> gone = new ArrayList<>();
+        Path stable = null;
+        for (Map.Entry<Path, Observation> entry : snapshot.entrySet()) {
+            File file = entry.getKey().toFile();
+            if (!file.isFile()) {
+                gone.add(entry.getKey());
+                continue;
+            }
+            Observation last = entry.getValue();
+            long size = file.length();
+            long modified = file.lastModified();
+            if (size != last.size() || modified != last.modified()) {
+                changed.put(entry.getKey(), new Observation(size, modified, now));
+            } else if (stable == null && size > 0 && now - last.since() >= stableSeconds * 1000L) {
+                stable = entry.getKey();
+            }
+        }
+
+        synchronized (this) {
+            gone.forEach(pending::remove);
+            changed.forEach(pending::replace);
+            // 有编码在排队或预算不足时不开始，写入完成的文件留到下次检查；期间被认领的不再预处理
+            if (stable == null || !pending.containsKey(stable)
+                    || !governor.hasSpareCapacity(governor.threadsPerEncode())) {
+                return null;
+            }
+            pending.remove(stable);
+            return stable;
+        }
+    }
+
+    private void speculate(Path path) throws IOException {
+        File videoFile = path.toFile();
+        long start = System.currentTimeMillis();
+        MediaInfo media = mediaProbe.probe(videoFile);
+        if (media == null || frameExtractor.resolve(null, media, videoFile.length()) != AnalysisMode.VIDEO) {
+            skipped.incrementAndGet();
+            log.info("新视频不需要预压缩（无法读取元数据或使用关键帧模式）: {}", path);
+            return;
+        }
+        String fingerprint = FileFingerprintUtil.fingerprint(videoFile);
+
+        Speculation speculation = new Speculation(new FfmpegProgress(), new CompletableFuture<>());
+        synchronized (this) {
+            if (claimed.containsKey(path)) {
+                return;
+            }
+            running.put(path, speculation);
+        }
+        log.info("开始预处理新视频: {}", path);
+        try {
+            audioProfiler.highlights(videoFile, fingerprint, media);
+            CompressionResult result = videoCompressor.compress(videoFile, fingerprint, speculation.progress(),
+                    videoChunker.chunkCount(media), true);
+            if (result.isSuccess()) {
+                // 只保留在代理文件存储中，不占用引用
+                proxyStore.release(result.getProxyKey());
+                speculated.incrementAndGet();
+                lastSpeculationMillis = System.currentTimeMillis() - start;
+                log.info("新视频预处理完成，耗时 {} ms: {} -> {}", lastSpeculationMillis, path,
+                        result.getCompressedVideoPath());
+            } else if (VideoCompressor.PREEMPTED.equals(result.getErrorMessage())) {
+                preempted.incrementAndGet();
+                requeue(path, videoFile);
+            } else {
+                failures.incrementAndGet();
+                log.warn("新视频预压缩失败: {}, {}", path, result.getErrorMessage());
+            }
+        } finally {
+            synchronized (this) {
+                running.remove(path);
+            }
+            speculation.done().complete(null);
+        }
+    }
+
+    /**
+     * 让出 CPU 的视频重新进入等待队列（已被认领的除外），写入状态不变，预算空闲时即可再次预处理
+     */
+    private synchronized void requeue(Path path, File videoFile) {
+        if (claimed.containsKey(path) || pending.containsKey(path)) {
+            return;
+        }
+        pending.put(path, new Observation(videoFile.length(), videoFile.lastModified(), 0));
+        log.info("新视频预处理让出 CPU 给分析请求，稍后重试: {}", path);
+    }
+
+    private static Path keyOf(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String metricsName() {
+        return "ingest";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        synchronized (this) {
+            metrics.put("pending", pending.size());
+            metrics.put("running", running.size());
+            metrics.put("claimed", claimed.size());
+        }
+        metrics.put("discovered", discovered.get());
+        metrics.put("speculated", speculated.get());
+        metrics.put("skipped", skipped.get());
+        metrics.put("failures", failures.get());
+        metrics.put("preempted", preempted.get());
+        metrics.put("joinedByRequests", joined.get());
+        metrics.put("dropped", dropped.get());
+        metrics.put("lastSpeculationMillis", lastSpeculationMillis);
+        return metrics;
+    }
+
+    /**
+     * 文件最近一次观察到的大小和修改时间，since 为开始保持不变的时间
+     */
+    private record Observation(long size, long modified, long since) {
+    }
+
+    /**
+     * 正在进行的预处理
+     */
+    private record Speculation(FfmpegProgress progress, CompletableFuture<Void> done) {
+    }
+}
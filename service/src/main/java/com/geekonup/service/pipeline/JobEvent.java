@@ -0,0 +1,38 @@
+package com.geekonup.service.pipeline;
+
+import lombok.Getter;
+
+/**
+ * 任务日志事件（阶段完成点）
+ */
+@Getter
+public enum JobEvent {
+
+    SUBMITTED("已接收"),
+    // 已找到源视频
+    LOCATED("已定位"),
+    // 已合并到同一源视频正在处理的任务，结果由该任务统一写回
+    ATTACHED("已合并"),
+    // 已生成压缩视频（或确认原文件可直接使用）
+    COMPRESSED("已压缩"),
+    // 已生成 Markdown 分析报告
+    ANALYZED("已分析"),
+    // 已生成结构化分析结果（JSON）
+    STRUCTURED("已结构化"),
+    // 已写回飞书多维表格
+    WRITTEN("已写入"),
+    FAILED("失败");
+
+    private final String description;
+
+    JobEvent(String description) {
+        this.description = description;
+    }
+
+    /**
+     * 是否为终止事件（任务已结束，无需恢复）
+     */
+    public boolean isTerminal() {
+        return this == WRITTEN || this == FAILED;
+    }
+}
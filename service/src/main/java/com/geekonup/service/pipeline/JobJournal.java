@@ -0,0 +1,218 @@
+package com.geekonup.service.pipeline;
+
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.dto.request.VideoAnalyzeRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务日志（Write-Ahead Log）
+ * <p>
+ * 以 JSON Lines 格式追加写入每个任务的请求和阶段完成事件，每次写入后刷盘。
+ * 服务启动时回放日志，找出未结束的任务及其最后完成的阶段，用于断点续跑；
+ * 回放后将日志压缩为仅包含未结束任务的记录，避免文件无限增长。
+ */
+@Slf4j
+@Component
+public class JobJournal {
+
+    private static final String JOURNAL_FILE_NAME = "jobs.log";
+
+    @Value("${pipeline.journal.enabled:true}")
+    private boolean enabled;
+
+    // 任务日志目录
+    @Value("${pipeline.journal.dir:./data/journal}")
+    private String journalDir;
+
+    private Path journalFile;
+
+    private FileChannel channel;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("任务日志未启用，服务重启后未完成的任务将不会恢复");
+            return;
+        }
+        Path dir = Paths.get(journalDir).toAbsolutePath();
+        Files.createDirectories(dir);
+        journalFile = dir.resolve(JOURNAL_FILE_NAME);
+        log.info("任务日志文件: {}", journalFile);
+    }
+
+    /**
+     * 追加一条任务事件并刷盘
+     *
+     * @param job    任务
+     * @param event  事件
+     * @param detail 事件附带信息（文件路径或失败原因）
+     */
+    public void append(AnalysisJob job, JobEvent event, String detail) {
+        job.setLastEvent(event);
+        if (!enabled) {
+            return;
+        }
+        JournalEntry entry = new JournalEntry();
+        entry.setJobId(job.getJobId());
+        entry.setEvent(event);
+        entry.setTime(System.currentTimeMillis());
+        entry.setDetail(detail);
+        if (event == JobEvent.SUBMITTED) {
+            entry.setVideoName(job.getRequest().videoName());
+            entry.setRecordId(job.getRequest().recordId());
+            entry.setAnalysisMode(job.getRequest().analysisMode());
+        }
+        byte[] line = (JSONUtil.toJsonStr(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // 日志写入失败不影响任务本身，只是重启后无法恢复
+                log.error("写入任务日志失败: jobId={}, event={}", job.getJobId(), event, e);
+            }
+        }
+    }
+
+    /**
+     * 回放任务日志，返回未结束的任务（按接收顺序），并压缩日志文件
+     */
+    public synchronized List<AnalysisJob> recover() {
+        if (!enabled || !Files.exists(journalFile)) {
+            return List.of();
+        }
+        Map<String, AnalysisJob> jobs = new LinkedHashMap<>();
+        Map<String, List<String>> linesByJob = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JournalEntry entry;
+                try {
+                    entry = JSONUtil.toBean(line, JournalEntry.class);
+                } catch (Exception e) {
+                    // 进程崩溃时最后一行可能只写了一半
+                    log.warn("跳过无法解析的任务日志记录: {}", line);
+                    continue;
+                }
+                if (entry.getJobId() == null || entry.getEvent() == null) {
+                    continue;
+                }
+                if (entry.getEvent() == JobEvent.SUBMITTED) {
+                    jobs.put(entry.getJobId(), new AnalysisJob(entry.getJobId(),
+                            new VideoAnalyzeRequest(entry.getVideoName(), entry.getRecordId(), entry.getAnalysisMode()), entry.getTime()));
+                }
+                AnalysisJob job = jobs.get(entry.getJobId());
+                if (job == null) {
+                    continue;
+                }
+                applyEntry(job, entry);
+                linesByJob.computeIfAbsent(entry.getJobId(), k -> new ArrayList<>()).add(line);
+            }
+        } catch (IOException e) {
+            log.error("读取任务日志失败: {}", journalFile, e);
+            return List.of();
+        }
+
+        List<AnalysisJob> unfinished = new ArrayList<>();
+        List<String> retainedLines = new ArrayList<>();
+        for (AnalysisJob job : jobs.values()) {
+            if (!job.getLastEvent().isTerminal()) {
+                unfinished.add(job);
+                retainedLines.addAll(linesByJob.get(job.getJobId()));
+            }
+        }
+        compact(retainedLines);
+        log.info("任务日志回放完成: 共 {} 个任务，其中未完成 {} 个", jobs.size(), unfinished.size());
+        return unfinished;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭任务日志失败", e);
+            }
+            channel = null;
+        }
+    }
+
+    private void applyEntry(AnalysisJob job, JournalEntry entry) {
+        switch (entry.getEvent()) {
+            case LOCATED -> job.setSourcePath(entry.getDetail());
+            case COMPRESSED -> job.setCompressedPath(entry.getDetail());
+            case ANALYZED -> job.setReportPath(entry.getDetail());
+            case STRUCTURED -> job.setStructuredPath(entry.getDetail());
+            default -> {
+            }
+        }
+        job.setLastEvent(entry.getEvent());
+    }
+
+    /**
+     * 用未结束任务的记录重写日志（先写临时文件再原子替换）
+     */
+    private void compact(List<String> retainedLines) {
+        close();
+        Path tmpFile = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            for (String line : retainedLines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            log.warn("压缩任务日志失败，保留原日志", e);
+            return;
+        }
+        try {
+            Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("替换任务日志失败，保留原日志", e);
+        }
+    }
+
+    /**
+     * 任务日志记录
+     */
+    @Data
+    public static class JournalEntry {
+        private String jobId;
+        private JobEvent event;
+        private long time;
+        private String videoName;
+        private String recordId;
+        // 请求指定的分析模式（仅接收事件）
+        private String analysisMode;
+        private String detail;
+    }
+}
@@ -0,0 +1,29 @@
+package com.geekonup.service.pipeline;
+
+import lombok.Getter;
+
+/**
+ * 任务状态
+ */
+@Getter
+public enum JobState {
+
+    // 在某个阶段的队列中等待
+    QUEUED("排队中"),
+    // 某个阶段正在执行
+    RUNNING("处理中"),
+    // 已合并到同一源视频正在处理的任务，等待其结果
+    ATTACHED("已合并"),
+    DONE("已完成"),
+    FAILED("失败");
+
+    private final String description;
+
+    JobState(String description) {
+        this.description = description;
+    }
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+}
@@ -0,0 +1,20 @@
+package com.geekonup.service.pipeline;
+
+import java.util.Map;
+
+/**
+ * 运行指标来源
+ * 实现该接口的组件会出现在 GET /video/metrics 的返回结果中
+ */
+public interface MetricsSource {
+
+    /**
+     * 指标分组名称
+     */
+    String metricsName();
+
+    /**
+     * 当前指标快照
+     */
+    Map<String, Object> metrics();
+}
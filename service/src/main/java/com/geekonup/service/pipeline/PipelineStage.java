@@ -0,0 +1,34 @@
+package com.geekonup.service.pipeline;
+
+import lombok.Getter;
+
+/**
+ * 视频分析流水线阶段
+ */
+@Getter
+public enum PipelineStage {
+
+    // 查找源视频（与压缩共用线程池）
+    LOOKUP("查找视频"),
+    // FFmpeg 压缩（CPU 密集）
+    COMPRESS("视频压缩"),
+    // 调用视觉模型分析（I/O 密集）
+    AI("AI分析"),
+    // 调用文本模型把报告整理为结构化字段（I/O 密集）
+    STRUCTURE("结构化分析"),
+    // 写回飞书多维表格（I/O 密集）
+    BITABLE("写入多维表格");
+
+    private final String description;
+
+    PipelineStage(String description) {
+        this.description = description;
+    }
+
+    /**
+     * 执行该阶段的线程池所属阶段
+     */
+    public PipelineStage executorStage() {
+        return this == LOOKUP ? COMPRESS : this;
+    }
+}
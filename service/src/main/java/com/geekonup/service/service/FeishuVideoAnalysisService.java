@@ -1,8 +1,12 @@
 package com.geekonup.service.service;
 
+import com.geekonup.common.result.PageResult;
 import com.geekonup.service.dto.request.VideoAnalyzeRequest;
+import com.geekonup.service.dto.response.AnalysisJobResponse;
 import com.geekonup.service.dto.response.VideoAnalysisResponse;
 
+import java.util.Map;
+
 /**
  * 飞书视频分析服务
  */
@@ -10,5 +14,29 @@ public interface FeishuVideoAnalysisService {
 
     VideoAnalysisResponse handleAnalysis(VideoAnalyzeRequest request);
 
+    /**
+     * 查询分析任务状态
+     *
+     * @param jobId 任务ID
+     * @return 任务状态
+     */
+    AnalysisJobResponse getJob(String jobId);
+
+    /**
+     * 分页查询分析任务，最新接收的任务在前
+     *
+     * @param page 页码，从 1 开始
+     * @param size 每页条数
+     * @return 任务列表
+     */
+    PageResult<AnalysisJobResponse> listJobs(int page, int size);
+
+    /**
+     * 运行指标（各阶段队列、缓存命中率等）
+     *
+     * @return 指标分组 -> 指标快照
+     */
+    Map<String, Object> getMetrics();
+
 }
 
@@ -1,56 +1,127 @@
 package com.geekonup.service.service.impl;
 
+import com.geekonup.common.exception.BusinessException;
+import com.geekonup.common.exception.ErrorCode;
+import com.geekonup.common.result.PageResult;
 import com.geekonup.service.dto.request.VideoAnalyzeRequest;
+import com.geekonup.service.dto.response.AnalysisJobResponse;
 import com.geekonup.service.dto.response.StatusCode;
 import com.geekonup.service.dto.response.VideoAnalysisResponse;
 import com.geekonup.service.service.FeishuVideoAnalysisService;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.ai.AiRateLimiter;
+import com.geekonup.service.ai.AiStreamMetrics;
+import com.geekonup.service.ai.MarkdownFieldExtractor;
+import com.geekonup.service.ai.ModelRouter;
+import com.geekonup.service.ai.StructureFastPath;
+import com.geekonup.service.ai.StructuredResultParser;
+import com.geekonup.service.media.AnalysisMode;
+import com.geekonup.service.media.AudioProfiler;
+import com.geekonup.service.media.CompressionResult;
+import com.geekonup.service.media.HighlightCandidate;
+import com.geekonup.service.media.MediaInfo;
+import com.geekonup.service.media.MediaProbe;
+import com.geekonup.service.media.MediaServer;
+import com.geekonup.service.media.ProxyStore;
+import com.geekonup.service.media.SceneFrameExtractor;
+import com.geekonup.service.media.VideoChunk;
+import com.geekonup.service.media.VideoChunker;
+import com.geekonup.service.media.VideoCompressor;
+import com.geekonup.service.media.VideoIndex;
+import com.geekonup.service.pipeline.AnalysisJob;
+import com.geekonup.service.pipeline.AnalysisJobRegistry;
+import com.geekonup.service.pipeline.AnalysisPipelineExecutor;
+import com.geekonup.service.pipeline.AnalysisResultCache;
+import com.geekonup.service.pipeline.IngestWatcher;
+import com.geekonup.service.pipeline.JobEvent;
+import com.geekonup.service.pipeline.JobJournal;
+import com.geekonup.service.pipeline.MetricsSource;
+import com.geekonup.service.pipeline.PipelineStage;
+import com.geekonup.service.util.FfmpegProgress;
 import com.geekonup.service.util.FfmpegUtil;
 import com.geekonup.service.util.FeishuBitableUtil;
+import com.geekonup.service.util.FileFingerprintUtil;
+import com.geekonup.service.util.MarkdownMergeUtil;
+import com.geekonup.service.util.StreamingMarkdownWriter;
 import com.geekonup.service.util.VideoAnalysisAiUtil;
 import lombok.Data;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 飞书视频分析服务实现类
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisService {
 
-    // FFmpeg路径
-    @Value("${ffmpeg.path}")
-    private String ffmpegPath;
+    // 阶段二输出无效时的最多请求次数
+    private static final int STRUCTURE_ATTEMPTS = 2;
 
-    // 目标分辨率
-    @Value("${ffmpeg.compression.resolution}")
-    private String targetResolution;
+    private final AnalysisPipelineExecutor pipelineExecutor;
 
-    // 目标帧率
-    @Value("${ffmpeg.compression.frame-rate}")
-    private int targetFrameRate;
+    private final JobJournal jobJournal;
 
-    // 质量因子
-    @Value("${ffmpeg.compression.crf}")
-    private int crf;
+    private final AnalysisJobRegistry jobRegistry;
 
-    // 视频文件目录
-    @Value("${ffmpeg.video-dir}")
-    private String videoDir;
+    private final AnalysisResultCache resultCache;
 
-    // 压缩超时时间（秒）
-    @Value("${ffmpeg.timeout:1800}")
-    private int compressionTimeout;
+    private final ProxyStore proxyStore;
+
+    private final VideoCompressor videoCompressor;
+
+    private final MediaProbe mediaProbe;
+
+    private final SceneFrameExtractor frameExtractor;
+
+    private final AudioProfiler audioProfiler;
+
+    private final VideoChunker videoChunker;
+
+    private final VideoIndex videoIndex;
+
+    private final MediaServer mediaServer;
+
+    private final AiStreamMetrics aiStreamMetrics;
+
+    private final AiRateLimiter aiRateLimiter;
+
+    private final ModelRouter modelRouter;
+
+    private final StructureFastPath structureFastPath;
+
+    private final IngestWatcher ingestWatcher;
+
+    private final List<MetricsSource> metricsSources;
+
+    // 正在处理中的任务（key: 源视频规范路径 + 分析模式），同源同模式的请求合并到该任务
+    private final Map<String, AnalysisJob> inFlightJobs = new ConcurrentHashMap<>();
 
     // 飞书多维表格配置
     @Value("${feishu.bitable.app-id:}")
@@ -92,15 +163,17 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
     @Value("${feishu.bitable.field-mapping.markdown-report:分析报告}")
     private String fieldMarkdownReport;
 
+    // 高光候选字段，为空时不写入（多维表格中没有该字段时写入会失败）
+    @Value("${feishu.bitable.field-mapping.highlight-candidates:}")
+    private String fieldHighlightCandidates;
+
     @Value("${ai.api-key:}")
     private String aiApiKey;
 
     @Value("${ai.base-url:https://dashscope.aliyuncs.com/compatible-mode/v1}")
     private String aiBaseUrl;
 
-    // 视频理解模型
-    @Value("${ai.step1-model:qwen-vl-max}")
-    private String aiStep1Model;
+    // 视频理解模型由 ModelRouter 按 ai.step1-model 和 ai.model-chain 选择
 
     // 文本结构化模型
     @Value("${ai.step2-model:qwen-max}")
@@ -113,6 +186,14 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
     @Value("${ai.prompt2-path:D:\\nas\\prompt\\prompt2.txt}")
     private String aiPrompt2Path;
 
+    // 是否执行结构化阶段（阶段二），关闭时多维表格只写入 Markdown 报告
+    @Value("${pipeline.structure.enabled:true}")
+    private boolean structureEnabled;
+
+    // 阶段一是否流式接收模型输出
+    @Value("${ai.streaming.enabled:true}")
+    private boolean aiStreaming;
+
     private VideoAnalysisAiUtil aiUtil;
 
     private VideoAnalysisAiUtil getAiUtil() {
@@ -120,7 +201,7 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
             if (aiApiKey == null || aiApiKey.isBlank()) {
                 throw new IllegalStateException("AI API Key 未配置");
             }
-            aiUtil = new VideoAnalysisAiUtil(aiApiKey, aiBaseUrl);
+            aiUtil = new VideoAnalysisAiUtil(aiApiKey, aiBaseUrl, aiStreaming, aiStreamMetrics, aiRateLimiter);
         }
         return aiUtil;
     }
@@ -130,70 +211,655 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
         log.info("收到视频分析请求: videoName={}, recordId={}",
                 request.videoName(), request.recordId());
 
-        // 立即返回，异步处理
         VideoAnalysisResponse response = new VideoAnalysisResponse();
+
+        // 先写任务日志再入队，保证阶段事件一定在接收事件之后
+        AnalysisJob job = AnalysisJob.create(request);
+        jobJournal.append(job, JobEvent.SUBMITTED, null);
+
+        // 提交到流水线入口，队列已满时快速返回繁忙，不在请求线程上执行任何耗时操作
+        boolean accepted = pipelineExecutor.trySubmit(PipelineStage.LOOKUP, job, () -> runCompressStage(job));
+        if (!accepted) {
+            log.warn("流水线压缩队列已满，拒绝请求: videoName={}, recordId={}",
+                    request.videoName(), request.recordId());
+            jobJournal.append(job, JobEvent.FAILED, ErrorCode.SERVICE_BUSY.getMessage());
+            response.setStatusCode(new StatusCode(ErrorCode.SERVICE_BUSY.getCode(), ErrorCode.SERVICE_BUSY.getMessage()));
+            return response;
+        }
+
+        jobRegistry.register(job);
         response.setStatusCode(new StatusCode(200, "请求已接收，正在处理中..."));
+        response.setJobId(job.getJobId());
+        return response;
+    }
+
+    @Override
+    public AnalysisJobResponse getJob(String jobId) {
+        AnalysisJob job = jobRegistry.get(jobId);
+        if (job == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND.getCode(), "任务不存在: " + jobId);
+        }
+        return toJobResponse(job);
+    }
+
+    @Override
+    public PageResult<AnalysisJobResponse> listJobs(int page, int size) {
+        int pageNo = Math.max(1, page);
+        int pageSize = Math.min(Math.max(1, size), 200);
+        List<AnalysisJobResponse> records = jobRegistry.list((pageNo - 1) * pageSize, pageSize).stream()
+                .map(this::toJobResponse)
+                .toList();
+        return new PageResult<>((long) jobRegistry.size(), pageNo, pageSize, records);
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metricsSources.forEach(source -> metrics.put(source.metricsName(), source.metrics()));
+        return metrics;
+    }
 
-        // 异步处理视频分析和更新飞书多维表格
-        processAnalysisAsync(request);
+    private AnalysisJobResponse toJobResponse(AnalysisJob job) {
+        AnalysisJobResponse response = new AnalysisJobResponse();
+        response.setJobId(job.getJobId());
+        response.setVideoName(job.getRequest().videoName());
+        response.setRecordId(job.getRequest().recordId());
+        response.setState(job.getState().name());
+        if (job.getAnalysisMode() != null) {
+            response.setAnalysisMode(job.getAnalysisMode().getValue());
+        }
+        if (job.getStage() != null) {
+            response.setStage(job.getStage().name());
+            response.setStageDescription(job.getStage().getDescription() + "（" + job.getState().getDescription() + "）");
+        }
+        response.setQueuePosition(pipelineExecutor.queuePosition(job));
+        Map<String, Long> durations = new LinkedHashMap<>();
+        job.stageDurationsSnapshot().forEach((stage, millis) -> durations.put(stage.name().toLowerCase(), millis));
+        response.setStageDurations(durations);
+        if (job.getEncodeProgress() != null && job.getEncodeProgress().isStarted()) {
+            response.setEncodeProgress(job.getEncodeProgress().snapshot());
+        }
+        response.setInputSize(job.getInputSize());
+        response.setOutputSize(job.getOutputSize());
+        MediaInfo media = job.getMediaInfo();
+        if (media != null) {
+            response.setDurationSeconds(media.getDurationSeconds());
+            if (media.hasVideo()) {
+                response.setResolution(media.getWidth() + "x" + media.getHeight());
+                response.setCodec(media.hasAudio() ? media.getVideoCodec() + "/" + media.getAudioCodec() : media.getVideoCodec());
+            }
+        }
+        response.setHighlightCandidates(AudioProfiler.format(job.getHighlightCandidates()));
+        response.setModel(job.getServedModels());
+        response.setResultCacheHit(job.isResultCacheHit());
+        response.setFailureReason(job.getFailureReason());
+        response.setCoalescedInto(job.getCoalescedInto());
+        response.setFollowerJobIds(job.getFollowers().stream().map(AnalysisJob::getJobId).toList());
+        response.setCreatedAt(job.getCreatedAt());
+        response.setFinishedAt(job.getFinishedAt());
         return response;
     }
 
     /**
-     * 异步处理视频分析和更新飞书多维表格
+     * 服务启动后回放任务日志，从每个未完成任务最后完成的阶段继续执行
      */
-    @Async
-    public void processAnalysisAsync(VideoAnalyzeRequest request) {
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<AnalysisJob> unfinished = jobJournal.recover();
+        if (unfinished.isEmpty()) {
+            return;
+        }
+        // 交接到下游阶段可能阻塞，放到单独线程中执行，避免阻塞启动流程
+        unfinished.forEach(jobRegistry::register);
+        Thread.ofVirtual().name("pipeline-resume").start(() -> {
+            for (AnalysisJob job : unfinished) {
+                try {
+                    resumeJob(job);
+                } catch (Exception e) {
+                    log.error("恢复任务失败: jobId={}", job.getJobId(), e);
+                }
+            }
+        });
+    }
+
+    private void resumeJob(AnalysisJob job) {
+        PipelineStage stage = switch (job.getLastEvent()) {
+            case STRUCTURED -> fileExists(job.getReportPath()) ? PipelineStage.BITABLE
+                    : fileExists(job.getCompressedPath()) ? PipelineStage.AI : PipelineStage.COMPRESS;
+            case ANALYZED -> fileExists(job.getReportPath())
+                    ? (structureEnabled ? PipelineStage.STRUCTURE : PipelineStage.BITABLE)
+                    : fileExists(job.getCompressedPath()) ? PipelineStage.AI : PipelineStage.COMPRESS;
+            case COMPRESSED -> fileExists(job.getCompressedPath()) ? PipelineStage.AI : PipelineStage.COMPRESS;
+            default -> PipelineStage.COMPRESS;
+        };
+        log.info("恢复任务: jobId={}, videoName={}, recordId={}, 最后完成事件={}, 从{}阶段继续",
+                job.getJobId(), job.getRequest().videoName(), job.getRequest().recordId(),
+                job.getLastEvent().getDescription(), stage.getDescription());
+        if (stage == PipelineStage.AI) {
+            // 重新占据合并窗口，让同源的恢复任务或新请求合并过来
+            inFlightJobs.putIfAbsent(flightKey(job, new File(job.getSourcePath())), job);
+        }
+        switch (stage) {
+            case BITABLE -> pipelineExecutor.submit(stage, job, () -> runBitableStage(job, loadAnalysisData(job)));
+            case STRUCTURE -> pipelineExecutor.submit(stage, job, () -> runStructureStage(job, loadAnalysisData(job)));
+            case AI -> pipelineExecutor.submit(stage, job, () -> runAiStage(job));
+            default -> pipelineExecutor.submit(PipelineStage.LOOKUP, job, () -> runCompressStage(job));
+        }
+    }
+
+    /**
+     * 流水线阶段一：视频查找和压缩，完成后交接到 AI 阶段
+     */
+    private void runCompressStage(AnalysisJob job) {
+        VideoAnalyzeRequest request = job.getRequest();
         try {
-            log.info("开始异步处理视频分析: videoName={}, recordId={}",
+            log.info("开始处理视频查找和压缩: videoName={}, recordId={}",
                     request.videoName(), request.recordId());
 
-            // 1. 处理视频查找和压缩
-            VideoCompressionResult compressionResult = processVideoCompression(request.videoName());
+            // 已定位过的任务（恢复场景）直接复用源视频路径
+            job.startStage(PipelineStage.LOOKUP);
+            File videoFile;
+            if (fileExists(job.getSourcePath())) {
+                videoFile = new File(job.getSourcePath());
+            } else {
+                VideoLookupResult lookupResult = locateVideoFile(request.videoName());
+                if (!lookupResult.isSuccess()) {
+                    log.error("视频查找失败: {}", lookupResult.getErrorMessage());
+                    failJob(job, lookupResult.getErrorMessage());
+                    return;
+                }
+                videoFile = lookupResult.getVideoFile();
+                job.setSourcePath(videoFile.getAbsolutePath());
+                jobJournal.append(job, JobEvent.LOCATED, job.getSourcePath());
+            }
+            job.setInputSize(videoFile.length());
+            job.setMediaInfo(mediaProbe.probe(videoFile));
+            job.setAnalysisMode(frameExtractor.resolve(request.analysisMode(), job.getMediaInfo(), videoFile.length()));
+            job.finishStage(PipelineStage.LOOKUP);
+
+            // 同一源视频已有任务在处理时合并过去，由其统一写回结果
+            AnalysisJob leader = joinSingleFlight(job, videoFile);
+            if (leader != job) {
+                log.info("同源视频正在处理，合并到任务: jobId={}, leaderJobId={}, recordId={}",
+                        job.getJobId(), leader.getJobId(), request.recordId());
+                return;
+            }
+
+            // 认领源视频，正在预处理时等待其完成，之后的音频测量和压缩直接复用预处理结果
+            ingestWatcher.claim(videoFile, job);
+
+            // 本地音频分析预选高光候选（测量结果按源视频复用），结果缓存命中时同样写回
+            job.setHighlightCandidates(audioProfiler.highlights(videoFile, sourceFingerprint(job), job.getMediaInfo()));
+
+            // 命中分析结果缓存时跳过压缩和模型调用；结构化结果也已缓存时跳过结构化阶段，直接写回多维表格
+            VideoAnalysisData cachedData = lookupResultCache(job, videoFile);
+            if (cachedData != null) {
+                jobJournal.append(job, JobEvent.ANALYZED, job.getReportPath());
+                if (cachedData.getStructuredResult() != null) {
+                    jobJournal.append(job, JobEvent.STRUCTURED, job.getStructuredPath());
+                    pipelineExecutor.submit(PipelineStage.BITABLE, job, () -> runBitableStage(job, cachedData));
+                } else {
+                    handOffAnalyzed(job, cachedData);
+                }
+                return;
+            }
+
+            job.startStage(PipelineStage.COMPRESS);
+            FfmpegProgress encodeProgress = new FfmpegProgress();
+            job.setEncodeProgress(encodeProgress);
+            // 关键帧模式下"压缩后文件"为关键帧索引，不生成代理视频
+            CompressionResult compressionResult = job.getAnalysisMode() == AnalysisMode.FRAMES
+                    ? frameExtractor.extract(videoFile, job.getMediaInfo(), job.getJobId(), encodeProgress)
+                    : videoCompressor.compress(videoFile, sourceFingerprint(job), encodeProgress, chunkCountOf(job));
             if (!compressionResult.isSuccess()) {
                 log.error("视频压缩失败: {}", compressionResult.getErrorMessage());
-                updateFeishuBitableWithError(request.recordId(), compressionResult.getErrorMessage());
+                failJob(job, compressionResult.getErrorMessage());
                 return;
             }
+            job.setProxyKey(compressionResult.getProxyKey());
+            job.setCompressedPath(compressionResult.getCompressedVideoPath());
+            job.setOutputSize(job.getAnalysisMode() == AnalysisMode.FRAMES
+                    ? frameExtractor.totalBytes(job.getCompressedPath())
+                    : new File(job.getCompressedPath()).length());
+            jobJournal.append(job, JobEvent.COMPRESSED, job.getCompressedPath());
+            job.finishStage(PipelineStage.COMPRESS);
+
+            pipelineExecutor.submit(PipelineStage.AI, job, () -> runAiStage(job));
+        } catch (Exception e) {
+            log.error("处理视频压缩时发生异常: recordId={}", request.recordId(), e);
+            failJob(job, "处理失败: " + e.getMessage());
+        }
+    }
 
-            // 2. 调用AI分析
-            VideoAnalysisData analysisData = analyzeVideoWithAI(
-                    compressionResult.getCompressedVideoPath());
+    /**
+     * 流水线阶段二：调用 AI 分析，完成后交接到多维表格阶段
+     */
+    private void runAiStage(AnalysisJob job) {
+        try {
+            job.startStage(PipelineStage.AI);
+            String mediaDescription = describeMedia(mediaInfoOf(job), highlightCandidatesOf(job));
+            int chunkCount = chunkCountOf(job);
+            VideoAnalysisData analysisData = analysisModeOf(job) == AnalysisMode.FRAMES
+                    ? analyzeFramesWithAI(job, mediaDescription)
+                    : chunkCount > 1
+                    ? analyzeChunksWithAI(job, chunkCount)
+                    : analyzeVideoWithAI(job, mediaDescription);
             if (!analysisData.isSuccess()) {
                 log.error("AI分析失败: {}", analysisData.getErrorMessage());
-                updateFeishuBitableWithError(request.recordId(), analysisData.getErrorMessage());
+                failJob(job, analysisData.getErrorMessage());
                 return;
             }
+            job.setReportPath(analysisData.getReportPath());
+            jobJournal.append(job, JobEvent.ANALYZED, job.getReportPath());
+            job.finishStage(PipelineStage.AI);
+            storeResultCache(job, analysisData.getMarkdownReport());
+
+            handOffAnalyzed(job, analysisData);
+        } catch (Exception e) {
+            log.error("AI分析阶段发生异常: recordId={}", job.getRequest().recordId(), e);
+            failJob(job, "处理失败: " + e.getMessage());
+        } finally {
+            // 模型已读取完代理文件，允许其被淘汰
+            proxyStore.release(job.getProxyKey());
+            job.setProxyKey(null);
+            frameExtractor.discard(job.getCompressedPath());
+            videoChunker.discard(job.getJobId());
+        }
+    }
+
+    /**
+     * 阶段一完成后的交接：启用结构化阶段时交给结构化阶段，否则直接写回多维表格
+     */
+    private void handOffAnalyzed(AnalysisJob job, VideoAnalysisData analysisData) {
+        if (structureEnabled) {
+            pipelineExecutor.submit(PipelineStage.STRUCTURE, job, () -> runStructureStage(job, analysisData));
+        } else {
+            pipelineExecutor.submit(PipelineStage.BITABLE, job, () -> runBitableStage(job, analysisData));
+        }
+    }
+
+    /**
+     * 流水线阶段三：调用文本模型把 Markdown 报告整理为结构化字段，完成后交接到多维表格阶段
+     * 结构化失败时只记录日志，多维表格仍写入 Markdown 报告，阶段一的结果不会作废
+     */
+    private void runStructureStage(AnalysisJob job, VideoAnalysisData analysisData) {
+        try {
+            job.startStage(PipelineStage.STRUCTURE);
+            if (analysisData.isSuccess()) {
+                try {
+                    VideoAnalysisResponse structured = structureReport(job, analysisData.getMarkdownReport());
+                    if (structured != null) {
+                        analysisData.setStructuredResult(structured);
+                        String structuredJson = JSONUtil.toJsonPrettyStr(structured);
+                        File structuredFile = structuredFileOf(analysisData.getReportPath());
+                        Files.writeString(structuredFile.toPath(), structuredJson);
+                        job.setStructuredPath(structuredFile.getAbsolutePath());
+                        jobJournal.append(job, JobEvent.STRUCTURED, job.getStructuredPath());
+                        resultCache.putStructured(job.getResultCacheKey(), structuredJson);
+                    }
+                } catch (Exception e) {
+                    log.warn("结构化分析失败，只写入 Markdown 报告: jobId={}", job.getJobId(), e);
+                }
+            }
+            job.finishStage(PipelineStage.STRUCTURE);
+
+            pipelineExecutor.submit(PipelineStage.BITABLE, job, () -> runBitableStage(job, analysisData));
+        } catch (Exception e) {
+            log.error("结构化分析阶段发生异常: recordId={}", job.getRequest().recordId(), e);
+            failJob(job, "处理失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 整理结构化结果：先从报告中本地提取字段，全部确定时不调用模型；否则调用阶段二模型补齐未确定的字段
+     * （本地已确定的字段优先），输出不是有效 JSON 或取值无效时重新请求一次
+     *
+     * @return 结构化结果，两次都无效时返回 null
+     */
+    private VideoAnalysisResponse structureReport(AnalysisJob job, String markdownReport) throws Exception {
+        VideoAnalysisResponse local = new VideoAnalysisResponse();
+        List<String> missing = StructuredResultParser.FIELDS;
+        if (structureFastPath.isEnabled()) {
+            MarkdownFieldExtractor.Extraction extraction = structureFastPath.extract(markdownReport);
+            local = extraction.result();
+            missing = extraction.missingFields();
+            if (missing.isEmpty()) {
+                log.info("结构化字段已全部从报告中提取，跳过阶段二模型: jobId={}, 剪辑结论={}, 优先级={}",
+                        job.getJobId(), local.getEditConclusion(), local.getEditPriority());
+                return local;
+            }
+        }
+        // 只缺部分字段时让模型只输出这些字段
+        List<String> requested = missing.size() < StructuredResultParser.FIELDS.size() ? missing : null;
+        if (requested != null) {
+            log.info("结构化字段部分从报告中提取，由阶段二模型补齐: jobId={}, 补齐字段={}", job.getJobId(), requested);
+        }
+        for (int attempt = 1; ; attempt++) {
+            String content = aiRateLimiter.execute(job.getCreatedAt(),
+                    aiRateLimiter.estimateTextTokens(markdownReport.length()), "阶段二模型调用",
+                    () -> getAiUtil().structureReport(markdownReport, aiPrompt2Path, aiStep2Model, requested));
+            try {
+                VideoAnalysisResponse fromModel = StructuredResultParser.read(content, missing);
+                for (String field : missing) {
+                    StructuredResultParser.set(local, field, StructuredResultParser.get(fromModel, field));
+                }
+                List<String> invalid = StructuredResultParser.invalidFields(local);
+                if (!invalid.isEmpty()) {
+                    throw new IllegalArgumentException("结构化结果取值无效: " + String.join(", ", invalid));
+                }
+                log.info("结构化分析完成: jobId={}, 剪辑结论={}, 优先级={}", job.getJobId(),
+                        local.getEditConclusion(), local.getEditPriority());
+                return local;
+            } catch (IllegalArgumentException e) {
+                if (attempt >= STRUCTURE_ATTEMPTS) {
+                    log.warn("阶段二输出无效，放弃结构化: jobId={}, {}", job.getJobId(), e.getMessage());
+                    return null;
+                }
+                log.warn("阶段二输出无效，重新请求: jobId={}, {}", job.getJobId(), e.getMessage());
+            }
+        }
+    }
 
-            // 3. 更新飞书多维表格
-            updateFeishuBitable(request.recordId(), analysisData);
+    /**
+     * 结构化结果文件（与 Markdown 报告同目录、同名的 .json 文件）
+     */
+    private static File structuredFileOf(String reportPath) {
+        File reportFile = new File(reportPath);
+        String name = reportFile.getName();
+        String baseName = name.endsWith(".md") ? name.substring(0, name.length() - ".md".length()) : name;
+        return new File(reportFile.getParentFile(), baseName + ".json");
+    }
+
+    /**
+     * 流水线阶段四：更新飞书多维表格
+     */
+    private void runBitableStage(AnalysisJob job, VideoAnalysisData analysisData) {
+        try {
+            job.startStage(PipelineStage.BITABLE);
+            if (!analysisData.isSuccess()) {
+                failJob(job, analysisData.getErrorMessage());
+                return;
+            }
+            analysisData.setHighlightCandidates(AudioProfiler.format(highlightCandidatesOf(job)));
+            // 关闭合并窗口后再取跟随者，保证之后不会再有记录被漏写
+            List<AnalysisJob> followers = leaveSingleFlight(job);
+            Set<String> recordIds = new LinkedHashSet<>();
+            recordIds.add(job.getRequest().recordId());
+            followers.forEach(follower -> recordIds.add(follower.getRequest().recordId()));
+
+            boolean allWritten = true;
+            for (String recordId : recordIds) {
+                allWritten &= updateFeishuBitable(recordId, analysisData);
+            }
+            if (!allWritten) {
+                markFailed(job, "更新飞书多维表格失败");
+                followers.forEach(follower -> markFailed(follower, "更新飞书多维表格失败"));
+                return;
+            }
 
-            log.info("视频分析完成并已更新飞书多维表格: recordId={}", request.recordId());
+            job.finishStage(PipelineStage.BITABLE);
+            completeJob(job);
+            followers.forEach(follower -> {
+                follower.setCompressedPath(job.getCompressedPath());
+                follower.setReportPath(job.getReportPath());
+                follower.setStructuredPath(job.getStructuredPath());
+                completeJob(follower);
+            });
+            log.info("视频分析完成并已更新飞书多维表格: recordIds={}", recordIds);
         } catch (Exception e) {
-            log.error("异步处理视频分析时发生异常: recordId={}", request.recordId(), e);
-            updateFeishuBitableWithError(request.recordId(), "处理失败: " + e.getMessage());
+            log.error("更新飞书多维表格阶段发生异常: recordId={}", job.getRequest().recordId(), e);
+            markFailed(job, "更新飞书多维表格异常: " + e.getMessage());
+            job.getFollowers().forEach(follower -> markFailed(follower, "更新飞书多维表格异常: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 查询分析结果缓存，命中时把报告和结构化结果复制到任务自己的输出位置（与源视频同目录）
+     *
+     * @return 命中时返回缓存的分析结果，否则返回 null
+     */
+    private VideoAnalysisData lookupResultCache(AnalysisJob job, File videoFile) {
+        if (!resultCache.isEnabled()) {
+            return null;
+        }
+        try {
+            job.setResultCacheKey(resultCache.keyFor(sourceFingerprint(job), aiPrompt1Path, resultCacheModel(job)));
+        } catch (IOException e) {
+            log.warn("计算分析结果缓存 key 失败，跳过缓存: {}", videoFile.getAbsolutePath(), e);
+            return null;
+        }
+        AnalysisResultCache.Entry cached = resultCache.get(job.getResultCacheKey());
+        if (cached == null) {
+            return null;
+        }
+        try {
+            File reportFile = VideoAnalysisAiUtil.resolveMarkdownFile(videoFile);
+            Files.copy(cached.report(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            job.setReportPath(reportFile.getAbsolutePath());
+            if (cached.structured() != null) {
+                File structuredFile = structuredFileOf(job.getReportPath());
+                Files.copy(cached.structured(), structuredFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                job.setStructuredPath(structuredFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            log.warn("复制缓存的分析结果失败，重新分析: jobId={}", job.getJobId(), e);
+            job.setReportPath(null);
+            job.setStructuredPath(null);
+            return null;
+        }
+        job.setResultCacheHit(true);
+        VideoAnalysisData data = loadAnalysisData(job);
+        return data.isSuccess() ? data : null;
+    }
+
+    /**
+     * 结果缓存 key 中的模型部分（首选模型）：关键帧模式与完整视频模式的报告分开缓存
+     */
+    private String resultCacheModel(AnalysisJob job) {
+        if (analysisModeOf(job) == AnalysisMode.FRAMES) {
+            return modelRouter.primaryModel() + "|frames";
+        }
+        String model = modelRouter.primaryModel();
+        return chunkCountOf(job) > 1 ? model + videoChunker.cacheSuffix() : model;
+    }
+
+    /**
+     * 分段分析的片段数（只用于完整视频模式），由时长决定，恢复的任务重新计算结果相同
+     */
+    private int chunkCountOf(AnalysisJob job) {
+        return analysisModeOf(job) == AnalysisMode.FRAMES ? 1 : videoChunker.chunkCount(mediaInfoOf(job));
+    }
+
+    /**
+     * 任务的分析模式，恢复的任务没有经过查找阶段，按压缩后文件是否为关键帧索引判断
+     */
+    private AnalysisMode analysisModeOf(AnalysisJob job) {
+        if (job.getAnalysisMode() == null) {
+            job.setAnalysisMode(frameExtractor.isFrameIndex(job.getCompressedPath()) ? AnalysisMode.FRAMES : AnalysisMode.VIDEO);
+        }
+        return job.getAnalysisMode();
+    }
+
+    /**
+     * 源视频指纹（每个任务只计算一次）
+     */
+    private String sourceFingerprint(AnalysisJob job) throws IOException {
+        if (job.getSourceFingerprint() == null) {
+            job.setSourceFingerprint(FileFingerprintUtil.fingerprint(new File(job.getSourcePath())));
+        }
+        return job.getSourceFingerprint();
+    }
+
+    /**
+     * 写入分析结果缓存（恢复场景下任务没有缓存 key，按源视频重新计算）
+     * 缓存 key 按首选模型计算，报告（或其中部分片段）由备用模型生成时不写入，避免之后按首选模型命中备用模型的结果
+     */
+    private void storeResultCache(AnalysisJob job, String markdownReport) {
+        if (!resultCache.isEnabled()) {
+            return;
+        }
+        if (!modelRouter.primaryModel().equals(job.getServedModels())) {
+            log.info("阶段一使用了非首选模型（{}），不写入分析结果缓存: jobId={}", job.getServedModels(), job.getJobId());
+            // 之后的结构化结果不对应缓存中的报告，不能附到该 key 上
+            job.setResultCacheKey(null);
+            return;
+        }
+        try {
+            if (job.getResultCacheKey() == null && fileExists(job.getSourcePath())) {
+                job.setResultCacheKey(resultCache.keyFor(sourceFingerprint(job), aiPrompt1Path, resultCacheModel(job)));
+            }
+            resultCache.put(job.getResultCacheKey(), markdownReport);
+        } catch (IOException e) {
+            log.warn("计算分析结果缓存 key 失败，跳过缓存: jobId={}", job.getJobId(), e);
+        }
+    }
+
+    /**
+     * 加入同源视频的合并窗口
+     *
+     * @return 处理该源视频的任务；返回当前任务本身表示由当前任务继续处理
+     */
+    private AnalysisJob joinSingleFlight(AnalysisJob job, File videoFile) {
+        return inFlightJobs.compute(flightKey(job, videoFile), (key, existing) -> {
+            if (existing == null || existing == job) {
+                return job;
+            }
+            // 在合并前写日志，保证跟随者的结束事件一定在合并事件之后
+            jobJournal.append(job, JobEvent.ATTACHED, existing.getJobId());
+            existing.attachFollower(job);
+            return existing;
+        });
+    }
+
+    /**
+     * 离开合并窗口，返回此前合并进来的全部跟随者
+     */
+    private List<AnalysisJob> leaveSingleFlight(AnalysisJob job) {
+        if (job.getSourcePath() != null) {
+            inFlightJobs.remove(flightKey(job, new File(job.getSourcePath())), job);
+        }
+        return job.getFollowers();
+    }
+
+    private String flightKey(AnalysisJob job, File videoFile) {
+        return sourceKey(videoFile) + "|" + analysisModeOf(job).getValue();
+    }
+
+    private static String sourceKey(File videoFile) {
+        try {
+            return videoFile.getCanonicalPath();
+        } catch (IOException e) {
+            return videoFile.getAbsolutePath();
+        }
+    }
+
+    private void completeJob(AnalysisJob job) {
+        jobJournal.append(job, JobEvent.WRITTEN, null);
+        job.markDone();
+    }
+
+    /**
+     * 任务失败：写回错误信息并记录终止事件，合并进来的跟随者同样失败
+     */
+    private void failJob(AnalysisJob job, String errorMessage) {
+        List<AnalysisJob> followers = leaveSingleFlight(job);
+        updateFeishuBitableWithError(job.getRequest().recordId(), errorMessage);
+        markFailed(job, errorMessage);
+        for (AnalysisJob follower : followers) {
+            updateFeishuBitableWithError(follower.getRequest().recordId(), errorMessage);
+            markFailed(follower, errorMessage);
+        }
+    }
+
+    private void markFailed(AnalysisJob job, String errorMessage) {
+        jobJournal.append(job, JobEvent.FAILED, errorMessage);
+        job.markFailed(errorMessage);
+    }
+
+    /**
+     * 从已保存的 Markdown 报告恢复分析结果（恢复场景）
+     */
+    private VideoAnalysisData loadAnalysisData(AnalysisJob job) {
+        try {
+            VideoAnalysisData data = VideoAnalysisData.success();
+            data.setMarkdownReport(Files.readString(Paths.get(job.getReportPath())));
+            data.setReportPath(job.getReportPath());
+            if (fileExists(job.getStructuredPath())) {
+                data.setStructuredResult(JSONUtil.toBean(Files.readString(Paths.get(job.getStructuredPath())),
+                        VideoAnalysisResponse.class));
+            }
+            return data;
+        } catch (IOException e) {
+            log.error("读取 Markdown 分析报告失败: {}", job.getReportPath(), e);
+            return VideoAnalysisData.failure("读取分析报告失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 源视频元数据，恢复的任务跳过了查找阶段，这里按源视频补齐（探测结果有缓存）
+     */
+    private MediaInfo mediaInfoOf(AnalysisJob job) {
+        if (job.getMediaInfo() == null && fileExists(job.getSourcePath())) {
+            job.setMediaInfo(mediaProbe.probe(new File(job.getSourcePath())));
         }
+        return job.getMediaInfo();
+    }
+
+    /**
+     * 高光候选，恢复的任务只读取已有的测量结果，不重新测量
+     */
+    private List<HighlightCandidate> highlightCandidatesOf(AnalysisJob job) {
+        if (job.getHighlightCandidates() == null && fileExists(job.getSourcePath())) {
+            try {
+                job.setHighlightCandidates(audioProfiler.cachedHighlights(sourceFingerprint(job)));
+            } catch (IOException e) {
+                log.warn("计算源视频指纹失败，跳过高光候选: jobId={}", job.getJobId(), e);
+                job.setHighlightCandidates(List.of());
+            }
+        }
+        return job.getHighlightCandidates();
+    }
+
+    private static boolean fileExists(String path) {
+        return path != null && new File(path).isFile();
     }
 
     /**
      * 更新飞书多维表格（成功情况）
+     *
+     * @return 是否处理完成（记录ID为空或配置不完整时跳过，同样视为完成）
      */
-    private void updateFeishuBitable(String recordId, VideoAnalysisData analysisData) {
+    private boolean updateFeishuBitable(String recordId, VideoAnalysisData analysisData) {
         if (StrUtil.isBlank(recordId)) {
             log.warn("记录ID为空，跳过更新飞书多维表格");
-            return;
+            return true;
         }
 
         if (StrUtil.isBlank(feishuAppId) || StrUtil.isBlank(feishuAppSecret) ||
                 StrUtil.isBlank(feishuAppToken) || StrUtil.isBlank(feishuTableId)) {
             log.warn("飞书多维表格配置不完整，跳过更新");
-            return;
+            return true;
         }
 
         try {
             Map<String, Object> fields = new HashMap<>();
             // 保存阶段一的 Markdown 分析报告
             fields.put(fieldMarkdownReport, analysisData.getMarkdownReport());
+            if (StrUtil.isNotBlank(fieldHighlightCandidates) && analysisData.getHighlightCandidates() != null) {
+                fields.put(fieldHighlightCandidates, analysisData.getHighlightCandidates());
+            }
+            // 阶段二的结构化字段，只写入有值的字段
+            VideoAnalysisResponse structured = analysisData.getStructuredResult();
+            if (structured != null) {
+                putIfNotBlank(fields, fieldEditConclusion, structured.getEditConclusion());
+                putIfNotBlank(fields, fieldEditPriority, structured.getEditPriority());
+                putIfNotBlank(fields, fieldVideoSummary, structured.getVideoSummary());
+                putIfNotBlank(fields, fieldContentTags, structured.getContentTags());
+                putIfNotBlank(fields, fieldCoreValue, structured.getCoreValue());
+                putIfNotBlank(fields, fieldEditStructureSuggestion, structured.getEditStructureSuggestion());
+                putIfNotBlank(fields, fieldHighlightSlices, structured.getHighlightSlices());
+                putIfNotBlank(fields, fieldEmotionalIntensity, structured.getEmotionalIntensity());
+            }
 
             boolean success = FeishuBitableUtil.updateRecord(
                     feishuAppToken, feishuTableId, recordId, fields, feishuAppId, feishuAppSecret);
@@ -203,8 +869,16 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
             } else {
                 log.error("更新飞书多维表格失败: recordId={}", recordId);
             }
+            return success;
         } catch (Exception e) {
             log.error("更新飞书多维表格时发生异常: recordId={}", recordId, e);
+            return false;
+        }
+    }
+
+    private static void putIfNotBlank(Map<String, Object> fields, String fieldName, String value) {
+        if (StrUtil.isNotBlank(fieldName) && StrUtil.isNotBlank(value)) {
+            fields.put(fieldName, value);
         }
     }
 
@@ -230,135 +904,64 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
     }
 
     /**
-     * 处理视频查找和压缩
+     * 查找视频文件
      *
      * @param videoName 视频名称
-     * @return 压缩结果，包含成功状态和压缩后的视频路径
+     * @return 查找结果，包含成功状态和视频文件
      */
-    private VideoCompressionResult processVideoCompression(String videoName) {
+    private VideoLookupResult locateVideoFile(String videoName) {
         // 检查视频名称是否为空
         if (videoName == null || videoName.isBlank()) {
             log.warn("视频名称为空");
-            return VideoCompressionResult.failure("视频名称不能为空");
+            return VideoLookupResult.failure("视频名称不能为空");
         }
 
-        // 检查目录
-        Path nasPath = Paths.get(videoDir);
-        File nasDirectory = nasPath.toFile();
-
-        if (!nasDirectory.exists()) {
-            log.warn("视频目录不存在: {}", videoDir);
-            return VideoCompressionResult.failure("视频目录不存在");
-        }
-
-        if (!nasDirectory.isDirectory()) {
-            log.warn("指定路径不是目录: {}", videoDir);
-            return VideoCompressionResult.failure("指定路径不是目录");
-        }
-
-        // 查找视频文件
+        // 在 video-dir 及 extra-dirs 中查找视频文件（不存在的目录会被跳过）
         String videoNameWithoutExt = removeFileExtension(videoName);
-        File videoFile = FfmpegUtil.findVideoFile(videoDir, videoNameWithoutExt);
+        File videoFile = videoIndex.find(videoNameWithoutExt);
 
         if (videoFile == null) {
-            log.warn("未找到视频文件: videoName={}, 目录={}", videoName, videoDir);
-            return VideoCompressionResult.failure("没有找到该名称的视频文件");
-        }
-
-        // 记录原文件大小
-        long originalFileSize = videoFile.length();
-        double originalSizeMB = originalFileSize / 1024.0 / 1024.0;
-        log.info("原视频文件大小: {} MB", String.format("%.2f", originalSizeMB));
-
-        // AI模型限制：只能接收100M以内的视频
-        long maxSizeForAI = 100L * 1024 * 1024; // 100MB
-        long skipCompressionThreshold = 99L * 1024 * 1024; // 99MB，小于此值不压缩
-
-        // 如果视频小于99MB，直接返回原文件路径，不压缩
-        if (originalFileSize < skipCompressionThreshold) {
-            log.info("视频小于99MB，无需压缩，直接使用原文件: {}", videoFile.getAbsolutePath());
-            return VideoCompressionResult.success(videoFile.getAbsolutePath());
-        }
-
-        // 根据原文件大小动态选择压缩参数，确保压缩后 < 100MB
-        CompressionConfig config = determineCompressionConfig(originalFileSize, maxSizeForAI);
-        log.info("视频需要压缩，使用配置：分辨率={}, 帧率={}, CRF={}, 超时={}秒",
-                config.resolution, config.frameRate, config.crf, config.timeout);
-
-        if (!FfmpegUtil.checkFfmpegAvailable(ffmpegPath)) {
-            log.warn("FFmpeg 不可用，请检查配置路径: {}", ffmpegPath);
-            return VideoCompressionResult.failure("FFmpeg 不可用，请检查配置");
-        }
-
-        String inputVideoPath = videoFile.getAbsolutePath();
-        String outputVideoPath = generateCompressedVideoPath(inputVideoPath, config);
-
-        log.info("开始压缩视频: {} -> {}", inputVideoPath, outputVideoPath);
-        log.info("压缩参数: 分辨率={}, 帧率={}, CRF={}, 超时={}秒",
-                config.resolution, config.frameRate, config.crf, config.timeout);
-
-        // 执行视频压缩
-        boolean compressSuccess = FfmpegUtil.compressVideo(
-                ffmpegPath,
-                inputVideoPath,
-                outputVideoPath,
-                config.resolution,
-                config.frameRate,
-                config.crf,
-                config.timeout
-        );
-
-        if (!compressSuccess) {
-            log.error("视频压缩失败: {}", inputVideoPath);
-            return VideoCompressionResult.failure("视频压缩失败");
-        }
-
-        // 验证输出文件是否存在
-        File outputFile = new File(outputVideoPath);
-        if (!outputFile.exists() || !outputFile.isFile()) {
-            log.error("压缩后的视频文件不存在: {}", outputVideoPath);
-            return VideoCompressionResult.failure("压缩后的视频文件生成失败");
-        }
-
-        // 记录压缩后文件大小
-        long compressedFileSize = outputFile.length();
-        double compressedSizeMB = compressedFileSize / 1024.0 / 1024.0;
-        double compressionRatio = (1.0 - (double) compressedFileSize / originalFileSize) * 100;
-        log.info("视频压缩成功: {}", outputVideoPath);
-        log.info("压缩后文件大小: {} MB, 压缩率: {}%",
-                String.format("%.2f", compressedSizeMB),
-                String.format("%.2f", compressionRatio));
-
-        // 验证压缩后文件是否超过100MB限制
-        if (compressedFileSize > maxSizeForAI) {
-            log.warn("压缩后文件大小 {} MB 仍超过100MB限制，可能需要进一步压缩", 
-                    String.format("%.2f", compressedSizeMB));
-            // 这里可以选择返回失败，或者继续使用（取决于你的需求）
-            // 当前先记录警告，继续使用
+            if (videoIndex.roots().stream().noneMatch(Files::isDirectory)) {
+                log.warn("视频目录均不存在: {}", videoIndex.roots());
+                return VideoLookupResult.failure("视频目录不存在");
+            }
+            log.warn("未找到视频文件: videoName={}, 目录={}", videoName, videoIndex.roots());
+            return VideoLookupResult.failure("没有找到该名称的视频文件");
         }
-
-        return VideoCompressionResult.success(outputVideoPath);
+        return VideoLookupResult.success(videoFile);
     }
 
     /**
      * 调用AI分析视频（阶段一：生成 Markdown 分析报告）
      *
-     * @param compressedVideoPath 压缩后的视频文件路径
+     * @param job              任务（压缩后文件为代理文件或直接使用的原文件，Markdown 报告保存在源视频旁边）
+     * @param mediaDescription 发给模型的源视频信息，可为空
      * @return 分析结果数据（包含 Markdown 报告）
      */
-    private VideoAnalysisData analyzeVideoWithAI(String compressedVideoPath) {
+    private VideoAnalysisData analyzeVideoWithAI(AnalysisJob job, String mediaDescription) {
+        String compressedVideoPath = job.getCompressedPath();
+        String sourceVideoPath = job.getSourcePath();
         log.info("开始AI分析视频（阶段一：Markdown）: {}", compressedVideoPath);
         try {
+            File markdownFile = VideoAnalysisAiUtil.resolveMarkdownFile(
+                    new File(sourceVideoPath != null ? sourceVideoPath : compressedVideoPath));
+            MediaInfo mediaInfo = mediaInfoOf(job);
             // 调用AI工具类分析视频，返回 Markdown 格式的分析报告
-            String markdownReport = getAiUtil().analyzeVideoToMarkdown(
-                    compressedVideoPath,
-                    aiPrompt1Path,
-                    aiStep1Model
-            );
+            String markdownReport = callStep1(job, "阶段一模型调用",
+                    aiRateLimiter.estimateVideoTokens(mediaInfo != null ? mediaInfo.getDurationSeconds() : 0),
+                    markdownFile, (model, reportFile) -> getAiUtil().analyzeVideoToMarkdown(
+                            compressedVideoPath,
+                            aiPrompt1Path,
+                            model,
+                            reportFile,
+                            mediaDescription,
+                            mediaServer.urlFor(new File(compressedVideoPath))
+                    ));
 
             // 创建分析结果数据，保存 Markdown 报告
             VideoAnalysisData data = VideoAnalysisData.success();
             data.setMarkdownReport(markdownReport);
+            data.setReportPath(markdownFile.getAbsolutePath());
 
             log.info("AI分析完成（阶段一：Markdown）");
             return data;
@@ -369,71 +972,199 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
     }
 
     /**
-     * 根据原文件大小动态确定压缩配置
-     * 目标：确保压缩后文件 < 100MB
-     * 
-     * 基于测试数据：
-     * - 5.78GB → 219MB (1920:1080, 24fps, CRF=23): 压缩率约 3.79%
-     * - 5.78GB → 80.37MB (1280:720, 24fps, CRF=25): 压缩率约 1.39%
-     */
-    private CompressionConfig determineCompressionConfig(long originalFileSize, long targetMaxSize) {
-        double originalSizeMB = originalFileSize / 1024.0 / 1024.0;
-        
-        // 根据文件大小选择压缩策略
-        if (originalSizeMB < 200) {
-            // 200MB以下：轻微压缩，保持较高画质
-            return new CompressionConfig("1920:1080", 24, 23, 1800);
-        } else if (originalSizeMB < 1000) {
-            // 200MB-1GB：中等压缩
-            return new CompressionConfig("1280:720", 24, 25, 2400);
-        } else if (originalSizeMB < 3000) {
-            // 1GB-3GB：较强压缩
-            return new CompressionConfig("1280:720", 24, 25, 3600);
-        } else if (originalSizeMB < 6000) {
-            // 3GB-6GB：强压缩，降低帧率
-            return new CompressionConfig("1280:720", 20, 25, 3600);
-        } else {
-            // 6GB以上：最强压缩，最低帧率
-            return new CompressionConfig("1280:720", 18, 25, 3600);
+     * 调用AI分析关键帧（阶段一：生成 Markdown 分析报告，关键帧模式）
+     *
+     * @param job              任务（压缩后文件为关键帧索引文件，Markdown 报告保存在源视频旁边）
+     * @param mediaDescription 发给模型的源视频信息，可为空
+     * @return 分析结果数据（包含 Markdown 报告）
+     */
+    private VideoAnalysisData analyzeFramesWithAI(AnalysisJob job, String mediaDescription) {
+        String frameIndexPath = job.getCompressedPath();
+        log.info("开始AI分析关键帧（阶段一：Markdown）: {}", frameIndexPath);
+        try {
+            File markdownFile = VideoAnalysisAiUtil.resolveMarkdownFile(new File(job.getSourcePath()));
+            List<FfmpegUtil.SceneFrame> frames = frameExtractor.load(frameIndexPath);
+            String markdownReport = callStep1(job, "阶段一模型调用（关键帧）",
+                    aiRateLimiter.estimateImageTokens(frames.size()),
+                    markdownFile, (model, reportFile) -> getAiUtil().analyzeFramesToMarkdown(
+                            frames,
+                            aiPrompt1Path,
+                            model,
+                            reportFile,
+                            mediaDescription
+                    ));
+
+            VideoAnalysisData data = VideoAnalysisData.success();
+            data.setMarkdownReport(markdownReport);
+            data.setReportPath(markdownFile.getAbsolutePath());
+
+            log.info("AI分析完成（阶段一：Markdown，关键帧）");
+            return data;
+        } catch (Exception e) {
+            log.error("AI分析关键帧时发生异常", e);
+            return VideoAnalysisData.failure("AI分析失败: " + e.getMessage());
         }
     }
 
     /**
-     * 压缩配置内部类
+     * 阶段一模型调用：按模型列表故障转移（可对冲），每个模型的调用经限流层排队，可重试的失败自动重试
+     *
+     * @param job             任务，记录实际使用的模型；任务创建时间作为限流排队优先级
+     * @param description     日志中的调用说明
+     * @param estimatedTokens 预估 token 数
+     * @param reportFile      报告保存位置；每次尝试先写入旁边的 .attempt{N}.md，只有胜出的尝试替换正式报告，
+     *                        被放弃的尝试即使之后才写完也不会覆盖
+     * @param call            使用指定模型和报告位置的调用
+     * @return Markdown 报告
      */
-    private static class CompressionConfig {
-        final String resolution;
-        final int frameRate;
-        final int crf;
-        final int timeout;
-
-        CompressionConfig(String resolution, int frameRate, int crf, int timeout) {
-            this.resolution = resolution;
-            this.frameRate = frameRate;
-            this.crf = crf;
-            this.timeout = timeout;
+    private String callStep1(AnalysisJob job, String description, long estimatedTokens, File reportFile,
+                             Step1Call call) throws Exception {
+        Set<Integer> attempts = ConcurrentHashMap.newKeySet();
+        boolean succeeded = false;
+        try {
+            ModelRouter.Served<String> served = modelRouter.execute(description, (model, attempt, listener) -> {
+                attempts.add(attempt);
+                return aiRateLimiter.execute(job.getCreatedAt(), estimatedTokens, description + "（" + model + "）",
+                        () -> call.analyze(model, attemptReportFile(reportFile, attempt)), listener);
+            });
+            Files.move(attemptReportFile(reportFile, served.attempt()).toPath(), reportFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            succeeded = true;
+            job.addServedModel(served.model());
+            log.info("{}完成，使用模型: {}", description, served.model());
+            return served.result();
+        } finally {
+            // 失败时保留各次尝试的 .partial 文件用于排查
+            for (int attempt : attempts) {
+                File attemptFile = attemptReportFile(reportFile, attempt);
+                Files.deleteIfExists(attemptFile.toPath());
+                if (succeeded) {
+                    Files.deleteIfExists(StreamingMarkdownWriter.partialFileOf(attemptFile).toPath());
+                }
+            }
         }
     }
 
+    private static File attemptReportFile(File reportFile, int attempt) {
+        String name = reportFile.getName();
+        String baseName = name.endsWith(".md") ? name.substring(0, name.length() - ".md".length()) : name;
+        return new File(reportFile.getParentFile(), baseName + ".attempt" + attempt + ".md");
+    }
+
     /**
-     * 生成压缩后的视频文件路径
-     * 格式：原文件名_compressed_分辨率_帧率-release.mp4
-     * 例如：video.mp4 -> video_compressed_1280x720_24fps-release.mp4
-     * 保存位置：与原视频同一目录
+     * 分段调用AI分析长视频，再合并为一份 Markdown 报告（时间点换算为完整视频中的时间）
+     *
+     * @param job        任务（压缩后文件为代理文件或直接使用的原文件）
+     * @param chunkCount 片段数
+     * @return 分析结果数据（包含合并后的 Markdown 报告）
      */
-    private String generateCompressedVideoPath(String originalPath, CompressionConfig config) {
-        Path path = Paths.get(originalPath);
-        String parentDir = path.getParent().toString();
-        String fileName = path.getFileName().toString();
-        String fileNameWithoutExt = removeFileExtension(fileName);
+    private VideoAnalysisData analyzeChunksWithAI(AnalysisJob job, int chunkCount) {
+        MediaInfo mediaInfo = mediaInfoOf(job);
+        log.info("开始分段AI分析视频（阶段一：Markdown）: {}, 片段数 {}", job.getCompressedPath(), chunkCount);
+        try {
+            List<VideoChunk> chunks = videoChunker.split(new File(job.getCompressedPath()),
+                    mediaInfo.getDurationSeconds(), chunkCount, job.getJobId());
+            List<HighlightCandidate> candidates = highlightCandidatesOf(job);
+
+            // 各片段同时分析，总并发受片段调用上限约束；任一片段失败时取消其余片段
+            List<String> reports = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<String>> futures = new ArrayList<>();
+                for (VideoChunk chunk : chunks) {
+                    String description = describeChunk(mediaInfo, chunk, chunks.size(), candidates);
+                    File chunkReport = new File(chunk.file().getParentFile(), "chunk_" + chunk.index() + ".md");
+                    futures.add(executor.submit(() -> videoChunker.callWithPermit(() -> callStep1(job,
+                            "第 " + (chunk.index() + 1) + " 段模型调用",
+                            aiRateLimiter.estimateVideoTokens(chunk.endSeconds() - chunk.startSeconds()), chunkReport,
+                            (model, reportFile) -> getAiUtil().analyzeVideoToMarkdown(chunk.file().getAbsolutePath(),
+                                    aiPrompt1Path, model, reportFile, description, mediaServer.urlFor(chunk.file()))))));
+                }
+                try {
+                    for (Future<String> future : futures) {
+                        reports.add(future.get());
+                    }
+                } catch (ExecutionException e) {
+                    futures.forEach(future -> future.cancel(true));
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+
+            List<MarkdownMergeUtil.Section> sections = new ArrayList<>();
+            for (VideoChunk chunk : chunks) {
+                sections.add(new MarkdownMergeUtil.Section(
+                        String.format("第 %d 段（%s - %s）", chunk.index() + 1,
+                                MarkdownMergeUtil.formatTimestamp(chunk.startSeconds()), MarkdownMergeUtil.formatTimestamp(chunk.endSeconds())),
+                        chunk.startSeconds(), reports.get(chunk.index())));
+            }
+            String markdownReport = MarkdownMergeUtil.merge("视频分析报告（分段汇总）",
+                    String.format("视频时长 %s，分为 %d 段分别分析后合并，文中时间均已换算为完整视频中的时间。",
+                            mediaInfo.formattedDuration(), chunks.size()),
+                    sections);
+            File markdownFile = VideoAnalysisAiUtil.resolveMarkdownFile(new File(job.getSourcePath()));
+            Files.writeString(markdownFile.toPath(), markdownReport);
 
-        String resolutionForFileName = config.resolution.replace(":", "x");
+            VideoAnalysisData data = VideoAnalysisData.success();
+            data.setMarkdownReport(markdownReport);
+            data.setReportPath(markdownFile.getAbsolutePath());
+            log.info("分段AI分析完成（阶段一：Markdown）: {} 个片段", chunks.size());
+            return data;
+        } catch (Exception e) {
+            log.error("分段AI分析视频时发生异常", e);
+            return VideoAnalysisData.failure("AI分析失败: " + e.getMessage());
+        }
+    }
 
-        // 生成新文件名，添加 -release 后缀
-        String newFileName = String.format("%s_compressed_%s_%dfps-release.mp4",
-                fileNameWithoutExt, resolutionForFileName, config.frameRate);
+    /**
+     * 发给模型的片段信息：片段在完整视频中的位置，以及落在片段内的高光候选（换算为片段内的时间）
+     */
+    private static String describeChunk(MediaInfo mediaInfo, VideoChunk chunk, int chunkCount,
+                                        List<HighlightCandidate> highlightCandidates) {
+        StringBuilder description = new StringBuilder();
+        description.append("- 本视频是完整视频（时长 ").append(mediaInfo.formattedDuration()).append("）的第 ")
+                .append(chunk.index() + 1).append("/").append(chunkCount).append(" 段，对应完整视频的 ")
+                .append(MarkdownMergeUtil.formatTimestamp(chunk.startSeconds())).append(" - ").append(MarkdownMergeUtil.formatTimestamp(chunk.endSeconds()))
+                .append("\n");
+        description.append("- 本段时长：").append(MarkdownMergeUtil.formatTimestamp(chunk.endSeconds() - chunk.startSeconds()))
+                .append("，请只分析本段内容，时间点一律使用本段内的时间（从 0:00 开始）\n");
+        if (highlightCandidates != null) {
+            List<HighlightCandidate> inChunk = highlightCandidates.stream()
+                    .filter(candidate -> candidate.startSeconds() >= chunk.startSeconds()
+                            && candidate.startSeconds() < chunk.endSeconds())
+                    .map(candidate -> new HighlightCandidate(
+                            (int) (candidate.startSeconds() - chunk.startSeconds()),
+                            (int) (candidate.endSeconds() - chunk.startSeconds()),
+                            candidate.score(), candidate.loudnessLufs()))
+                    .toList();
+            String candidates = AudioProfiler.format(inChunk);
+            if (candidates != null) {
+                description.append("- 本段内音频响度明显高于全片水平的片段（本地音频分析得出，仅供确定高光切片时参考）：")
+                        .append(candidates).append("\n");
+            }
+        }
+        return description.toString();
+    }
 
-        return Paths.get(parentDir, newFileName).toString();
+    /**
+     * 发给模型的源视频信息：时长帮助模型给出不越界的高光时间点，高光候选作为参考提示
+     */
+    private static String describeMedia(MediaInfo mediaInfo, List<HighlightCandidate> highlightCandidates) {
+        if (mediaInfo == null) {
+            return null;
+        }
+        StringBuilder description = new StringBuilder();
+        description.append("- 视频时长：").append(mediaInfo.formattedDuration())
+                .append("（").append(String.format("%.1f", mediaInfo.getDurationSeconds())).append(" 秒）\n");
+        if (mediaInfo.hasVideo()) {
+            description.append("- 原始分辨率：").append(mediaInfo.getWidth()).append("x").append(mediaInfo.getHeight())
+                    .append("，帧率：").append(String.format("%.2f", mediaInfo.getFrameRate())).append("\n");
+        }
+        description.append("- 音频：").append(mediaInfo.hasAudio() ? "有" : "无").append("\n");
+        String candidates = AudioProfiler.format(highlightCandidates);
+        if (candidates != null) {
+            description.append("- 音频响度明显高于全片水平的片段（本地音频分析得出，仅供确定高光切片时参考）：")
+                    .append(candidates).append("\n");
+        }
+        return description.toString();
     }
 
     // 去掉文件扩展名
@@ -449,29 +1180,37 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
     }
 
     /**
-     * 视频压缩结果
+     * 视频查找结果
      */
     @Getter
-    private static class VideoCompressionResult {
+    private static class VideoLookupResult {
         private final boolean success;
-        private final String compressedVideoPath;
+        private final File videoFile;
         private final String errorMessage;
 
-        private VideoCompressionResult(boolean success, String compressedVideoPath, String errorMessage) {
+        private VideoLookupResult(boolean success, File videoFile, String errorMessage) {
             this.success = success;
-            this.compressedVideoPath = compressedVideoPath;
+            this.videoFile = videoFile;
             this.errorMessage = errorMessage;
         }
 
-        public static VideoCompressionResult success(String compressedVideoPath) {
-            return new VideoCompressionResult(true, compressedVideoPath, null);
+        public static VideoLookupResult success(File videoFile) {
+            return new VideoLookupResult(true, videoFile, null);
         }
 
-        public static VideoCompressionResult failure(String errorMessage) {
-            return new VideoCompressionResult(false, null, errorMessage);
+        public static VideoLookupResult failure(String errorMessage) {
+            return new VideoLookupResult(false, null, errorMessage);
         }
     }
 
+    /**
+     * 使用指定模型、把报告写到指定位置的阶段一调用
+     */
+    @FunctionalInterface
+    private interface Step1Call {
+        String analyze(String model, File reportFile) throws Exception;
+    }
+
     /**
      * 视频分析数据
      */
@@ -481,6 +1220,12 @@ public class FeishuVideoAnalysisServiceImpl implements FeishuVideoAnalysisServic
         private String errorMessage;
         // 阶段一的 Markdown 分析报告
         private String markdownReport;
+        // Markdown 分析报告文件路径
+        private String reportPath;
+        // 按音频响度预选的高光候选片段
+        private String highlightCandidates;
+        // 阶段二的结构化结果，未执行或失败时为空
+        private VideoAnalysisResponse structuredResult;
 
         public static VideoAnalysisData success() {
             VideoAnalysisData data = new VideoAnalysisData();
@@ -0,0 +1,95 @@
+package com.geekonup.service.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 边读边做 Base64 编码的输入流
+ * 每次从源流读取固定大小（3 的整数倍）的数据块编码，内存占用与源数据大小无关，
+ * 用于把视频文件直接编码进 HTTP 请求体，而不是先整体读入内存再编码。
+ */
+public class Base64EncodingInputStream extends InputStream {
+
+    // 每次读取的源数据大小，必须是 3 的整数倍，保证块之间不产生填充字符
+    private static final int RAW_CHUNK_BYTES = 48 * 1024;
+
+    private final InputStream source;
+
+    private final byte[] raw = new byte[RAW_CHUNK_BYTES];
+
+    private final byte[] encoded = new byte[RAW_CHUNK_BYTES / 3 * 4];
+
+    private int encodedLength;
+
+    private int position;
+
+    private boolean sourceDrained;
+
+    public Base64EncodingInputStream(InputStream source) {
+        this.source = source;
+    }
+
+    /**
+     * 源数据编码后的长度（字节）
+     */
+    public static long encodedLength(long rawLength) {
+        return (rawLength + 2) / 3 * 4;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return encoded[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, encodedLength - position);
+        System.arraycopy(encoded, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * 当前块读完时读取并编码下一块，没有更多数据时返回 false
+     */
+    private boolean fill() throws IOException {
+        if (position < encodedLength) {
+            return true;
+        }
+        if (sourceDrained) {
+            return false;
+        }
+        // 读满一整块（最后一块除外），否则中间块的填充字符会破坏编码结果
+        int filled = 0;
+        while (filled < raw.length) {
+            int read = source.read(raw, filled, raw.length - filled);
+            if (read < 0) {
+                sourceDrained = true;
+                break;
+            }
+            filled += read;
+        }
+        if (filled == 0) {
+            return false;
+        }
+        encodedLength = Base64.getEncoder().encode(filled == raw.length ? raw : Arrays.copyOf(raw, filled), encoded);
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
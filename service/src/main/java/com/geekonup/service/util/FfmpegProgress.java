@@ -0,0 +1,257 @@
+package com.geekonup.service.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * FFmpeg 编码进度
+ * <p>
+ * 由 {@link FfmpegUtil} 解析 -progress 输出（key=value 行）后更新，编码线程写、状态查询线程读。
+ * 两遍编码时按遍数折算总进度，ETA 按当前编码速度（speed，媒体秒/实际秒）估算。
+ * out_time 有前进即视为有进展，用于卡死检测。
+ * 分段并行编码时每个分段各有一个子进度，总进度按分段时长加权汇总，ETA 取最慢的分段。
+ * 调用 {@link #cancel()} 后，使用该进度（或其分段子进度）的 FFmpeg 进程会被终止。
+ */
+public class FfmpegProgress {
+
+    // 视频总时长（秒），未知时无法计算百分比和 ETA
+    private volatile double durationSeconds;
+
+    // 当前第几遍 / 共几遍
+    private volatile int pass = 1;
+
+    private volatile int passes = 1;
+
+    // 当前遍已编码到的媒体时间（秒）
+    private volatile double outTimeSeconds;
+
+    private volatile long frame;
+
+    private volatile double fps;
+
+    // 编码速度（倍速），ffmpeg 尚未给出时为 0
+    private volatile double speed;
+
+    private volatile long startedAt = System.currentTimeMillis();
+
+    // 最近一次 out_time 前进的时间
+    private volatile long lastAdvanceAt = System.currentTimeMillis();
+
+    // 是否已开始编码（直接使用原文件或复用代理文件时不会开始）
+    private volatile boolean started;
+
+    private volatile boolean finished;
+
+    // 已取消（例如低优先级的预处理被抢占），编码进程在下一次检查时终止
+    private volatile boolean cancelled;
+
+    // 分段子进度所属的总进度
+    private FfmpegProgress parent;
+
+    // 分段并行编码的子进度
+    private final List<FfmpegProgress> segments = new CopyOnWriteArrayList<>();
+
+    public void setDurationSeconds(double durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * 开始新的一遍编码，重置当前遍的进度
+     */
+    public void startPass(int pass, int passes) {
+        if (pass == 1) {
+            startedAt = System.currentTimeMillis();
+        }
+        this.pass = pass;
+        this.passes = Math.max(1, passes);
+        this.outTimeSeconds = 0;
+        this.frame = 0;
+        this.speed = 0;
+        this.finished = false;
+        this.started = true;
+        this.lastAdvanceAt = System.currentTimeMillis();
+        segments.clear();
+    }
+
+    /**
+     * 解析一行 -progress 输出
+     */
+    public void update(String line) {
+        int eqIndex = line.indexOf('=');
+        if (eqIndex <= 0) {
+            return;
+        }
+        String key = line.substring(0, eqIndex).trim();
+        String value = line.substring(eqIndex + 1).trim();
+        switch (key) {
+            // out_time_ms 实际单位也是微秒（ffmpeg 历史遗留）
+            case "out_time_us", "out_time_ms" -> advanceTo(parseDouble(value) / 1_000_000);
+            case "frame" -> frame = (long) parseDouble(value);
+            case "fps" -> fps = parseDouble(value);
+            case "speed" -> speed = parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+            case "progress" -> {
+                if ("end".equals(value)) {
+                    finished = true;
+                }
+            }
+            default -> {
+                // 其余字段（bitrate、total_size、dup_frames 等）不需要
+            }
+        }
+    }
+
+    private void advanceTo(double seconds) {
+        if (seconds > outTimeSeconds) {
+            outTimeSeconds = seconds;
+            lastAdvanceAt = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * 开始分段并行编码，清空上一次的子进度
+     */
+    public void startSegments() {
+        startPass(1, 1);
+    }
+
+    /**
+     * 新建一个分段的子进度
+     *
+     * @param segmentSeconds 分段时长（秒）
+     */
+    public FfmpegProgress newSegment(double segmentSeconds) {
+        FfmpegProgress segment = new FfmpegProgress();
+        segment.setDurationSeconds(segmentSeconds);
+        segment.parent = this;
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 分段全部完成后标记结束
+     */
+    public void finishSegments() {
+        finished = true;
+    }
+
+    /**
+     * 已编码的媒体时长在总时长中的占比（0-1），两遍编码按遍数折算
+     */
+    private double completedFraction() {
+        if (!segments.isEmpty()) {
+            double completedSeconds = 0;
+            for (FfmpegProgress segment : segments) {
+                completedSeconds += segment.completedFraction() * segment.durationSeconds;
+            }
+            return durationSeconds > 0 ? Math.min(1.0, completedSeconds / durationSeconds) : 0;
+        }
+        if (finished && pass == passes) {
+            return 1.0;
+        }
+        double passFraction = durationSeconds > 0 ? Math.min(1.0, outTimeSeconds / durationSeconds) : 0;
+        return (pass - 1 + passFraction) / passes;
+    }
+
+    /**
+     * 取消编码：正在运行的 FFmpeg 进程在一秒内被终止，编码返回失败
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * 距离上次进展的时间（毫秒）
+     */
+    public long stalledMillis() {
+        return System.currentTimeMillis() - lastAdvanceAt;
+    }
+
+    /**
+     * 总进度百分比（0-100），时长未知时返回 null
+     */
+    public Double percent() {
+        if (durationSeconds <= 0) {
+            return null;
+        }
+        return Math.min(100.0, completedFraction() * 100);
+    }
+
+    /**
+     * 预计剩余时间（秒），时长或速度未知时返回 null
+     */
+    public Long etaSeconds() {
+        if (!segments.isEmpty()) {
+            // 各分段同时编码，整体剩余时间取决于最慢的分段
+            Long slowest = null;
+            for (FfmpegProgress segment : segments) {
+                Long eta = segment.finished && segment.pass == segment.passes ? Long.valueOf(0) : segment.etaSeconds();
+                if (eta == null) {
+                    return null;
+                }
+                slowest = slowest == null ? eta : Math.max(slowest, eta);
+            }
+            return slowest;
+        }
+        if (durationSeconds <= 0 || speed <= 0) {
+            return null;
+        }
+        double remainingMedia = Math.max(0, durationSeconds - outTimeSeconds) + (passes - pass) * durationSeconds;
+        return Math.round(remainingMedia / speed);
+    }
+
+    /**
+     * 进度快照，供任务状态接口展示
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long totalFrame = frame;
+        double totalFps = fps;
+        double totalSpeed = speed;
+        if (!segments.isEmpty()) {
+            totalFrame = 0;
+            totalFps = 0;
+            totalSpeed = 0;
+            for (FfmpegProgress segment : segments) {
+                totalFrame += segment.frame;
+                totalFps += segment.fps;
+                totalSpeed += segment.speed;
+            }
+            snapshot.put("segments", segments.size());
+        } else {
+            snapshot.put("pass", pass);
+            snapshot.put("passes", passes);
+            snapshot.put("outTimeSeconds", Math.round(outTimeSeconds * 10) / 10.0);
+        }
+        snapshot.put("durationSeconds", durationSeconds > 0 ? Math.round(durationSeconds * 10) / 10.0 : null);
+        Double percent = percent();
+        snapshot.put("percent", percent != null ? Math.round(percent * 10) / 10.0 : null);
+        snapshot.put("frame", totalFrame);
+        snapshot.put("fps", Math.round(totalFps * 10) / 10.0);
+        snapshot.put("speed", Math.round(totalSpeed * 100) / 100.0);
+        snapshot.put("etaSeconds", finished && pass == passes ? Long.valueOf(0) : etaSeconds());
+        snapshot.put("elapsedSeconds", (System.currentTimeMillis() - startedAt) / 1000);
+        snapshot.put("finished", finished && pass == passes);
+        return snapshot;
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null || value.isEmpty() || "N/A".equals(value)) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
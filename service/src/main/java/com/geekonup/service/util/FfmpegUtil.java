@@ -4,9 +4,24 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * FFmpeg工具类
@@ -23,10 +38,34 @@ import java.util.List;
  * -b:a: 音频码率（如 128k）
  * -pix_fmt: 像素格式（yuv420p 兼容性最好）
  * -movflags +faststart: 支持在线播放边下边播
+ * -progress pipe:1: 以 key=value 形式向标准输出写入编码进度（out_time、fps、speed 等）
  */
 @Slf4j
 public class FfmpegUtil {
 
+    // 失败时用于排查的错误输出行数
+    private static final int STDERR_TAIL_LINES = 50;
+
+    // 查找切分关键帧时向后读取的范围（秒）
+    private static final int KEYFRAME_SEARCH_WINDOW_SECONDS = 30;
+
+    // 关键帧图片文件名和时间点文件名（相对于输出目录）
+    private static final String SCENE_FRAME_PATTERN = "frame_%04d.jpg";
+
+    private static final String SCENE_METADATA_FILE = "scenes.txt";
+
+    private static final Pattern PTS_TIME_PATTERN = Pattern.compile("pts_time:([0-9.]+)");
+
+    // 音频响度测量结果文件名（相对于工作目录）
+    private static final String AUDIO_LEVELS_FILE = "audio_levels.txt";
+
+    // 静音电平（LUFS / dB），低于该值或为 -inf 时按此值记录
+    public static final double SILENCE_LUFS = -70.0;
+
+    // 支持的视频格式（按优先级排列，同名文件有多种格式时靠前的优先）
+    public static final List<String> VIDEO_EXTENSIONS =
+            List.of(".mp4", ".avi", ".mov", ".mkv", ".flv", ".wmv", ".m4v");
+
     /**
      * 压缩视频到指定分辨率、帧率和质量
      * 
@@ -42,6 +81,29 @@ public class FfmpegUtil {
     public static boolean compressVideo(String ffmpegPath, String inputVideoPath, 
                                        String outputVideoPath, String resolution, 
                                        int frameRate, int crf, int timeoutSeconds) {
+        return compressVideo(ffmpegPath, inputVideoPath, outputVideoPath, resolution, frameRate, crf,
+                0, timeoutSeconds, 0, null);
+    }
+
+    /**
+     * 压缩视频到指定分辨率、帧率和质量，并上报编码进度
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputVideoPath 输出视频文件路径
+     * @param resolution 目标分辨率（如 "1920:1080" 或 "1280:720"）
+     * @param frameRate 目标帧率（如 24）
+     * @param crf 质量因子（18-28，推荐 23）
+     * @param threads 编码线程数（-threads），0 表示由 libx264 自动决定
+     * @param timeoutSeconds 超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 编码进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @param progress 编码进度，可为 null
+     * @return 是否压缩成功
+     */
+    public static boolean compressVideo(String ffmpegPath, String inputVideoPath,
+                                       String outputVideoPath, String resolution,
+                                       int frameRate, int crf, int threads, int timeoutSeconds,
+                                       int stallTimeoutSeconds, FfmpegProgress progress) {
         try {
             // 构建 FFmpeg 命令
             List<String> command = new ArrayList<>();
@@ -49,6 +111,12 @@ public class FfmpegUtil {
             command.add("-i");
             command.add(inputVideoPath);
             
+            // 编码线程数
+            if (threads > 0) {
+                command.add("-threads");
+                command.add(String.valueOf(threads));
+            }
+            
             // 视频滤镜：缩放分辨率，保持宽高比，并确保宽高为偶数（libx264要求）
             command.add("-vf");
             command.add("scale=" + resolution + ":force_original_aspect_ratio=decrease,scale='trunc(iw/2)*2':'trunc(ih/2)*2'");
@@ -97,62 +165,14 @@ public class FfmpegUtil {
             
             log.info("执行 FFmpeg 命令: {}", String.join(" ", command));
             
-            // 执行命令
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            
-            // 读取输出信息（在单独线程中，避免阻塞）
-            StringBuilder outputBuilder = new StringBuilder();
-            Thread outputThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        log.debug("FFmpeg 输出: {}", line);
-                        outputBuilder.append(line).append("\n");
-                    }
-                } catch (Exception e) {
-                    log.error("读取 FFmpeg 输出时发生异常", e);
-                }
-            });
-            outputThread.start();
-            
-            // 等待进程完成（带超时控制）
-            int exitCode;
-            if (timeoutSeconds > 0) {
-                boolean finished = process.waitFor(timeoutSeconds, java.util.concurrent.TimeUnit.SECONDS);
-                if (!finished) {
-                    log.error("视频压缩超时（{}秒），终止进程", timeoutSeconds);
-                    process.destroyForcibly();
-                    outputThread.interrupt();
-                    // 等待进程真正终止
-                    try {
-                        process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS);
-                    } catch (Exception e) {
-                        // 忽略
-                    }
-                    return false;
-                }
-                exitCode = process.exitValue();
-            } else {
-                exitCode = process.waitFor();
-            }
-            
-            // 等待输出线程完成
-            try {
-                outputThread.join(5000);
-            } catch (InterruptedException e) {
-                log.warn("等待输出线程完成时被中断", e);
+            if (progress != null) {
+                progress.startPass(1, 1);
             }
-            
-            if (exitCode == 0) {
+            if (runFfmpeg(command, timeoutSeconds, stallTimeoutSeconds, progress)) {
                 log.info("视频压缩成功: {} -> {}", inputVideoPath, outputVideoPath);
                 return true;
-            } else {
-                log.error("视频压缩失败，退出码: {}", exitCode);
-                return false;
             }
+            return false;
             
         } catch (Exception e) {
             log.error("执行视频压缩时发生异常", e);
@@ -241,6 +261,802 @@ public class FfmpegUtil {
         }
     }
     
+    /**
+     * 按目标码率压缩视频（ABR），用于把输出体积控制在指定大小以内
+     * 
+     * 两遍编码时第一遍只做码率分析（-an -f null），第二遍按分析结果分配码率，
+     * 输出体积与目标的偏差明显小于单遍编码
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputVideoPath 输出视频文件路径
+     * @param resolution 目标分辨率（如 "1280:720"）
+     * @param frameRate 目标帧率
+     * @param videoBitrateKbps 视频码率（kbps）
+     * @param audioBitrateKbps 音频码率（kbps），0 表示不输出音频
+     * @param twoPass 是否两遍编码
+     * @param threads 编码线程数（-threads），0 表示由 libx264 自动决定
+     * @param timeoutSeconds 每一遍的超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 编码进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @param progress 编码进度，可为 null
+     * @return 是否压缩成功
+     */
+    public static boolean compressVideoToBitrate(String ffmpegPath, String inputVideoPath,
+                                                 String outputVideoPath, String resolution,
+                                                 int frameRate, int videoBitrateKbps,
+                                                 int audioBitrateKbps, boolean twoPass, int threads,
+                                                 int timeoutSeconds, int stallTimeoutSeconds,
+                                                 FfmpegProgress progress) {
+        // 两遍编码的统计文件放在输出文件旁边，结束后删除
+        String passLogPrefix = outputVideoPath + ".passlog";
+        try {
+            if (twoPass) {
+                List<String> firstPass = bitrateCommand(ffmpegPath, inputVideoPath, -1, -1, resolution, frameRate,
+                        videoBitrateKbps, threads);
+                firstPass.add("-pass");
+                firstPass.add("1");
+                firstPass.add("-passlogfile");
+                firstPass.add(passLogPrefix);
+                firstPass.add("-an");
+                firstPass.add("-f");
+                firstPass.add("null");
+                firstPass.add("-y");
+                firstPass.add("-");
+                log.info("执行 FFmpeg 命令（目标码率，第一遍）: {}", String.join(" ", firstPass));
+                if (progress != null) {
+                    progress.startPass(1, 2);
+                }
+                if (!runFfmpeg(firstPass, timeoutSeconds, stallTimeoutSeconds, progress)) {
+                    return false;
+                }
+            }
+
+            List<String> command = bitrateCommand(ffmpegPath, inputVideoPath, -1, -1, resolution, frameRate,
+                    videoBitrateKbps, threads);
+            if (twoPass) {
+                command.add("-pass");
+                command.add("2");
+                command.add("-passlogfile");
+                command.add(passLogPrefix);
+            }
+            command.add("-movflags");
+            command.add("+faststart");
+            if (audioBitrateKbps > 0) {
+                command.add("-c:a");
+                command.add("aac");
+                command.add("-b:a");
+                command.add(audioBitrateKbps + "k");
+            } else {
+                // 源视频没有音频流
+                command.add("-an");
+            }
+            command.add("-y");
+            command.add(outputVideoPath);
+            log.info("执行 FFmpeg 命令（目标码率{}）: {}", twoPass ? "，第二遍" : "", String.join(" ", command));
+            if (progress != null) {
+                progress.startPass(twoPass ? 2 : 1, twoPass ? 2 : 1);
+            }
+            if (runFfmpeg(command, timeoutSeconds, stallTimeoutSeconds, progress)) {
+                log.info("视频压缩成功（目标码率 {}k）: {} -> {}", videoBitrateKbps, inputVideoPath, outputVideoPath);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            log.error("执行视频压缩时发生异常", e);
+            return false;
+        } finally {
+            if (twoPass) {
+                deletePassLogs(passLogPrefix);
+            }
+        }
+    }
+
+    /**
+     * 不重新编码视频，只重新封装为 MP4（可选转码音频）
+     * 
+     * 只保留第一路视频和第一路音频，多余的音轨、字幕和数据流全部丢弃。
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputVideoPath 输出视频文件路径
+     * @param hasAudio 源视频是否有音频流
+     * @param audioBitrateKbps 音频转码为 AAC 的码率（kbps），0 表示直接复制音频
+     * @param timeoutSeconds 超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @param progress 处理进度，可为 null
+     * @return 是否处理成功
+     */
+    public static boolean remuxVideo(String ffmpegPath, String inputVideoPath, String outputVideoPath,
+                                     boolean hasAudio, int audioBitrateKbps,
+                                     int timeoutSeconds, int stallTimeoutSeconds, FfmpegProgress progress) {
+        try {
+            List<String> command = new ArrayList<>(List.of(ffmpegPath, "-i", inputVideoPath,
+                    "-map", "0:v:0", "-c:v", "copy"));
+            if (!hasAudio) {
+                command.add("-an");
+            } else if (audioBitrateKbps > 0) {
+                command.addAll(List.of("-map", "0:a:0", "-c:a", "aac", "-b:a", audioBitrateKbps + "k"));
+            } else {
+                command.addAll(List.of("-map", "0:a:0", "-c:a", "copy"));
+            }
+            // 不复制章节和全局元数据，避免不兼容的字段导致封装失败
+            command.addAll(List.of("-map_chapters", "-1", "-movflags", "+faststart", "-y", outputVideoPath));
+            log.info("执行 FFmpeg 命令（重新封装）: {}", String.join(" ", command));
+
+            if (progress != null) {
+                progress.startPass(1, 1);
+            }
+            if (runFfmpeg(command, timeoutSeconds, stallTimeoutSeconds, progress)) {
+                log.info("视频重新封装成功: {} -> {}", inputVideoPath, outputVideoPath);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            log.error("执行视频重新封装时发生异常", e);
+            return false;
+        }
+    }
+
+    /**
+     * 不重新编码，截取视频的一段（起点应为关键帧，否则实际起点会提前到之前的关键帧）
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputVideoPath 输出视频文件路径
+     * @param startSeconds 起始时间（秒）
+     * @param lengthSeconds 截取时长（秒），小于 0 表示到文件末尾
+     * @param timeoutSeconds 超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @return 是否截取成功
+     */
+    public static boolean cutVideo(String ffmpegPath, String inputVideoPath, String outputVideoPath,
+                                   double startSeconds, double lengthSeconds,
+                                   int timeoutSeconds, int stallTimeoutSeconds) {
+        try {
+            List<String> command = new ArrayList<>();
+            command.add(ffmpegPath);
+            if (startSeconds > 0) {
+                command.addAll(List.of("-ss", String.format(Locale.ROOT, "%.3f", startSeconds)));
+            }
+            command.addAll(List.of("-i", inputVideoPath));
+            if (lengthSeconds > 0) {
+                command.addAll(List.of("-t", String.format(Locale.ROOT, "%.3f", lengthSeconds)));
+            }
+            command.addAll(List.of("-map", "0:v:0?", "-map", "0:a:0?", "-c", "copy",
+                    "-avoid_negative_ts", "make_zero", "-movflags", "+faststart", "-y", outputVideoPath));
+            log.debug("执行 FFmpeg 命令（截取）: {}", String.join(" ", command));
+            return runFfmpeg(command, timeoutSeconds, stallTimeoutSeconds, null);
+        } catch (Exception e) {
+            log.error("截取视频时发生异常", e);
+            return false;
+        }
+    }
+
+    /**
+     * 按画面变化抽取关键帧（缩小后的 JPEG）
+     * 
+     * 先缩小再计算场景变化分数以加快检测。选帧条件：第一帧；场景变化分数超过阈值且距上一帧不少于最小间隔；
+     * 或距上一帧超过最大间隔（画面长时间不变的口播视频也能均匀覆盖）。最小间隔按 时长 / 最大帧数 计算，
+     * 再用 -frames:v 限制总帧数。每帧的时间点由 metadata 滤镜写入文件后解析。
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputDir 输出目录（图片和时间点文件写在这里）
+     * @param sceneThreshold 场景变化阈值（0-1，越小抽帧越多）
+     * @param maxFrames 最大帧数
+     * @param maxWidth 图片最大宽度（像素），不会放大
+     * @param durationSeconds 视频时长（秒）
+     * @param threads 解码线程数（-threads），0 表示由 FFmpeg 自动决定
+     * @param timeoutSeconds 超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @param progress 处理进度，可为 null
+     * @return 按时间排序的关键帧，失败时返回 null
+     */
+    public static List<SceneFrame> extractSceneFrames(String ffmpegPath, String inputVideoPath, File outputDir,
+                                                      double sceneThreshold, int maxFrames, int maxWidth,
+                                                      double durationSeconds, int threads, int timeoutSeconds,
+                                                      int stallTimeoutSeconds, FfmpegProgress progress) {
+        try {
+            double minGap = Math.max(1.0, durationSeconds / Math.max(1, maxFrames));
+            double maxGap = minGap * 2;
+            // 滤镜参数中的文件路径不好转义，在输出目录中执行并使用相对路径
+            String filter = String.format(Locale.ROOT,
+                    "scale='min(%d,iw)':-2,"
+                            + "select='isnan(prev_selected_t)+gte(t-prev_selected_t,%.2f)+gt(scene,%.3f)*gte(t-prev_selected_t,%.2f)',"
+                            + "metadata=print:file=%s",
+                    maxWidth, maxGap, sceneThreshold, minGap, SCENE_METADATA_FILE);
+            List<String> command = new ArrayList<>(List.of(ffmpegPath));
+            if (threads > 0) {
+                // 放在 -i 之前作用于解码，抽帧的耗时主要在解码
+                command.addAll(List.of("-threads", String.valueOf(threads)));
+            }
+            command.addAll(List.of("-i", inputVideoPath,
+                    "-an", "-sn", "-vf", filter, "-vsync", "vfr",
+                    "-frames:v", String.valueOf(maxFrames), "-q:v", "4",
+                    "-y", SCENE_FRAME_PATTERN));
+            log.info("执行 FFmpeg 命令（抽取关键帧）: {}", String.join(" ", command));
+
+            if (progress != null) {
+                progress.startPass(1, 1);
+            }
+            if (!runFfmpeg(command, outputDir, timeoutSeconds, stallTimeoutSeconds, progress)) {
+                return null;
+            }
+
+            // 每个输出帧对应一行 "frame:N pts:... pts_time:秒"，按顺序与图片编号对应
+            List<SceneFrame> frames = new ArrayList<>();
+            List<String> lines = Files.readAllLines(new File(outputDir, SCENE_METADATA_FILE).toPath());
+            for (String line : lines) {
+                Matcher matcher = PTS_TIME_PATTERN.matcher(line);
+                if (!line.startsWith("frame:") || !matcher.find()) {
+                    continue;
+                }
+                File frameFile = new File(outputDir, String.format(SCENE_FRAME_PATTERN, frames.size() + 1));
+                if (!frameFile.isFile()) {
+                    break;
+                }
+                frames.add(new SceneFrame(Double.parseDouble(matcher.group(1)), frameFile));
+            }
+            log.info("关键帧抽取完成: {} 帧, {} -> {}", frames.size(), inputVideoPath, outputDir);
+            return frames;
+        } catch (Exception e) {
+            log.error("抽取关键帧时发生异常", e);
+            return null;
+        }
+    }
+
+    /**
+     * 逐秒测量第一路音频的响度和能量
+     * 
+     * 只解码音频并重采样为 16kHz 单声道，按 1 秒一帧分组后：
+     * ebur128 给出瞬时响度（400ms）和短时响度（3s，LUFS），astats 给出该秒的 RMS 电平（dB），
+     * 由 ametadata 写入文件后解析。不解码视频，耗时远小于编码。
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param inputVideoPath 输入视频文件路径
+     * @param workDir 临时目录（测量结果文件写在这里）
+     * @param timeoutSeconds 超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @return 按时间排序的逐秒测量值，失败时返回 null
+     */
+    public static List<AudioLevel> measureAudioLevels(String ffmpegPath, String inputVideoPath, File workDir,
+                                                      int timeoutSeconds, int stallTimeoutSeconds) {
+        try {
+            String filter = "aresample=16000,asetnsamples=n=16000:p=0,"
+                    + "astats=metadata=1:reset=1:measure_perchannel=none:measure_overall=RMS_level,"
+                    + "ebur128=metadata=1,"
+                    + "ametadata=mode=print:file=" + AUDIO_LEVELS_FILE;
+            List<String> command = new ArrayList<>(List.of(ffmpegPath, "-threads", "1", "-i", inputVideoPath,
+                    "-map", "0:a:0", "-vn", "-sn", "-dn", "-ac", "1", "-af", filter, "-f", "null", "-"));
+            log.info("执行 FFmpeg 命令（音频响度）: {}", String.join(" ", command));
+            if (!runFfmpeg(command, workDir, timeoutSeconds, stallTimeoutSeconds, null)) {
+                return null;
+            }
+
+            // 每帧一行 "frame:N pts:... pts_time:秒"，随后是该帧的 key=value 行
+            List<AudioLevel> levels = new ArrayList<>();
+            double time = -1;
+            double momentary = SILENCE_LUFS;
+            double shortTerm = SILENCE_LUFS;
+            double rms = SILENCE_LUFS;
+            for (String line : Files.readAllLines(new File(workDir, AUDIO_LEVELS_FILE).toPath())) {
+                if (line.startsWith("frame:")) {
+                    if (time >= 0) {
+                        levels.add(new AudioLevel(time, momentary, shortTerm, rms));
+                    }
+                    Matcher matcher = PTS_TIME_PATTERN.matcher(line);
+                    time = matcher.find() ? Double.parseDouble(matcher.group(1)) : levels.size();
+                    momentary = SILENCE_LUFS;
+                    shortTerm = SILENCE_LUFS;
+                    rms = SILENCE_LUFS;
+                    continue;
+                }
+                int eqIndex = line.indexOf('=');
+                if (eqIndex <= 0) {
+                    continue;
+                }
+                double value = parseLevel(line.substring(eqIndex + 1));
+                switch (line.substring(0, eqIndex)) {
+                    case "lavfi.r128.M" -> momentary = value;
+                    case "lavfi.r128.S" -> shortTerm = value;
+                    case "lavfi.astats.Overall.RMS_level" -> rms = value;
+                    default -> {
+                        // 其余统计值不需要
+                    }
+                }
+            }
+            if (time >= 0) {
+                levels.add(new AudioLevel(time, momentary, shortTerm, rms));
+            }
+            log.info("音频响度测量完成: {} 秒, {}", levels.size(), inputVideoPath);
+            return levels;
+        } catch (Exception e) {
+            log.error("测量音频响度时发生异常", e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析电平值，-inf（静音）和无法解析的值按静音处理
+     */
+    private static double parseLevel(String value) {
+        try {
+            double level = Double.parseDouble(value.trim());
+            return Double.isFinite(level) ? Math.max(SILENCE_LUFS, level) : SILENCE_LUFS;
+        } catch (NumberFormatException e) {
+            return SILENCE_LUFS;
+        }
+    }
+
+    /**
+     * 使用 ffprobe 读取视频的容器和流信息
+     * 
+     * @param ffprobePath ffprobe 可执行文件路径
+     * @param inputVideoPath 视频文件路径
+     * @param timeoutSeconds 超时时间（秒）
+     * @return ffprobe 输出的 JSON（-show_format -show_streams），读取失败时返回 null
+     */
+    public static String probeMedia(String ffprobePath, String inputVideoPath, int timeoutSeconds) {
+        List<String> command = List.of(ffprobePath, "-v", "error",
+                "-print_format", "json",
+                "-show_format", "-show_streams",
+                inputVideoPath);
+        return readOutput(command, timeoutSeconds, inputVideoPath);
+    }
+
+    /**
+     * 查找指定时间点之后的第一个视频关键帧（只读取该时间点附近的数据包，不解码）
+     * 
+     * @param ffprobePath ffprobe 可执行文件路径
+     * @param inputVideoPath 视频文件路径
+     * @param seconds 时间点（秒）
+     * @param timeoutSeconds 超时时间（秒）
+     * @return 关键帧时间（秒），查找范围内没有关键帧或读取失败时返回 -1
+     */
+    public static double findKeyframeAfter(String ffprobePath, String inputVideoPath, double seconds, int timeoutSeconds) {
+        List<String> command = List.of(ffprobePath, "-v", "error",
+                "-select_streams", "v:0",
+                "-read_intervals", String.format(Locale.ROOT, "%.3f%%+%d", seconds, KEYFRAME_SEARCH_WINDOW_SECONDS),
+                "-show_entries", "packet=pts_time,flags",
+                "-of", "csv=p=0",
+                inputVideoPath);
+        String output = readOutput(command, timeoutSeconds, inputVideoPath);
+        if (output == null) {
+            return -1;
+        }
+        // 每行形如 "12.345000,K__"，按解码顺序输出，-read_intervals 会从时间点之前的关键帧开始读
+        for (String line : output.split("\n")) {
+            String[] fields = line.trim().split(",");
+            if (fields.length < 2 || !fields[1].startsWith("K")) {
+                continue;
+            }
+            try {
+                double ptsTime = Double.parseDouble(fields[0]);
+                if (ptsTime >= seconds) {
+                    return ptsTime;
+                }
+            } catch (NumberFormatException e) {
+                // pts 为 N/A 的数据包，跳过
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 分段并行按目标码率压缩视频（ABR）
+     * 
+     * 在关键帧处把源视频切成若干分段（用 -ss/-t 直接从源文件读取，不额外拷贝），
+     * 各分段在有界线程池中同时编码为纯视频文件，音频单独编码一次（避免分段边界处的 AAC 静音间隙），
+     * 最后用 concat 分离器拼接视频分段并混入音频，全程不再重新编码。
+     * 每个分段使用相同的码率，拼接后的体积与单进程编码一致；任一分段失败时终止其余分段。
+     * 
+     * @param ffmpegPath FFmpeg 可执行文件路径
+     * @param ffprobePath ffprobe 可执行文件路径（用于查找关键帧）
+     * @param inputVideoPath 输入视频文件路径
+     * @param outputVideoPath 输出视频文件路径
+     * @param resolution 目标分辨率（如 "1280:720"）
+     * @param frameRate 目标帧率
+     * @param videoBitrateKbps 视频码率（kbps）
+     * @param audioBitrateKbps 音频码率（kbps），0 表示不输出音频
+     * @param twoPass 每个分段是否两遍编码
+     * @param durationSeconds 源视频时长（秒）
+     * @param segments 分段数（即同时编码的进程数）
+     * @param threadsPerSegment 每个分段编码进程的线程数（-threads）
+     * @param timeoutSeconds 每个进程每一遍的超时时间（秒），0 表示不设置超时
+     * @param stallTimeoutSeconds 编码进度停滞超过该时间（秒）即终止进程，0 表示不检测
+     * @param progress 编码进度，可为 null
+     * @return 是否压缩成功
+     */
+    public static boolean compressVideoToBitrateSegmented(String ffmpegPath, String ffprobePath,
+                                                          String inputVideoPath, String outputVideoPath,
+                                                          String resolution, int frameRate,
+                                                          int videoBitrateKbps, int audioBitrateKbps,
+                                                          boolean twoPass, double durationSeconds,
+                                                          int segments, int threadsPerSegment,
+                                                          int timeoutSeconds, int stallTimeoutSeconds,
+                                                          FfmpegProgress progress) {
+        // 分段和音频放在输出文件旁边的临时目录，结束后删除
+        File workDir = new File(outputVideoPath + ".segments");
+        FfmpegProgress tracker = progress != null ? progress : new FfmpegProgress();
+        try {
+            if (!workDir.mkdirs() && !workDir.isDirectory()) {
+                log.error("无法创建分段目录: {}", workDir);
+                return false;
+            }
+
+            // 在关键帧处切分，关键帧过稀导致切点重合时合并分段
+            List<Double> cuts = new ArrayList<>();
+            cuts.add(0.0);
+            for (int i = 1; i < segments; i++) {
+                double keyframe = findKeyframeAfter(ffprobePath, inputVideoPath, durationSeconds * i / segments, 30);
+                if (keyframe > cuts.get(cuts.size() - 1) && keyframe < durationSeconds) {
+                    cuts.add(keyframe);
+                }
+            }
+            cuts.add(durationSeconds);
+            log.info("分段并行压缩: {} 个分段，切点 {}，每段 {} 线程", cuts.size() - 1, cuts, threadsPerSegment);
+
+            tracker.startSegments();
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            List<File> segmentFiles = new ArrayList<>();
+            for (int i = 0; i < cuts.size() - 1; i++) {
+                double start = cuts.get(i);
+                // 最后一段读到文件末尾，避免时长误差截掉结尾
+                double length = i == cuts.size() - 2 ? -1 : cuts.get(i + 1) - start;
+                File segmentFile = new File(workDir, String.format("segment_%03d.mp4", i));
+                segmentFiles.add(segmentFile);
+                FfmpegProgress segmentProgress = tracker.newSegment(cuts.get(i + 1) - start);
+                String passLogPrefix = new File(workDir, String.format("segment_%03d.passlog", i)).getPath();
+                tasks.add(() -> encodeSegment(ffmpegPath, inputVideoPath, segmentFile.getPath(), start, length,
+                        resolution, frameRate, videoBitrateKbps, twoPass, threadsPerSegment, passLogPrefix,
+                        timeoutSeconds, stallTimeoutSeconds, segmentProgress));
+            }
+            File audioFile = new File(workDir, "audio.m4a");
+            if (audioBitrateKbps > 0) {
+                List<String> audioCommand = new ArrayList<>(List.of(ffmpegPath, "-i", inputVideoPath,
+                        "-map", "0:a:0", "-vn", "-c:a", "aac", "-b:a", audioBitrateKbps + "k",
+                        "-y", audioFile.getPath()));
+                tasks.add(() -> runFfmpeg(audioCommand, timeoutSeconds, stallTimeoutSeconds, null));
+            }
+
+            if (!runAll(tasks)) {
+                return false;
+            }
+
+            // concat 分离器的文件列表（路径中的单引号需要转义）
+            File listFile = new File(workDir, "segments.txt");
+            StringBuilder list = new StringBuilder();
+            for (File segmentFile : segmentFiles) {
+                list.append("file '").append(segmentFile.getAbsolutePath().replace("'", "'\\''")).append("'\n");
+            }
+            Files.writeString(listFile.toPath(), list.toString());
+
+            List<String> concatCommand = new ArrayList<>(List.of(ffmpegPath,
+                    "-f", "concat", "-safe", "0", "-i", listFile.getPath()));
+            if (audioBitrateKbps > 0) {
+                concatCommand.addAll(List.of("-i", audioFile.getPath(), "-map", "0:v:0", "-map", "1:a:0"));
+            }
+            concatCommand.addAll(List.of("-c", "copy", "-movflags", "+faststart", "-y", outputVideoPath));
+            log.info("执行 FFmpeg 命令（拼接分段）: {}", String.join(" ", concatCommand));
+            if (!runFfmpeg(concatCommand, timeoutSeconds, stallTimeoutSeconds, null)) {
+                return false;
+            }
+            tracker.finishSegments();
+            log.info("视频压缩成功（分段并行，目标码率 {}k）: {} -> {}", videoBitrateKbps, inputVideoPath, outputVideoPath);
+            return true;
+        } catch (Exception e) {
+            log.error("执行分段并行压缩时发生异常", e);
+            return false;
+        } finally {
+            File[] files = workDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            workDir.delete();
+        }
+    }
+
+    /**
+     * 编码一个视频分段（不含音频）
+     */
+    private static boolean encodeSegment(String ffmpegPath, String inputVideoPath, String segmentPath,
+                                         double start, double length, String resolution, int frameRate,
+                                         int videoBitrateKbps, boolean twoPass, int threads, String passLogPrefix,
+                                         int timeoutSeconds, int stallTimeoutSeconds,
+                                         FfmpegProgress progress) throws IOException, InterruptedException {
+        if (twoPass) {
+            List<String> firstPass = bitrateCommand(ffmpegPath, inputVideoPath, start, length, resolution,
+                    frameRate, videoBitrateKbps, threads);
+            firstPass.addAll(List.of("-pass", "1", "-passlogfile", passLogPrefix, "-an", "-f", "null", "-y", "-"));
+            progress.startPass(1, 2);
+            if (!runFfmpeg(firstPass, timeoutSeconds, stallTimeoutSeconds, progress)) {
+                return false;
+            }
+        }
+        List<String> command = bitrateCommand(ffmpegPath, inputVideoPath, start, length, resolution,
+                frameRate, videoBitrateKbps, threads);
+        if (twoPass) {
+            command.addAll(List.of("-pass", "2", "-passlogfile", passLogPrefix));
+        }
+        command.addAll(List.of("-an", "-y", segmentPath));
+        log.debug("执行 FFmpeg 命令（分段）: {}", String.join(" ", command));
+        progress.startPass(twoPass ? 2 : 1, twoPass ? 2 : 1);
+        return runFfmpeg(command, timeoutSeconds, stallTimeoutSeconds, progress);
+    }
+
+    /**
+     * 在有界线程池中同时执行全部任务，任一任务失败或异常时中断其余任务（中断会终止对应的 FFmpeg 进程）
+     */
+    private static boolean runAll(List<Callable<Boolean>> tasks) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(),
+                Thread.ofVirtual().name("ffmpeg-segment-", 0).factory());
+        try {
+            CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+            tasks.forEach(completionService::submit);
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<Boolean> done = completionService.take();
+                try {
+                    if (!Boolean.TRUE.equals(done.get())) {
+                        log.error("分段编码失败，终止其余分段");
+                        return false;
+                    }
+                } catch (ExecutionException e) {
+                    log.error("分段编码时发生异常，终止其余分段", e.getCause());
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 执行命令并读取标准输出（错误输出丢弃）
+     * 标准输出在单独线程中读取，读取被挂起（例如 SMB 读取卡住）时超时仍然生效
+     * 
+     * @param timeoutSeconds 超时时间（秒），0 表示不限制
+     * @return 标准输出内容，超时或退出码非 0 时返回 null
+     */
+    private static String readOutput(List<String> command, int timeoutSeconds, String inputVideoPath) {
+        Process process = null;
+        try {
+            // 错误输出单独丢弃，避免混入结果
+            process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            Process started = process;
+            StringBuilder output = new StringBuilder();
+            Thread stdoutThread = Thread.ofVirtual().name("ffprobe-stdout").start(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(started.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        synchronized (output) {
+                            if (!output.isEmpty()) {
+                                output.append('\n');
+                            }
+                            output.append(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    // 超时终止进程后管道关闭，忽略
+                }
+            });
+            boolean exited = timeoutSeconds > 0
+                    ? process.waitFor(timeoutSeconds, TimeUnit.SECONDS)
+                    : process.waitFor() >= 0;
+            if (!exited) {
+                process.destroyForcibly();
+                log.warn("ffprobe 读取视频信息超时（{}秒）: {}", timeoutSeconds, inputVideoPath);
+                return null;
+            }
+            // 进程已退出，等待读取线程取完剩余输出
+            stdoutThread.join(5000);
+            if (process.exitValue() != 0) {
+                log.warn("ffprobe 读取视频信息失败，退出码: {}, 文件: {}", process.exitValue(), inputVideoPath);
+                return null;
+            }
+            synchronized (output) {
+                return output.toString();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("执行 ffprobe 时被中断: {}", inputVideoPath);
+            return null;
+        } catch (Exception e) {
+            log.warn("执行 ffprobe 时发生异常: {}", inputVideoPath, e);
+            return null;
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * 目标码率编码的公共参数（不含音频和输出），可只编码源视频的一段
+     * 
+     * @param startSeconds 起始时间（秒），小于 0 表示从头开始
+     * @param lengthSeconds 编码时长（秒），小于 0 表示到文件末尾
+     * @param threads 编码线程数，0 表示由 libx264 自动决定
+     */
+    private static List<String> bitrateCommand(String ffmpegPath, String inputVideoPath, double startSeconds,
+                                               double lengthSeconds, String resolution, int frameRate,
+                                               int videoBitrateKbps, int threads) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        if (startSeconds > 0) {
+            // 放在 -i 之前按关键帧快速定位
+            command.add("-ss");
+            command.add(String.format(Locale.ROOT, "%.3f", startSeconds));
+        }
+        command.add("-i");
+        command.add(inputVideoPath);
+        if (lengthSeconds > 0) {
+            command.add("-t");
+            command.add(String.format(Locale.ROOT, "%.3f", lengthSeconds));
+        }
+        if (threads > 0) {
+            command.add("-threads");
+            command.add(String.valueOf(threads));
+        }
+        command.add("-vf");
+        command.add("scale=" + resolution + ":force_original_aspect_ratio=decrease,scale='trunc(iw/2)*2':'trunc(ih/2)*2'");
+        command.add("-r");
+        command.add(String.valueOf(frameRate));
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-preset");
+        command.add("slow");
+        command.add("-b:v");
+        command.add(videoBitrateKbps + "k");
+        command.add("-pix_fmt");
+        command.add("yuv420p");
+        command.add("-profile:v");
+        command.add("high");
+        command.add("-level");
+        command.add("4.2");
+        return command;
+    }
+
+    /**
+     * 执行 FFmpeg 命令并等待结束
+     * 
+     * 进度通过 -progress pipe:1 从标准输出读取；错误输出只保留最后若干行用于排查。
+     * 进度停滞超过 stallTimeoutSeconds 或总耗时超过 timeoutSeconds 时终止进程。
+     * 
+     * @return 进程是否正常退出（退出码为 0）
+     */
+    private static boolean runFfmpeg(List<String> command, int timeoutSeconds, int stallTimeoutSeconds,
+                                     FfmpegProgress progress) throws IOException, InterruptedException {
+        return runFfmpeg(command, null, timeoutSeconds, stallTimeoutSeconds, progress);
+    }
+
+    /**
+     * 在指定工作目录中执行 FFmpeg 命令并等待结束
+     * 
+     * @param workingDir 工作目录，为 null 时使用当前目录
+     */
+    private static boolean runFfmpeg(List<String> command, File workingDir, int timeoutSeconds,
+                                     int stallTimeoutSeconds, FfmpegProgress progress)
+            throws IOException, InterruptedException {
+        // -progress 是全局参数，放在输入之前；-nostats 关闭错误输出中的进度行
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.addAll(1, List.of("-progress", "pipe:1", "-nostats"));
+        FfmpegProgress tracker = progress != null ? progress : new FfmpegProgress();
+        if (tracker.isCancelled()) {
+            return false;
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(fullCommand);
+        if (workingDir != null) {
+            processBuilder.directory(workingDir);
+        }
+        Process process = processBuilder.start();
+        
+        // 分别在单独线程中读取进度和错误输出，避免管道写满阻塞 FFmpeg
+        Deque<String> stderrTail = new ArrayDeque<>(STDERR_TAIL_LINES);
+        Thread progressThread = Thread.ofVirtual().name("ffmpeg-progress").start(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    tracker.update(line);
+                }
+            } catch (Exception e) {
+                log.error("读取 FFmpeg 进度时发生异常", e);
+            }
+        });
+        Thread stderrThread = Thread.ofVirtual().name("ffmpeg-stderr").start(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.debug("FFmpeg 输出: {}", line);
+                    synchronized (stderrTail) {
+                        if (stderrTail.size() == STDERR_TAIL_LINES) {
+                            stderrTail.removeFirst();
+                        }
+                        stderrTail.addLast(line);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("读取 FFmpeg 输出时发生异常", e);
+            }
+        });
+        
+        // 每秒检查一次：已取消、进度停滞或超过总超时时间时终止进程
+        long startedAt = System.currentTimeMillis();
+        String killReason = null;
+        while (!waitFor(process, 1)) {
+            if (tracker.isCancelled()) {
+                killReason = "编码已取消";
+            } else if (stallTimeoutSeconds > 0 && tracker.stalledMillis() > stallTimeoutSeconds * 1000L) {
+                killReason = String.format("编码进度已停滞 %d 秒", tracker.stalledMillis() / 1000);
+            } else if (timeoutSeconds > 0 && System.currentTimeMillis() - startedAt > timeoutSeconds * 1000L) {
+                killReason = String.format("视频压缩超时（%d秒）", timeoutSeconds);
+            }
+            if (killReason != null) {
+                if (tracker.isCancelled()) {
+                    log.info("{}，终止进程", killReason);
+                } else {
+                    log.error("{}，终止进程", killReason);
+                }
+                process.destroyForcibly();
+                // 等待进程真正终止
+                process.waitFor(5, TimeUnit.SECONDS);
+                break;
+            }
+        }
+        
+        // 等待读取线程完成
+        try {
+            progressThread.join(5000);
+            stderrThread.join(5000);
+        } catch (InterruptedException e) {
+            log.warn("等待输出线程完成时被中断", e);
+            Thread.currentThread().interrupt();
+        }
+        
+        if (killReason != null && tracker.isCancelled()) {
+            return false;
+        }
+        if (killReason != null || process.exitValue() != 0) {
+            if (killReason == null) {
+                log.error("视频压缩失败，退出码: {}", process.exitValue());
+            }
+            synchronized (stderrTail) {
+                log.error("FFmpeg 最后 {} 行输出:\n{}", stderrTail.size(), String.join("\n", stderrTail));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 等待进程结束，等待期间线程被中断（流水线关闭）时终止进程后再抛出
+     */
+    private static boolean waitFor(Process process, int seconds) throws InterruptedException {
+        try {
+            return process.waitFor(seconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    /**
+     * 删除两遍编码的统计文件（libx264 会生成 -0.log 和 -0.log.mbtree）
+     */
+    private static void deletePassLogs(String passLogPrefix) {
+        for (String suffix : new String[]{"-0.log", "-0.log.mbtree", "-0.log.temp", "-0.log.mbtree.temp"}) {
+            new File(passLogPrefix + suffix).delete();
+        }
+    }
+    
     /**
      * 检查 FFmpeg 是否可用
      * 
@@ -272,9 +1088,6 @@ public class FfmpegUtil {
             return null;
         }
         
-        // 支持的视频格式
-        String[] videoExtensions = {".mp4", ".avi", ".mov", ".mkv", ".flv", ".wmv", ".m4v"};
-        
         File[] files = dir.listFiles();
         if (files != null) {
             for (File file : files) {
@@ -282,14 +1095,8 @@ public class FfmpegUtil {
                     String fileName = file.getName();
                     String fileNameWithoutExt = removeFileExtension(fileName);
                     
-                    if (fileNameWithoutExt.equals(videoNameWithoutExt)) {
-                        // 检查是否是视频文件
-                        String extension = getFileExtension(fileName).toLowerCase();
-                        for (String videoExt : videoExtensions) {
-                            if (videoExt.equals("." + extension)) {
-                                return file;
-                            }
-                        }
+                    if (fileNameWithoutExt.equals(videoNameWithoutExt) && isVideoFile(fileName)) {
+                        return file;
                     }
                 }
             }
@@ -297,6 +1104,27 @@ public class FfmpegUtil {
         
         return null;
     }
+
+    /**
+     * 是否为支持的视频格式（按扩展名判断，不区分大小写）
+     */
+    public static boolean isVideoFile(String fileName) {
+        return VIDEO_EXTENSIONS.contains("." + getFileExtension(fileName).toLowerCase());
+    }
+
+    /**
+     * 视频文件的 MIME 类型（按扩展名判断，未知格式按 video/mp4 处理）
+     */
+    public static String videoMimeType(String fileName) {
+        return switch (getFileExtension(fileName).toLowerCase()) {
+            case "mov" -> "video/quicktime";
+            case "mkv" -> "video/x-matroska";
+            case "avi" -> "video/x-msvideo";
+            case "flv" -> "video/x-flv";
+            case "wmv" -> "video/x-ms-wmv";
+            default -> "video/mp4";
+        };
+    }
     
     /**
      * 移除文件扩展名
@@ -325,5 +1153,24 @@ public class FfmpegUtil {
         }
         return "";
     }
-}
 
+    /**
+     * 抽取出的关键帧
+     * 
+     * @param timeSeconds 在视频中的时间点（秒）
+     * @param file 图片文件
+     */
+    public record SceneFrame(double timeSeconds, File file) {
+    }
+
+    /**
+     * 一秒音频的响度和能量
+     * 
+     * @param timeSeconds 起始时间（秒）
+     * @param momentaryLufs 瞬时响度（LUFS）
+     * @param shortTermLufs 短时响度（LUFS）
+     * @param rmsDb RMS 电平（dB）
+     */
+    public record AudioLevel(double timeSeconds, double momentaryLufs, double shortTermLufs, double rmsDb) {
+    }
+}
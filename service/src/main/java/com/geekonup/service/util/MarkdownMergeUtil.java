@@ -0,0 +1,112 @@
+package com.geekonup.service.util;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分段分析报告合并工具类
+ * 各片段报告中的时间点是片段内的相对时间，合并时加上片段起始时间换算为完整视频中的时间，
+ * 标题整体降一级后放到各片段的小节下。
+ */
+public class MarkdownMergeUtil {
+
+    // 分:秒 或 时:分:秒，前后不能紧挨数字或冒号（避免匹配到更长的数字串）
+    private static final Pattern TIMESTAMP_PATTERN =
+            Pattern.compile("(?<![\\d:])(\\d{1,3}):([0-5]\\d)(?::([0-5]\\d))?(?![\\d:])");
+
+    private MarkdownMergeUtil() {
+    }
+
+    /**
+     * 合并各片段的报告
+     *
+     * @param title    合并后报告的标题
+     * @param summary  标题下的说明（如时长、片段数），可为空
+     * @param sections 按时间排序的片段报告
+     * @return 合并后的 Markdown
+     */
+    public static String merge(String title, String summary, List<Section> sections) {
+        StringBuilder merged = new StringBuilder();
+        merged.append("# ").append(title).append("\n\n");
+        if (summary != null && !summary.isBlank()) {
+            merged.append("> ").append(summary).append("\n\n");
+        }
+        for (Section section : sections) {
+            merged.append("## ").append(section.heading()).append("\n\n");
+            merged.append(demoteHeadings(shiftTimestamps(section.markdown(), section.offsetSeconds())).trim());
+            merged.append("\n\n");
+        }
+        return merged.toString();
+    }
+
+    /**
+     * 把文中的相对时间点加上偏移量
+     * 分:秒 输出为 分:秒（分钟数可以超过 60，与高光切片的格式一致），时:分:秒 输出为 时:分:秒
+     */
+    public static String shiftTimestamps(String markdown, double offsetSeconds) {
+        long offset = Math.round(offsetSeconds);
+        if (offset <= 0) {
+            return markdown;
+        }
+        Matcher matcher = TIMESTAMP_PATTERN.matcher(markdown);
+        StringBuilder shifted = new StringBuilder();
+        while (matcher.find()) {
+            String replacement;
+            if (matcher.group(3) == null) {
+                long seconds = Long.parseLong(matcher.group(1)) * 60 + Long.parseLong(matcher.group(2)) + offset;
+                replacement = formatTimestamp(seconds);
+            } else {
+                long seconds = Long.parseLong(matcher.group(1)) * 3600 + Long.parseLong(matcher.group(2)) * 60
+                        + Long.parseLong(matcher.group(3)) + offset;
+                replacement = formatTimestampWithHours(seconds);
+            }
+            matcher.appendReplacement(shifted, replacement);
+        }
+        matcher.appendTail(shifted);
+        return shifted.toString();
+    }
+
+    /**
+     * 时间点格式化为 分:秒（四舍五入到整秒，分钟数可以超过 60），报告、高光切片和发给模型的时间点统一使用此格式
+     */
+    public static String formatTimestamp(double seconds) {
+        long total = Math.round(seconds);
+        return String.format("%d:%02d", total / 60, total % 60);
+    }
+
+    /**
+     * 时间点格式化为 时:分:秒（四舍五入到整秒）
+     */
+    public static String formatTimestampWithHours(double seconds) {
+        long total = Math.round(seconds);
+        return String.format("%d:%02d:%02d", total / 3600, total % 3600 / 60, total % 60);
+    }
+
+    /**
+     * 标题降一级（代码块内的内容不处理，六级标题保持不变）
+     */
+    private static String demoteHeadings(String markdown) {
+        StringBuilder result = new StringBuilder();
+        boolean inCodeBlock = false;
+        for (String line : markdown.split("\n", -1)) {
+            if (line.startsWith("```")) {
+                inCodeBlock = !inCodeBlock;
+            } else if (!inCodeBlock && line.startsWith("#") && !line.startsWith("######")) {
+                line = "#" + line;
+            }
+            result.append(line).append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * 一个片段的报告
+     *
+     * @param heading       小节标题
+     * @param offsetSeconds 片段在完整视频中的起始时间（秒）
+     * @param markdown      片段报告
+     */
+    public record Section(String heading, double offsetSeconds, String markdown) {
+    }
+}
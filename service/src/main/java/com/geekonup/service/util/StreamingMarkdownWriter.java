@@ -0,0 +1,162 @@
+package com.geekonup.service.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 流式接收模型输出并写入 Markdown 报告
+ * <p>
+ * 每收到一段内容就追加写入 {报告名}.partial 并刷新，完整接收后再替换为正式报告文件，
+ * 不会用半份报告覆盖已有报告；流中断时保留 .partial 文件用于排查（没有收到任何内容时不保留）。
+ * 连接被正常关闭但没有收到结束标记（[DONE] 或 finish_reason）同样视为中断，不会当作完整报告提交。
+ * 同时记录首个内容到达时间和输出速度，首个内容到达时间从发送请求开始计算（包含上传和模型预填充）。
+ */
+public class StreamingMarkdownWriter implements Closeable {
+
+    private final File mdFile;
+
+    private final Path partialPath;
+
+    private final Writer writer;
+
+    private final StringBuilder content = new StringBuilder();
+
+    // 开始发送请求的时间
+    private final long startNanos;
+
+    private long firstContentNanos;
+
+    private long chunks;
+
+    private long completionTokens;
+
+    private boolean completed;
+
+    // 是否收到流的结束标记
+    private boolean finished;
+
+    public StreamingMarkdownWriter(File mdFile) throws IOException {
+        this(mdFile, System.nanoTime());
+    }
+
+    /**
+     * @param startNanos 开始发送请求的时间（System.nanoTime），首个内容到达耗时从此时开始计算
+     */
+    public StreamingMarkdownWriter(File mdFile, long startNanos) throws IOException {
+        this.mdFile = mdFile;
+        this.startNanos = startNanos;
+        this.partialPath = partialFileOf(mdFile).toPath();
+        this.writer = Files.newBufferedWriter(partialPath, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 报告对应的未完成文件
+     */
+    public static File partialFileOf(File mdFile) {
+        return new File(mdFile.getParentFile(), mdFile.getName() + ".partial");
+    }
+
+    /**
+     * 追加一段模型输出
+     */
+    public void append(String delta) throws IOException {
+        if (delta == null || delta.isEmpty()) {
+            return;
+        }
+        if (firstContentNanos == 0) {
+            firstContentNanos = System.nanoTime();
+        }
+        chunks++;
+        content.append(delta);
+        writer.write(delta);
+        writer.flush();
+    }
+
+    /**
+     * 记录模型返回的输出 token 数（流末尾的 usage），未返回时按收到的片段数估算
+     */
+    public void setCompletionTokens(long completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    /**
+     * 收到流的结束标记（data: [DONE] 或 finish_reason）
+     */
+    public void markFinished() {
+        this.finished = true;
+    }
+
+    /**
+     * 流正常结束：关闭未完成文件并替换为正式报告
+     *
+     * @return 完整报告内容
+     * @throws IOException 没有收到结束标记（连接在报告中途被关闭），未完成文件保留，调用方可重试
+     */
+    public String complete() throws IOException {
+        if (!finished) {
+            throw new IOException("模型输出流在结束标记之前被关闭，已接收 " + content.length() + " 字符");
+        }
+        writer.close();
+        if (content.isEmpty()) {
+            throw new RuntimeException("阶段一：AI模型返回内容为空");
+        }
+        Files.move(partialPath, mdFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        completed = true;
+        return content.toString();
+    }
+
+    /**
+     * 首个内容到达耗时（毫秒），还没有内容时返回 -1
+     */
+    public long timeToFirstTokenMillis() {
+        return firstContentNanos == 0 ? -1 : (firstContentNanos - startNanos) / 1_000_000;
+    }
+
+    /**
+     * 输出 token 数（未返回 usage 时为收到的片段数）
+     */
+    public long tokens() {
+        return completionTokens > 0 ? completionTokens : chunks;
+    }
+
+    /**
+     * 从首个内容到现在的输出速度（token/秒）
+     */
+    public double tokensPerSecond() {
+        if (firstContentNanos == 0) {
+            return 0;
+        }
+        double seconds = (System.nanoTime() - firstContentNanos) / 1e9;
+        return seconds <= 0 ? 0 : tokens() / seconds;
+    }
+
+    /**
+     * 已接收的字符数
+     */
+    public int receivedChars() {
+        return content.length();
+    }
+
+    public File partialFile() {
+        return partialPath.toFile();
+    }
+
+    /**
+     * 未完成时关闭文件并保留已写入的内容；一个字都没收到时删除空文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (!completed) {
+            writer.close();
+            if (content.isEmpty()) {
+                Files.deleteIfExists(partialPath);
+            }
+        }
+    }
+}
@@ -1,14 +1,47 @@
 package com.geekonup.service.util;
 
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
 import com.openai.client.OpenAIClient;
 import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.geekonup.service.ai.AiCallException;
+import com.geekonup.service.ai.AiRateLimiter;
+import com.geekonup.service.ai.AiStreamMetrics;
+import com.openai.core.http.StreamResponse;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
+import com.openai.models.chat.completions.ChatCompletionContentPart;
+import com.openai.models.chat.completions.ChatCompletionContentPartImage;
+import com.openai.models.chat.completions.ChatCompletionContentPartText;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 视频分析AI工具类
@@ -17,13 +50,50 @@ import java.util.Base64;
 @Slf4j
 public class VideoAnalysisAiUtil {
 
+    // 视频请求的超时时间（模型处理视频耗时较长）
+    private static final Duration VIDEO_REQUEST_TIMEOUT = Duration.ofMinutes(10);
+
     private final OpenAIClient openAIClient;
 
+    private final HttpClient httpClient;
+
+    private final String apiKey;
+
+    private final String chatCompletionsUrl;
+
+    // 是否以流式方式接收阶段一的输出
+    private final boolean streaming;
+
+    private final AiStreamMetrics streamMetrics;
+
+    private final AiRateLimiter rateLimiter;
+
     public VideoAnalysisAiUtil(String apiKey, String baseUrl) {
-        this.openAIClient = OpenAIOkHttpClient.builder()
+        this(apiKey, baseUrl, false, null, null);
+    }
+
+    /**
+     * @param streaming     是否流式接收阶段一输出（边接收边写入报告文件）
+     * @param streamMetrics 流式输出指标，可为空
+     * @param rateLimiter   限流重试层，可为空；不为空时由其负责重试，SDK 不再自行重试
+     */
+    public VideoAnalysisAiUtil(String apiKey, String baseUrl, boolean streaming, AiStreamMetrics streamMetrics,
+                               AiRateLimiter rateLimiter) {
+        OpenAIOkHttpClient.Builder builder = OpenAIOkHttpClient.builder()
                 .apiKey(apiKey)
-                .baseUrl(baseUrl)
+                .baseUrl(baseUrl);
+        if (rateLimiter != null) {
+            builder.maxRetries(0);
+        }
+        this.openAIClient = builder.build();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
                 .build();
+        this.apiKey = apiKey;
+        this.chatCompletionsUrl = StrUtil.removeSuffix(baseUrl, "/") + "/chat/completions";
+        this.streaming = streaming;
+        this.streamMetrics = streamMetrics;
+        this.rateLimiter = rateLimiter;
     }
     
     /**
@@ -45,6 +115,61 @@ public class VideoAnalysisAiUtil {
     public String analyzeVideoToMarkdown(String videoFilePath,
                                          String prompt1Path,
                                          String step1Model) {
+        return analyzeVideoToMarkdown(videoFilePath, prompt1Path, step1Model,
+                resolveMarkdownFile(new File(videoFilePath)));
+    }
+
+    /**
+     * 分析视频并返回 Markdown 格式的分析报告（阶段一），报告保存到指定文件
+     *
+     * @param videoFilePath 视频文件路径
+     * @param prompt1Path   阶段一 prompt 文件路径
+     * @param step1Model    阶段一模型名称（视觉模型）
+     * @param mdFile        Markdown 报告保存位置
+     * @return Markdown 格式的分析报告
+     */
+    public String analyzeVideoToMarkdown(String videoFilePath,
+                                         String prompt1Path,
+                                         String step1Model,
+                                         File mdFile) {
+        return analyzeVideoToMarkdown(videoFilePath, prompt1Path, step1Model, mdFile, null);
+    }
+
+    /**
+     * 分析视频并返回 Markdown 格式的分析报告（阶段一），报告保存到指定文件
+     *
+     * @param videoFilePath    视频文件路径
+     * @param prompt1Path      阶段一 prompt 文件路径
+     * @param step1Model       阶段一模型名称（视觉模型）
+     * @param mdFile           Markdown 报告保存位置
+     * @param mediaDescription 源视频信息（时长、分辨率等，每行一项），为空时只描述文件
+     * @return Markdown 格式的分析报告
+     */
+    public String analyzeVideoToMarkdown(String videoFilePath,
+                                         String prompt1Path,
+                                         String step1Model,
+                                         File mdFile,
+                                         String mediaDescription) {
+        return analyzeVideoToMarkdown(videoFilePath, prompt1Path, step1Model, mdFile, mediaDescription, null);
+    }
+
+    /**
+     * 分析视频并返回 Markdown 格式的分析报告（阶段一），报告保存到指定文件
+     *
+     * @param videoFilePath    视频文件路径
+     * @param prompt1Path      阶段一 prompt 文件路径
+     * @param step1Model       阶段一模型名称（视觉模型）
+     * @param mdFile           Markdown 报告保存位置
+     * @param mediaDescription 源视频信息（时长、分辨率等，每行一项），为空时只描述文件
+     * @param videoUrl         模型可直接下载的视频地址（媒体服务签名 URL），为空时视频以 data URL 内嵌在请求中
+     * @return Markdown 格式的分析报告
+     */
+    public String analyzeVideoToMarkdown(String videoFilePath,
+                                         String prompt1Path,
+                                         String step1Model,
+                                         File mdFile,
+                                         String mediaDescription,
+                                         String videoUrl) {
         try {
             File videoFile = new File(videoFilePath);
             if (!videoFile.exists() || !videoFile.isFile()) {
@@ -57,49 +182,329 @@ public class VideoAnalysisAiUtil {
             // ============ 阶段一：视频 -> Markdown ============
             String prompt1 = Files.readString(new File(prompt1Path).toPath());
 
-            // system 使用 prompt1，user 只传视频相关信息
-            ChatCompletionCreateParams.Builder step1Builder = ChatCompletionCreateParams.builder();
-            step1Builder.addSystemMessage(prompt1);
+            // system 使用 prompt1，user 传视频内容和视频相关信息
+            String step1UserMessage = buildUserMessage(videoFile, mediaDescription);
+            return requestVideoCompletion(step1Model, prompt1, videoFile, videoUrl, step1UserMessage, mdFile);
+
+        } catch (Exception e) {
+            log.error("分析视频时发生异常（两阶段）", e);
+            throw new RuntimeException("视频分析失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 分析关键帧并返回 Markdown 格式的分析报告（阶段一，关键帧模式）
+     * 
+     * 关键帧作为一条多图片的用户消息发送，每张图片前附带其在视频中的时间点。
+     *
+     * @param frames           按时间排序的关键帧
+     * @param prompt1Path      阶段一 prompt 文件路径
+     * @param step1Model       阶段一模型名称（视觉模型）
+     * @param mdFile           Markdown 报告保存位置
+     * @param mediaDescription 源视频信息（时长、分辨率等，每行一项），可为空
+     * @return Markdown 格式的分析报告
+     */
+    public String analyzeFramesToMarkdown(List<FfmpegUtil.SceneFrame> frames,
+                                          String prompt1Path,
+                                          String step1Model,
+                                          File mdFile,
+                                          String mediaDescription) {
+        try {
+            if (frames == null || frames.isEmpty()) {
+                throw new IllegalArgumentException("没有可分析的关键帧");
+            }
+            long totalBytes = frames.stream().mapToLong(frame -> frame.file().length()).sum();
+            log.info("开始分析关键帧: {} 帧, {} KB", frames.size(), totalBytes / 1024);
+
+            String prompt1 = Files.readString(new File(prompt1Path).toPath());
 
-            String step1UserMessage = buildUserMessage(videoFile);
+            List<ChatCompletionContentPart> parts = new ArrayList<>();
+            parts.add(textPart(buildFramesHeader(frames.size(), mediaDescription)));
+            for (FfmpegUtil.SceneFrame frame : frames) {
+                parts.add(textPart("[" + MarkdownMergeUtil.formatTimestamp(frame.timeSeconds()) + "]"));
+                String imageBase64 = Base64.getEncoder().encodeToString(Files.readAllBytes(frame.file().toPath()));
+                parts.add(ChatCompletionContentPart.ofImageUrl(ChatCompletionContentPartImage.builder()
+                        .imageUrl(ChatCompletionContentPartImage.ImageUrl.builder()
+                                .url("data:image/jpeg;base64," + imageBase64)
+                                .build())
+                        .build()));
+            }
+            parts.add(textPart("请根据以上关键帧分析这个视频，高光时间点请以关键帧标注的时间为准。"));
 
-            ChatCompletionCreateParams step1Params = step1Builder
-                    .addUserMessage(step1UserMessage)
+            ChatCompletionCreateParams step1Params = ChatCompletionCreateParams.builder()
+                    .addSystemMessage(prompt1)
+                    .addUserMessageOfArrayOfContentParts(parts)
                     .model(step1Model)
                     .build();
 
+            return requestMarkdown(step1Params, mdFile);
+
+        } catch (Exception e) {
+            log.error("分析关键帧时发生异常", e);
+            throw new RuntimeException("关键帧分析失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把 Markdown 分析报告整理为结构化 JSON（阶段二）
+     *
+     * prompt2 文件不存在时使用内置的结构化提示词。输出较短，不使用流式接收。
+     *
+     * @param markdownReport 阶段一的 Markdown 分析报告
+     * @param prompt2Path    阶段二 prompt 文件路径
+     * @param step2Model     阶段二模型名称（文本模型）
+     * @param fields         只需要模型输出的字段（其余字段已从报告中提取），为 null 时输出全部字段
+     * @return 模型返回的内容（JSON，可能带代码块标记）
+     */
+    public String structureReport(String markdownReport, String prompt2Path, String step2Model,
+                                  Collection<String> fields) throws IOException {
+        File prompt2File = new File(prompt2Path);
+        String prompt2 = prompt2File.isFile() ? Files.readString(prompt2File.toPath()) : buildSystemPrompt();
+        String userText = "以下是视频分析报告：\n\n" + markdownReport;
+        if (fields != null) {
+            userText += "\n\n其余字段已确定，只需输出以下字段（JSON 格式与取值要求不变）：" + String.join("、", fields);
+        }
+        ChatCompletionCreateParams step2Params = ChatCompletionCreateParams.builder()
+                .addSystemMessage(prompt2)
+                .addUserMessage(userText)
+                .model(step2Model)
+                .build();
+        ChatCompletion step2Completion = openAIClient.chat().completions().create(step2Params);
+        if (step2Completion.choices().isEmpty()) {
+            return null;
+        }
+        return step2Completion.choices().get(0).message().content().orElse(null);
+    }
+
+    /**
+     * 调用模型并保存返回的 Markdown 报告
+     */
+    private String requestMarkdown(ChatCompletionCreateParams step1Params, File mdFile) throws IOException {
+        if (!streaming) {
             ChatCompletion step1Completion = openAIClient.chat().completions().create(step1Params);
-            String mdContent = step1Completion.choices().get(0).message().content().orElse(null);
-            if (mdContent == null || mdContent.isEmpty()) {
-                throw new RuntimeException("阶段一：AI模型返回内容为空");
+            return saveMarkdown(step1Completion.choices().get(0).message().content().orElse(null), mdFile);
+        }
+        ChatCompletionCreateParams streamParams = step1Params.toBuilder()
+                .streamOptions(ChatCompletionStreamOptions.builder().includeUsage(true).build())
+                .build();
+        StreamingMarkdownWriter writer = new StreamingMarkdownWriter(mdFile);
+        boolean succeeded = false;
+        try (writer; StreamResponse<ChatCompletionChunk> stream =
+                     openAIClient.chat().completions().createStreaming(streamParams)) {
+            for (ChatCompletionChunk chunk : (Iterable<ChatCompletionChunk>) stream.stream()::iterator) {
+                for (ChatCompletionChunk.Choice choice : chunk.choices()) {
+                    writer.append(choice.delta().content().orElse(null));
+                    if (choice.finishReason().isPresent()) {
+                        writer.markFinished();
+                    }
+                }
+                chunk.usage().ifPresent(usage -> writer.setCompletionTokens(usage.completionTokens()));
             }
+            String mdContent = writer.complete();
+            succeeded = true;
+            return mdContent;
+        } finally {
+            finishStream(writer, succeeded);
+        }
+    }
 
-            log.info("阶段一分析完成，开始保存 Markdown 文档");
+    /**
+     * 调用模型分析视频，视频作为 video_url 内容发送
+     *
+     * 有 videoUrl 时只发送地址，由模型自行下载；否则以 Base64 data URL 内嵌在请求中。
+     * SDK 会先把整个请求序列化到内存中，视频编码后的请求体有上百 MB，并发时会占满堆内存。
+     * 这里直接构造请求体：JSON 在视频数据处切开，视频文件边读边做 Base64 编码写入请求，
+     * 请求体长度预先算出（不使用分块传输），堆内存占用与视频大小和并发数无关。
+     *
+     * @return 模型返回的内容，没有内容时返回 null
+     */
+    private String requestVideoCompletion(String model, String systemPrompt, File videoFile, String videoUrl,
+                                          String userText, File mdFile) throws IOException, InterruptedException {
+        // 先用占位符生成完整 JSON，再在占位符处切开，中间接入视频数据
+        String placeholder = "__VIDEO_" + IdUtil.fastSimpleUUID() + "__";
+        JSONArray userContent = new JSONArray();
+        userContent.add(new JSONObject().set("type", "video_url")
+                .set("video_url", new JSONObject().set("url", placeholder)));
+        userContent.add(new JSONObject().set("type", "text").set("text", userText));
+        JSONArray messages = new JSONArray();
+        messages.add(new JSONObject().set("role", "system").set("content", systemPrompt));
+        messages.add(new JSONObject().set("role", "user").set("content", userContent));
+        JSONObject requestJson = new JSONObject().set("model", model).set("messages", messages);
+        if (streaming) {
+            requestJson.set("stream", true).set("stream_options", new JSONObject().set("include_usage", true));
+        }
+        String json = requestJson.toString();
 
-            // 将 Markdown 文档保存到与视频同目录、同名的 .md 文件
-            File videoParent = videoFile.getParentFile();
-            String videoName = videoFile.getName();
-            int dotIndex = videoName.lastIndexOf('.');
-            String baseName = dotIndex > 0 ? videoName.substring(0, dotIndex) : videoName;
-            File mdFile = new File(videoParent, baseName + ".md");
-            Files.writeString(mdFile.toPath(), mdContent);
-            log.info("Markdown 分析文档已保存: {}", mdFile.getAbsolutePath());
+        HttpRequest.BodyPublisher body;
+        if (videoUrl != null) {
+            log.info("视频以 URL 发送，由模型下载: {}", videoFile.getName());
+            body = HttpRequest.BodyPublishers.ofString(json.replace(placeholder, videoUrl), StandardCharsets.UTF_8);
+        } else {
+            body = dataUrlBody(json, placeholder, videoFile);
+        }
 
-            log.info("视频分析完成（阶段一：Markdown）");
-            return mdContent;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(chatCompletionsUrl))
+                .timeout(VIDEO_REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .POST(body)
+                .build();
+        if (streaming) {
+            return receiveStream(request, mdFile);
+        }
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        checkResponse(response, response::body);
+        JSONArray choices = JSONUtil.parseObj(response.body()).getJSONArray("choices");
+        if (choices == null || choices.isEmpty()) {
+            return saveMarkdown(null, mdFile);
+        }
+        JSONObject message = choices.getJSONObject(0).getJSONObject("message");
+        return saveMarkdown(message == null ? null : message.getStr("content"), mdFile);
+    }
 
-        } catch (Exception e) {
-            log.error("分析视频时发生异常（两阶段）", e);
-            throw new RuntimeException("视频分析失败: " + e.getMessage(), e);
+    /**
+     * 按行读取 SSE 响应（data: {chunk}，以 data: [DONE] 结束），内容边接收边写入报告文件
+     */
+    private String receiveStream(HttpRequest request, File mdFile) throws IOException, InterruptedException {
+        // send 在收到响应头后才返回，首个 token 耗时从发送前开始计算，包含视频上传和模型预填充
+        long startNanos = System.nanoTime();
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            checkResponse(response, () -> lines.limit(20).collect(Collectors.joining("\n")));
+            StreamingMarkdownWriter writer = new StreamingMarkdownWriter(mdFile, startNanos);
+            boolean succeeded = false;
+            try (writer) {
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    String data = line.substring("data:".length()).trim();
+                    if ("[DONE]".equals(data)) {
+                        writer.markFinished();
+                        break;
+                    }
+                    JSONObject chunk = JSONUtil.parseObj(data);
+                    JSONArray choices = chunk.getJSONArray("choices");
+                    if (choices != null && !choices.isEmpty()) {
+                        JSONObject choice = choices.getJSONObject(0);
+                        JSONObject delta = choice.getJSONObject("delta");
+                        writer.append(delta == null ? null : delta.getStr("content"));
+                        if (choice.getStr("finish_reason") != null) {
+                            writer.markFinished();
+                        }
+                    }
+                    JSONObject usage = chunk.getJSONObject("usage");
+                    if (usage != null && usage.getLong("completion_tokens") != null) {
+                        writer.setCompletionTokens(usage.getLong("completion_tokens"));
+                    }
+                }
+                String mdContent = writer.complete();
+                succeeded = true;
+                return mdContent;
+            } finally {
+                finishStream(writer, succeeded);
+            }
         }
     }
 
+    /**
+     * 把响应头交给限流层，状态码不是 200 时抛出带状态码和 Retry-After 的异常
+     */
+    private void checkResponse(HttpResponse<?> response, Supplier<String> body) throws AiCallException {
+        if (rateLimiter != null) {
+            rateLimiter.onResponse(response.statusCode(), response.headers()::firstValue);
+        }
+        if (response.statusCode() != 200) {
+            // Retry-After 也可能是 HTTP 日期，这里只取秒数形式
+            long retryAfterMillis = response.headers().firstValue("retry-after")
+                    .map(String::trim)
+                    .filter(value -> value.matches("\\d+"))
+                    .map(value -> Long.parseLong(value) * 1000)
+                    .orElse(-1L);
+            throw new AiCallException(response.statusCode(), retryAfterMillis,
+                    "模型接口返回 " + response.statusCode() + ": " + StrUtil.maxLength(body.get(), 500));
+        }
+    }
+
+    /**
+     * 记录流式调用结果；中断时保留已接收的部分报告
+     */
+    private void finishStream(StreamingMarkdownWriter writer, boolean succeeded) {
+        if (streamMetrics != null) {
+            streamMetrics.record(writer, succeeded);
+        }
+        if (succeeded) {
+            log.info("阶段一流式输出完成: 首个 token {} ms，{} token，{} token/s", writer.timeToFirstTokenMillis(),
+                    writer.tokens(), String.format("%.1f", writer.tokensPerSecond()));
+        } else if (writer.receivedChars() > 0) {
+            log.warn("阶段一流式输出中断，已接收 {} 字符，部分报告保留在: {}", writer.receivedChars(),
+                    writer.partialFile().getAbsolutePath());
+        }
+    }
+
+    /**
+     * 构造内嵌视频的请求体：在占位符处切开 JSON，中间接入边读边编码的视频数据
+     */
+    private static HttpRequest.BodyPublisher dataUrlBody(String json, String placeholder, File videoFile) {
+        int split = json.indexOf(placeholder);
+        byte[] prefix = (json.substring(0, split) + "data:" + FfmpegUtil.videoMimeType(videoFile.getName()) + ";base64,")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = json.substring(split + placeholder.length()).getBytes(StandardCharsets.UTF_8);
+        long contentLength = prefix.length + Base64EncodingInputStream.encodedLength(videoFile.length()) + suffix.length;
+        log.info("视频以 data URL 发送: {} MB，请求体 {} MB", String.format("%.2f", videoFile.length() / 1024.0 / 1024.0),
+                String.format("%.2f", contentLength / 1024.0 / 1024.0));
+        return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(
+                () -> new SequenceInputStream(Collections.enumeration(List.of(
+                        new ByteArrayInputStream(prefix),
+                        new Base64EncodingInputStream(openVideo(videoFile)),
+                        new ByteArrayInputStream(suffix))))), contentLength);
+    }
+
+    private static InputStream openVideo(File videoFile) {
+        try {
+            return Files.newInputStream(videoFile.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取视频文件失败: " + videoFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 保存模型返回的 Markdown 报告
+     */
+    private static String saveMarkdown(String mdContent, File mdFile) throws IOException {
+        if (mdContent == null || mdContent.isEmpty()) {
+            throw new RuntimeException("阶段一：AI模型返回内容为空");
+        }
+
+        log.info("阶段一分析完成，开始保存 Markdown 文档");
+
+        Files.writeString(mdFile.toPath(), mdContent);
+        log.info("Markdown 分析文档已保存: {}", mdFile.getAbsolutePath());
+
+        log.info("视频分析完成（阶段一：Markdown）");
+        return mdContent;
+    }
+
+    /**
+     * 获取视频对应的 Markdown 分析报告文件（与视频同目录、同名的 .md 文件）
+     *
+     * @param videoFile 视频文件
+     * @return Markdown 文件
+     */
+    public static File resolveMarkdownFile(File videoFile) {
+        String videoName = videoFile.getName();
+        int dotIndex = videoName.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? videoName.substring(0, dotIndex) : videoName;
+        return new File(videoFile.getParentFile(), baseName + ".md");
+    }
+
     /**
      * 构建系统提示词
      *
-     * 已被两阶段分析流程替代，保留方法仅为兼容或后续参考，当前未使用。
+     * 阶段二的内置结构化提示词，prompt2 文件不存在时使用。
      */
-    @SuppressWarnings("unused")
     private String buildSystemPrompt() {
         return """
                 您是一位从事自媒体行业15年的资深视频内容分析专家，擅长分析爆款视频。现在你的任务是对根据提供的视频分析报告进行深度分析，并按照严格的JSON格式返回分析结果。
@@ -220,38 +625,39 @@ public class VideoAnalysisAiUtil {
     }
 
     /**
-     * 构建用户消息（包含视频文件）
-     * 注意：当前 OpenAI Java SDK 可能不完全支持视频，这里先使用文本描述的方式
-     * 后续可以根据实际API支持情况调整
+     * 关键帧消息的开头说明
      */
-    private String buildUserMessage(File videoFile) {
+    private static String buildFramesHeader(int frameCount, String mediaDescription) {
+        StringBuilder header = new StringBuilder();
+        header.append("视频信息：\n");
+        if (mediaDescription != null && !mediaDescription.isBlank()) {
+            header.append(mediaDescription);
+        }
+        header.append("\n以下是按画面变化从视频中抽取的 ").append(frameCount)
+                .append(" 张关键帧，每张图片前标注了它在视频中的时间点（分:秒）。\n");
+        return header.toString();
+    }
+
+    private static ChatCompletionContentPart textPart(String text) {
+        return ChatCompletionContentPart.ofText(ChatCompletionContentPartText.builder().text(text).build());
+    }
+
+    /**
+     * 构建用户消息的文字部分（视频本身作为 video_url 内容单独发送）
+     */
+    private String buildUserMessage(File videoFile, String mediaDescription) {
         try {
             // 构建消息内容
             StringBuilder userMessageText = new StringBuilder();
             
-            // 视频文件处理策略：
-            // 1. 如果文件较小（<20MB），可以尝试base64编码
-            // 2. 如果文件较大，建议上传到OSS/CDN后使用URL
-            // 3. 当前实现：对于小文件使用base64，大文件使用路径描述
-            
             double fileSizeMB = videoFile.length() / 1024.0 / 1024.0;
             userMessageText.append("视频文件信息：\n");
             userMessageText.append("- 文件路径：").append(videoFile.getAbsolutePath()).append("\n");
-            userMessageText.append("- 文件大小：").append(String.format("%.2f", fileSizeMB)).append(" MB\n\n");
-            
-            // 如果文件较小，尝试base64编码（注意：实际API可能不支持视频base64，需要根据API文档调整）
-            if (fileSizeMB < 20) {
-                try {
-                    byte[] videoBytes = Files.readAllBytes(videoFile.toPath());
-                    String videoBase64 = Base64.getEncoder().encodeToString(videoBytes);
-                    userMessageText.append("视频文件（base64编码，前100字符）：").append(videoBase64.substring(0, Math.min(100, videoBase64.length()))).append("...\n\n");
-                    log.info("视频文件已编码为base64，大小: {} MB", fileSizeMB);
-                } catch (Exception e) {
-                    log.warn("视频文件base64编码失败，使用路径描述", e);
-                }
-            } else {
-                log.warn("视频文件较大（{} MB），建议上传到OSS/CDN后使用URL方式", fileSizeMB);
+            userMessageText.append("- 文件大小：").append(String.format("%.2f", fileSizeMB)).append(" MB\n");
+            if (mediaDescription != null && !mediaDescription.isBlank()) {
+                userMessageText.append(mediaDescription);
             }
+            userMessageText.append("\n");
             
             userMessageText.append("请分析这个视频，并按照要求返回JSON格式的分析结果。");
 
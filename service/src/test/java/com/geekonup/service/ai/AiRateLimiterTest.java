@@ -0,0 +1,175 @@
+package com.geekonup.service.ai;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.AccessDeniedException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiRateLimiterTest {
+
+    private AiRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new AiRateLimiter();
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "requestsPerMinute", 6000);
+        ReflectionTestUtils.setField(limiter, "tokensPerMinute", 1_000_000L);
+        ReflectionTestUtils.setField(limiter, "minRateFraction", 0.1);
+        ReflectionTestUtils.setField(limiter, "recoveryStep", 0.05);
+        ReflectionTestUtils.setField(limiter, "maxRetries", 2);
+        ReflectionTestUtils.setField(limiter, "baseBackoffMillis", 2L);
+        ReflectionTestUtils.setField(limiter, "maxBackoffMillis", 10L);
+        limiter.init();
+    }
+
+    @Test
+    void parsesResetDurations() {
+        assertEquals(1500, AiRateLimiter.parseDurationMillis("1.5"));
+        assertEquals(360_000, AiRateLimiter.parseDurationMillis("6m0s"));
+        assertEquals(90_500, AiRateLimiter.parseDurationMillis("1m30.5s"));
+        assertEquals(200, AiRateLimiter.parseDurationMillis("200ms"));
+        assertEquals(3_600_000 + 1000, AiRateLimiter.parseDurationMillis("1h1s"));
+        assertEquals(-1, AiRateLimiter.parseDurationMillis(""));
+        assertEquals(-1, AiRateLimiter.parseDurationMillis(null));
+        assertEquals(-1, AiRateLimiter.parseDurationMillis("soon"));
+    }
+
+    @Test
+    void prefersRetryAfterMillisHeader() {
+        assertEquals(250, AiRateLimiter.retryAfterMillis(headers(Map.of("retry-after-ms", "250", "retry-after", "3"))));
+        assertEquals(3000, AiRateLimiter.retryAfterMillis(headers(Map.of("retry-after", "3"))));
+        // HTTP 日期形式不解析
+        assertEquals(-1, AiRateLimiter.retryAfterMillis(headers(Map.of("retry-after", "Wed, 21 Oct 2026 07:28:00 GMT"))));
+        assertEquals(-1, AiRateLimiter.retryAfterMillis(headers(Map.of())));
+    }
+
+    @Test
+    void classifiesStatusCodes() {
+        AiRateLimiter.Failure throttled = AiRateLimiter.classify(new AiCallException(429, 5000, "限流"));
+        assertTrue(throttled.throttled());
+        assertTrue(throttled.retryable());
+        assertEquals(5000, throttled.retryAfterMillis());
+
+        assertRetryable(new AiCallException(500, -1, "服务端错误"));
+        assertRetryable(new AiCallException(503, -1, "服务不可用"));
+        assertRetryable(new AiCallException(408, -1, "超时"));
+        assertNotRetryable(new AiCallException(400, -1, "请求错误"));
+        assertNotRetryable(new AiCallException(401, -1, "未授权"));
+    }
+
+    @Test
+    void classifiesByCauseChain() {
+        // 调用方包装后的异常沿异常链找到状态码
+        assertRetryable(new RuntimeException("视频分析失败", new AiCallException(502, -1, "网关错误")));
+        assertRetryable(new RuntimeException(new SocketTimeoutException("读取超时")));
+        assertRetryable(new IOException("连接重置"));
+        // 读取本地文件失败不重试
+        assertNotRetryable(new RuntimeException(new FileNotFoundException("a.mp4")));
+        assertNotRetryable(new AccessDeniedException("a.mp4"));
+        assertNotRetryable(new RuntimeException(new InterruptedException()));
+        assertNotRetryable(new IllegalArgumentException("视频文件不存在"));
+    }
+
+    @Test
+    void retriesRetryableFailuresUntilSuccess() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = limiter.execute(0, 1000, "测试调用", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new AiCallException(503, -1, "服务不可用");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2L, limiter.metrics().get("retries"));
+    }
+
+    @Test
+    void stopsAfterMaxRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+        AiCallException failure = new AiCallException(500, -1, "服务端错误");
+
+        AiCallException thrown = assertThrows(AiCallException.class, () -> limiter.execute(0, 1000, "测试调用", () -> {
+            attempts.incrementAndGet();
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        assertEquals(3, attempts.get());
+        assertEquals(1L, limiter.metrics().get("retriesExhausted"));
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(AiCallException.class, () -> limiter.execute(0, 1000, "测试调用", () -> {
+            attempts.incrementAndGet();
+            throw new AiCallException(400, -1, "请求错误");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0L, limiter.metrics().get("retries"));
+    }
+
+    @Test
+    void throttlingHalvesRate() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        limiter.execute(0, 1000, "测试调用", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new AiCallException(429, -1, "限流");
+            }
+            return "ok";
+        });
+
+        assertEquals(1L, limiter.metrics().get("throttled"));
+        // 减半后成功一次恢复 0.05
+        assertEquals(0.55, limiter.metrics().get("rateFraction"));
+    }
+
+    @Test
+    void pausesWhenRemainingQuotaIsExhausted() {
+        limiter.onResponse(200, headers(Map.of("x-ratelimit-remaining-requests", "0",
+                "x-ratelimit-reset-requests", "1m")));
+        assertEquals(true, limiter.metrics().get("paused"));
+    }
+
+    @Test
+    void doesNotPauseWithRemainingQuota() {
+        limiter.onResponse(200, headers(Map.of("x-ratelimit-remaining-requests", "5",
+                "x-ratelimit-reset-requests", "1m")));
+        assertEquals(false, limiter.metrics().get("paused"));
+    }
+
+    private static void assertRetryable(Throwable error) {
+        assertTrue(AiRateLimiter.classify(error).retryable(), error.toString());
+    }
+
+    private static void assertNotRetryable(Throwable error) {
+        AiRateLimiter.Failure failure = AiRateLimiter.classify(error);
+        assertFalse(failure.retryable(), error.toString());
+        assertFalse(failure.throttled(), error.toString());
+    }
+
+    private static Function<String, Optional<String>> headers(Map<String, String> values) {
+        return name -> Optional.ofNullable(values.get(name));
+    }
+}
@@ -0,0 +1,138 @@
+package com.geekonup.service.ai;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long SLOW_MILLIS = 1000;
+
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = breaker();
+        breaker.onSuccess(10);
+        breaker.onFailure(10);
+        breaker.onSuccess(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 第 4 个样本达到最小样本数，失败率 2/4
+        breaker.onFailure(10);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1L, breaker.snapshot().get("opened"));
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker();
+        breaker.onFailure(10);
+        breaker.onFailure(10);
+        breaker.onFailure(10);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensWhenP95LatencyIsSlow() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(SLOW_MILLIS);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldSamplesLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("m", 4, 4, 0.75, SLOW_MILLIS, OPEN_MILLIS);
+        breaker.onFailure(10);
+        breaker.onFailure(10);
+        for (int i = 0; i < 6; i++) {
+            breaker.onSuccess(10);
+        }
+        breaker.onFailure(10);
+        breaker.onFailure(10);
+
+        // 窗口内只有最近 4 次：2 次成功、2 次失败，失败率未达到 0.75
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.5, breaker.snapshot().get("failureRate"));
+    }
+
+    @Test
+    void halfOpenAllowsSingleTrialAndClosesOnFastSuccess() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.snapshot().get("samples"));
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenReopensOnFailureOrSlowTrial() throws InterruptedException {
+        CircuitBreaker failed = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(failed.tryAcquire());
+        failed.onFailure(10);
+        assertEquals(CircuitBreaker.State.OPEN, failed.getState());
+        assertEquals(2L, failed.snapshot().get("opened"));
+
+        CircuitBreaker slow = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(slow.tryAcquire());
+        slow.onSuccess(SLOW_MILLIS);
+        assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+    }
+
+    @Test
+    void halfOpenTrialIsReleasedWhenNotAttempted() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+
+        // 试探调用在限流排队时被取消：不计样本，下一次调用可以试探
+        breaker.onNotAttempted();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void abandonedTrialReopensOnlyWhenAlreadySlow() throws InterruptedException {
+        CircuitBreaker fast = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(fast.tryAcquire());
+        fast.onAbandoned(10);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, fast.getState());
+        assertTrue(fast.tryAcquire());
+
+        CircuitBreaker slow = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(slow.tryAcquire());
+        slow.onAbandoned(SLOW_MILLIS);
+        assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+    }
+
+    private static CircuitBreaker breaker() {
+        return new CircuitBreaker("m", 10, 4, 0.5, SLOW_MILLIS, OPEN_MILLIS);
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(10);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,137 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.dto.response.VideoAnalysisResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkdownFieldExtractorTest {
+
+    private static final String REPORT = """
+            # 视频分析报告
+
+            ## 一、视频总结
+            创始人在早会上复盘上季度的渠道决策，
+            解释为什么砍掉两个低效渠道。
+
+            ## 二、剪辑结论（必剪/可剪/不剪）
+            **必剪**，节奏紧凑。
+
+            **剪辑优先级**：P1
+
+            **情感强度**：L3-感动/共鸣
+
+            **内容标签**：判断、决策、团队
+
+            ### 高光切片
+            - 0:25 - 0:43 开场提问
+            - 1:45 ~ 2:08 拍板
+
+            ---
+            其他说明 P0
+            """;
+
+    @Test
+    void extractsAllFieldsFromReport() {
+        MarkdownFieldExtractor.Extraction extraction = extract(REPORT);
+        VideoAnalysisResponse result = extraction.result();
+
+        assertEquals("必剪", result.getEditConclusion());
+        assertEquals("P1", result.getEditPriority());
+        assertEquals("L3", result.getEmotionalIntensity());
+        assertEquals("判断/决策/团队", result.getContentTags());
+        assertEquals("0:25 - 0:43 / 1:45 - 2:08", result.getHighlightSlices());
+        assertEquals("创始人在早会上复盘上季度的渠道决策，解释为什么砍掉两个低效渠道。", result.getVideoSummary());
+        assertEquals(List.of("coreValue", "editStructureSuggestion"), extraction.missingFields());
+    }
+
+    @Test
+    void acceptsReportSplitAtArbitraryPositions() {
+        MarkdownFieldExtractor extractor = new MarkdownFieldExtractor();
+        for (int i = 0; i < REPORT.length(); i += 7) {
+            extractor.feed(REPORT.substring(i, Math.min(REPORT.length(), i + 7)));
+        }
+
+        assertEquals(extract(REPORT).result().getHighlightSlices(), extractor.finish().result().getHighlightSlices());
+    }
+
+    @Test
+    void keepsHighlightMinutesAbove99() {
+        // 分段报告合并后时间点可超过 99 分钟
+        MarkdownFieldExtractor.Extraction extraction = extract("""
+                ## 高光切片
+                - 95:30 - 99:59 复盘
+                - 105:20 - 106:05 结论
+                - 1:45:10 - 1:46:00 收尾
+                """);
+
+        assertEquals("95:30 - 99:59 / 105:20 - 106:05 / 1:45:10 - 1:46:00",
+                extraction.result().getHighlightSlices());
+    }
+
+    @Test
+    void ignoresNumbersThatAreNotTimeRanges() {
+        MarkdownFieldExtractor.Extraction extraction = extract("""
+                ## 高光切片
+                - 编号 1234:56 - 1235:10
+                - 画面 16:9
+                """);
+
+        assertNull(extraction.result().getHighlightSlices());
+        assertFalse(extraction.confidentFields().contains("highlightSlices"));
+    }
+
+    @Test
+    void keepsTimeRangeSubheadingsInHighlightSection() {
+        MarkdownFieldExtractor.Extraction extraction = extract("""
+                ## 高光切片
+                ### 0:25 - 0:43 开场
+                ### 101:00 - 101:30 拍板
+                ## 情感强度
+                L2
+                """);
+
+        assertEquals("0:25 - 0:43 / 101:00 - 101:30", extraction.result().getHighlightSlices());
+        assertEquals("L2", extraction.result().getEmotionalIntensity());
+    }
+
+    @Test
+    void rejectsAmbiguousChoices() {
+        assertNull(extract("**情感强度**：L1 或 L2").result().getEmotionalIntensity());
+        assertNull(extract("**剪辑优先级**：P0/P1").result().getEditPriority());
+        // 开头的值后面有其他说明时仍取开头的值
+        assertEquals("P0", extract("**剪辑优先级**：P0，高于其他 P1 视频").result().getEditPriority());
+    }
+
+    @Test
+    void rejectsConflictingChunkValues() {
+        MarkdownFieldExtractor.Extraction extraction = extract("""
+                ## 第 1 段
+                **剪辑结论**：必剪
+                ## 第 2 段
+                **剪辑结论**：不剪
+                """);
+
+        assertNull(extraction.result().getEditConclusion());
+        assertTrue(extraction.missingFields().contains("editConclusion"));
+    }
+
+    @Test
+    void priorityMayBeEmptyWhenNotEditing() {
+        MarkdownFieldExtractor.Extraction extraction = extract("**剪辑结论**：不剪");
+
+        assertEquals("不剪", extraction.result().getEditConclusion());
+        assertTrue(extraction.confidentFields().contains("editPriority"));
+    }
+
+    private static MarkdownFieldExtractor.Extraction extract(String report) {
+        MarkdownFieldExtractor extractor = new MarkdownFieldExtractor();
+        extractor.feed(report);
+        return extractor.finish();
+    }
+}
@@ -0,0 +1,123 @@
+package com.geekonup.service.ai;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRouterTest {
+
+    @Test
+    void breakerExcludesTimeBeforeSend() throws Exception {
+        // 慢调用阈值 1 秒，排队 1.2 秒后发出的快速请求不应计为慢调用
+        ModelRouter router = router("a", 0);
+
+        for (int i = 0; i < 2; i++) {
+            router.execute("测试调用", (model, attempt, listener) -> {
+                Thread.sleep(1200);
+                listener.onSend();
+                return "ok";
+            });
+        }
+
+        Map<String, Object> breaker = breakerOf(router, "a");
+        assertEquals("CLOSED", breaker.get("state"));
+        assertTrue((Long) breaker.get("p95Millis") < 500, breaker.toString());
+    }
+
+    @Test
+    void recordsEachFailedAttempt() throws Exception {
+        ModelRouter router = router("a", 0, 5);
+
+        String result = router.execute("测试调用", (model, attempt, listener) -> {
+            // 模拟限流层重试两次后成功
+            listener.onSend();
+            listener.onFailure();
+            listener.onSend();
+            listener.onFailure();
+            listener.onSend();
+            return "ok";
+        }).result();
+
+        assertEquals("ok", result);
+        Map<String, Object> breaker = breakerOf(router, "a");
+        assertEquals(3, breaker.get("samples"));
+        assertEquals(0.67, breaker.get("failureRate"));
+    }
+
+    @Test
+    void failsOverToNextModel() throws Exception {
+        ModelRouter router = router("a,b", 0);
+
+        ModelRouter.Served<String> served = router.execute("测试调用", (model, attempt, listener) -> {
+            listener.onSend();
+            if ("a".equals(model)) {
+                throw new AiCallException(503, -1, "服务不可用");
+            }
+            return model;
+        });
+
+        assertEquals("b", served.model());
+        assertEquals(1L, router.metrics().get("failovers"));
+    }
+
+    @Test
+    void hedgeTimerStartsWhenRequestIsSent() throws Exception {
+        ModelRouter router = router("a,b", 1);
+
+        // 主请求排队 1.5 秒后发出，0.3 秒内返回：排队时间不计入对冲等待，不会发起对冲请求
+        ModelRouter.Served<String> served = router.execute("测试调用", (model, attempt, listener) -> {
+            if (attempt == 0) {
+                Thread.sleep(1500);
+            }
+            listener.onSend();
+            Thread.sleep(300);
+            return model;
+        });
+
+        assertEquals("a", served.model());
+        assertEquals(0L, router.metrics().get("hedged"));
+    }
+
+    @Test
+    void hedgesWhenSentRequestIsSlow() throws Exception {
+        ModelRouter router = router("a,b", 1);
+
+        ModelRouter.Served<String> served = router.execute("测试调用", (model, attempt, listener) -> {
+            listener.onSend();
+            Thread.sleep("a".equals(model) ? 5000 : 100);
+            return model;
+        });
+
+        assertEquals("b", served.model());
+        assertEquals(1, served.attempt());
+        assertEquals(1L, router.metrics().get("hedged"));
+        assertEquals(1L, router.metrics().get("hedgeWins"));
+    }
+
+    private static ModelRouter router(String models, long hedgeAfterSeconds) {
+        return router(models, hedgeAfterSeconds, 2);
+    }
+
+    private static ModelRouter router(String models, long hedgeAfterSeconds, int minCalls) {
+        ModelRouter router = new ModelRouter();
+        ReflectionTestUtils.setField(router, "step1Model", "a");
+        ReflectionTestUtils.setField(router, "models", models);
+        ReflectionTestUtils.setField(router, "windowSize", 20);
+        ReflectionTestUtils.setField(router, "minCalls", minCalls);
+        ReflectionTestUtils.setField(router, "failureRateThreshold", 0.9);
+        ReflectionTestUtils.setField(router, "slowCallSeconds", 1L);
+        ReflectionTestUtils.setField(router, "openSeconds", 60L);
+        ReflectionTestUtils.setField(router, "hedgeAfterSeconds", hedgeAfterSeconds);
+        router.init();
+        return router;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> breakerOf(ModelRouter router, String model) {
+        return ((Map<String, Map<String, Object>>) router.metrics().get("models")).get(model);
+    }
+}
@@ -0,0 +1,98 @@
+package com.geekonup.service.ai;
+
+import com.geekonup.service.dto.response.VideoAnalysisResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StructuredResultParserTest {
+
+    @Test
+    void normalizesConclusion() {
+        assertEquals("必剪", StructuredResultParser.normalizeConclusion(" 必剪\n"));
+        assertNull(StructuredResultParser.normalizeConclusion("必须剪"));
+        assertNull(StructuredResultParser.normalizeConclusion("必剪/可剪"));
+        assertNull(StructuredResultParser.normalizeConclusion(""));
+        assertNull(StructuredResultParser.normalizeConclusion(null));
+    }
+
+    @Test
+    void normalizesPriorityIgnoringCase() {
+        assertEquals("P0", StructuredResultParser.normalizePriority("p0"));
+        assertEquals("P2", StructuredResultParser.normalizePriority(" P2 "));
+        assertNull(StructuredResultParser.normalizePriority("P3"));
+        assertNull(StructuredResultParser.normalizePriority("P10"));
+        assertNull(StructuredResultParser.normalizePriority(null));
+    }
+
+    @Test
+    void normalizesIntensityWithDescription() {
+        assertEquals("L3", StructuredResultParser.normalizeIntensity("L3"));
+        assertEquals("L3", StructuredResultParser.normalizeIntensity("l3-感动/共鸣"));
+        assertEquals("L0", StructuredResultParser.normalizeIntensity("L0 平静"));
+        // L3 后面紧跟数字不是 L3
+        assertNull(StructuredResultParser.normalizeIntensity("L34"));
+        assertNull(StructuredResultParser.normalizeIntensity("L5"));
+        assertNull(StructuredResultParser.normalizeIntensity("L"));
+        assertNull(StructuredResultParser.normalizeIntensity(null));
+    }
+
+    @Test
+    void textJoinsLines() {
+        assertEquals("第一行 第二行", StructuredResultParser.text("  第一行\r\n   第二行  "));
+        assertNull(StructuredResultParser.text(" \n "));
+    }
+
+    @Test
+    void readsJsonFromCodeBlock() {
+        String content = """
+                结果如下：
+                ```json
+                {"editConclusion": "可剪", "editPriority": "p1", "emotionalIntensity": "L2-温暖",
+                 "videoSummary": "第一行\\n第二行", "highlightSlices": "0:10 - 0:20"}
+                ```
+                """;
+
+        VideoAnalysisResponse result = StructuredResultParser.read(content, StructuredResultParser.FIELDS);
+
+        assertEquals("可剪", result.getEditConclusion());
+        assertEquals("P1", result.getEditPriority());
+        assertEquals("L2", result.getEmotionalIntensity());
+        assertEquals("第一行 第二行", result.getVideoSummary());
+        assertEquals("0:10 - 0:20", result.getHighlightSlices());
+        assertNull(result.getCoreValue());
+        assertEquals(List.of(), StructuredResultParser.invalidFields(result));
+    }
+
+    @Test
+    void reportsInvalidFields() {
+        VideoAnalysisResponse result = StructuredResultParser.read(
+                "{\"editConclusion\": \"剪\", \"editPriority\": \"高\", \"emotionalIntensity\": \"L9\"}",
+                StructuredResultParser.FIELDS);
+
+        assertEquals(List.of("editConclusion", "editPriority", "emotionalIntensity"),
+                StructuredResultParser.invalidFields(result));
+    }
+
+    @Test
+    void priorityMayBeEmptyWhenNotEditing() {
+        VideoAnalysisResponse result = StructuredResultParser.read(
+                "{\"editConclusion\": \"不剪\", \"emotionalIntensity\": \"L0\"}", StructuredResultParser.FIELDS);
+
+        assertEquals(List.of(), StructuredResultParser.invalidFields(result));
+    }
+
+    @Test
+    void rejectsContentWithoutJson() {
+        assertThrows(IllegalArgumentException.class,
+                () -> StructuredResultParser.read("无法分析该视频", StructuredResultParser.FIELDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> StructuredResultParser.read("{\"editConclusion\": }", StructuredResultParser.FIELDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> StructuredResultParser.read(null, StructuredResultParser.FIELDS));
+    }
+}
@@ -0,0 +1,193 @@
+package com.geekonup.service.controller;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.geekonup.service.media.MediaServer;
+import com.geekonup.service.util.VideoAnalysisAiUtil;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 媒体服务端到端测试：本地 HttpServer 充当模型接口，从请求中取出 video_url，
+ * 再按签名 URL 从 /media 下载视频（完整下载、Range 下载、无法满足的 Range）
+ */
+@SpringBootTest(classes = MediaControllerTest.TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "ai.media-server.enabled=true",
+                "ai.media-server.public-base-url=http://127.0.0.1",
+                "ai.media-server.secret=test-secret"
+        })
+class MediaControllerTest {
+
+    private static final int VIDEO_SIZE = 1000;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import({MediaController.class, MediaServer.class})
+    static class TestApplication {
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MediaServer mediaServer;
+
+    @TempDir
+    Path tempDir;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    private HttpServer modelStub;
+
+    // 模型桩下载视频的结果：完整下载、Range 下载、超出范围的 Range
+    private final Map<String, HttpResponse<byte[]>> fetched = new ConcurrentHashMap<>();
+
+    private Path video;
+
+    private byte[] videoBytes;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 端口在启动后才确定，public-base-url 在这里指向实际端口
+        ReflectionTestUtils.setField(mediaServer, "publicBaseUrl", "http://127.0.0.1:" + port);
+        ReflectionTestUtils.setField(mediaServer, "urlTtlSeconds", 1800);
+
+        videoBytes = new byte[VIDEO_SIZE];
+        for (int i = 0; i < videoBytes.length; i++) {
+            videoBytes[i] = (byte) i;
+        }
+        video = tempDir.resolve("clip 1.mp4");
+        Files.write(video, videoBytes);
+
+        modelStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        modelStub.createContext("/v1/chat/completions", exchange -> {
+            JSONObject request = JSONUtil.parseObj(new String(exchange.getRequestBody().readAllBytes(),
+                    StandardCharsets.UTF_8));
+            String videoUrl = request.getJSONArray("messages").getJSONObject(1).getJSONArray("content")
+                    .getJSONObject(0).getJSONObject("video_url").getStr("url");
+            try {
+                fetched.put("full", get(videoUrl, null));
+                fetched.put("range", get(videoUrl, "bytes=100-199"));
+                fetched.put("suffix", get(videoUrl, "bytes=-50"));
+                fetched.put("unsatisfiable", get(videoUrl, "bytes=5000-"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = new JSONObject().set("choices", JSONUtil.createArray().set(new JSONObject()
+                            .set("message", new JSONObject().set("role", "assistant").set("content", "# 报告\n已下载"))))
+                    .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        modelStub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        modelStub.stop(0);
+    }
+
+    @Test
+    void modelDownloadsVideoBySignedUrl() throws IOException {
+        Path prompt = Files.writeString(tempDir.resolve("prompt1.md"), "分析视频");
+        String videoUrl = mediaServer.urlFor(video.toFile());
+        assertNotNull(videoUrl);
+
+        VideoAnalysisAiUtil aiUtil = new VideoAnalysisAiUtil("test-key",
+                "http://127.0.0.1:" + modelStub.getAddress().getPort() + "/v1");
+        String markdown = aiUtil.analyzeVideoToMarkdown(video.toString(), prompt.toString(), "test-model",
+                tempDir.resolve("clip.md").toFile(), null, videoUrl);
+        assertEquals("# 报告\n已下载", markdown);
+
+        HttpResponse<byte[]> full = fetched.get("full");
+        assertEquals(200, full.statusCode());
+        assertEquals("bytes", full.headers().firstValue("Accept-Ranges").orElse(null));
+        assertEquals("video/mp4", full.headers().firstValue("Content-Type").orElse(null));
+        assertArrayEquals(videoBytes, full.body());
+
+        HttpResponse<byte[]> range = fetched.get("range");
+        assertEquals(206, range.statusCode());
+        assertEquals("bytes 100-199/1000", range.headers().firstValue("Content-Range").orElse(null));
+        assertArrayEquals(Arrays.copyOfRange(videoBytes, 100, 200), range.body());
+
+        HttpResponse<byte[]> suffix = fetched.get("suffix");
+        assertEquals(206, suffix.statusCode());
+        assertEquals("bytes 950-999/1000", suffix.headers().firstValue("Content-Range").orElse(null));
+        assertArrayEquals(Arrays.copyOfRange(videoBytes, 950, 1000), suffix.body());
+
+        HttpResponse<byte[]> unsatisfiable = fetched.get("unsatisfiable");
+        assertEquals(416, unsatisfiable.statusCode());
+        assertEquals("bytes */1000", unsatisfiable.headers().firstValue("Content-Range").orElse(null));
+    }
+
+    @Test
+    void rejectsExpiredUrl() throws Exception {
+        ReflectionTestUtils.setField(mediaServer, "urlTtlSeconds", -10);
+        String videoUrl = mediaServer.urlFor(video.toFile());
+
+        assertEquals(403, get(videoUrl, null).statusCode());
+    }
+
+    @Test
+    void rejectsTamperedSignature() throws Exception {
+        String videoUrl = mediaServer.urlFor(video.toFile());
+        char last = videoUrl.charAt(videoUrl.length() - 1);
+        String tampered = videoUrl.substring(0, videoUrl.length() - 1) + (last == '0' ? '1' : '0');
+
+        assertEquals(200, get(videoUrl, null).statusCode());
+        assertEquals(403, get(tampered, null).statusCode());
+        assertEquals(403, get(videoUrl.replaceAll("&signature=[0-9a-f]+", ""), null).statusCode());
+    }
+
+    @Test
+    void rejectsExtendedExpiry() throws Exception {
+        String videoUrl = mediaServer.urlFor(video.toFile());
+        // 签名绑定过期时间，修改 expires 延期后签名不再匹配
+        String extended = videoUrl.replaceAll("expires=\\d+", "expires=" + (System.currentTimeMillis() / 1000 + 86400));
+
+        assertTrue(extended.contains("&signature="));
+        assertEquals(403, get(extended, null).statusCode());
+    }
+
+    private HttpResponse<byte[]> get(String url, String range) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).GET();
+        if (range != null) {
+            builder.header("Range", range);
+        }
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,176 @@
+package com.geekonup.service.media;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FfmpegGovernorTest {
+
+    private FfmpegGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        governor = new FfmpegGovernor();
+        ReflectionTestUtils.setField(governor, "configuredBudget", 8);
+        ReflectionTestUtils.setField(governor, "threadsPerEncode", 4);
+        governor.init();
+    }
+
+    @Test
+    void backgroundLeaseIsCappedAtOneEncode() {
+        FfmpegGovernor.Lease lease = governor.acquireBackground(8, "a.mp4", () -> false);
+
+        assertNotNull(lease);
+        assertEquals(4, lease.threads());
+        lease.close();
+        assertEquals(0, governor.metrics().get("coresInUse"));
+        assertEquals(0, governor.metrics().get("runningEncodes"));
+    }
+
+    @Test
+    void backgroundLeaseIsNotGrantedWithoutSpareCores() throws InterruptedException {
+        try (FfmpegGovernor.Lease ignored = governor.acquire(6, "job.mp4")) {
+            assertNull(governor.acquireBackground(4, "a.mp4", () -> false));
+        }
+        assertEquals(0, governor.metrics().get("backgroundEncodes"));
+    }
+
+    @Test
+    void backgroundLeaseIsWithdrawnWhenEncodeQueuesDuringRegistration() {
+        // 登记后台凭证时恰好有编码开始排队：登记集合的 add 模拟这一时刻
+        AtomicInteger queued = (AtomicInteger) ReflectionTestUtils.getField(governor, "queued");
+        Set<FfmpegGovernor.Lease> registry = new ConcurrentHashMap<FfmpegGovernor.Lease, Boolean>().keySet(true);
+        ReflectionTestUtils.setField(governor, "background", new ForwardingSet(registry, queued::incrementAndGet));
+
+        assertNull(governor.acquireBackground(4, "a.mp4", () -> true));
+        queued.decrementAndGet();
+
+        assertEquals(0, governor.metrics().get("runningEncodes"));
+        assertEquals(0, governor.metrics().get("coresInUse"));
+        assertEquals(0, governor.metrics().get("backgroundEncodes"));
+        assertEquals(0L, governor.metrics().get("admitted"));
+    }
+
+    @Test
+    void queuedEncodePreemptsBackgroundLease() throws Exception {
+        AtomicReference<FfmpegGovernor.Lease> background = new AtomicReference<>();
+        // 抢占回调模拟编码进程终止后关闭凭证
+        background.set(governor.acquireBackground(4, "a.mp4", () -> {
+            background.get().close();
+            return true;
+        }));
+        assertNotNull(background.get());
+
+        try (FfmpegGovernor.Lease ignored = governor.acquire(4, "job-1.mp4")) {
+            // 剩余预算不足，排队时抢占后台编码
+            CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> {
+                try (FfmpegGovernor.Lease lease = governor.acquire(4, "job-2.mp4")) {
+                    return lease.threads();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertEquals(4, queued.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1L, governor.metrics().get("preempted"));
+        assertEquals(0, governor.metrics().get("runningEncodes"));
+        assertEquals(0, governor.metrics().get("coresInUse"));
+    }
+
+    @Test
+    void backgroundLeaseIsPreemptedOnlyOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        // 让出后编码进程尚未结束，凭证暂不关闭
+        FfmpegGovernor.Lease background = governor.acquireBackground(4, "a.mp4", () -> {
+            calls.incrementAndGet();
+            return true;
+        });
+        FfmpegGovernor.Lease job = governor.acquire(4, "job-1.mp4");
+
+        List<CompletableFuture<Integer>> waiters = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            String label = "job-" + (i + 2) + ".mp4";
+            waiters.add(CompletableFuture.supplyAsync(() -> {
+                try (FfmpegGovernor.Lease lease = governor.acquire(4, label)) {
+                    return lease.threads();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Integer.valueOf(2).equals(governor.metrics().get("queuedEncodes"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1L, governor.metrics().get("preempted"));
+        background.close();
+        job.close();
+        for (CompletableFuture<Integer> waiter : waiters) {
+            assertEquals(4, waiter.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void spareCapacityRequiresEmptyQueue() throws InterruptedException {
+        assertTrue(governor.hasSpareCapacity(4));
+        try (FfmpegGovernor.Lease ignored = governor.acquire(8, "job.mp4")) {
+            assertFalse(governor.hasSpareCapacity(4));
+        }
+    }
+
+    /**
+     * 添加元素时先执行回调的集合
+     */
+    private static final class ForwardingSet extends AbstractSet<FfmpegGovernor.Lease> {
+
+        private final Set<FfmpegGovernor.Lease> delegate;
+
+        private final Runnable onAdd;
+
+        private ForwardingSet(Set<FfmpegGovernor.Lease> delegate, Runnable onAdd) {
+            this.delegate = delegate;
+            this.onAdd = onAdd;
+        }
+
+        @Override
+        public boolean add(FfmpegGovernor.Lease lease) {
+            onAdd.run();
+            return delegate.add(lease);
+        }
+
+        @Override
+        public boolean remove(Object lease) {
+            return delegate.remove(lease);
+        }
+
+        @Override
+        public Iterator<FfmpegGovernor.Lease> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.geekonup.service.media;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 代理文件存储：临时文件命名与进行中编码的空间预留
+ */
+class ProxyStoreTest {
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path tempDir;
+
+    private ProxyStore store;
+
+    // 每次编码预计大小：可用空间的四分之一
+    private long expectedBytes;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        long usable = Files.getFileStore(tempDir).getUsableSpace();
+        expectedBytes = usable / 4;
+        store = new ProxyStore();
+        ReflectionTestUtils.setField(store, "storeDir", tempDir.toString());
+        ReflectionTestUtils.setField(store, "maxBytes", Long.MAX_VALUE);
+        // 可容纳一次编码，但容纳不下两次
+        ReflectionTestUtils.setField(store, "minFreeBytes", usable - expectedBytes * 3 / 2);
+        store.init();
+    }
+
+    @Test
+    void concurrentEncodesOfSameKeyUseDistinctTempFiles() throws IOException {
+        ReflectionTestUtils.setField(store, "minFreeBytes", 0L);
+
+        Path first = store.prepareEncode(KEY, 1);
+        Path second = store.prepareEncode(KEY, 1);
+
+        assertNotEquals(first, second);
+        store.discard(first);
+        assertTrue(Files.exists(second));
+    }
+
+    @Test
+    void inFlightEncodeReservesDiskSpace() throws IOException {
+        Path first = store.prepareEncode(KEY, expectedBytes);
+        assertEquals(expectedBytes, store.metrics().get("reservedBytes"));
+
+        assertThrows(IOException.class, () -> store.prepareEncode(KEY, expectedBytes));
+
+        store.discard(first);
+        assertEquals(0L, store.metrics().get("reservedBytes"));
+        store.discard(store.prepareEncode(KEY, expectedBytes));
+    }
+
+    @Test
+    void commitReleasesReservation() throws IOException {
+        Path temp = store.prepareEncode(KEY, expectedBytes);
+        Files.write(temp, new byte[10]);
+        Path source = Files.write(tempDir.resolve("source.mov"), new byte[1]);
+
+        Path proxy = store.commit(KEY, temp, source.toFile(), "crf=28");
+
+        assertEquals(0L, store.metrics().get("reservedBytes"));
+        assertEquals(10L, Files.size(proxy));
+    }
+}
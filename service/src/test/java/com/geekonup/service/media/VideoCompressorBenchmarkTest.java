@@ -0,0 +1,46 @@
+package com.geekonup.service.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压缩策略对比：分别用分档模式、目标体积模式（及适用时的重新封装快速路径）压缩同一个视频，
+ * 输出各模式的输出体积、是否满足 100MB 上限和编码耗时，目标体积模式必须满足上限
+ * <p>
+ * 会执行多次完整编码，耗时较长，仅用于调参，只在指定视频时运行：
+ * mvn -pl service test -Dtest=VideoCompressorBenchmarkTest -Dbenchmark.video=/path/to/video.mp4
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark.video", matches = ".+")
+@SpringBootTest(classes = {VideoCompressor.class, ProxyStore.class, MediaProbe.class, FfmpegGovernor.class,
+        ScratchStore.class})
+class VideoCompressorBenchmarkTest {
+
+    @Autowired
+    private VideoCompressor videoCompressor;
+
+    @Test
+    void compareCompressionModes() throws IOException {
+        File videoFile = new File(System.getProperty("benchmark.video"));
+        assertTrue(videoFile.isFile(), "视频文件不存在: " + videoFile);
+
+        Map<String, Object> report = videoCompressor.benchmark(videoFile);
+        report.forEach((key, value) -> log.info("{}: {}", key, value));
+
+        Map<?, ?> targetSize = (Map<?, ?>) report.get(CompressionMode.TARGET_SIZE.getValue());
+        assertNotNull(targetSize, "缺少目标体积模式的结果");
+        assertEquals(Boolean.TRUE, targetSize.get("success"), "目标体积模式编码失败: " + targetSize);
+        assertTrue((Boolean) targetSize.get("fitsLimit"), "目标体积模式输出超过上限: " + targetSize);
+    }
+}
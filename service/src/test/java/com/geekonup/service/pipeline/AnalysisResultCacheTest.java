@@ -0,0 +1,65 @@
+package com.geekonup.service.pipeline;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 分析结果缓存：报告与结构化结果的写入和查询
+ */
+class AnalysisResultCacheTest {
+
+    private static final String KEY = "ab12cd34";
+
+    @TempDir
+    Path tempDir;
+
+    private AnalysisResultCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cache = new AnalysisResultCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cacheDir", tempDir.toString());
+        cache.init();
+    }
+
+    @Test
+    void returnsStructuredResultWithReport() throws IOException {
+        cache.put(KEY, "# 报告");
+        assertNull(cache.get(KEY).structured());
+
+        cache.putStructured(KEY, "{\"editPriority\":\"P0\"}");
+
+        AnalysisResultCache.Entry entry = cache.get(KEY);
+        assertEquals("# 报告", Files.readString(entry.report()));
+        assertEquals("{\"editPriority\":\"P0\"}", Files.readString(entry.structured()));
+    }
+
+    @Test
+    void ignoresStructuredResultWithoutCachedReport() {
+        cache.putStructured(KEY, "{\"editPriority\":\"P0\"}");
+
+        assertNull(cache.get(KEY));
+        cache.put(KEY, "# 报告");
+        assertNull(cache.get(KEY).structured());
+    }
+
+    @Test
+    void replacingReportDropsStaleStructuredResult() {
+        cache.put(KEY, "# 旧报告");
+        cache.putStructured(KEY, "{\"editPriority\":\"P0\"}");
+
+        cache.put(KEY, "# 新报告");
+
+        assertNull(cache.get(KEY).structured());
+    }
+}
@@ -0,0 +1,80 @@
+package com.geekonup.service.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用 shell 脚本代替 ffprobe，验证输出读取、超时和命令参数
+ */
+@DisabledOnOs(OS.WINDOWS)
+class FfmpegUtilTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void probeReturnsStdout() throws IOException {
+        Path ffprobe = script("printf '{\"format\":{}}\\n'; echo ignored >&2");
+
+        assertEquals("{\"format\":{}}", FfmpegUtil.probeMedia(ffprobe.toString(), "a.mp4", 5));
+    }
+
+    @Test
+    void probeReturnsNullOnNonZeroExit() throws IOException {
+        Path ffprobe = script("echo partial; exit 1");
+
+        assertNull(FfmpegUtil.probeMedia(ffprobe.toString(), "a.mp4", 5));
+    }
+
+    @Test
+    void probeTimesOutWhileOutputIsStalled() throws IOException {
+        // 先输出一部分再卡住，模拟 SMB 读取挂起：标准输出没有结束，超时必须生效
+        Path ffprobe = script("echo '{'; exec sleep 30");
+
+        long start = System.currentTimeMillis();
+        assertNull(FfmpegUtil.probeMedia(ffprobe.toString(), "a.mp4", 1));
+        assertTrue(System.currentTimeMillis() - start < 10_000, "超时没有生效");
+    }
+
+    @Test
+    void keyframeSearchTimesOut() throws IOException {
+        Path ffprobe = script("exec sleep 30");
+
+        long start = System.currentTimeMillis();
+        assertEquals(-1, FfmpegUtil.findKeyframeAfter(ffprobe.toString(), "a.mp4", 12.5, 1));
+        assertTrue(System.currentTimeMillis() - start < 10_000, "超时没有生效");
+    }
+
+    @Test
+    void keyframeSearchArgumentsIgnoreDefaultLocale() throws IOException {
+        Path args = tempDir.resolve("args.txt");
+        Path ffprobe = script("echo \"$@\" > '" + args + "'; echo '10.000000,K__'; echo '13.000000,K__'");
+        Locale defaultLocale = Locale.getDefault();
+        // 德语环境默认使用逗号作为小数点
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            assertEquals(13.0, FfmpegUtil.findKeyframeAfter(ffprobe.toString(), "a.mp4", 12.5, 5));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+        assertTrue(Files.readString(args).contains("-read_intervals 12.500%+"), Files.readString(args));
+    }
+
+    private Path script(String body) throws IOException {
+        Path file = tempDir.resolve("ffprobe-" + System.nanoTime() + ".sh");
+        Files.writeString(file, "#!/bin/sh\n" + body + "\n");
+        assertTrue(file.toFile().setExecutable(true));
+        return file;
+    }
+}
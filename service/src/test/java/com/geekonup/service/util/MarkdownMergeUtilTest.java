@@ -0,0 +1,83 @@
+package com.geekonup.service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MarkdownMergeUtilTest {
+
+    @Test
+    void shiftsMinuteSecondTimestamps() {
+        assertEquals("高光 10:25 - 10:43 / 11:45 - 12:08",
+                MarkdownMergeUtil.shiftTimestamps("高光 0:25 - 0:43 / 1:45 - 2:08", 600));
+    }
+
+    @Test
+    void keepsMinutesAbove99() {
+        // 30 分钟以上的分段视频：分钟数超过 99 时仍然输出 分:秒
+        assertEquals("95:30 之后是 105:20", MarkdownMergeUtil.shiftTimestamps("5:30 之后是 15:20", 5400));
+        assertEquals("120:00", MarkdownMergeUtil.shiftTimestamps("105:00", 900));
+    }
+
+    @Test
+    void shiftsHourMinuteSecondTimestamps() {
+        assertEquals("1:00:10 和 1:05:00", MarkdownMergeUtil.shiftTimestamps("0:59:10 和 1:04:00", 60));
+    }
+
+    @Test
+    void roundsFractionalOffsets() {
+        assertEquals("1:01", MarkdownMergeUtil.shiftTimestamps("0:00", 60.6));
+    }
+
+    @Test
+    void leavesTextUnchangedWithoutOffset() {
+        String markdown = "0:25 - 0:43";
+        assertEquals(markdown, MarkdownMergeUtil.shiftTimestamps(markdown, 0));
+    }
+
+    @Test
+    void ignoresNonTimestamps() {
+        // 画面比例、秒数超过 59、更长的冒号序列都不是时间点
+        String markdown = "画面 16:9，比分 3:75，版本 1:02:03:04，编号 1234:56";
+        assertEquals(markdown, MarkdownMergeUtil.shiftTimestamps(markdown, 600));
+    }
+
+    @Test
+    void mergesSectionsWithDemotedHeadings() {
+        String merged = MarkdownMergeUtil.merge("报告", "时长 20 分钟，2 个片段", List.of(
+                new MarkdownMergeUtil.Section("片段 1（0:00 - 10:00）", 0, "# 总结\n开场 0:10"),
+                new MarkdownMergeUtil.Section("片段 2（10:00 - 20:00）", 600,
+                        "# 总结\n高光 1:30\n```\n# 代码块\n```\n###### 六级")));
+
+        assertEquals("""
+                # 报告
+
+                > 时长 20 分钟，2 个片段
+
+                ## 片段 1（0:00 - 10:00）
+
+                ## 总结
+                开场 0:10
+
+                ## 片段 2（10:00 - 20:00）
+
+                ## 总结
+                高光 11:30
+                ```
+                # 代码块
+                ```
+                ###### 六级
+
+                """, merged);
+    }
+
+    @Test
+    void formatsTimestampsWithRounding() {
+        assertEquals("0:00", MarkdownMergeUtil.formatTimestamp(0.4));
+        assertEquals("1:00", MarkdownMergeUtil.formatTimestamp(59.6));
+        assertEquals("125:05", MarkdownMergeUtil.formatTimestamp(7505));
+        assertEquals("2:05:05", MarkdownMergeUtil.formatTimestampWithHours(7504.5));
+    }
+}
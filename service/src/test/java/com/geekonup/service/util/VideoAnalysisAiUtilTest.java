@@ -0,0 +1,96 @@
+package com.geekonup.service.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 流式接收阶段一输出：本地 HttpServer 充当模型接口返回 SSE
+ */
+class VideoAnalysisAiUtilTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer modelStub;
+
+    // 模型桩返回的 SSE 内容
+    private volatile String events;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        modelStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        modelStub.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = events.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        modelStub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        modelStub.stop(0);
+    }
+
+    @Test
+    void completesStreamEndingWithDone() throws IOException {
+        events = chunk("# 报告", null) + chunk("\n完整", null) + chunk("", "\"stop\"") + "data: [DONE]\n\n";
+
+        assertEquals("# 报告\n完整", analyze());
+        assertEquals("# 报告\n完整", Files.readString(tempDir.resolve("clip.md")));
+        assertFalse(Files.exists(tempDir.resolve("clip.md.partial")));
+    }
+
+    @Test
+    void completesStreamWithFinishReasonOnly() throws IOException {
+        events = chunk("# 报告", null) + chunk("", "\"stop\"");
+
+        assertEquals("# 报告", analyze());
+    }
+
+    @Test
+    void keepsPartialReportWhenStreamEndsWithoutFinishMarker() throws IOException {
+        // 连接在报告中途被正常关闭：没有 finish_reason 也没有 [DONE]
+        events = chunk("# 报告", null) + chunk("\n写到一半", null);
+        Files.writeString(tempDir.resolve("clip.md"), "上一次的完整报告");
+
+        RuntimeException error = assertThrows(RuntimeException.class, this::analyze);
+
+        assertInstanceOf(IOException.class, error.getCause());
+        assertEquals("上一次的完整报告", Files.readString(tempDir.resolve("clip.md")));
+        assertEquals("# 报告\n写到一半", Files.readString(tempDir.resolve("clip.md.partial")));
+    }
+
+    private String analyze() throws IOException {
+        Path video = Files.write(tempDir.resolve("clip.mp4"), new byte[16]);
+        Path prompt = Files.writeString(tempDir.resolve("prompt1.md"), "分析视频");
+        VideoAnalysisAiUtil aiUtil = new VideoAnalysisAiUtil("test-key",
+                "http://127.0.0.1:" + modelStub.getAddress().getPort() + "/v1", true, null, null);
+        return aiUtil.analyzeVideoToMarkdown(video.toString(), prompt.toString(), "test-model",
+                tempDir.resolve("clip.md").toFile(), null, "http://127.0.0.1/media/clip.mp4");
+    }
+
+    private static String chunk(String content, String finishReason) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content.replace("\n", "\\n")
+                + "\"},\"finish_reason\":" + finishReason + "}]}\n\n";
+    }
+}